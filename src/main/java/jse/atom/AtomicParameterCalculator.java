@@ -23,8 +23,10 @@ import org.jetbrains.annotations.*;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import static jse.code.CS.R_NEAREST_MUL;
 import static jse.math.MathEX.*;
@@ -66,27 +68,31 @@ import static jse.math.MathEX.*;
  */
 public class AtomicParameterCalculator implements AutoCloseable {
     private IMatrix mPosMat; // 现在改为 Matrix 存储，每行为一个原子的 xyz 数据
-    private final IBox mBox;
+    private IBox mBox;
     
     private final int mNumAtoms;
     private IIntVector mNumAtomsType; // 统计某个种类的原子数目
     private IIntVector mTypeVec; // 统计所有的原子种类
     private final int mNomTypes; // 统计所有的原子种类数目
-    private final double mVolume; // 模拟盒体积
-    private final double mRho; // 粒子数密度
-    private final double mUnitLen; // 平均单个原子的距离
+    private double mVolume; // 模拟盒体积
+    private double mRho; // 粒子数密度
+    private double mUnitLen; // 平均单个原子的距离
     
     private final NeighborListGetter mNL;
     private final Thread mInitThread;
     
     /// ParforThreadPool stuffs
     private ParforThreadPool mPool;
+    // 可选的 CSR 近邻列表缓存，按照 (rmax, nnn, half) 存储
+    private final Map<CSRKey, NeighborListCSR> mNLCache = new HashMap<>();
+    private volatile boolean mNLCacheEnabled = false;
     private volatile boolean mDead = false;
     /** 关闭这个参数计算器，现在不再强制要求手动关闭，但是手动调用可以提高性能 */
     @Override public void close() {
         if (mDead) return;
         mDead = true;
         mPool.close();
+        synchronized (mNLCache) {mNLCache.clear();}
         mNL.close(); // 内部保证执行后内部的 mAtomDataXYZ 已经置为 null
         // 此时 APC 关闭，归还 mAtomDataXYZ，这种写法保证永远能获取到 mAtomDataXYZ 时都是合法的
         // 只有相同线程关闭才会归还
@@ -342,6 +348,7 @@ public class AtomicParameterCalculator implements AutoCloseable {
         XYZ tBuf = new XYZ();
         setValidXYZ_(mBox, mPosMat, aX, aY, aZ, aIdx, tBuf);
         mNL.updateAtomXYZ_(aIdx, oX, oY, oZ, tBuf);
+        if (mNLCacheEnabled) clearNeighborListCache();
         return this;
     }
     /**
@@ -361,6 +368,92 @@ public class AtomicParameterCalculator implements AutoCloseable {
         mNumAtomsType.increment(aType-1);
         return this;
     }
+    /**
+     * 将此 APC 重新绑定到新的原子数据上，要求原子数相同并且种类数不超过原本的种类数，
+     * 模拟盒可以不同；会直接复用内部所有的坐标、种类以及近邻列表 cell 的内存，
+     * 适合逐帧分析轨迹的情况，例如：
+     * <pre> {@code
+     * try (def apc = APC.of(lmpstrj[0])) {
+     *     for (frame in lmpstrj) gr += apc.rebind(frame).calRDF()
+     * }
+     * } </pre>
+     * 相比每一帧重新创建一个 APC 可以避免大量的内存分配；
+     * 重新绑定后已有的近邻列表缓存会清空，Verlet 近邻列表会标记失效，
+     * 其余设置（线程数，Verlet skin，空间排序等）保持不变
+     *
+     * @param aAtomData 新的原子数据，会遍历读取原子数据进行值拷贝
+     * @return 自身方便链式调用
+     */
+    public AtomicParameterCalculator rebind(IAtomData aAtomData) {
+        if (mDead) throw new RuntimeException("This Calculator is dead");
+        if (aAtomData.natoms() != mNumAtoms) throw new IllegalArgumentException("Atom number of input data ("+aAtomData.natoms()+") MUST be the same as this Calculator ("+mNumAtoms+")");
+        if (aAtomData.ntypes() > mNomTypes) throw new IllegalArgumentException("Atom type number of input data ("+aAtomData.ntypes()+") MUST <= ntypes ("+mNomTypes+")");
+        // 更新模拟盒数据
+        mBox = aAtomData.box().copy();
+        mVolume = mBox.volume();
+        mRho = mNumAtoms / mVolume;
+        mUnitLen = Fast.cbrt(1.0/mRho);
+        // 直接写入到原本的内存中
+        mNumAtomsType.fill(0);
+        XYZ tBuf = new XYZ();
+        for (int i = 0; i < mNumAtoms; ++i) {
+            IAtom tAtom = aAtomData.atom(i);
+            setValidXYZ_(mPosMat, tAtom, i, tBuf);
+            int tType = tAtom.type();
+            mTypeVec.set(i, tType);
+            mNumAtomsType.increment(tType-1);
+        }
+        mNL.rebind_(mBox);
+        clearNeighborListCache();
+        return this;
+    }
+    /**
+     * 设置内部近邻列表的 Verlet skin 长度，开启后会缓存 {@code rmax + skin} 内的候选近邻，
+     * 只有当原子通过 {@link #setAtomXYZ} 移动的距离超过 {@code skin/2} 时才会重新构建；
+     * 适合 MC 或者结构优化等原子位置缓慢变化的情况
+     *
+     * @param aSkin 需要设置的 skin 长度，{@code 0} 表示关闭（默认）
+     * @return 自身方便链式调用
+     * @see NeighborListGetter#setVerletSkin(double)
+     */
+    public AtomicParameterCalculator setVerletSkin(double aSkin) {
+        mNL.setVerletSkin(aSkin);
+        return this;
+    }
+    /**
+     * 设置是否开启近邻列表内部的空间排序，开启后会按照 Morton 序重新排列内部的坐标缓冲区，
+     * 使得近邻遍历时连续访问内存，适合原子顺序杂乱的大体系；
+     * 排序对外部透明，所有结果依旧按照原始的原子顺序排列
+     *
+     * @param aFlag 是否开启空间排序，默认关闭
+     * @return 自身方便链式调用
+     * @see NeighborListGetter#setSpatialSort(boolean)
+     */
+    public AtomicParameterCalculator setSpatialSort(boolean aFlag) {
+        mNL.setSpatialSort(aFlag);
+        return this;
+    }
+    /**
+     * 设置是否开启 CSR 形式的近邻列表缓存，开启后 {@link #calYlmMean}，{@link #calQlmMean}
+     * 以及各种 BOOP 的计算会对相同的 {@code (rmax, nnn, half)} 只遍历一次近邻，
+     * 之后的计算直接复用缓存的近邻列表
+     * <p>
+     * 通过 {@link #setAtomXYZ} 修改原子位置后缓存会自动清空
+     *
+     * @param aFlag 是否开启缓存，默认关闭
+     * @return 自身方便链式调用
+     */
+    public AtomicParameterCalculator setNeighborListCache(boolean aFlag) {
+        mNLCacheEnabled = aFlag;
+        if (!aFlag) clearNeighborListCache();
+        return this;
+    }
+    public AtomicParameterCalculator enableNeighborListCache() {return setNeighborListCache(true);}
+    /** 手动清空缓存的 CSR 近邻列表 */
+    public AtomicParameterCalculator clearNeighborListCache() {
+        synchronized (mNLCache) {mNLCache.clear();}
+        return this;
+    }
     /// 补充运算时使用
     /**
      * 外部为 APC 补充运算时使用，获取 APC 内部的并行线程池
@@ -409,6 +502,8 @@ public class AtomicParameterCalculator implements AutoCloseable {
         for (int i = 0; i < dnPar.length; ++i) dnPar[i] = FixBoundFunc1.zeros(0.0, dr, aN).setBound(0.0, 1.0);
         
         // 使用 mNL 的专门获取近邻距离的方法
+        // 预先构建近邻列表，从而可以并行构建
+        mNL.prepare_(aRMax - dr*0.5, mPool);
         mPool.parfor(mNumAtoms, (i, threadID) -> {
             final IFunc1 dn = dnPar[threadID];
             mNL.forEachNeighbor(i, aRMax - dr*0.5, true, (dx, dy, dz, idx) -> {
@@ -460,6 +555,8 @@ public class AtomicParameterCalculator implements AutoCloseable {
         for (int i = 0; i < dnPar.length; ++i) dnPar[i] = FixBoundFunc1.zeros(0.0, dr, aN).setBound(0.0, 1.0);
         
         // 使用 mNL 的专门获取近邻距离的方法
+        // 预先构建近邻列表，从而可以并行构建
+        mNL.prepare_(aRMax - dr*0.5, mPool);
         mPool.parfor(mNumAtoms, (i, threadID) -> {
             int tTypeI = mTypeVec.get(i);
             if (tTypeI==aTypeA || tTypeI==aTypeB) {
@@ -539,6 +636,8 @@ public class AtomicParameterCalculator implements AutoCloseable {
         });
         
         // 使用 mNL 的专门获取近邻距离的方法
+        // 预先构建近邻列表，从而可以并行构建
+        mNL.prepare_(aRMax - dr*0.5, mPool);
         mPool.parfor(mNumAtoms, (i, threadID) -> {
             final int tTypeA = mTypeVec.get(i);
             final IFunc1[] dnAll = dnAllPar.get(threadID);
@@ -611,6 +710,8 @@ public class AtomicParameterCalculator implements AutoCloseable {
         final double tRShift = -tDeltaGPar[0].zeroBoundL();
         
         // 使用 mNL 的专门获取近邻距离的方法
+        // 预先构建近邻列表，从而可以并行构建
+        mNL.prepare_(aRMax+tRShift, mPool);
         mPool.parfor(mNumAtoms, (i, threadID) -> {
             final IFunc1 dn = dnPar[threadID];
             final IZeroBoundFunc1 tDeltaG = tDeltaGPar[threadID];
@@ -675,6 +776,8 @@ public class AtomicParameterCalculator implements AutoCloseable {
         final double tRShift = -tDeltaGPar[0].zeroBoundL();
         
         // 使用 mNL 的专门获取近邻距离的方法
+        // 预先构建近邻列表，从而可以并行构建
+        mNL.prepare_(aRMax+tRShift, mPool);
         mPool.parfor(mNumAtoms, (i, threadID) -> {
             int tTypeI = mTypeVec.get(i);
             if (tTypeI==aTypeA || tTypeI==aTypeB) {
@@ -768,6 +871,8 @@ public class AtomicParameterCalculator implements AutoCloseable {
         final double tRShift = -tDeltaGPar[0].zeroBoundL();
         
         // 使用 mNL 的专门获取近邻距离的方法
+        // 预先构建近邻列表，从而可以并行构建
+        mNL.prepare_(aRMax+tRShift, mPool);
         mPool.parfor(mNumAtoms, (i, threadID) -> {
             final int tTypeA = mTypeVec.get(i);
             final IFunc1[] dnAll = dnAllPar.get(threadID);
@@ -830,10 +935,17 @@ public class AtomicParameterCalculator implements AutoCloseable {
      * @param aN 指定分划的份数（默认为 160）
      * @param aQMax 额外指定最大计算的 q 的位置（默认为 6 倍单位长度）
      * @param aQMin 可以手动指定最小的截断的 q（由于 pbc 的原因，过小的结果发散）
+     * @param aMode 计算使用的算法，默认为 {@link SFMode#DIRECT}
      * @return Sq 函数
+     * @see SFMode
      */
-    public IFunc1 calSF(int aN, double aQMax, double aQMin) {
+    public IFunc1 calSF(int aN, double aQMax, double aQMin, SFMode aMode) {
         if (mDead) throw new RuntimeException("This Calculator is dead");
+        switch (aMode) {
+        case HISTOGRAM:  {return calAllSFHistogram_(aN, aQMax, aQMin, false)[0];}
+        case RECIPROCAL: {return calAllSFReciprocal_(aN, aQMax, aQMin, false)[0];}
+        default: {break;}
+        }
         
         final double dq = (aQMax-aQMin)/aN;
         // 这里的 parfor 支持不同线程直接写入不同位置而不需要加锁
@@ -859,6 +971,11 @@ public class AtomicParameterCalculator implements AutoCloseable {
         // 输出
         return Sq;
     }
+    /**
+     * @return {@code calSF(aN, aQMax, aQMin, SFMode.DIRECT)}
+     * @see #calSF(int, double, double, SFMode)
+     */
+    public IFunc1 calSF(int aN, double aQMax, double aQMin) {return calSF(aN, aQMax, aQMin, SFMode.DIRECT);}
     /**
      * @return {@code calSF(aN, aQMax, 2.0*PI/unitLen() * 0.6)}
      * @see #calSF(int, double, double)
@@ -887,10 +1004,17 @@ public class AtomicParameterCalculator implements AutoCloseable {
      * @param aN 指定分划的份数（默认为 160）
      * @param aQMax 额外指定最大计算的 q 的位置
      * @param aQMin 手动指定最小的截断的 q
+     * @param aMode 计算使用的算法，默认为 {@link SFMode#DIRECT}
      * @return Sq 函数
+     * @see SFMode
      */
-    public IFunc1 calSF_AB(final int aTypeA, final int aTypeB, int aN, double aQMax, double aQMin) {
+    public IFunc1 calSF_AB(final int aTypeA, final int aTypeB, int aN, double aQMax, double aQMin, SFMode aMode) {
         if (mDead) throw new RuntimeException("This Calculator is dead");
+        switch (aMode) {
+        case HISTOGRAM:  {return calAllSFHistogram_(aN, aQMax, aQMin, true)[typePairIdx_(aTypeA, aTypeB)];}
+        case RECIPROCAL: {return calAllSFReciprocal_(aN, aQMax, aQMin, true)[typePairIdx_(aTypeA, aTypeB)];}
+        default: {break;}
+        }
         
         final double dq = (aQMax-aQMin)/aN;
         // 这里的 parfor 支持不同线程直接写入不同位置而不需要加锁
@@ -922,6 +1046,11 @@ public class AtomicParameterCalculator implements AutoCloseable {
         // 输出
         return Sq;
     }
+    /**
+     * @return {@code calSF_AB(aTypeA, aTypeB, aN, aQMax, aQMin, SFMode.DIRECT)}
+     * @see #calSF_AB(int, int, int, double, double, SFMode)
+     */
+    public IFunc1 calSF_AB(int aTypeA, int aTypeB, int aN, double aQMax, double aQMin) {return calSF_AB(aTypeA, aTypeB, aN, aQMax, aQMin, SFMode.DIRECT);}
     /**
      * @return {@code calSF_AB(aTypeA, aTypeB, aN, aQMax, 2.0*PI/unitLen() * 0.6)}
      * @see #calSF_AB(int, int, int, double, double)
@@ -963,13 +1092,20 @@ public class AtomicParameterCalculator implements AutoCloseable {
      * @param aN 指定分划的份数（默认为 160）
      * @param aQMax 额外指定最大计算的 q 的位置（默认为 6 倍单位长度）
      * @param aQMin 可以手动指定最小的截断的 q（由于 pbc 的原因，过小的结果发散）
+     * @param aMode 计算使用的算法，默认为 {@link SFMode#DIRECT}
      * @return 所有 Sq 函数组成的列表
+     * @see SFMode
      */
-    public List<? extends IFunc1> calAllSF(int aN, double aQMax, double aQMin) {
+    public List<? extends IFunc1> calAllSF(int aN, double aQMax, double aQMin, SFMode aMode) {
         if (mDead) throw new RuntimeException("This Calculator is dead");
         
         // 当只有一个种类时不进行单独种类的计算
-        if (mNomTypes == 1) return Collections.singletonList(calSF(aN, aQMax, aQMin));
+        if (mNomTypes == 1) return Collections.singletonList(calSF(aN, aQMax, aQMin, aMode));
+        switch (aMode) {
+        case HISTOGRAM:  {return AbstractCollections.from(calAllSFHistogram_(aN, aQMax, aQMin, true));}
+        case RECIPROCAL: {return AbstractCollections.from(calAllSFReciprocal_(aN, aQMax, aQMin, true));}
+        default: {break;}
+        }
         
         final double dq = (aQMax-aQMin)/aN;
         // 这里需要使用 IFunc 来进行函数的相关运算操作
@@ -1020,6 +1156,11 @@ public class AtomicParameterCalculator implements AutoCloseable {
         // 输出
         return AbstractCollections.from(SqAll);
     }
+    /**
+     * @return {@code calAllSF(aN, aQMax, aQMin, SFMode.DIRECT)}
+     * @see #calAllSF(int, double, double, SFMode)
+     */
+    public List<? extends IFunc1> calAllSF(int aN, double aQMax, double aQMin) {return calAllSF(aN, aQMax, aQMin, SFMode.DIRECT);}
     /**
      * @return {@code calAllSF(aN, aQMax, 2.0*PI/unitLen() * 0.6)}
      * @see #calAllSF(int, double, double)
@@ -1040,6 +1181,260 @@ public class AtomicParameterCalculator implements AutoCloseable {
     public List<? extends IFunc1> calAllSF() {return calAllSF(160);}
     
     
+    /**
+     * 计算 SF 时可以选择的算法
+     * @see #calSF(int, double, double, SFMode)
+     * @see #calSF_AB(int, int, int, double, double, SFMode)
+     * @see #calAllSF(int, double, double, SFMode)
+     */
+    public enum SFMode {
+        /** 直接遍历所有原子对计算 Debye 求和，复杂度为 {@code O(N^2 * aN)}，为默认的算法 */
+        DIRECT,
+        /**
+         * 先统计所有原子对距离的直方图，再对直方图进行 Debye 求和，复杂度为 {@code O(N^2 + nbins * aN)}；
+         * 直方图的分辨率为 {@code 0.02/aQMax}；对于有热扰动或者无序的结构，和 {@link #DIRECT} 的结果相差在 {@code 5e-4} 以内，
+         * 而对于理想的完美晶格，由于大量原子对的距离完全相同，分箱误差不会相互抵消，在 Bragg 峰附近可能相差 {@code 1e-2} 量级，
+         * 此时建议使用 {@link #DIRECT}
+         */
+        HISTOGRAM,
+        /**
+         * 直接在周期性模拟盒的倒格子上计算 {@code |rho(q)|^2/N}，并按照 {@code |q|} 所在的球壳平均，
+         * 复杂度为 {@code O(N * aN * nvec)}，适合非常大的体系；每个球壳最多使用
+         * {@link #SF_RECIPROCAL_NVEC} 个倒格矢（均匀抽取），因此结果存在约 {@code 1/sqrt(nvec)} 的相对统计误差，
+         * 没有任何倒格矢的球壳（一般为 {@code q < 2PI/L} 附近）使用相邻的结果线性插值；
+         * <p>
+         * 注意此算法考虑了周期性边界条件，而 {@link #DIRECT} 不考虑，因此两者在小 q 处会有明显差异
+         */
+        RECIPROCAL
+    }
+    /** {@link SFMode#RECIPROCAL} 中每个球壳最多使用的倒格矢数目 */
+    public final static int SF_RECIPROCAL_NVEC = 500;
+    
+    /** 获取 {@link #calAllSF} 中对应种类对的位置，和 {@link #calAllSF} 的排列一致 */
+    private static int typePairIdx_(int aTypeA, int aTypeB) {
+        if (aTypeA < aTypeB) {int tType = aTypeA; aTypeA = aTypeB; aTypeB = tType;}
+        return (aTypeA*(aTypeA-1))/2 + aTypeB;
+    }
+    
+    /** {@link SFMode#HISTOGRAM} 的实现，返回的排列和 {@link #calAllSF} 一致，aTypeResolved 为 false 时只计算总的 Sq */
+    private IFunc1[] calAllSFHistogram_(int aN, double aQMax, double aQMin, boolean aTypeResolved) {
+        final double dq = (aQMax-aQMin)/aN;
+        final int tChannelNum = aTypeResolved ? (mNomTypes*(mNomTypes+1))/2 + 1 : 1;
+        // 获取原子对距离的最大值来确定直方图的范围
+        double tMinX = Double.POSITIVE_INFINITY, tMinY = Double.POSITIVE_INFINITY, tMinZ = Double.POSITIVE_INFINITY;
+        double tMaxX = Double.NEGATIVE_INFINITY, tMaxY = Double.NEGATIVE_INFINITY, tMaxZ = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < mNumAtoms; ++i) {
+            double tX = mPosMat.get(i, 0), tY = mPosMat.get(i, 1), tZ = mPosMat.get(i, 2);
+            if (tX < tMinX) tMinX = tX;
+            if (tX > tMaxX) tMaxX = tX;
+            if (tY < tMinY) tMinY = tY;
+            if (tY > tMaxY) tMaxY = tY;
+            if (tZ < tMinZ) tMinZ = tZ;
+            if (tZ > tMaxZ) tMaxZ = tZ;
+        }
+        final double dr = 0.02 / aQMax;
+        final int tBinNum = MathEX.Code.ceil2int(Fast.hypot(tMaxX-tMinX, tMaxY-tMinY, tMaxZ-tMinZ) / dr) + 1;
+        
+        // 统计直方图，这里的 parfor 支持不同线程直接写入不同位置而不需要加锁
+        final double[][][] tHistPar = new double[nthreads()][tChannelNum][tBinNum];
+        mPool.parfor(mNumAtoms, (i, threadID) -> {
+            final double[][] tHist = tHistPar[threadID];
+            final double[] tHistAll = tHist[0];
+            final double tX = mPosMat.get(i, 0), tY = mPosMat.get(i, 1), tZ = mPosMat.get(i, 2);
+            final int tTypeA = mTypeVec.get(i);
+            for (int j = 0; j < i; ++j) {
+                double tDx = mPosMat.get(j, 0) - tX;
+                double tDy = mPosMat.get(j, 1) - tY;
+                double tDz = mPosMat.get(j, 2) - tZ;
+                int tBin = (int)(Fast.sqrt(tDx*tDx + tDy*tDy + tDz*tDz) / dr);
+                ++tHistAll[tBin];
+                if (aTypeResolved) ++tHist[typePairIdx_(tTypeA, mTypeVec.get(j))][tBin];
+            }
+        });
+        final double[][] tHist = tHistPar[0];
+        for (int t = 1; t < tHistPar.length; ++t) for (int c = 0; c < tChannelNum; ++c) {
+            final double[] tSubHist = tHistPar[t][c];
+            final double[] tHistC = tHist[c];
+            for (int b = 0; b < tBinNum; ++b) tHistC[b] += tSubHist[b];
+        }
+        
+        // 对直方图进行 Debye 求和，忽略距离为 0 的原子对
+        final IFunc1[] rSqAll = new IFunc1[tChannelNum];
+        for (int c = 0; c < tChannelNum; ++c) rSqAll[c] = FixBoundFunc1.zeros(aQMin, dq, aN).setBound(0.0, 1.0);
+        mPool.parfor(aN, k -> {
+            final double q = rSqAll[0].x().get(k);
+            for (int c = 0; c < tChannelNum; ++c) {
+                final double[] tHistC = tHist[c];
+                double rHq = 0.0;
+                for (int b = 1; b < tBinNum; ++b) {
+                    double tN = tHistC[b];
+                    if (tN == 0.0) continue;
+                    double qr = q * (b+0.5)*dr;
+                    rHq += tN * Fast.sin(qr)/qr;
+                }
+                rSqAll[c].set(k, rHq);
+            }
+        });
+        
+        // 和 DIRECT 一致的归一化
+        rSqAll[0].div2this(mNumAtoms*0.5);
+        if (aTypeResolved) {
+            int idx = 1;
+            for (int typeAmm = 0; typeAmm < mNomTypes; ++typeAmm) for (int typeBmm = 0; typeBmm <= typeAmm; ++typeBmm) {
+                double tDiv = Fast.sqrt(mNumAtomsType.get(typeAmm) * mNumAtomsType.get(typeBmm));
+                if (typeAmm == typeBmm) tDiv *= 0.5;
+                rSqAll[idx].div2this(tDiv);
+                ++idx;
+            }
+        }
+        for (IFunc1 Sq : rSqAll) Sq.plus2this(1.0);
+        return rSqAll;
+    }
+    
+    /** {@link SFMode#RECIPROCAL} 的实现，返回的排列和 {@link #calAllSF} 一致，aTypeResolved 为 false 时只计算总的 Sq */
+    private IFunc1[] calAllSFReciprocal_(int aN, double aQMax, double aQMin, boolean aTypeResolved) {
+        final double dq = (aQMax-aQMin)/aN;
+        final double tQCut = aQMax - 0.5*dq;
+        final double tQLow = aQMin - 0.5*dq;
+        // 倒格子基矢，G = h*b1 + k*b2 + l*b3，并且 G.r = 2PI*(h*sx + k*sy + l*sz)
+        final XYZ tA = XYZ.toXYZ(mBox.a()), tB = XYZ.toXYZ(mBox.b()), tC = XYZ.toXYZ(mBox.c());
+        final double tV = tA.dot(tB.cross(tC));
+        final XYZ b1 = tB.cross(tC); b1.multiply2this(2.0*PI/tV);
+        final XYZ b2 = tC.cross(tA); b2.multiply2this(2.0*PI/tV);
+        final XYZ b3 = tA.cross(tB); b3.multiply2this(2.0*PI/tV);
+        final int tHMax = MathEX.Code.floor2int(tQCut*tA.norm()/(2.0*PI));
+        final int tKMax = MathEX.Code.floor2int(tQCut*tB.norm()/(2.0*PI));
+        final int tLMax = MathEX.Code.floor2int(tQCut*tC.norm()/(2.0*PI));
+        final double tB3Norm2 = b3.dot();
+        
+        // 遍历半个倒空间的所有倒格矢（G 和 -G 的结果相同），第一遍统计每个球壳的数目，第二遍均匀抽取
+        final int[] tShellCount = new int[aN];
+        final IntList tVecHKL = new IntList(), tVecShell = new IntList();
+        for (int pass = 0; pass < 2; ++pass) {
+            final int[] tShellIdx = new int[aN];
+            for (int h = 0; h <= tHMax; ++h) for (int k = (h==0 ? 0 : -tKMax); k <= tKMax; ++k) {
+                // 对于给定的 h, k，直接求解 |G|<tQCut 对应的 l 的范围
+                double tPX = h*b1.mX + k*b2.mX, tPY = h*b1.mY + k*b2.mY, tPZ = h*b1.mZ + k*b2.mZ;
+                double tPB = tPX*b3.mX + tPY*b3.mY + tPZ*b3.mZ;
+                double tDelta = tPB*tPB - tB3Norm2*(tPX*tPX + tPY*tPY + tPZ*tPZ - tQCut*tQCut);
+                if (tDelta < 0.0) continue;
+                double tSqrtDelta = Fast.sqrt(tDelta);
+                int tLStart = Math.max(-tLMax, MathEX.Code.ceil2int((-tPB - tSqrtDelta) / tB3Norm2));
+                int tLEnd = Math.min(tLMax, MathEX.Code.floor2int((-tPB + tSqrtDelta) / tB3Norm2));
+                if (h==0 && k==0) tLStart = Math.max(tLStart, 1);
+                for (int l = tLStart; l <= tLEnd; ++l) {
+                    double tGX = tPX + l*b3.mX, tGY = tPY + l*b3.mY, tGZ = tPZ + l*b3.mZ;
+                    double tG = Fast.sqrt(tGX*tGX + tGY*tGY + tGZ*tGZ);
+                    if (tG < tQLow || tG >= tQCut) continue;
+                    int tShell = MathEX.Code.toRange(0, aN-1, MathEX.Code.round2int((tG-aQMin)/dq));
+                    if (pass == 0) {
+                        ++tShellCount[tShell];
+                    } else {
+                        int tStride = MathEX.Code.ceil2int(tShellCount[tShell] / (double)SF_RECIPROCAL_NVEC);
+                        if (tShellIdx[tShell] % tStride == 0) {
+                            tVecHKL.add(h); tVecHKL.add(k); tVecHKL.add(l);
+                            tVecShell.add(tShell);
+                        }
+                        ++tShellIdx[tShell];
+                    }
+                }
+            }
+        }
+        final int tVecNum = tVecShell.size();
+        final int[] tHKL = tVecHKL.internalData();
+        
+        // 对每个原子累加 rho_t(G) = sum exp(i G.r)，每个种类单独统计
+        final int tTypeNum = aTypeResolved ? mNomTypes : 1;
+        final double[][][] tRhoRePar = new double[nthreads()][tTypeNum][tVecNum];
+        final double[][][] tRhoImPar = new double[nthreads()][tTypeNum][tVecNum];
+        // 每个线程独立的相位表，下标偏移 tXMax 来存储负值
+        final int tMaxHKL = Math.max(tHMax, Math.max(tKMax, tLMax));
+        final double[][][] tPhasePar = new double[nthreads()][6][tMaxHKL+tMaxHKL+1];
+        final List<XYZ> tBufPar = NewCollections.from(nthreads(), i -> new XYZ());
+        mPool.parfor(mNumAtoms, (i, threadID) -> {
+            final int tType = aTypeResolved ? mTypeVec.get(i)-1 : 0;
+            final double[] tRhoRe = tRhoRePar[threadID][tType], tRhoIm = tRhoImPar[threadID][tType];
+            final double[][] tPhase = tPhasePar[threadID];
+            final XYZ tBuf = tBufPar.get(threadID);
+            tBuf.setXYZ(mPosMat.get(i, 0), mPosMat.get(i, 1), mPosMat.get(i, 2));
+            mBox.toDirect(tBuf);
+            fillPhase_(2.0*PI*tBuf.mX, tHMax, tMaxHKL, tPhase[0], tPhase[1]);
+            fillPhase_(2.0*PI*tBuf.mY, tKMax, tMaxHKL, tPhase[2], tPhase[3]);
+            fillPhase_(2.0*PI*tBuf.mZ, tLMax, tMaxHKL, tPhase[4], tPhase[5]);
+            final double[] tCosA = tPhase[0], tSinA = tPhase[1], tCosB = tPhase[2], tSinB = tPhase[3], tCosC = tPhase[4], tSinC = tPhase[5];
+            for (int v = 0, t = 0; v < tVecNum; ++v, t += 3) {
+                int h = tHKL[t]+tMaxHKL, k = tHKL[t+1]+tMaxHKL, l = tHKL[t+2]+tMaxHKL;
+                double tRe = tCosA[h]*tCosB[k] - tSinA[h]*tSinB[k];
+                double tIm = tCosA[h]*tSinB[k] + tSinA[h]*tCosB[k];
+                tRhoRe[v] += tRe*tCosC[l] - tIm*tSinC[l];
+                tRhoIm[v] += tRe*tSinC[l] + tIm*tCosC[l];
+            }
+        });
+        final double[][] tRhoRe = tRhoRePar[0], tRhoIm = tRhoImPar[0];
+        for (int t = 1; t < tRhoRePar.length; ++t) for (int c = 0; c < tTypeNum; ++c) {
+            for (int v = 0; v < tVecNum; ++v) {
+                tRhoRe[c][v] += tRhoRePar[t][c][v];
+                tRhoIm[c][v] += tRhoImPar[t][c][v];
+            }
+        }
+        
+        // 按照球壳平均，和 DIRECT 一致的归一化，不同种类之间需要补上 1
+        final int tChannelNum = aTypeResolved ? (mNomTypes*(mNomTypes+1))/2 + 1 : 1;
+        final double[][] tSum = new double[tChannelNum][aN];
+        for (int v = 0; v < tVecNum; ++v) {
+            final int tShell = tVecShell.get(v);
+            double tReAll = 0.0, tImAll = 0.0;
+            for (int c = 0; c < tTypeNum; ++c) {tReAll += tRhoRe[c][v]; tImAll += tRhoIm[c][v];}
+            tSum[0][tShell] += (tReAll*tReAll + tImAll*tImAll) / mNumAtoms;
+            if (aTypeResolved) {
+                int idx = 1;
+                for (int typeAmm = 0; typeAmm < mNomTypes; ++typeAmm) for (int typeBmm = 0; typeBmm <= typeAmm; ++typeBmm) {
+                    double tCross = tRhoRe[typeAmm][v]*tRhoRe[typeBmm][v] + tRhoIm[typeAmm][v]*tRhoIm[typeBmm][v];
+                    double tDiv = Fast.sqrt(mNumAtomsType.get(typeAmm) * mNumAtomsType.get(typeBmm));
+                    tSum[idx][tShell] += typeAmm==typeBmm ? tCross/tDiv : (tCross/tDiv + 1.0);
+                    ++idx;
+                }
+            }
+        }
+        final int[] tShellNum = new int[aN];
+        for (int v = 0; v < tVecNum; ++v) ++tShellNum[tVecShell.get(v)];
+        final IFunc1[] rSqAll = new IFunc1[tChannelNum];
+        for (int c = 0; c < tChannelNum; ++c) {
+            IFunc1 Sq = FixBoundFunc1.zeros(aQMin, dq, aN).setBound(0.0, 1.0);
+            for (int k = 0; k < aN; ++k) Sq.set(k, tShellNum[k]==0 ? Double.NaN : tSum[c][k]/tShellNum[k]);
+            fillEmptyShell_(Sq, tShellNum);
+            rSqAll[c] = Sq;
+        }
+        return rSqAll;
+    }
+    /** 使用递推计算 {@code exp(i*n*aTheta)}，n 从 -aNMax 到 aNMax，存储在 {@code n+aShift} 的位置 */
+    private static void fillPhase_(double aTheta, int aNMax, int aShift, double[] rCos, double[] rSin) {
+        final double tCos1 = Fast.cos(aTheta), tSin1 = Fast.sin(aTheta);
+        rCos[aShift] = 1.0; rSin[aShift] = 0.0;
+        double tCos = 1.0, tSin = 0.0;
+        for (int n = 1; n <= aNMax; ++n) {
+            double tCosN = tCos*tCos1 - tSin*tSin1;
+            double tSinN = tSin*tCos1 + tCos*tSin1;
+            tCos = tCosN; tSin = tSinN;
+            rCos[aShift+n] = tCos; rSin[aShift+n] =  tSin;
+            rCos[aShift-n] = tCos; rSin[aShift-n] = -tSin;
+        }
+    }
+    /** 对于没有任何倒格矢的球壳，使用相邻的结果线性插值，只有一侧有结果时直接使用最近的值 */
+    private static void fillEmptyShell_(IFunc1 rSq, int[] aShellNum) {
+        final int tN = aShellNum.length;
+        for (int k = 0; k < tN; ++k) if (aShellNum[k] == 0) {
+            int tL = k-1; while (tL >= 0 && aShellNum[tL]==0) --tL;
+            int tR = k+1; while (tR < tN && aShellNum[tR]==0) ++tR;
+            if (tL < 0 && tR >= tN) continue;
+            if (tL < 0) {rSq.set(k, rSq.get(tR)); continue;}
+            if (tR >= tN) {rSq.set(k, rSq.get(tL)); continue;}
+            double tW = (k-tL) / (double)(tR-tL);
+            rSq.set(k, rSq.get(tL)*(1.0-tW) + rSq.get(tR)*tW);
+        }
+    }
+    
+    
     
     /// gr 和 Sq 的相互转换，由于依旧需要体系的原子数密度，因此还是都移动到 APC 中
     /**
@@ -1141,6 +1536,88 @@ public class AtomicParameterCalculator implements AutoCloseable {
     
     
     
+    /// 缓存的 CSR 近邻列表
+    private static final class CSRKey {
+        private final double mRMax;
+        private final int mNnn;
+        private final boolean mHalf;
+        private CSRKey(double aRMax, int aNnn, boolean aHalf) {mRMax = aRMax; mNnn = aNnn<=0 ? -1 : aNnn; mHalf = aHalf;}
+        @Override public boolean equals(Object aRHS) {
+            if (this == aRHS) return true;
+            if (!(aRHS instanceof CSRKey)) return false;
+            CSRKey tRHS = (CSRKey)aRHS;
+            return Double.compare(mRMax, tRHS.mRMax)==0 && mNnn==tRHS.mNnn && mHalf==tRHS.mHalf;
+        }
+        @Override public int hashCode() {
+            int rHash = Double.hashCode(mRMax);
+            rHash = 31*rHash + mNnn;
+            rHash = 31*rHash + (mHalf ? 1 : 0);
+            return rHash;
+        }
+    }
+    /**
+     * 压缩稀疏行（CSR）形式存储的近邻列表，
+     * 第 {@code i} 个原子的近邻位于 {@code [mOffsets[i], mOffsets[i+1])}，
+     * 遍历顺序和直接使用 {@link NeighborListGetter} 遍历完全一致
+     */
+    private static final class NeighborListCSR {
+        private final int[] mOffsets;
+        private final int[] mIndices;
+        private final double[] mDx, mDy, mDz;
+        private NeighborListCSR(int[] aOffsets, int[] aIndices, double[] aDx, double[] aDy, double[] aDz) {
+            mOffsets = aOffsets; mIndices = aIndices;
+            mDx = aDx; mDy = aDy; mDz = aDz;
+        }
+        void forEachNeighbor(int aIdx, NeighborListGetter.IDxyzIdxDo aDxyzIdxDo) {
+            final int tEnd = mOffsets[aIdx+1];
+            for (int k = mOffsets[aIdx]; k < tEnd; ++k) {
+                aDxyzIdxDo.run(mDx[k], mDy[k], mDz[k], mIndices[k]);
+            }
+        }
+    }
+    /**
+     * 获取缓存的 CSR 近邻列表，没有开启缓存时返回 {@code null}；
+     * 需要在 parfor 外部调用，构建时会使用内部线程池分两次并行遍历（计数以及填充）
+     */
+    private @Nullable NeighborListCSR cachedNeighborList_(final double aRMax, final int aNnn, final boolean aHalf) {
+        if (!mNLCacheEnabled) return null;
+        final CSRKey tKey = new CSRKey(aRMax, aNnn, aHalf);
+        synchronized (mNLCache) {
+            NeighborListCSR tNL = mNLCache.get(tKey);
+            if (tNL != null) return tNL;
+            // 先统计每个原子的近邻数目
+            final int[] rOffsets = new int[mNumAtoms+1];
+            // 预先构建近邻列表，从而可以并行构建
+            mNL.prepare_(aRMax, aNnn, mPool);
+            mPool.parfor(mNumAtoms, i -> {
+                final int[] tCount = {0};
+                mNL.forEachNeighbor(i, aRMax, aNnn, aHalf, (dx, dy, dz, idx) -> ++tCount[0]);
+                rOffsets[i+1] = tCount[0];
+            });
+            for (int i = 0; i < mNumAtoms; ++i) rOffsets[i+1] += rOffsets[i];
+            // 再填充具体数据
+            final int tSize = rOffsets[mNumAtoms];
+            final int[] rIndices = new int[tSize];
+            final double[] rDx = new double[tSize], rDy = new double[tSize], rDz = new double[tSize];
+            mPool.parfor(mNumAtoms, i -> {
+                final int[] tPos = {rOffsets[i]};
+                mNL.forEachNeighbor(i, aRMax, aNnn, aHalf, (dx, dy, dz, idx) -> {
+                    final int k = tPos[0]++;
+                    rIndices[k] = idx;
+                    rDx[k] = dx; rDy[k] = dy; rDz[k] = dz;
+                });
+            });
+            tNL = new NeighborListCSR(rOffsets, rIndices, rDx, rDy, rDz);
+            mNLCache.put(tKey, tNL);
+            return tNL;
+        }
+    }
+    private void forEachNeighbor_(@Nullable NeighborListCSR aCSR, int aIdx, double aRMax, int aNnn, boolean aHalf, NeighborListGetter.IDxyzIdxDo aDxyzIdxDo) {
+        if (aCSR != null) aCSR.forEachNeighbor(aIdx, aDxyzIdxDo);
+        else mNL.forEachNeighbor(aIdx, aRMax, aNnn, aHalf, aDxyzIdxDo);
+    }
+    
+    
     /// 直接获取近邻列表的 api，不包括自身
     /**
      * 获取给定索引原子的近邻原子索引组成的列表，不包括自身
@@ -1631,11 +2108,15 @@ public class AtomicParameterCalculator implements AutoCloseable {
         final List<? extends IVector> tNNPar = VectorCache.getZeros(mNumAtoms, nthreads());
         // 如果限制了 aNnn 需要关闭 half 遍历的优化
         final boolean aHalf = aNnn<=0;
+        // 如果开启了近邻列表缓存则直接使用缓存的 CSR 近邻列表
+        final NeighborListCSR tCSR = cachedNeighborList_(aRNearest, aNnn, aHalf);
         
         // 全局暂存 Y 的数组，这样可以用来防止重复获取来提高效率
         final List<? extends IComplexVector> tYPar = ComplexVectorCache.getVec(aL+aL+1, nthreads());
         
         // 遍历计算 Qlm，只对这个最耗时的部分进行并行优化
+        // 预先构建近邻列表，从而可以并行构建
+        mNL.prepare_(aRNearest, aNnn, mPool);
         mPool.parfor(mNumAtoms, (i, threadID) -> {
             // 先获取这个线程的 Qlm, tNN
             final IComplexMatrix Qlm = rDestPar.get(threadID);
@@ -1644,7 +2125,7 @@ public class AtomicParameterCalculator implements AutoCloseable {
             // 一次计算一行
             final IComplexVector Qlmi = Qlm.row(i);
             // 遍历近邻计算 Ylm
-            mNL.forEachNeighbor(i, aRNearest, aNnn, aHalf, (dx, dy, dz, idx) -> {
+            forEachNeighbor_(tCSR, i, aRNearest, aNnn, aHalf, (dx, dy, dz, idx) -> {
                 // 如果开启 half 遍历的优化，对称的对面的粒子也要增加这个统计
                 IComplexVector Qlmj = null;
                 if (aHalf) {
@@ -1831,6 +2312,8 @@ public class AtomicParameterCalculator implements AutoCloseable {
         tNN.fill(1.0);
         // 如果限制了 aNnn 需要关闭 half 遍历的优化
         final boolean aHalf = aNnnQ<=0;
+        // 如果开启了近邻列表缓存则直接使用缓存的 CSR 近邻列表
+        final NeighborListCSR tCSR = cachedNeighborList_(aRNearestQ, aNnnQ, aHalf);
         
         // 遍历计算 qlm
         for (int i = 0; i < mNumAtoms; ++i) {
@@ -1842,7 +2325,7 @@ public class AtomicParameterCalculator implements AutoCloseable {
             qlmi.fill(Qlmi);
             // 再累加近邻
             final int fI = i;
-            mNL.forEachNeighbor(i, aRNearestQ, aNnnQ, aHalf, (dx, dy, dz, idx) -> {
+            forEachNeighbor_(tCSR, i, aRNearestQ, aNnnQ, aHalf, (dx, dy, dz, idx) -> {
                 // 直接按行累加即可
                 qlmi.plus2this(Qlm.row(idx));
                 // 如果开启 half 遍历的优化，对称的对面的粒子也要进行累加
@@ -2598,6 +3081,8 @@ public class AtomicParameterCalculator implements AutoCloseable {
         
         // 如果限制了 aNnn 需要关闭 half 遍历的优化
         final boolean aHalf = aNnnS<=0;
+        // 如果开启了近邻列表缓存则直接使用缓存的 CSR 近邻列表
+        final NeighborListCSR tCSR = cachedNeighborList_(aRNearestS, aNnnS, aHalf);
         // 统计连接数
         final IVector tConnectCount = VectorCache.getZeros(mNumAtoms);
         
@@ -2613,7 +3098,7 @@ public class AtomicParameterCalculator implements AutoCloseable {
             final IComplexVector Qlmi = Qlm.row(i);
             // 遍历近邻计算连接数
             final int fI = i;
-            mNL.forEachNeighbor(i, aRNearestS, aNnnS, aHalf, (dx, dy, dz, idx) -> {
+            forEachNeighbor_(tCSR, i, aRNearestS, aNnnS, aHalf, (dx, dy, dz, idx) -> {
                 // 统一获取行向量
                 IComplexVector Qlmj = Qlm.row(idx);
                 // 计算复向量的点乘
@@ -2852,6 +3337,8 @@ public class AtomicParameterCalculator implements AutoCloseable {
         
         // 如果限制了 aNnn 需要关闭 half 遍历的优化
         final boolean aHalf = aNnnS<=0;
+        // 如果开启了近邻列表缓存则直接使用缓存的 CSR 近邻列表
+        final NeighborListCSR tCSR = cachedNeighborList_(aRNearestS, aNnnS, aHalf);
         // 统计连接数，这里同样不去考虑减少重复代码
         final IVector tConnectCount = VectorCache.getZeros(mNumAtoms);
         
@@ -2867,7 +3354,7 @@ public class AtomicParameterCalculator implements AutoCloseable {
             final IComplexVector qlmi = qlm.row(i);
             // 遍历近邻计算连接数
             final int fI = i;
-            mNL.forEachNeighbor(i, aRNearestS, aNnnS, aHalf, (dx, dy, dz, idx) -> {
+            forEachNeighbor_(tCSR, i, aRNearestS, aNnnS, aHalf, (dx, dy, dz, idx) -> {
                 // 统一获取行向量
                 IComplexVector qlmj = qlm.row(idx);
                 // 计算复向量的点乘
@@ -3102,6 +3589,8 @@ public class AtomicParameterCalculator implements AutoCloseable {
         
         // 如果限制了 aNnn 需要关闭 half 遍历的优化
         final boolean aHalf = aNnnS<=0;
+        // 如果开启了近邻列表缓存则直接使用缓存的 CSR 近邻列表
+        final NeighborListCSR tCSR = cachedNeighborList_(aRNearestS, aNnnS, aHalf);
         // 统计连接数
         final IVector tConnectRatio = VectorCache.getZeros(mNumAtoms);
         // 统计近邻数用于求平均
@@ -3119,7 +3608,7 @@ public class AtomicParameterCalculator implements AutoCloseable {
             final IComplexVector Qlmi = Qlm.row(i);
             // 遍历近邻计算连接数
             final int fI = i;
-            mNL.forEachNeighbor(i, aRNearestS, aNnnS, aHalf, (dx, dy, dz, idx) -> {
+            forEachNeighbor_(tCSR, i, aRNearestS, aNnnS, aHalf, (dx, dy, dz, idx) -> {
                 // 统一获取行向量
                 IComplexVector Qlmj = Qlm.row(idx);
                 // 计算复向量的点乘
@@ -3378,6 +3867,8 @@ public class AtomicParameterCalculator implements AutoCloseable {
         
         // 如果限制了 aNnn 需要关闭 half 遍历的优化
         final boolean aHalf = aNnnS<=0;
+        // 如果开启了近邻列表缓存则直接使用缓存的 CSR 近邻列表
+        final NeighborListCSR tCSR = cachedNeighborList_(aRNearestS, aNnnS, aHalf);
         // 统计连接数，这里同样不去考虑减少重复代码
         final IVector tConnectRatio = VectorCache.getZeros(mNumAtoms);
         // 统计近邻数用于求平均
@@ -3395,7 +3886,7 @@ public class AtomicParameterCalculator implements AutoCloseable {
             final IComplexVector qlmi = qlm.row(i);
             // 遍历近邻计算连接数
             final int fI = i;
-            mNL.forEachNeighbor(i, aRNearestS, aNnnS, aHalf, (dx, dy, dz, idx) -> {
+            forEachNeighbor_(tCSR, i, aRNearestS, aNnnS, aHalf, (dx, dy, dz, idx) -> {
                 // 统一获取行向量
                 IComplexVector qlmj = qlm.row(idx);
                 // 计算复向量的点乘
@@ -117,6 +117,17 @@ public interface IPairPotential extends IPotential, IHasSymbol {
      * @return 此势函数内核实现中是否认为是一半的近邻列表遍历
      */
     default boolean neighborListHalf() {return false;}
+    /**
+     * 标记是否使用原子所有权模式计算，此时会使用完整的近邻列表遍历，每个原子的能量、力和位力只由处理此原子的线程写入，
+     * 从而不需要为每个线程分配完整长度的临时数组，也不需要最后的合并，代价是每个原子对都会计算两次。
+     * <p>
+     * 适合原子数和线程数都很大，临时数组的内存以及合并的开销超过重复计算的情况。
+     * <p>
+     * 只对非多体势（{@link #manybody()} 为 {@code false}），内核按照一半近邻列表实现（{@link #neighborListHalf()} 为 {@code true}）
+     * 并且多线程的情况有效，默认为 {@code false}；支持的势函数可以通过各自的 {@code setAtomOwnership(boolean)} 开启
+     * @return 是否使用原子所有权模式计算
+     */
+    default boolean atomOwnership() {return false;}
     
     
     /**
@@ -818,19 +829,24 @@ public interface IPairPotential extends IPotential, IHasSymbol {
         final int tTypeNum = ntypes();
         final int tAtomNum = aAPC.natoms();
         final int tThreadNum = nthreads();
-        final boolean tNLHalf = neighborListHalf();
+        // 原子所有权模式下使用完整的近邻列表，每个原子的值只会由处理此原子的线程写入，因此每原子的值不需要每个线程独立的临时数组；
+        // 这依赖于内核按照一半近邻列表实现，因此只对 neighborListHalf() 的势函数开启
+        final boolean tOwnership = tThreadNum>1 && !manybody() && atomOwnership() && neighborListHalf();
+        final boolean tNLHalf = !tOwnership && neighborListHalf();
         final boolean tNLChecked = neighborListChecked();
         // 现在强制设置 apc 的线程数
         final int oThreadNum = aAPC.nthreads();
         aAPC.setNthreads(tThreadNum);
+        final ParforThreadPool tPool = aAPC.pool_();
         // 清空可能存在的旧值
         if (tCalEnergy) rEnergies.fill(0.0);
         // 并行情况下存在并行写入的问题，因此需要这样操作
+        final boolean tEnergiesShared = tCalEnergy && tOwnership && rEnergies.size()>1;
         IVector @Nullable[] rEnergiesPar = rEnergies!=null ? new IVector[tThreadNum] : null;
         if (tCalEnergy) {
             rEnergiesPar[0] = rEnergies;
             for (int i = 1; i < tThreadNum; ++i) {
-                rEnergiesPar[i] = VectorCache.getZeros(rEnergies.size());
+                rEnergiesPar[i] = tEnergiesShared ? rEnergies : VectorCache.getZeros(rEnergies.size());
             }
         }
         /// 特殊处理只需要计算能量的情况
@@ -840,7 +856,7 @@ public interface IPairPotential extends IPotential, IHasSymbol {
                 return;
             }
             calEnergy(tAtomNum, (initDo, finalDo, neighborListDo) -> {
-                aAPC.pool_().parforWithException(tAtomNum, initDo, finalDo, (i, threadID) -> {
+                tPool.parforWithException(tAtomNum, initDo, finalDo, (i, threadID) -> {
                     final int cType = tTypeNum<=0 ? 0 : aTypeMap.applyAsInt(aAPC.types().get(i));
                     neighborListDo.run(threadID, i, cType, (rmax, dxyzTypeDo) -> {
                         // 根据 neighborListHalf 来确定是否开启半数优化
@@ -852,6 +868,12 @@ public interface IPairPotential extends IPotential, IHasSymbol {
                 });
             }, (threadID, cIdx, idx, eng) -> {
                 final IVector tEnergies = rEnergiesPar[threadID];
+                if (tOwnership) {
+                    // 原子所有权模式下每个原子对都会遍历两次，并且只写入到 cIdx 中
+                    if (cIdx < 0) throw new IllegalStateException();
+                    double tEng = idx>=0 ? eng*0.5 : eng;
+                    tEnergies.add(tEnergies.size()==1 ? 0 : cIdx, tEng);
+                } else
                 if (tEnergies.size()==1) {
                     tEnergies.add(0, eng);
                 } else {
@@ -870,9 +892,9 @@ public interface IPairPotential extends IPotential, IHasSymbol {
                     }
                 }
             });
-            for (int i = 1; i < tThreadNum; ++i) {
-                rEnergies.plus2this(rEnergiesPar[i]);
-                VectorCache.returnVec(rEnergiesPar[i]);
+            if (!tEnergiesShared) {
+                tPool.parmerge(rEnergiesPar, IVector::plus2this);
+                for (int i = 1; i < tThreadNum; ++i) VectorCache.returnVec(rEnergiesPar[i]);
             }
             aAPC.setNthreads(oThreadNum);
             return;
@@ -892,21 +914,21 @@ public interface IPairPotential extends IPotential, IHasSymbol {
         if (rVirialsZX != null) rVirialsZX.fill(0.0);
         if (rVirialsZY != null) rVirialsZY.fill(0.0);
         // 并行情况下存在并行写入的问题，因此需要这样操作
-        IVector @Nullable[] rForcesXPar = rForcesX!=null ? new IVector[tThreadNum] : null; if (rForcesX != null) {rForcesXPar[0] = rForcesX; for (int i = 1; i < tThreadNum; ++i) {rForcesXPar[i] = VectorCache.getZeros(tAtomNum);}}
-        IVector @Nullable[] rForcesYPar = rForcesY!=null ? new IVector[tThreadNum] : null; if (rForcesY != null) {rForcesYPar[0] = rForcesY; for (int i = 1; i < tThreadNum; ++i) {rForcesYPar[i] = VectorCache.getZeros(tAtomNum);}}
-        IVector @Nullable[] rForcesZPar = rForcesZ!=null ? new IVector[tThreadNum] : null; if (rForcesZ != null) {rForcesZPar[0] = rForcesZ; for (int i = 1; i < tThreadNum; ++i) {rForcesZPar[i] = VectorCache.getZeros(tAtomNum);}}
-        IVector @Nullable[] rVirialsXXPar = rVirialsXX!=null ? new IVector[tThreadNum] : null; if (rVirialsXX != null) {rVirialsXXPar[0] = rVirialsXX; for (int i = 1; i < tThreadNum; ++i) {rVirialsXXPar[i] = VectorCache.getZeros(rVirialsXX.size());}}
-        IVector @Nullable[] rVirialsYYPar = rVirialsYY!=null ? new IVector[tThreadNum] : null; if (rVirialsYY != null) {rVirialsYYPar[0] = rVirialsYY; for (int i = 1; i < tThreadNum; ++i) {rVirialsYYPar[i] = VectorCache.getZeros(rVirialsYY.size());}}
-        IVector @Nullable[] rVirialsZZPar = rVirialsZZ!=null ? new IVector[tThreadNum] : null; if (rVirialsZZ != null) {rVirialsZZPar[0] = rVirialsZZ; for (int i = 1; i < tThreadNum; ++i) {rVirialsZZPar[i] = VectorCache.getZeros(rVirialsZZ.size());}}
-        IVector @Nullable[] rVirialsXYPar = rVirialsXY!=null ? new IVector[tThreadNum] : null; if (rVirialsXY != null) {rVirialsXYPar[0] = rVirialsXY; for (int i = 1; i < tThreadNum; ++i) {rVirialsXYPar[i] = VectorCache.getZeros(rVirialsXY.size());}}
-        IVector @Nullable[] rVirialsXZPar = rVirialsXZ!=null ? new IVector[tThreadNum] : null; if (rVirialsXZ != null) {rVirialsXZPar[0] = rVirialsXZ; for (int i = 1; i < tThreadNum; ++i) {rVirialsXZPar[i] = VectorCache.getZeros(rVirialsXZ.size());}}
-        IVector @Nullable[] rVirialsYZPar = rVirialsYZ!=null ? new IVector[tThreadNum] : null; if (rVirialsYZ != null) {rVirialsYZPar[0] = rVirialsYZ; for (int i = 1; i < tThreadNum; ++i) {rVirialsYZPar[i] = VectorCache.getZeros(rVirialsYZ.size());}}
-        IVector @Nullable[] rVirialsYXPar = rVirialsYX!=null ? new IVector[tThreadNum] : null; if (rVirialsYX != null) {rVirialsYXPar[0] = rVirialsYX; for (int i = 1; i < tThreadNum; ++i) {rVirialsYXPar[i] = VectorCache.getZeros(rVirialsYX.size());}}
-        IVector @Nullable[] rVirialsZXPar = rVirialsZX!=null ? new IVector[tThreadNum] : null; if (rVirialsZX != null) {rVirialsZXPar[0] = rVirialsZX; for (int i = 1; i < tThreadNum; ++i) {rVirialsZXPar[i] = VectorCache.getZeros(rVirialsZX.size());}}
-        IVector @Nullable[] rVirialsZYPar = rVirialsZY!=null ? new IVector[tThreadNum] : null; if (rVirialsZY != null) {rVirialsZYPar[0] = rVirialsZY; for (int i = 1; i < tThreadNum; ++i) {rVirialsZYPar[i] = VectorCache.getZeros(rVirialsZY.size());}}
+        IVector @Nullable[] rForcesXPar = rForcesX!=null ? new IVector[tThreadNum] : null; if (rForcesX != null) {rForcesXPar[0] = rForcesX; for (int i = 1; i < tThreadNum; ++i) {rForcesXPar[i] = (tOwnership && rForcesX.size()>1) ? rForcesX : VectorCache.getZeros(tAtomNum);}}
+        IVector @Nullable[] rForcesYPar = rForcesY!=null ? new IVector[tThreadNum] : null; if (rForcesY != null) {rForcesYPar[0] = rForcesY; for (int i = 1; i < tThreadNum; ++i) {rForcesYPar[i] = (tOwnership && rForcesY.size()>1) ? rForcesY : VectorCache.getZeros(tAtomNum);}}
+        IVector @Nullable[] rForcesZPar = rForcesZ!=null ? new IVector[tThreadNum] : null; if (rForcesZ != null) {rForcesZPar[0] = rForcesZ; for (int i = 1; i < tThreadNum; ++i) {rForcesZPar[i] = (tOwnership && rForcesZ.size()>1) ? rForcesZ : VectorCache.getZeros(tAtomNum);}}
+        IVector @Nullable[] rVirialsXXPar = rVirialsXX!=null ? new IVector[tThreadNum] : null; if (rVirialsXX != null) {rVirialsXXPar[0] = rVirialsXX; for (int i = 1; i < tThreadNum; ++i) {rVirialsXXPar[i] = (tOwnership && rVirialsXX.size()>1) ? rVirialsXX : VectorCache.getZeros(rVirialsXX.size());}}
+        IVector @Nullable[] rVirialsYYPar = rVirialsYY!=null ? new IVector[tThreadNum] : null; if (rVirialsYY != null) {rVirialsYYPar[0] = rVirialsYY; for (int i = 1; i < tThreadNum; ++i) {rVirialsYYPar[i] = (tOwnership && rVirialsYY.size()>1) ? rVirialsYY : VectorCache.getZeros(rVirialsYY.size());}}
+        IVector @Nullable[] rVirialsZZPar = rVirialsZZ!=null ? new IVector[tThreadNum] : null; if (rVirialsZZ != null) {rVirialsZZPar[0] = rVirialsZZ; for (int i = 1; i < tThreadNum; ++i) {rVirialsZZPar[i] = (tOwnership && rVirialsZZ.size()>1) ? rVirialsZZ : VectorCache.getZeros(rVirialsZZ.size());}}
+        IVector @Nullable[] rVirialsXYPar = rVirialsXY!=null ? new IVector[tThreadNum] : null; if (rVirialsXY != null) {rVirialsXYPar[0] = rVirialsXY; for (int i = 1; i < tThreadNum; ++i) {rVirialsXYPar[i] = (tOwnership && rVirialsXY.size()>1) ? rVirialsXY : VectorCache.getZeros(rVirialsXY.size());}}
+        IVector @Nullable[] rVirialsXZPar = rVirialsXZ!=null ? new IVector[tThreadNum] : null; if (rVirialsXZ != null) {rVirialsXZPar[0] = rVirialsXZ; for (int i = 1; i < tThreadNum; ++i) {rVirialsXZPar[i] = (tOwnership && rVirialsXZ.size()>1) ? rVirialsXZ : VectorCache.getZeros(rVirialsXZ.size());}}
+        IVector @Nullable[] rVirialsYZPar = rVirialsYZ!=null ? new IVector[tThreadNum] : null; if (rVirialsYZ != null) {rVirialsYZPar[0] = rVirialsYZ; for (int i = 1; i < tThreadNum; ++i) {rVirialsYZPar[i] = (tOwnership && rVirialsYZ.size()>1) ? rVirialsYZ : VectorCache.getZeros(rVirialsYZ.size());}}
+        IVector @Nullable[] rVirialsYXPar = rVirialsYX!=null ? new IVector[tThreadNum] : null; if (rVirialsYX != null) {rVirialsYXPar[0] = rVirialsYX; for (int i = 1; i < tThreadNum; ++i) {rVirialsYXPar[i] = (tOwnership && rVirialsYX.size()>1) ? rVirialsYX : VectorCache.getZeros(rVirialsYX.size());}}
+        IVector @Nullable[] rVirialsZXPar = rVirialsZX!=null ? new IVector[tThreadNum] : null; if (rVirialsZX != null) {rVirialsZXPar[0] = rVirialsZX; for (int i = 1; i < tThreadNum; ++i) {rVirialsZXPar[i] = (tOwnership && rVirialsZX.size()>1) ? rVirialsZX : VectorCache.getZeros(rVirialsZX.size());}}
+        IVector @Nullable[] rVirialsZYPar = rVirialsZY!=null ? new IVector[tThreadNum] : null; if (rVirialsZY != null) {rVirialsZYPar[0] = rVirialsZY; for (int i = 1; i < tThreadNum; ++i) {rVirialsZYPar[i] = (tOwnership && rVirialsZY.size()>1) ? rVirialsZY : VectorCache.getZeros(rVirialsZY.size());}}
         // 遍历所有原子计算力
         calEnergyForceVirial(tAtomNum, (initDo, finalDo, neighborListDo) -> {
-            aAPC.pool_().parforWithException(tAtomNum, initDo, finalDo, (i, threadID) -> {
+            tPool.parforWithException(tAtomNum, initDo, finalDo, (i, threadID) -> {
                 final int cType = tTypeNum<=0 ? 0 : aTypeMap.applyAsInt(aAPC.types().get(i));
                 neighborListDo.run(threadID, i, cType, (rmax, dxyzTypeDo) -> {
                     // 根据 neighborListHalf 来确定是否开启半数优化
@@ -918,6 +940,12 @@ public interface IPairPotential extends IPotential, IHasSymbol {
             });
         }, !tCalEnergy ? null : (threadID, cIdx, idx, eng) -> {
             final IVector tEnergies = rEnergiesPar[threadID];
+            if (tOwnership) {
+                // 原子所有权模式下每个原子对都会遍历两次，并且只写入到 cIdx 中
+                if (cIdx < 0) throw new IllegalStateException();
+                double tEng = idx>=0 ? eng*0.5 : eng;
+                tEnergies.add(tEnergies.size()==1 ? 0 : cIdx, tEng);
+            } else
             if (tEnergies.size()==1) {
                 tEnergies.add(0, eng);
             } else {
@@ -940,6 +968,13 @@ public interface IPairPotential extends IPotential, IHasSymbol {
             final @Nullable IVector tForcesY = rForcesY!=null ? rForcesYPar[threadID] : null;
             final @Nullable IVector tForcesZ = rForcesZ!=null ? rForcesZPar[threadID] : null;
             // 根据每个 idx 来控制力具体累加的逻辑
+            if (tOwnership) {
+                // 原子所有权模式下 idx 受到的力会在遍历 idx 时累加，因此只写入到 cIdx 中
+                if (cIdx < 0) throw new IllegalStateException();
+                if (tForcesX != null) {tForcesX.add(cIdx, -fx);}
+                if (tForcesY != null) {tForcesY.add(cIdx, -fy);}
+                if (tForcesZ != null) {tForcesZ.add(cIdx, -fz);}
+            } else
             if (cIdx>=0 && idx>=0) {
                 if (tForcesX != null) {tForcesX.add(cIdx, -fx); tForcesX.add(idx, fx);}
                 if (tForcesY != null) {tForcesY.add(cIdx, -fy); tForcesY.add(idx, fy);}
@@ -968,6 +1003,20 @@ public interface IPairPotential extends IPotential, IHasSymbol {
             final @Nullable IVector tVirialsZX = rVirialsZX!=null ? rVirialsZXPar[threadID] : null;
             final @Nullable IVector tVirialsZY = rVirialsZY!=null ? rVirialsZYPar[threadID] : null;
             // 根据每个 idx 来控制位力具体累加的逻辑
+            if (tOwnership) {
+                // 原子所有权模式下每个原子对都会遍历两次，并且只写入到 cIdx 中
+                if (cIdx < 0) throw new IllegalStateException();
+                final double tMul = idx>=0 ? 0.5 : 1.0;
+                if (tVirialsXX != null) {tVirialsXX.add(tVirialsXX.size()==1 ? 0 : cIdx, tMul*dx*fx);}
+                if (tVirialsYY != null) {tVirialsYY.add(tVirialsYY.size()==1 ? 0 : cIdx, tMul*dy*fy);}
+                if (tVirialsZZ != null) {tVirialsZZ.add(tVirialsZZ.size()==1 ? 0 : cIdx, tMul*dz*fz);}
+                if (tVirialsXY != null) {tVirialsXY.add(tVirialsXY.size()==1 ? 0 : cIdx, tMul*dx*fy);}
+                if (tVirialsXZ != null) {tVirialsXZ.add(tVirialsXZ.size()==1 ? 0 : cIdx, tMul*dx*fz);}
+                if (tVirialsYZ != null) {tVirialsYZ.add(tVirialsYZ.size()==1 ? 0 : cIdx, tMul*dy*fz);}
+                if (tVirialsYX != null) {tVirialsYX.add(cIdx, tMul*dy*fx);}
+                if (tVirialsZX != null) {tVirialsZX.add(cIdx, tMul*dz*fx);}
+                if (tVirialsZY != null) {tVirialsZY.add(cIdx, tMul*dz*fy);}
+            } else
             if (cIdx>=0 && idx>=0) {
                 if (tVirialsXX != null) {if (tVirialsXX.size()==1) {tVirialsXX.add(0, dx*fx);} else {tVirialsXX.add(cIdx, 0.5*dx*fx); tVirialsXX.add(idx, 0.5*dx*fx);}}
                 if (tVirialsYY != null) {if (tVirialsYY.size()==1) {tVirialsYY.add(0, dy*fy);} else {tVirialsYY.add(cIdx, 0.5*dy*fy); tVirialsYY.add(idx, 0.5*dy*fy);}}
@@ -1004,20 +1053,20 @@ public interface IPairPotential extends IPotential, IHasSymbol {
                 throw new IllegalStateException();
             }
         });
-        // 累加其余线程的数据然后归还临时变量
-        if (rEnergies != null) {for (int i = 1; i < tThreadNum; ++i) {rEnergies.plus2this(rEnergiesPar[i]); VectorCache.returnVec(rEnergiesPar[i]);}}
-        if (rForcesZ != null) {for (int i = 1; i < tThreadNum; ++i) {rForcesZ.plus2this(rForcesZPar[i]); VectorCache.returnVec(rForcesZPar[i]);}}
-        if (rForcesY != null) {for (int i = 1; i < tThreadNum; ++i) {rForcesY.plus2this(rForcesYPar[i]); VectorCache.returnVec(rForcesYPar[i]);}}
-        if (rForcesX != null) {for (int i = 1; i < tThreadNum; ++i) {rForcesX.plus2this(rForcesXPar[i]); VectorCache.returnVec(rForcesXPar[i]);}}
-        if (rVirialsZY != null) {for (int i = 1; i < tThreadNum; ++i) {rVirialsZY.plus2this(rVirialsZYPar[i]); VectorCache.returnVec(rVirialsZYPar[i]);}}
-        if (rVirialsZX != null) {for (int i = 1; i < tThreadNum; ++i) {rVirialsZX.plus2this(rVirialsZXPar[i]); VectorCache.returnVec(rVirialsZXPar[i]);}}
-        if (rVirialsYX != null) {for (int i = 1; i < tThreadNum; ++i) {rVirialsYX.plus2this(rVirialsYXPar[i]); VectorCache.returnVec(rVirialsYXPar[i]);}}
-        if (rVirialsYZ != null) {for (int i = 1; i < tThreadNum; ++i) {rVirialsYZ.plus2this(rVirialsYZPar[i]); VectorCache.returnVec(rVirialsYZPar[i]);}}
-        if (rVirialsXZ != null) {for (int i = 1; i < tThreadNum; ++i) {rVirialsXZ.plus2this(rVirialsXZPar[i]); VectorCache.returnVec(rVirialsXZPar[i]);}}
-        if (rVirialsXY != null) {for (int i = 1; i < tThreadNum; ++i) {rVirialsXY.plus2this(rVirialsXYPar[i]); VectorCache.returnVec(rVirialsXYPar[i]);}}
-        if (rVirialsZZ != null) {for (int i = 1; i < tThreadNum; ++i) {rVirialsZZ.plus2this(rVirialsZZPar[i]); VectorCache.returnVec(rVirialsZZPar[i]);}}
-        if (rVirialsYY != null) {for (int i = 1; i < tThreadNum; ++i) {rVirialsYY.plus2this(rVirialsYYPar[i]); VectorCache.returnVec(rVirialsYYPar[i]);}}
-        if (rVirialsXX != null) {for (int i = 1; i < tThreadNum; ++i) {rVirialsXX.plus2this(rVirialsXXPar[i]); VectorCache.returnVec(rVirialsXXPar[i]);}}
+        // 并行地累加其余线程的数据然后归还临时变量，原子所有权模式下每原子的值直接写入了输出，不需要合并
+        if (rEnergies != null && !tEnergiesShared) {tPool.parmerge(rEnergiesPar, IVector::plus2this); for (int i = 1; i < tThreadNum; ++i) VectorCache.returnVec(rEnergiesPar[i]);}
+        if (rForcesZ != null && !(tOwnership && rForcesZ.size()>1)) {tPool.parmerge(rForcesZPar, IVector::plus2this); for (int i = 1; i < tThreadNum; ++i) VectorCache.returnVec(rForcesZPar[i]);}
+        if (rForcesY != null && !(tOwnership && rForcesY.size()>1)) {tPool.parmerge(rForcesYPar, IVector::plus2this); for (int i = 1; i < tThreadNum; ++i) VectorCache.returnVec(rForcesYPar[i]);}
+        if (rForcesX != null && !(tOwnership && rForcesX.size()>1)) {tPool.parmerge(rForcesXPar, IVector::plus2this); for (int i = 1; i < tThreadNum; ++i) VectorCache.returnVec(rForcesXPar[i]);}
+        if (rVirialsZY != null && !(tOwnership && rVirialsZY.size()>1)) {tPool.parmerge(rVirialsZYPar, IVector::plus2this); for (int i = 1; i < tThreadNum; ++i) VectorCache.returnVec(rVirialsZYPar[i]);}
+        if (rVirialsZX != null && !(tOwnership && rVirialsZX.size()>1)) {tPool.parmerge(rVirialsZXPar, IVector::plus2this); for (int i = 1; i < tThreadNum; ++i) VectorCache.returnVec(rVirialsZXPar[i]);}
+        if (rVirialsYX != null && !(tOwnership && rVirialsYX.size()>1)) {tPool.parmerge(rVirialsYXPar, IVector::plus2this); for (int i = 1; i < tThreadNum; ++i) VectorCache.returnVec(rVirialsYXPar[i]);}
+        if (rVirialsYZ != null && !(tOwnership && rVirialsYZ.size()>1)) {tPool.parmerge(rVirialsYZPar, IVector::plus2this); for (int i = 1; i < tThreadNum; ++i) VectorCache.returnVec(rVirialsYZPar[i]);}
+        if (rVirialsXZ != null && !(tOwnership && rVirialsXZ.size()>1)) {tPool.parmerge(rVirialsXZPar, IVector::plus2this); for (int i = 1; i < tThreadNum; ++i) VectorCache.returnVec(rVirialsXZPar[i]);}
+        if (rVirialsXY != null && !(tOwnership && rVirialsXY.size()>1)) {tPool.parmerge(rVirialsXYPar, IVector::plus2this); for (int i = 1; i < tThreadNum; ++i) VectorCache.returnVec(rVirialsXYPar[i]);}
+        if (rVirialsZZ != null && !(tOwnership && rVirialsZZ.size()>1)) {tPool.parmerge(rVirialsZZPar, IVector::plus2this); for (int i = 1; i < tThreadNum; ++i) VectorCache.returnVec(rVirialsZZPar[i]);}
+        if (rVirialsYY != null && !(tOwnership && rVirialsYY.size()>1)) {tPool.parmerge(rVirialsYYPar, IVector::plus2this); for (int i = 1; i < tThreadNum; ++i) VectorCache.returnVec(rVirialsYYPar[i]);}
+        if (rVirialsXX != null && !(tOwnership && rVirialsXX.size()>1)) {tPool.parmerge(rVirialsXXPar, IVector::plus2this); for (int i = 1; i < tThreadNum; ++i) VectorCache.returnVec(rVirialsXXPar[i]);}
         aAPC.setNthreads(oThreadNum);
     }
     /**
@@ -3,10 +3,13 @@ package jse.atom;
 import jse.cache.IObjectPool;
 import jse.cache.ThreadLocalObjectCachePool;
 import jse.code.UT;
+import jse.code.collection.DoubleList;
 import jse.code.collection.IntList;
 import jse.code.functional.IIndexFilter;
 import jse.math.MathEX;
 import jse.math.matrix.IMatrix;
+import jse.math.matrix.RowMatrix;
+import jse.parallel.ParforThreadPool;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 
@@ -16,6 +19,9 @@ import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.IntConsumer;
 
+import static jse.code.CS.ZL_DOUBLE;
+import static jse.code.CS.ZL_INT;
+
 
 /**
  * jse 中的近邻列表实现，具体采用了 Neighbour Cell List (NCL)
@@ -34,6 +40,9 @@ import java.util.function.IntConsumer;
  * {@link AtomicParameterCalculator#getFullNeighborList(int, double)}
  * 来获取近邻列表往往会更快，而一般只在内部或者 java 代码中直接使用此类。
  * <p>
+ * 对于原子位置缓慢变化的情况，可以通过 {@link #setVerletSkin(double)}
+ * 开启 Verlet 近邻列表，此时会缓存 {@code rmax + skin} 内的候选近邻并只在需要时重新构建。
+ * <p>
  * 此类线程安全，包括多个线程同时访问同一个实例
  *
  * @author liqa
@@ -44,11 +53,11 @@ import java.util.function.IntConsumer;
  */
 public class NeighborListGetter {
     private IMatrix mAtomDataXYZ;  // 现在改为 Matrix 存储，每行为一个原子的 xyz 数据
-    private final IBox mBox;
-    private final @Nullable XYZ mBoxA, mBoxB, mBoxC; // null for normal
-    private final XYZ mBoxXYZ; // 表示三个方向的模拟盒平面之间的距离，用于确定 cell 需要分划的份数
+    private IBox mBox;
+    private @Nullable XYZ mBoxA, mBoxB, mBoxC; // null for normal
+    private XYZ mBoxXYZ; // 表示三个方向的模拟盒平面之间的距离，用于确定 cell 需要分划的份数
     private final int mAtomNum;
-    private final double mMinBox;
+    private double mMinBox;
     
     private final TreeMap<Integer, ILinkedCell> mLinkedCells = new TreeMap<>(); // 记录对应有效近邻半径的 LinkedCell，使用 Integer 只存储倍率（负值表示除法），避免 double 作为 key 的问题
     private final Thread mInitThread;
@@ -57,6 +66,11 @@ public class NeighborListGetter {
     NeighborListGetter(IMatrix aAtomDataXYZ, int aAtomNum, IBox aBox) {
         mAtomDataXYZ = aAtomDataXYZ;
         mAtomNum = aAtomNum;
+        initBox_(aBox);
+        mAllCellsAlloc = sAllCellsAllocCache.getObject();
+        mInitThread = Thread.currentThread();
+    }
+    private void initBox_(IBox aBox) {
         mBox = aBox;
         if (mBox.isPrism()) {
             // 计算距离，这里涉及一些重复计算，不过不关键就是
@@ -76,14 +90,43 @@ public class NeighborListGetter {
             mBoxXYZ = XYZ.toXYZ(aBox);
         }
         mMinBox = mBoxXYZ.min();
-        mAllCellsAlloc = sAllCellsAllocCache.getObject();
-        mInitThread = Thread.currentThread();
+    }
+    
+    /**
+     * 在原子坐标数据被整体替换后（数据本身依旧是构造时传入的同一个矩阵）重新绑定模拟盒，
+     * 清空已有的 LinkedCell 并且标记 Verlet 近邻列表失效，但保留所有 cell 以及 Verlet 列表的内存，
+     * 之后使用时会直接在这些内存上重新构建；开启了空间排序时会重新排序
+     */
+    @ApiStatus.Internal void rebind_(IBox aBox) {
+        if (mDead) throw new RuntimeException("This NeighborListGetter is dead");
+        mWL.lock();
+        try {
+            initBox_(aBox);
+            mLinkedCells.clear();
+            for (VerletList tVerletList : mVerletLists.values()) tVerletList.mValid = false;
+            if (mSortOrder != null) spatialSort_();
+        } finally {
+            mWL.unlock();
+        }
     }
     
     @ApiStatus.Internal void updateAtomXYZ_(int aIdx, double oX, double oY, double oZ, @Nullable XYZ rBuf) {
+        if (mSortedXYZ != null) {
+            assert mSortRank != null;
+            final int tPos = mSortRank[aIdx];
+            mSortedXYZ.set(tPos, 0, mAtomDataXYZ.get(aIdx, 0));
+            mSortedXYZ.set(tPos, 1, mAtomDataXYZ.get(aIdx, 1));
+            mSortedXYZ.set(tPos, 2, mAtomDataXYZ.get(aIdx, 2));
+        }
         for (ILinkedCell tLinkedCell : mLinkedCells.values()) {
             tLinkedCell.updateAtomXYZ_(aIdx, oX, oY, oZ, rBuf);
         }
+        if (!mVerletLists.isEmpty()) {
+            XYZ tBuf = rBuf==null ? new XYZ() : rBuf;
+            for (VerletList tVerletList : mVerletLists.values()) {
+                tVerletList.updateAtomXYZ_(aIdx, oX, oY, oZ, tBuf);
+            }
+        }
     }
     
     /** 直接使用 ObjectCachePool 避免重复创建临时变量 */
@@ -99,35 +142,47 @@ public class NeighborListGetter {
         return tCellsAlloc;
     }
     
-    /** 专用的 Cell 类，内部只存储下标来减少内存占用 */
+    /** 原子数超过此值并且提供了线程池时才会并行构建 LinkedCell */
+    private final static int PARALLEL_BUILD_THRESHOLD = 100000;
+    /** 将 aSize 均匀分为 aBlockNum 段，获取第 aBlock 段的起始位置 */
+    private static int blockStart_(int aBlock, int aBlockNum, int aSize) {
+        return (int)((long)aSize * aBlock / aBlockNum);
+    }
+    
+    /**
+     * 专用的 Cell 类，内部只存储下标来减少内存占用；
+     * 开启空间排序后存储的是排序后的位置，此时通过 aOrder 转换回原始的原子下标
+     */
     interface ICell {
-        void forEach(IMatrix aAtomDataXYZ, IXYZIdxDo aXYZIdxDo);
-        void forEach(int aIdx, boolean aHalf, @Nullable IIndexFilter aRegion, IMatrix aAtomDataXYZ, IXYZIdxDo aXYZIdxDo);
+        void forEach(IMatrix aAtomDataXYZ, int @Nullable[] aOrder, IXYZIdxDo aXYZIdxDo);
+        void forEach(int aIdx, boolean aHalf, @Nullable IIndexFilter aRegion, IMatrix aAtomDataXYZ, int @Nullable[] aOrder, IXYZIdxDo aXYZIdxDo);
     }
     
     private final static class Cell extends IntList implements ICell {
         private Cell(int aInitDataLength) {super(aInitDataLength);}
         private Cell() {super();}
         
-        @Override public void forEach(IMatrix aAtomDataXYZ, IXYZIdxDo aXYZIdxDo) {
+        @Override public void forEach(IMatrix aAtomDataXYZ, int @Nullable[] aOrder, IXYZIdxDo aXYZIdxDo) {
             final int tSize = mSize;
             for (int i = 0; i < tSize; ++i) {
-                int tIdx = mData[i];
-                aXYZIdxDo.run(aAtomDataXYZ.get(tIdx, 0), aAtomDataXYZ.get(tIdx, 1), aAtomDataXYZ.get(tIdx, 2), tIdx);
+                int tPos = mData[i];
+                int tIdx = aOrder==null ? tPos : aOrder[tPos];
+                aXYZIdxDo.run(aAtomDataXYZ.get(tPos, 0), aAtomDataXYZ.get(tPos, 1), aAtomDataXYZ.get(tPos, 2), tIdx);
             }
         }
-        @Override public void forEach(int aIdx, boolean aHalf, @Nullable IIndexFilter aRegion, IMatrix aAtomDataXYZ, IXYZIdxDo aXYZIdxDo) {
+        @Override public void forEach(int aIdx, boolean aHalf, @Nullable IIndexFilter aRegion, IMatrix aAtomDataXYZ, int @Nullable[] aOrder, IXYZIdxDo aXYZIdxDo) {
             final int tSize = mSize;
             for (int i = 0; i < tSize; ++i) {
-                int tIdx = mData[i];
+                int tPos = mData[i];
+                int tIdx = aOrder==null ? tPos : aOrder[tPos];
                 if (aHalf) {
                     // 由于有区域限制，因此一半优化时不在区域内的也需要进行统计
                     if (tIdx < aIdx || (aRegion!=null && !aRegion.accept(tIdx))) {
-                        aXYZIdxDo.run(aAtomDataXYZ.get(tIdx, 0), aAtomDataXYZ.get(tIdx, 1), aAtomDataXYZ.get(tIdx, 2), tIdx);
+                        aXYZIdxDo.run(aAtomDataXYZ.get(tPos, 0), aAtomDataXYZ.get(tPos, 1), aAtomDataXYZ.get(tPos, 2), tIdx);
                     }
                 } else {
                     if (tIdx != aIdx) {
-                        aXYZIdxDo.run(aAtomDataXYZ.get(tIdx, 0), aAtomDataXYZ.get(tIdx, 1), aAtomDataXYZ.get(tIdx, 2), tIdx);
+                        aXYZIdxDo.run(aAtomDataXYZ.get(tPos, 0), aAtomDataXYZ.get(tPos, 1), aAtomDataXYZ.get(tPos, 2), tIdx);
                     }
                 }
             }
@@ -141,33 +196,35 @@ public class NeighborListGetter {
             mCell = aCell;
             mDirX = aDirX; mDirY = aDirY; mDirZ = aDirZ;
         }
-        @Override public void forEach(IMatrix aAtomDataXYZ, IXYZIdxDo aXYZIdxDo) {
+        @Override public void forEach(IMatrix aAtomDataXYZ, int @Nullable[] aOrder, IXYZIdxDo aXYZIdxDo) {
             final int tSize = mCell.size();
             final int[] tData = mCell.internalData();
             for (int i = 0; i < tSize; ++i) {
-                int tIdx = tData[i];
-                aXYZIdxDo.run(aAtomDataXYZ.get(tIdx, 0) + mDirX, aAtomDataXYZ.get(tIdx, 1) + mDirY, aAtomDataXYZ.get(tIdx, 2) + mDirZ, tIdx);
+                int tPos = tData[i];
+                int tIdx = aOrder==null ? tPos : aOrder[tPos];
+                aXYZIdxDo.run(aAtomDataXYZ.get(tPos, 0) + mDirX, aAtomDataXYZ.get(tPos, 1) + mDirY, aAtomDataXYZ.get(tPos, 2) + mDirZ, tIdx);
             }
         }
         /** 对于镜像的不能排除 idx 相同的，而对于 Half 的情况要仔细分析 */
-        @Override public void forEach(int aIdx, boolean aHalf, @Nullable IIndexFilter aRegion, IMatrix aAtomDataXYZ, IXYZIdxDo aXYZIdxDo) {
+        @Override public void forEach(int aIdx, boolean aHalf, @Nullable IIndexFilter aRegion, IMatrix aAtomDataXYZ, int @Nullable[] aOrder, IXYZIdxDo aXYZIdxDo) {
             final int tSize = mCell.size();
             final int[] tData = mCell.internalData();
             for (int i = 0; i < tSize; ++i) {
-                int tIdx = tData[i];
+                int tPos = tData[i];
+                int tIdx = aOrder==null ? tPos : aOrder[tPos];
                 if (aHalf) {
                     // 由于有区域限制，因此一半优化时不在区域内的也需要进行统计
                     if (tIdx < aIdx || (aRegion!=null && !aRegion.accept(tIdx))) {
-                        aXYZIdxDo.run(aAtomDataXYZ.get(tIdx, 0) + mDirX, aAtomDataXYZ.get(tIdx, 1) + mDirY, aAtomDataXYZ.get(tIdx, 2) + mDirZ, tIdx);
+                        aXYZIdxDo.run(aAtomDataXYZ.get(tPos, 0) + mDirX, aAtomDataXYZ.get(tPos, 1) + mDirY, aAtomDataXYZ.get(tPos, 2) + mDirZ, tIdx);
                     } else
                     if (tIdx == aIdx) {
                         // 使用这个方法只遍历一半的镜像相等 idx 对象
                         if ((mDirX>0.0) || (mDirX==0.0 && (mDirY>0.0 || (mDirY==0.0 && mDirZ>0.0)))) {
-                            aXYZIdxDo.run(aAtomDataXYZ.get(tIdx, 0) + mDirX, aAtomDataXYZ.get(tIdx, 1) + mDirY, aAtomDataXYZ.get(tIdx, 2) + mDirZ, tIdx);
+                            aXYZIdxDo.run(aAtomDataXYZ.get(tPos, 0) + mDirX, aAtomDataXYZ.get(tPos, 1) + mDirY, aAtomDataXYZ.get(tPos, 2) + mDirZ, tIdx);
                         }
                     }
                 } else {
-                    aXYZIdxDo.run(aAtomDataXYZ.get(tIdx, 0) + mDirX, aAtomDataXYZ.get(tIdx, 1) + mDirY, aAtomDataXYZ.get(tIdx, 2) + mDirZ, tIdx);
+                    aXYZIdxDo.run(aAtomDataXYZ.get(tPos, 0) + mDirX, aAtomDataXYZ.get(tPos, 1) + mDirY, aAtomDataXYZ.get(tPos, 2) + mDirZ, tIdx);
                 }
             }
         }
@@ -188,32 +245,97 @@ public class NeighborListGetter {
         private final List<Cell> mCells;
         private final int mSizeX, mSizeY, mSizeZ;
         private final @Nullable XYZ mCellBoxXYZ; // null for prism
-        private LinkedCell(int aMul, int aSizeX, int aSizeY, int aSizeZ) {
+        // cell 中实际存储的位置对应的坐标以及到原子下标的映射，没有开启空间排序时分别为 mAtomDataXYZ 和 null
+        private final IMatrix mCellXYZ;
+        private final int @Nullable[] mCellOrder, mCellRank;
+        private LinkedCell(int aMul, int aSizeX, int aSizeY, int aSizeZ, @Nullable ParforThreadPool aPool) {
             mSizeX = aSizeX; mSizeY = aSizeY; mSizeZ = aSizeZ;
+            mCellXYZ = mSortedXYZ==null ? mAtomDataXYZ : mSortedXYZ;
+            mCellOrder = mSortOrder; mCellRank = mSortRank;
+            mCellBoxXYZ = mBox.isPrism() ? null : mBoxXYZ.div(mSizeX, mSizeY, mSizeZ);
             // 初始化 cell
             mCells = getCellsAlloc_(aMul, aSizeX, aSizeY, aSizeZ);
             for (Cell tCell : mCells) tCell.clear(); // 直接清空旧数据即可
-            // 遍历添加 XYZ
-            if (mBox.isPrism()) {
-                mCellBoxXYZ = null;
+            // 遍历添加 XYZ，开启空间排序时按照排序后的顺序添加，从而 cell 内部的访问是连续的
+            if (aPool!=null && aPool.nthreads()>1 && mAtomNum>=PARALLEL_BUILD_THRESHOLD) {
+                build_(aPool);
+            } else {
                 XYZ tBuf = new XYZ();
                 for (int idx = 0; idx < mAtomNum; ++idx) {
-                    tBuf.setXYZ(mAtomDataXYZ.get(idx, 0), mAtomDataXYZ.get(idx, 1), mAtomDataXYZ.get(idx, 2));
-                    mBox.toDirect(tBuf);
-                    int i = MathEX.Code.floor2int(tBuf.mX * mSizeX);
-                    int j = MathEX.Code.floor2int(tBuf.mY * mSizeY);
-                    int k = MathEX.Code.floor2int(tBuf.mZ * mSizeZ);
-                    mCells.get(idx(i, j, k)).add(idx);
+                    mCells.get(cellIdx_(idx, tBuf)).add(idx);
                 }
-            } else {
-                mCellBoxXYZ = mBoxXYZ.div(mSizeX, mSizeY, mSizeZ);
-                for (int idx = 0; idx < mAtomNum; ++idx) {
-                    int i = MathEX.Code.floor2int(mAtomDataXYZ.get(idx, 0) / mCellBoxXYZ.mX);
-                    int j = MathEX.Code.floor2int(mAtomDataXYZ.get(idx, 1) / mCellBoxXYZ.mY);
-                    int k = MathEX.Code.floor2int(mAtomDataXYZ.get(idx, 2) / mCellBoxXYZ.mZ);
-                    mCells.get(idx(i, j, k)).add(idx);
+            }
+        }
+        /**
+         * 并行构建 cell，每个线程负责连续的一段原子，先分别统计每个 cell 的原子数目，
+         * 按照 (cell, 线程) 的顺序前缀求和得到写入位置后再分散写入到一个扁平的数组中，
+         * 最后拷贝到每个 cell；这样得到的 cell 内部顺序和串行构建完全一致
+         */
+        private void build_(ParforThreadPool aPool) {
+            final int tCellNum = mSizeX*mSizeY*mSizeZ;
+            final int tBlockNum = aPool.nthreads();
+            final int[] tCellIdx = new int[mAtomNum];
+            final int[][] tOffsets = new int[tBlockNum][tCellNum];
+            // 先统计每段原子在每个 cell 中的数目
+            aPool.parfor(tBlockNum, b -> {
+                final int tEnd = blockStart_(b+1, tBlockNum, mAtomNum);
+                final int[] tCount = tOffsets[b];
+                XYZ tBuf = new XYZ();
+                for (int idx = blockStart_(b, tBlockNum, mAtomNum); idx < tEnd; ++idx) {
+                    int tIdx = cellIdx_(idx, tBuf);
+                    tCellIdx[idx] = tIdx;
+                    ++tCount[tIdx];
+                }
+            });
+            // 前缀求和，直接将数目替换为写入位置
+            final int[] tCellStart = new int[tCellNum+1];
+            int tSum = 0;
+            for (int c = 0; c < tCellNum; ++c) {
+                tCellStart[c] = tSum;
+                for (int b = 0; b < tBlockNum; ++b) {
+                    int tCount = tOffsets[b][c];
+                    tOffsets[b][c] = tSum;
+                    tSum += tCount;
                 }
             }
+            tCellStart[tCellNum] = tSum;
+            // 分散写入到扁平数组
+            final int[] tFlat = new int[mAtomNum];
+            aPool.parfor(tBlockNum, b -> {
+                final int tEnd = blockStart_(b+1, tBlockNum, mAtomNum);
+                final int[] tOffset = tOffsets[b];
+                for (int idx = blockStart_(b, tBlockNum, mAtomNum); idx < tEnd; ++idx) {
+                    tFlat[tOffset[tCellIdx[idx]]++] = idx;
+                }
+            });
+            // 拷贝到每个 cell，不同 cell 之间互相独立
+            aPool.parfor(tBlockNum, b -> {
+                final int tEnd = blockStart_(b+1, tBlockNum, tCellNum);
+                for (int c = blockStart_(b, tBlockNum, tCellNum); c < tEnd; ++c) {
+                    final Cell tCell = mCells.get(c);
+                    final int tSize = tCellStart[c+1] - tCellStart[c];
+                    tCell.ensureCapacity(tSize);
+                    System.arraycopy(tFlat, tCellStart[c], tCell.internalData(), 0, tSize);
+                    tCell.setInternalDataSize(tSize);
+                }
+            });
+        }
+        /** 获取 cell 中存储的位置 aPos 对应的 cell 下标 */
+        private int cellIdx_(int aPos, XYZ rBuf) {
+            if (mBox.isPrism()) {
+                rBuf.setXYZ(mCellXYZ.get(aPos, 0), mCellXYZ.get(aPos, 1), mCellXYZ.get(aPos, 2));
+                mBox.toDirect(rBuf);
+                int i = MathEX.Code.floor2int(rBuf.mX * mSizeX);
+                int j = MathEX.Code.floor2int(rBuf.mY * mSizeY);
+                int k = MathEX.Code.floor2int(rBuf.mZ * mSizeZ);
+                return idx(i, j, k);
+            } else {
+                assert mCellBoxXYZ != null;
+                int i = MathEX.Code.floor2int(mCellXYZ.get(aPos, 0) / mCellBoxXYZ.mX);
+                int j = MathEX.Code.floor2int(mCellXYZ.get(aPos, 1) / mCellBoxXYZ.mY);
+                int k = MathEX.Code.floor2int(mCellXYZ.get(aPos, 2) / mCellBoxXYZ.mZ);
+                return idx(i, j, k);
+            }
         }
         
         @ApiStatus.Internal @Override public void updateAtomXYZ_(int aIdx, double oX, double oY, double oZ, @Nullable XYZ rBuf) {
@@ -224,7 +346,7 @@ public class NeighborListGetter {
             int tI, tJ, tK;
             if (mBox.isPrism()) {
                 assert rBuf != null;
-                rBuf.setXYZ(oX, oY, oY);
+                rBuf.setXYZ(oX, oY, oZ);
                 mBox.toDirect(rBuf);
                 oI = MathEX.Code.floor2int(rBuf.mX * mSizeX);
                 oJ = MathEX.Code.floor2int(rBuf.mY * mSizeY);
@@ -245,16 +367,17 @@ public class NeighborListGetter {
             }
             if (oI==tI && oJ==tJ && oK==tK) return;
             // 从 oCell 中移除，并添加到 tCell 中
+            final int tPos = mCellRank==null ? aIdx : mCellRank[aIdx];
             Cell oCell = mCells.get(idx(oI, oJ, oK));
             int i = 0;
             final int oSize = oCell.size();
             for (; i < oSize; ++i) {
-                if (oCell.get(i) == aIdx) break;
+                if (oCell.get(i) == tPos) break;
             }
             // 采用和最后一个交换的方法来移除
             oCell.set(i, oCell.last());
             oCell.removeLast();
-            mCells.get(idx(tI, tJ, tK)).add(aIdx);
+            mCells.get(idx(tI, tJ, tK)).add(tPos);
         }
         
         private int idx(int i, int j, int k) {
@@ -299,33 +422,33 @@ public class NeighborListGetter {
                 j = MathEX.Code.floor2int(aY / mCellBoxXYZ.mY);
                 k = MathEX.Code.floor2int(aZ / mCellBoxXYZ.mZ);
             }
-            cell(i  , j  , k  ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i+1, j  , k  ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i-1, j  , k  ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i  , j+1, k  ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i  , j-1, k  ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i  , j  , k+1).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i  , j  , k-1).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i+1, j+1, k  ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i+1, j-1, k  ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i-1, j+1, k  ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i-1, j-1, k  ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i  , j+1, k+1).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i  , j+1, k-1).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i  , j-1, k+1).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i  , j-1, k-1).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i+1, j  , k+1).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i-1, j  , k+1).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i+1, j  , k-1).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i-1, j  , k-1).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i+1, j+1, k+1).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i+1, j+1, k-1).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i+1, j-1, k+1).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i+1, j-1, k-1).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i-1, j+1, k+1).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i-1, j+1, k-1).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i-1, j-1, k+1).forEach(mAtomDataXYZ, aXYZIdxDo);
-            cell(i-1, j-1, k-1).forEach(mAtomDataXYZ, aXYZIdxDo);
+            cell(i  , j  , k  ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i+1, j  , k  ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i-1, j  , k  ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i  , j+1, k  ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i  , j-1, k  ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i  , j  , k+1).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i  , j  , k-1).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i+1, j+1, k  ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i+1, j-1, k  ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i-1, j+1, k  ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i-1, j-1, k  ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i  , j+1, k+1).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i  , j+1, k-1).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i  , j-1, k+1).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i  , j-1, k-1).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i+1, j  , k+1).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i-1, j  , k+1).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i+1, j  , k-1).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i-1, j  , k-1).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i+1, j+1, k+1).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i+1, j+1, k-1).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i+1, j-1, k+1).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i+1, j-1, k-1).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i-1, j+1, k+1).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i-1, j+1, k-1).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i-1, j-1, k+1).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i-1, j-1, k-1).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
         }
         @Override public void forEachNeighbor(int aIdx, boolean aHalf, @Nullable IIndexFilter aRegion, IXYZIdxDo aXYZIdxDo) {
             if (aIdx >= mAtomNum) throw new IndexOutOfBoundsException(String.format("Index: %d", aIdx));
@@ -342,59 +465,64 @@ public class NeighborListGetter {
                 j = MathEX.Code.floor2int(mAtomDataXYZ.get(aIdx, 1) / mCellBoxXYZ.mY);
                 k = MathEX.Code.floor2int(mAtomDataXYZ.get(aIdx, 2) / mCellBoxXYZ.mZ);
             }
-            cell(i  , j  , k  ).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i+1, j  , k  ).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i-1, j  , k  ).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i  , j+1, k  ).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i  , j-1, k  ).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i  , j  , k+1).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i  , j  , k-1).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i+1, j+1, k  ).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i+1, j-1, k  ).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i-1, j+1, k  ).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i-1, j-1, k  ).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i  , j+1, k+1).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i  , j+1, k-1).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i  , j-1, k+1).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i  , j-1, k-1).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i+1, j  , k+1).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i-1, j  , k+1).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i+1, j  , k-1).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i-1, j  , k-1).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i+1, j+1, k+1).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i+1, j+1, k-1).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i+1, j-1, k+1).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i+1, j-1, k-1).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i-1, j+1, k+1).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i-1, j+1, k-1).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i-1, j-1, k+1).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
-            cell(i-1, j-1, k-1).forEach(aIdx, aHalf, aRegion, mAtomDataXYZ, aXYZIdxDo);
+            cell(i  , j  , k  ).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i+1, j  , k  ).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i-1, j  , k  ).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i  , j+1, k  ).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i  , j-1, k  ).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i  , j  , k+1).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i  , j  , k-1).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i+1, j+1, k  ).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i+1, j-1, k  ).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i-1, j+1, k  ).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i-1, j-1, k  ).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i  , j+1, k+1).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i  , j+1, k-1).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i  , j-1, k+1).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i  , j-1, k-1).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i+1, j  , k+1).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i-1, j  , k+1).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i+1, j  , k-1).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i-1, j  , k-1).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i+1, j+1, k+1).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i+1, j+1, k-1).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i+1, j-1, k+1).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i+1, j-1, k-1).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i-1, j+1, k+1).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i-1, j+1, k-1).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i-1, j-1, k+1).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
+            cell(i-1, j-1, k-1).forEach(aIdx, aHalf, aRegion, mCellXYZ, mCellOrder, aXYZIdxDo);
         }
         @Override public void forEachCell(IntConsumer aIdxDo) {
-            for (Cell tCell : mCells) tCell.forEach(aIdxDo);
+            if (mCellOrder == null) {
+                for (Cell tCell : mCells) tCell.forEach(aIdxDo);
+            } else {
+                final int[] tOrder = mCellOrder;
+                for (Cell tCell : mCells) tCell.forEach(pos -> aIdxDo.accept(tOrder[pos]));
+            }
         }
         @Override public void forEachMirrorCell(IXYZIdxDo aXYZIdxDo) {
             // 先遍历 6 个面，这里的顺序不是最优的，不过不重要
-            for (int j = 0; j < mSizeY; ++j) for (int i = 0; i < mSizeX; ++i) cell(i     , j     , -1    ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            for (int k = 0; k < mSizeZ; ++k) for (int i = 0; i < mSizeX; ++i) cell(i     , -1    , k     ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            for (int k = 0; k < mSizeZ; ++k) for (int j = 0; j < mSizeY; ++j) cell(-1    , j     , k     ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            for (int j = 0; j < mSizeY; ++j) for (int i = 0; i < mSizeX; ++i) cell(i     , j     , mSizeZ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            for (int k = 0; k < mSizeZ; ++k) for (int i = 0; i < mSizeX; ++i) cell(i     , mSizeY, k     ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            for (int k = 0; k < mSizeZ; ++k) for (int j = 0; j < mSizeY; ++j) cell(mSizeX, j     , k     ).forEach(mAtomDataXYZ, aXYZIdxDo);
+            for (int j = 0; j < mSizeY; ++j) for (int i = 0; i < mSizeX; ++i) cell(i     , j     , -1    ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            for (int k = 0; k < mSizeZ; ++k) for (int i = 0; i < mSizeX; ++i) cell(i     , -1    , k     ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            for (int k = 0; k < mSizeZ; ++k) for (int j = 0; j < mSizeY; ++j) cell(-1    , j     , k     ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            for (int j = 0; j < mSizeY; ++j) for (int i = 0; i < mSizeX; ++i) cell(i     , j     , mSizeZ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            for (int k = 0; k < mSizeZ; ++k) for (int i = 0; i < mSizeX; ++i) cell(i     , mSizeY, k     ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            for (int k = 0; k < mSizeZ; ++k) for (int j = 0; j < mSizeY; ++j) cell(mSizeX, j     , k     ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
             // 再按照这个顺序先遍历 8 个棱，会包含所有顶点
-            for (int i = -1; i < mSizeX; ++i) cell(i     , -1    , -1    ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            for (int j = -1; j < mSizeY; ++j) cell(mSizeX, j     , -1    ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            for (int i = mSizeX; i >= 0; --i) cell(i     , mSizeY, -1    ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            for (int k = -1; k < mSizeZ; ++k) cell(-1    , mSizeY, k     ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            for (int i = -1; i < mSizeX; ++i) cell(i     , mSizeY, mSizeZ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            for (int j = mSizeY; j >= 0; --j) cell(mSizeX, j     , mSizeZ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            for (int i = mSizeX; i >= 0; --i) cell(i     , -1    , mSizeZ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            for (int k = mSizeZ; k >= 0; --k) cell(-1    , -1    , k     ).forEach(mAtomDataXYZ, aXYZIdxDo);
+            for (int i = -1; i < mSizeX; ++i) cell(i     , -1    , -1    ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            for (int j = -1; j < mSizeY; ++j) cell(mSizeX, j     , -1    ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            for (int i = mSizeX; i >= 0; --i) cell(i     , mSizeY, -1    ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            for (int k = -1; k < mSizeZ; ++k) cell(-1    , mSizeY, k     ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            for (int i = -1; i < mSizeX; ++i) cell(i     , mSizeY, mSizeZ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            for (int j = mSizeY; j >= 0; --j) cell(mSizeX, j     , mSizeZ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            for (int i = mSizeX; i >= 0; --i) cell(i     , -1    , mSizeZ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            for (int k = mSizeZ; k >= 0; --k) cell(-1    , -1    , k     ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
             // 最后遍历 4 个剩下的棱
-            for (int j =  0; j < mSizeY; ++j) cell(-1    , j     , -1    ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            for (int j =  0; j < mSizeY; ++j) cell(-1    , j     , mSizeZ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            for (int k =  0; k < mSizeZ; ++k) cell(mSizeX, -1    , k     ).forEach(mAtomDataXYZ, aXYZIdxDo);
-            for (int k =  0; k < mSizeZ; ++k) cell(mSizeX, mSizeY, k     ).forEach(mAtomDataXYZ, aXYZIdxDo);
+            for (int j =  0; j < mSizeY; ++j) cell(-1    , j     , -1    ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            for (int j =  0; j < mSizeY; ++j) cell(-1    , j     , mSizeZ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            for (int k =  0; k < mSizeZ; ++k) cell(mSizeX, -1    , k     ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
+            for (int k =  0; k < mSizeZ; ++k) cell(mSizeX, mSizeY, k     ).forEach(mCellXYZ, mCellOrder, aXYZIdxDo);
         }
     }
     
@@ -915,11 +1043,241 @@ public class NeighborListGetter {
     }
     
     
+    /// Verlet 近邻列表相关
+    /**
+     * 缓存的 Verlet 近邻列表，对每个原子存储截断半径 {@code rmax + skin} 内的候选近邻，
+     * 内部采用 CSR 格式存储，并且对每个候选近邻存储对应的镜像偏移量；
+     * 当任意原子相对构建时的位移超过 {@code skin/2} 时才会重新构建
+     */
+    private final class VerletList {
+        private final double mRMax, mRCut;
+        private final int[] mOffsets = new int[mAtomNum+1];
+        private final IntList mIndices = new IntList();
+        private final DoubleList mShiftX = new DoubleList(), mShiftY = new DoubleList(), mShiftZ = new DoubleList();
+        /** 构建时的参考位置，以及由于周期边界条件导致的坐标跳跃的修正值，用于得到连续的位移 */
+        private final double[] mRefXYZ = new double[mAtomNum*3];
+        private final double[] mWrapXYZ = new double[mAtomNum*3];
+        private volatile boolean mValid = false;
+        private VerletList(double aRMax) {mRMax = aRMax; mRCut = aRMax + mVerletSkin;}
+        
+        /** 重新构建近邻列表，需要在写入锁内调用 */
+        private void build_() {
+            final double tRCut2 = mRCut*mRCut;
+            final ILinkedCell tLinkedCell = getProperLinkedCell(mRCut);
+            mIndices.clear(); mShiftX.clear(); mShiftY.clear(); mShiftZ.clear();
+            for (int i = 0; i < mAtomNum; ++i) {
+                mOffsets[i] = mIndices.size();
+                final double cX = mAtomDataXYZ.get(i, 0), cY = mAtomDataXYZ.get(i, 1), cZ = mAtomDataXYZ.get(i, 2);
+                mRefXYZ[i*3] = cX; mRefXYZ[i*3+1] = cY; mRefXYZ[i*3+2] = cZ;
+                tLinkedCell.forEachNeighbor(i, false, null, (x, y, z, idx) -> {
+                    double tDx = x - cX;
+                    double tDy = y - cY;
+                    double tDz = z - cZ;
+                    if (tDx*tDx + tDy*tDy + tDz*tDz < tRCut2) {
+                        mIndices.add(idx);
+                        // 只存储镜像的偏移量，从而在原子移动后依旧可以直接使用
+                        mShiftX.add(x - mAtomDataXYZ.get(idx, 0));
+                        mShiftY.add(y - mAtomDataXYZ.get(idx, 1));
+                        mShiftZ.add(z - mAtomDataXYZ.get(idx, 2));
+                    }
+                });
+            }
+            mOffsets[mAtomNum] = mIndices.size();
+            Arrays.fill(mWrapXYZ, 0.0);
+            mValid = true;
+        }
+        
+        void updateAtomXYZ_(int aIdx, double oX, double oY, double oZ, XYZ rBuf) {
+            if (!mValid) return;
+            final int tShift = aIdx*3;
+            double tX = mAtomDataXYZ.get(aIdx, 0);
+            double tY = mAtomDataXYZ.get(aIdx, 1);
+            double tZ = mAtomDataXYZ.get(aIdx, 2);
+            // 获取考虑周期边界条件后实际的移动量，从而记录坐标跳跃的修正值
+            rBuf.setXYZ(tX-oX, tY-oY, tZ-oZ);
+            mBox.toDirect(rBuf);
+            rBuf.setXYZ(rBuf.mX - MathEX.Code.round2int(rBuf.mX), rBuf.mY - MathEX.Code.round2int(rBuf.mY), rBuf.mZ - MathEX.Code.round2int(rBuf.mZ));
+            mBox.toCartesian(rBuf);
+            mWrapXYZ[tShift  ] += oX + rBuf.mX - tX;
+            mWrapXYZ[tShift+1] += oY + rBuf.mY - tY;
+            mWrapXYZ[tShift+2] += oZ + rBuf.mZ - tZ;
+            // 检测相对构建时的位移是否超过 skin 的一半
+            double tDx = tX + mWrapXYZ[tShift  ] - mRefXYZ[tShift  ];
+            double tDy = tY + mWrapXYZ[tShift+1] - mRefXYZ[tShift+1];
+            double tDz = tZ + mWrapXYZ[tShift+2] - mRefXYZ[tShift+2];
+            double tHalfSkin = mVerletSkin*0.5;
+            if (tDx*tDx + tDy*tDy + tDz*tDz > tHalfSkin*tHalfSkin) mValid = false;
+        }
+        
+        /** 遍历近邻，half 以及区域限制的逻辑和 {@link MirrorCell} 保持一致 */
+        void forEachNeighbor(int aIdx, boolean aHalf, boolean aCheck, @Nullable IIndexFilter aRegion, IDxyzIdxDo aDxyzIdxDo) {
+            final int[] tIndices = mIndices.internalData();
+            final double[] tShiftX = mShiftX.internalData(), tShiftY = mShiftY.internalData(), tShiftZ = mShiftZ.internalData();
+            final double tRMax2 = mRMax*mRMax;
+            final double cX = mAtomDataXYZ.get(aIdx, 0) + mWrapXYZ[aIdx*3  ];
+            final double cY = mAtomDataXYZ.get(aIdx, 1) + mWrapXYZ[aIdx*3+1];
+            final double cZ = mAtomDataXYZ.get(aIdx, 2) + mWrapXYZ[aIdx*3+2];
+            final int tEnd = mOffsets[aIdx+1];
+            for (int k = mOffsets[aIdx]; k < tEnd; ++k) {
+                final int tIdx = tIndices[k];
+                final double tSX = tShiftX[k], tSY = tShiftY[k], tSZ = tShiftZ[k];
+                if (aHalf && !(tIdx < aIdx || (aRegion!=null && !aRegion.accept(tIdx)))) {
+                    // 使用这个方法只遍历一半的镜像相等 idx 对象
+                    if (tIdx != aIdx) continue;
+                    if (!((tSX>0.0) || (tSX==0.0 && (tSY>0.0 || (tSY==0.0 && tSZ>0.0))))) continue;
+                }
+                double tDx = mAtomDataXYZ.get(tIdx, 0) + mWrapXYZ[tIdx*3  ] + tSX - cX;
+                double tDy = mAtomDataXYZ.get(tIdx, 1) + mWrapXYZ[tIdx*3+1] + tSY - cY;
+                double tDz = mAtomDataXYZ.get(tIdx, 2) + mWrapXYZ[tIdx*3+2] + tSZ - cZ;
+                if (!aCheck || tDx*tDx + tDy*tDy + tDz*tDz < tRMax2) aDxyzIdxDo.run(tDx, tDy, tDz, tIdx);
+            }
+        }
+    }
+    
+    /** 记录所有的 Verlet 近邻列表，使用 rmax 作为 key，一般只会存在很少几个 */
+    private final Map<Double, VerletList> mVerletLists = new HashMap<>();
+    private double mVerletSkin = 0.0;
+    
+    /**
+     * 设置 Verlet 近邻列表的 skin 长度，设置为大于 0 的值后，
+     * 使用欧几里得距离的近邻遍历（不限制最近邻数目时）会改为使用缓存的 Verlet 近邻列表，
+     * 只有当原子通过 {@link AtomicParameterCalculator#setAtomXYZ} 移动的距离超过
+     * {@code skin/2} 时才会重新构建，对于 MC 或者结构优化等原子位置缓慢变化的情况可以大幅减少近邻列表开销
+     * <p>
+     * 设置为 {@code 0} 则关闭 Verlet 近邻列表（默认行为）
+     * <p>
+     * 注意此方法线程不安全
+     *
+     * @param aSkin 需要设置的 skin 长度
+     * @return 自身方便链式调用
+     */
+    public NeighborListGetter setVerletSkin(double aSkin) {
+        if (aSkin < 0.0) throw new IllegalArgumentException("Verlet skin MUST be non-negative: " + aSkin);
+        mWL.lock();
+        mVerletLists.clear();
+        mVerletSkin = aSkin;
+        mWL.unlock();
+        return this;
+    }
+    /** @return 当前 Verlet 近邻列表的 skin 长度，{@code 0} 表示没有开启 */
+    public double verletSkin() {
+        return mVerletSkin;
+    }
+    
+    /** 空间排序后的坐标以及排序位置和原子下标之间的映射，没有开启空间排序时都为 null */
+    private @Nullable IMatrix mSortedXYZ = null;
+    private int @Nullable[] mSortOrder = null, mSortRank = null;
+    /** 空间排序使用的 Morton 码每个方向的位数 */
+    private final static int MORTON_BITS = 10;
+    
+    /**
+     * 设置是否开启空间排序，开启后会将原子坐标按照 Morton 序（Z 序空间填充曲线）重新排列到一个连续的缓冲区中，
+     * cell 内部存储排序后的位置，从而近邻遍历时空间相邻的原子在内存中也是相邻的，
+     * 对于原子顺序杂乱的大体系可以明显减少随机访存
+     * <p>
+     * 排序对外部完全透明，遍历时得到的依旧是原始的原子下标；
+     * 后续通过 {@link AtomicParameterCalculator#setAtomXYZ} 修改原子位置时会同步更新排序后的坐标，
+     * 但不会重新排序
+     * <p>
+     * 注意此方法线程不安全
+     *
+     * @param aFlag 是否开启空间排序，默认关闭
+     * @return 自身方便链式调用
+     */
+    public NeighborListGetter setSpatialSort(boolean aFlag) {
+        if (mDead) throw new RuntimeException("This NeighborListGetter is dead");
+        mWL.lock();
+        try {
+            // 已有的 LinkedCell 存储的位置会失效，需要清空
+            mLinkedCells.clear();
+            if (!aFlag) {
+                mSortedXYZ = null; mSortOrder = null; mSortRank = null;
+                return this;
+            }
+            spatialSort_();
+            return this;
+        } finally {
+            mWL.unlock();
+        }
+    }
+    /** 根据当前坐标重新进行空间排序，会尽量复用已有的内存，需要在写入锁内调用 */
+    private void spatialSort_() {
+        // 计算每个原子的 Morton 码，和下标打包到 long 中直接排序
+        final int tGridSize = 1 << MORTON_BITS;
+        final long[] tKeys = new long[mAtomNum];
+        XYZ tBuf = new XYZ();
+        for (int idx = 0; idx < mAtomNum; ++idx) {
+            tBuf.setXYZ(mAtomDataXYZ.get(idx, 0), mAtomDataXYZ.get(idx, 1), mAtomDataXYZ.get(idx, 2));
+            if (mBox.isPrism()) {
+                mBox.toDirect(tBuf);
+            } else {
+                tBuf.div2this(mBoxXYZ.mX, mBoxXYZ.mY, mBoxXYZ.mZ);
+            }
+            int i = MathEX.Code.toRange(0, tGridSize-1, MathEX.Code.floor2int(tBuf.mX * tGridSize));
+            int j = MathEX.Code.toRange(0, tGridSize-1, MathEX.Code.floor2int(tBuf.mY * tGridSize));
+            int k = MathEX.Code.toRange(0, tGridSize-1, MathEX.Code.floor2int(tBuf.mZ * tGridSize));
+            tKeys[idx] = (mortonCode_(i, j, k) << 32) | idx;
+        }
+        Arrays.sort(tKeys);
+        // 构造排序后的坐标
+        final int[] rOrder = mSortOrder!=null ? mSortOrder : new int[mAtomNum];
+        final int[] rRank = mSortRank!=null ? mSortRank : new int[mAtomNum];
+        final IMatrix rSortedXYZ = mSortedXYZ!=null ? mSortedXYZ : new RowMatrix(mAtomNum, 3, new double[mAtomNum*3]);
+        for (int pos = 0; pos < mAtomNum; ++pos) {
+            int idx = (int)(tKeys[pos] & 0xFFFFFFFFL);
+            rOrder[pos] = idx;
+            rRank[idx] = pos;
+            rSortedXYZ.set(pos, 0, mAtomDataXYZ.get(idx, 0));
+            rSortedXYZ.set(pos, 1, mAtomDataXYZ.get(idx, 1));
+            rSortedXYZ.set(pos, 2, mAtomDataXYZ.get(idx, 2));
+        }
+        mSortedXYZ = rSortedXYZ;
+        mSortOrder = rOrder; mSortRank = rRank;
+    }
+    /** @return 是否开启了空间排序 */
+    public boolean spatialSort() {
+        return mSortOrder != null;
+    }
+    /** 将三个方向各 {@link #MORTON_BITS} 位的整数交错得到 Morton 码 */
+    private static long mortonCode_(int aI, int aJ, int aK) {
+        long rCode = 0L;
+        for (int b = 0; b < MORTON_BITS; ++b) {
+            rCode |= ((long)((aI>>b)&1)) << (3*b);
+            rCode |= ((long)((aJ>>b)&1)) << (3*b+1);
+            rCode |= ((long)((aK>>b)&1)) << (3*b+2);
+        }
+        return rCode;
+    }
+    
+    /**
+     * 获取 aRMax 对应的合法的 Verlet 近邻列表，如果不存在或者已经失效会自动重新构建
+     * <p> 线程安全 </p>
+     */
+    VerletList getValidVerletList(double aRMax) {
+        mRL.lock();
+        VerletList tVerletList = mVerletLists.get(aRMax);
+        mRL.unlock();
+        if (tVerletList!=null && tVerletList.mValid) return tVerletList;
+        mWL.lock();
+        try {
+            // 获取到写入锁后可能之前已经被修改，此时需要再次重新检测是否合适（并行特有的两次检测）
+            tVerletList = mVerletLists.get(aRMax);
+            if (tVerletList == null) {
+                tVerletList = new VerletList(aRMax);
+                mVerletLists.put(aRMax, tVerletList);
+            }
+            if (!tVerletList.mValid) tVerletList.build_();
+            return tVerletList;
+        } finally {
+            mWL.unlock();
+        }
+    }
+    
     
     // 提供一个手动关闭的方法
     private volatile boolean mDead = false;
     public void close() {
-        mDead = true; mLinkedCells.clear(); mAtomDataXYZ = null;
+        mDead = true; mLinkedCells.clear(); mVerletLists.clear(); mAtomDataXYZ = null; mSortedXYZ = null; mSortOrder = null; mSortRank = null;
         // 归还 Cells 的内存到缓存，这种写法保证永远能获取到 mAllCellsAlloc 时都是合法的
         // 只有相同线程关闭才会归还
         if (Thread.currentThread() == mInitThread) {
@@ -949,7 +1307,13 @@ public class NeighborListGetter {
      * @param aRMax 这个 LinkedCell 需要考虑的最大半径
      * @return 合适的 LinkedCell
      */
-    ILinkedCell getProperLinkedCell(double aRMax) {
+    ILinkedCell getProperLinkedCell(double aRMax) {return getProperLinkedCell(aRMax, null);}
+    /**
+     * 获取覆盖 aRMax 的 LinkedCell，如果需要创建则会使用输入的线程池并行构建
+     * <p>
+     * 注意不能在此线程池的 parfor 内部调用
+     */
+    ILinkedCell getProperLinkedCell(double aRMax, @Nullable ParforThreadPool aPool) {
         // 获取需要的最小的 cell 长度倍率
         int tMinMulti = aRMax>mMinBox ? MathEX.Code.ceil2int(aRMax/mMinBox) : -MathEX.Code.floor2int(mMinBox/aRMax);
         // 尝试获取 LinkedCell
@@ -980,7 +1344,7 @@ public class NeighborListGetter {
                 tLinkedCell = new SingleLinkedCell();
                 mLinkedCells.put(tMinMulti, tLinkedCell);
             } else {
-                tLinkedCell = new LinkedCell(tMinMulti, aSizeX, aSizeY, aSizeZ);
+                tLinkedCell = new LinkedCell(tMinMulti, aSizeX, aSizeY, aSizeZ, aPool);
                 mLinkedCells.put(tMinMulti, tLinkedCell);
             }
         } else {
@@ -1001,6 +1365,28 @@ public class NeighborListGetter {
     }
     
     
+    /**
+     * 在 parfor 外部预先构建半径 aRMax 需要的 LinkedCell，此时可以使用线程池来并行构建；
+     * 之后 parfor 内部的近邻遍历会直接使用已经构建好的 LinkedCell
+     * <p>
+     * 注意不能在此线程池的 parfor 内部调用
+     */
+    @ApiStatus.Internal void prepare_(double aRMax, @Nullable ParforThreadPool aPool) {prepare_(aRMax, -1, aPool);}
+    /**
+     * 在 parfor 外部预先构建半径 aRMax 以及最近邻数目 aNnn 的遍历需要的近邻结构；
+     * 限制最近邻数目（{@code aNnn > 0}）的遍历总是使用 LinkedCell，因此只在不限制时才会构建 Verlet 近邻列表
+     */
+    @ApiStatus.Internal void prepare_(double aRMax, int aNnn, @Nullable ParforThreadPool aPool) {
+        if (mDead) throw new RuntimeException("This NeighborListGetter is dead");
+        // 开启 Verlet 近邻列表时截断半径的遍历实际使用的是 Verlet 近邻列表
+        if (mVerletSkin > 0.0 && aNnn <= 0) {
+            getValidVerletList(aRMax);
+        } else {
+            getProperLinkedCell(aRMax, aPool);
+        }
+    }
+    
+    
     @FunctionalInterface public interface IDxyzIdxDo {void run(double aDx, double aDy, double aDz, int aIdx);}
     @FunctionalInterface public interface IXYZIdxDo {void run(double aX, double aY, double aZ, int aIdx);}
     
@@ -1017,6 +1403,11 @@ public class NeighborListGetter {
      */
      void forEachNeighbor_(final int aIDX, final double aRMax, boolean aHalf, boolean aMHT, boolean aCheck, @Nullable IIndexFilter aRegion, final IDxyzIdxDo aDxyzIdxDo) {
         if (mDead) throw new RuntimeException("This NeighborListGetter is dead");
+        // 开启了 Verlet 近邻列表时直接使用缓存的近邻列表
+        if (mVerletSkin > 0.0 && !aMHT) {
+            getValidVerletList(aRMax).forEachNeighbor(aIDX, aHalf, aCheck, aRegion, aDxyzIdxDo);
+            return;
+        }
         
         final double cX = mAtomDataXYZ.get(aIDX, 0), cY = mAtomDataXYZ.get(aIDX, 1), cZ = mAtomDataXYZ.get(aIDX, 2);
         if (!aCheck) {
@@ -1097,61 +1488,114 @@ public class NeighborListGetter {
         }
     }
     
-    /** 使用这个统一的类来管理，可以限制最大元素数目，并专门处理距离完全相同的情况不会抹去 */
-    private static class NearestNeighborList {
-        private static class DxyzIdx {
-            final double mDx, mDy, mDz;
-            final int mIdx;
-            private final double mDis;
-            private DxyzIdx(double aDis, double aDx, double aDy, double aDz, int aIdx) {
-                mDis = aDis;
-                mDx = aDx; mDy = aDy; mDz = aDz;
-                mIdx = aIdx;
+    /**
+     * 使用这个统一的类来管理，可以限制最大元素数目，并专门处理距离完全相同的情况不会抹去；
+     * 内部使用固定容量的原始类型数组实现的最大堆，堆顶为当前最远的近邻，从而不需要为每个候选近邻创建对象
+     * <p>
+     * 对于距离完全相同的情况，后加入的认为更近（和之前使用 LinkedList 插入到相同距离之前的行为一致），
+     * 因此距离相同时会优先移除先加入的近邻，最后遍历的顺序也是距离从小到大、相同距离时后加入的在前
+     * <p>
+     * 通过 {@link #sNNCache} 在每个线程中重复利用
+     */
+    private static final class NearestNeighborList {
+        private double[] mDis = ZL_DOUBLE, mDx = ZL_DOUBLE, mDy = ZL_DOUBLE, mDz = ZL_DOUBLE;
+        private int[] mIdx = ZL_INT, mSeq = ZL_INT;
+        private int mNnn = 0, mSize = 0, mNextSeq = 0;
+        
+        /** 重新初始化，会在需要时扩容 */
+        NearestNeighborList init(int aNnn) {
+            if (mDis.length < aNnn) {
+                mDis = new double[aNnn]; mDx = new double[aNnn]; mDy = new double[aNnn]; mDz = new double[aNnn];
+                mIdx = new int[aNnn]; mSeq = new int[aNnn];
+            }
+            mNnn = aNnn; mSize = 0; mNextSeq = 0;
+            return this;
+        }
+        
+        /** 按照 (距离, 加入顺序的反序) 比较，即 i 是否比 j 更远 */
+        private boolean farther_(int i, int j) {
+            return mDis[i] > mDis[j] || (mDis[i] == mDis[j] && mSeq[i] < mSeq[j]);
+        }
+        private void swap_(int i, int j) {
+            double tDis = mDis[i]; mDis[i] = mDis[j]; mDis[j] = tDis;
+            double tDx = mDx[i]; mDx[i] = mDx[j]; mDx[j] = tDx;
+            double tDy = mDy[i]; mDy[i] = mDy[j]; mDy[j] = tDy;
+            double tDz = mDz[i]; mDz[i] = mDz[j]; mDz[j] = tDz;
+            int tIdx = mIdx[i]; mIdx[i] = mIdx[j]; mIdx[j] = tIdx;
+            int tSeq = mSeq[i]; mSeq[i] = mSeq[j]; mSeq[j] = tSeq;
+        }
+        private void set_(int i, double aDis, double aDx, double aDy, double aDz, int aIdx, int aSeq) {
+            mDis[i] = aDis; mDx[i] = aDx; mDy[i] = aDy; mDz[i] = aDz; mIdx[i] = aIdx; mSeq[i] = aSeq;
+        }
+        private void siftUp_(int i) {
+            while (i > 0) {
+                int p = (i-1) >> 1;
+                if (!farther_(i, p)) break;
+                swap_(i, p);
+                i = p;
+            }
+        }
+        private void siftDown_(int i, int aSize) {
+            while (true) {
+                int l = i+i+1;
+                if (l >= aSize) break;
+                int r = l+1;
+                int c = (r < aSize && farther_(r, l)) ? r : l;
+                if (!farther_(c, i)) break;
+                swap_(i, c);
+                i = c;
             }
         }
-        /** 直接使用 LinkedList 存储来避免距离完全相同的情况 */
-        private final LinkedList<DxyzIdx> mNNList = new LinkedList<>();
-        private final int mNnn;
-        NearestNeighborList(int aNnn) {mNnn = aNnn;}
         
         void put(double aDis, double aDx, double aDy, double aDz, int aIdx) {
-            // 获取迭代器
-            ListIterator<DxyzIdx> li = mNNList.listIterator();
-            // 跳转到距离大于或等于 aDis 之前
-            while (li.hasNext()) {
-                double tDis = li.next().mDis;
-                if (tDis >= aDis) {
-                    li.previous(); // 回到这个位置之前，在前面插入
-                    break;
-                }
+            final int tSeq = mNextSeq++;
+            if (mSize < mNnn) {
+                set_(mSize, aDis, aDx, aDy, aDz, aIdx, tSeq);
+                siftUp_(mSize);
+                ++mSize;
+                return;
+            }
+            // 已满时只有比堆顶更近才会替换，距离相同时由于后加入的更近因此也需要替换
+            if (aDis > mDis[0]) return;
+            set_(0, aDis, aDx, aDy, aDz, aIdx, tSeq);
+            siftDown_(0, mSize);
+        }
+        
+        /** 原地堆排序，排序后按照从近到远排列 */
+        private void sort_() {
+            for (int tEnd = mSize-1; tEnd > 0; --tEnd) {
+                swap_(0, tEnd);
+                siftDown_(0, tEnd);
             }
-            // 然后直接进行添加即可
-            li.add(new DxyzIdx(aDis, aDx, aDy, aDz, aIdx));
-            // 如果容量超过限制，则移除最后的元素
-            if (mNNList.size() > mNnn) mNNList.removeLast();
         }
         
         /** 直接使用 for-each 的形式来遍历，并且全部交给这里来实现避免多重转发 */
         void forEachNeighbor(int aIDX, boolean aHalf, @Nullable IIndexFilter aRegion, IDxyzIdxDo aDxyzIdxDo) {
-            for (DxyzIdx tDxyzIdx : mNNList) {
+            sort_();
+            final int tSize = mSize;
+            for (int i = 0; i < tSize; ++i) {
+                int tIDX = mIdx[i];
                 if (aHalf) {
-                    int tIDX = tDxyzIdx.mIdx;
                     // 这里对 idx 相同的情况简单处理，因为精确处理较为麻烦且即使精确处理结果也是不对的
                     // 由于有区域限制，因此一半优化时不在区域内的也需要进行统计
                     if (tIDX <= aIDX || (aRegion!=null && !aRegion.accept(tIDX))) {
-                        aDxyzIdxDo.run(tDxyzIdx.mDx, tDxyzIdx.mDy, tDxyzIdx.mDz, tIDX);
+                        aDxyzIdxDo.run(mDx[i], mDy[i], mDz[i], tIDX);
                     }
                 } else {
-                    aDxyzIdxDo.run(tDxyzIdx.mDx, tDxyzIdx.mDy, tDxyzIdx.mDz, tDxyzIdx.mIdx);
+                    aDxyzIdxDo.run(mDx[i], mDy[i], mDz[i], tIDX);
                 }
             }
         }
         void forEachNeighbor(IDxyzIdxDo aDxyzIdxDo) {
-            for (DxyzIdx tDxyzIdx : mNNList) {
-                aDxyzIdxDo.run(tDxyzIdx.mDx, tDxyzIdx.mDy, tDxyzIdx.mDz, tDxyzIdx.mIdx);
+            sort_();
+            final int tSize = mSize;
+            for (int i = 0; i < tSize; ++i) {
+                aDxyzIdxDo.run(mDx[i], mDy[i], mDz[i], mIdx[i]);
             }
         }
     }
+    /** 直接使用 ObjectCachePool 避免重复创建 NearestNeighborList */
+    private final static IObjectPool<NearestNeighborList> sNNCache = ThreadLocalObjectCachePool.withInitial(NearestNeighborList::new);
     
     /**
      * 现在统一改为 for-each 的形式，再提供两个通用方法来限制最大近邻数目；
@@ -1180,7 +1624,7 @@ public class NeighborListGetter {
         if (aHalf) UT.Code.warning("Half will cause Unexpected Results when Nnn>0, although it remains open here to avoid excessive deviation in the results");
         
         // 先遍历所有经历统计出最近的列表
-        final NearestNeighborList rNN = new NearestNeighborList(aNnn);
+        final NearestNeighborList rNN = sNNCache.getObject().init(aNnn);
         final double cX = mAtomDataXYZ.get(aIDX, 0), cY = mAtomDataXYZ.get(aIDX, 1), cZ = mAtomDataXYZ.get(aIDX, 2);
         // 这里需要先强制关闭 half 来获取限制最近邻数目的列表
         if (aMHT) {
@@ -1205,6 +1649,7 @@ public class NeighborListGetter {
         }
         // 然后直接遍历得到的近邻列表，这里再手动处理 half 的情况
         rNN.forEachNeighbor(aIDX, aHalf, aRegion, aDxyzIdxDo);
+        sNNCache.returnObject(rNN);
     }
     void forEachNeighbor_(int aIDX, double aRMax, int aNnn, boolean aHalf, boolean aMHT, boolean aCheck, IDxyzIdxDo aDxyzIdxDo) {
         forEachNeighbor_(aIDX, aRMax, aNnn, aHalf, aMHT, aCheck, null, aDxyzIdxDo);
@@ -1236,7 +1681,7 @@ public class NeighborListGetter {
         }
         
         // 先遍历所有经历统计出最近的列表
-        final NearestNeighborList rNN = new NearestNeighborList(aNnn);
+        final NearestNeighborList rNN = sNNCache.getObject().init(aNnn);
         if (aMHT) {
             getProperLinkedCell(aRMax).forEachNeighbor(aX, aY, aZ, (x, y, z, idx) -> {
                 double tDx = x - aX;
@@ -1257,6 +1702,7 @@ public class NeighborListGetter {
         }
         // 然后直接遍历得到的近邻列表
         rNN.forEachNeighbor(aDxyzIdxDo);
+        sNNCache.returnObject(rNN);
     }
     
     
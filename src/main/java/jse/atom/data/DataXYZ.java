@@ -1068,7 +1068,14 @@ public class DataXYZ extends AbstractSettableAtomData {
      * @throws IOException 如果读取失败
      * @throws FileEndException 在发现文件似乎不完整时
      */
-    public static DataXYZ read(BufferedReader aReader) throws IOException {
+    public static DataXYZ read(BufferedReader aReader) throws IOException {return read_(aReader, null, null);}
+    /**
+     * 只读取需要的属性和参数，其余的属性列会直接跳过，其余的参数不会进行转换；
+     * 原子种类 {@code species} 以及坐标 {@code pos} 总是会读取
+     * @param aPropertyKeys 需要读取的属性，{@code null} 表示全部读取
+     * @param aParameterKeys 需要读取的参数，{@code null} 表示全部读取
+     */
+    static DataXYZ read_(BufferedReader aReader, @Nullable Set<String> aPropertyKeys, @Nullable Set<String> aParameterKeys) throws IOException {
         String tLine;
         String[] tTokens;
         
@@ -1085,7 +1092,7 @@ public class DataXYZ extends AbstractSettableAtomData {
         tLine = aReader.readLine(); if (tLine==null) {IO.fileEnd(); return null;}
         aComment = tLine;
         // 对于扩展的 XYZ 格式，comment 会包含其余重要信息，需要解析 comment
-        @Nullable String tParseErr = parseParameters_(aComment, aParameters);
+        @Nullable String tParseErr = parseParameters_(aComment, aParameters, aParameterKeys);
         // 只要有 Properties 属性就认为是扩展的 XYZ，此时有任何解析错误就抛出错误
         if ((aParameters.containsKey("Properties") || aParameters.containsKey("properties")) && tParseErr!=null) {
             if (Conf.STRICT_IO) throw new IllegalArgumentException(tParseErr);
@@ -1140,6 +1147,11 @@ public class DataXYZ extends AbstractSettableAtomData {
                     String tKey = tPropertiesArr[i];
                     String tType = tPropertiesArr[i+1];
                     int tCols = Integer.parseInt(tPropertiesArr[i+2]);
+                    // 不需要的属性只记录列数用于跳过
+                    if (aPropertyKeys!=null && !aPropertyKeys.contains(tKey) && !tKey.equals("species") && !tKey.equals("pos")) {
+                        aProperties.put(tKey, tCols);
+                        continue;
+                    }
                     switch (tType) {
                     case "S": {
                         aProperties.put(tKey, tCols==1 ? new String[aNumAtoms] : new String[aNumAtoms][tCols]);
@@ -1173,6 +1185,9 @@ public class DataXYZ extends AbstractSettableAtomData {
             // 基于 aProperties 的顺序解析，现在可以统一解析语法
             int j = 0;
             for (Object tValue : aProperties.values()) {
+                if (tValue instanceof Integer) {
+                    j += (Integer)tValue;
+                } else
                 if (tValue instanceof String[]) {
                     ((String[])tValue)[i] = tTokens[j];
                     ++j;
@@ -1237,6 +1252,7 @@ public class DataXYZ extends AbstractSettableAtomData {
                 }
             }
         }
+        if (aPropertyKeys != null) aProperties.values().removeIf(v -> v instanceof Integer);
         // 返回 XYZ
         return new DataXYZ(aNumAtoms, aComment, aParameters, aProperties, aBox);
     }
@@ -1247,7 +1263,7 @@ public class DataXYZ extends AbstractSettableAtomData {
         }
         return aStr.substring(aBegin, tSize);
     }
-    static @Nullable String parseParameters_(String aComment, Map<String, Object> rParameters) {
+    static @Nullable String parseParameters_(String aComment, Map<String, Object> rParameters, @Nullable Set<String> aKeys) {
         aComment = aComment.trim();
         // 这个操作比较复杂，还需要处理双引号的情况
         final int tLen = aComment.length();
@@ -1270,7 +1286,16 @@ public class DataXYZ extends AbstractSettableAtomData {
                 tValueEnd = IO.Text.findBlankIndex(aComment, tValueBegin);
                 if (tValueEnd < 0) tValueEnd = tLen;
             }
-            Object tValue = aComment.substring(tValueBegin, tValueEnd);
+            String tKey = aComment.substring(tKeyBegin, tKeyEnd);
+            if (isInvalidKey(tKey)) return "Invalid key: "+tKey;
+            if (tHasQuote) ++tValueEnd;
+            // 不需要的参数直接跳过而不进行转换，模拟盒以及属性信息总是需要
+            if (aKeys!=null && !aKeys.contains(tKey) && !tKey.equalsIgnoreCase("Lattice") && !tKey.equalsIgnoreCase("Properties")) {
+                tKeyBegin = IO.Text.findNoBlankIndex(aComment, tValueEnd);
+                if (tKeyBegin < 0) break;
+                continue;
+            }
+            Object tValue = aComment.substring(tValueBegin, tHasQuote ? tValueEnd-1 : tValueEnd);
             if (!tHasQuote) {
                 if (tValue.equals("T")) {
                     tValue = true;
@@ -1282,10 +1307,7 @@ public class DataXYZ extends AbstractSettableAtomData {
                     if (tNumberValue != null) tValue = tNumberValue;
                 }
             }
-            String tKey = aComment.substring(tKeyBegin, tKeyEnd);
-            if (isInvalidKey(tKey)) return "Invalid key: "+tKey;
             rParameters.put(tKey, tValue);
-            if (tHasQuote) ++tValueEnd;
             tKeyBegin = IO.Text.findNoBlankIndex(aComment, tValueEnd);
             if (tKeyBegin < 0) break; // 注意这种情况是已经结束了
         }
@@ -6,6 +6,9 @@ import jse.code.IO;
 import jse.code.collection.AbstractListWrapper;
 import jse.code.collection.IListGetter;
 import jse.code.collection.NewCollections;
+import jse.code.io.AsyncFrameWriter;
+import jse.code.io.FramePipeline;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.Range;
 
 import java.io.BufferedReader;
@@ -400,6 +403,56 @@ public class DumpXYZ extends AbstractListWrapper<DataXYZ, IAtomData, DataXYZ> {
         return new DumpXYZ(rDumpXYZ);
     }
     
+    /**
+     * 流式逐帧读取多帧的 XYZ 文件，每次只会在内存中保留一帧，适合读取非常大的训练集数据
+     * @param aFilePath 多帧的 XYZ 文件路径，支持 {@code .gz} 压缩文件
+     * @return 流式读取器，使用完毕后需要关闭
+     * @throws IOException 如果无法打开文件
+     * @see StreamXYZ
+     */
+    public static StreamXYZ stream(String aFilePath) throws IOException {return StreamXYZ.open(aFilePath, null, null);}
+    /**
+     * 流式逐帧读取多帧的 XYZ 文件，并且只读取需要的属性和参数
+     * @param aFilePath 多帧的 XYZ 文件路径，支持 {@code .gz} 压缩文件
+     * @param aPropertyKeys 需要读取的属性，{@code species} 以及 {@code pos} 总是会读取，{@code null} 表示全部读取
+     * @param aParameterKeys 需要读取的参数，{@code null} 表示全部读取
+     * @return 流式读取器，使用完毕后需要关闭
+     * @throws IOException 如果无法打开文件
+     * @see StreamXYZ
+     */
+    public static StreamXYZ stream(String aFilePath, @Nullable Collection<String> aPropertyKeys, @Nullable Collection<String> aParameterKeys) throws IOException {
+        return StreamXYZ.open(aFilePath, aPropertyKeys, aParameterKeys);
+    }
+    /**
+     * 获取流水线读取多帧 XYZ 文件的读取器，单独的线程划分每一帧，
+     * 并在线程池中并行解析每一帧以及进行后续分析，结果会按照帧的顺序返回
+     *
+     * @param aFilePath 多帧的 XYZ 文件路径，支持 {@code .gz} 压缩文件
+     * @param aThreadNum 解析和分析使用的线程数
+     * @return 流水线读取器，只有在实际遍历时才会打开文件
+     * @see FramePipeline
+     */
+    public static FramePipeline<DataXYZ> pipeline(String aFilePath, @Range(from=1, to=Integer.MAX_VALUE) int aThreadNum) {
+        return new FramePipeline<>(aFilePath, DumpXYZ::splitter_, DataXYZ::read, aThreadNum);
+    }
+    /** 按照第一行的原子数来划分每一帧，不完整的帧会在解析时截断；帧之间以及文件结尾的空行会直接跳过 */
+    private static FramePipeline.ISplitter splitter_() {
+        return aReader -> {
+            String tLine = aReader.readLine();
+            while (tLine != null && tLine.trim().isEmpty()) tLine = aReader.readLine();
+            if (tLine == null) return null;
+            int tNumAtoms = Integer.parseInt(tLine.trim());
+            StringBuilder rFrame = new StringBuilder();
+            rFrame.append(tLine).append('\n');
+            for (int i = -1; i < tNumAtoms; ++i) {
+                tLine = aReader.readLine();
+                if (tLine == null) break;
+                rFrame.append(tLine).append('\n');
+            }
+            return rFrame.toString();
+        };
+    }
+    
     /**
      * 输出成标准的多帧的 XYZ 文件，会根据需要自动选择原始的 XYZ 格式或者扩展的 XYZ 格式
      * @param aFilePath 需要输出的路径
@@ -418,4 +471,16 @@ public class DumpXYZ extends AbstractListWrapper<DataXYZ, IAtomData, DataXYZ> {
     public void write(IO.IWriteln aWriteln) throws IOException {
         for (DataXYZ tDataXYZ : mList) tDataXYZ.write(aWriteln);
     }
+    /**
+     * 获取一个异步写入多帧 XYZ 文件的写入器，用于在模拟过程中逐帧输出而不阻塞计算线程
+     * @param aFilePath 需要输出的路径
+     * @param aSymbols 可选的元素符号信息，默认会自动通过输入原子数据获取
+     * @return 异步写入器，使用完毕后需要关闭
+     * @throws IOException 如果创建文件失败
+     * @see AsyncFrameWriter
+     */
+    public static AsyncFrameWriter<IAtomData> asyncWriter(String aFilePath, final String... aSymbols) throws IOException {
+        if (aSymbols==null || aSymbols.length==0) return new AsyncFrameWriter<>(aFilePath, (aAtomData, aIdx) -> DataXYZ.of(aAtomData)::write);
+        return new AsyncFrameWriter<>(aFilePath, (aAtomData, aIdx) -> DataXYZ.of(aAtomData, aSymbols)::write);
+    }
 }
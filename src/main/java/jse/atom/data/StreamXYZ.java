@@ -0,0 +1,100 @@
+package jse.atom.data;
+
+import jse.code.FileEndException;
+import jse.code.IO;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * 流式逐帧读取多帧的 XYZ 文件，每次只会在内存中保留一帧，
+ * 适合用于读取非常大的训练集数据，例如：
+ * <pre> {@code
+ * try (def stream = DumpXYZ.stream('train.xyz', ['forces'], ['energy'])) {
+ *     for (data in stream) trainer.addTrainData(data, data.parameter('energy'), data.property('forces'))
+ * }
+ * } </pre>
+ * <p>
+ * 可以指定只读取需要的属性（原子种类 {@code species} 以及坐标 {@code pos} 总是会读取），
+ * 其余属性的列会直接跳过；同样可以指定只读取需要的参数，其余的参数不会进行转换
+ * <p>
+ * 和 {@link DumpXYZ#read(String)} 一致，遇到文件不完整的情况会直接截断最后不完整的帧；
+ * 读取中的错误会包装成 {@link UncheckedIOException} 抛出
+ *
+ * @see DumpXYZ#stream(String, Collection, Collection)
+ * @author liqa
+ */
+public class StreamXYZ implements Iterator<DataXYZ>, Iterable<DataXYZ>, AutoCloseable {
+    private final BufferedReader mReader;
+    private final @Nullable Set<String> mPropertyKeys, mParameterKeys;
+    private @Nullable DataXYZ mNext = null;
+    private boolean mDone = false;
+    private int mIdx = 0;
+    
+    /**
+     * 从读取流创建流式读取器，读取结束或者关闭时会同时关闭 {@code aReader}
+     * @param aReader 需要读取的读取流
+     * @param aPropertyKeys 需要读取的属性，{@code null} 表示全部读取
+     * @param aParameterKeys 需要读取的参数，{@code null} 表示全部读取
+     */
+    public StreamXYZ(BufferedReader aReader, @Nullable Collection<String> aPropertyKeys, @Nullable Collection<String> aParameterKeys) {
+        mReader = aReader;
+        mPropertyKeys = aPropertyKeys==null ? null : new HashSet<>(aPropertyKeys);
+        mParameterKeys = aParameterKeys==null ? null : new HashSet<>(aParameterKeys);
+    }
+    public StreamXYZ(BufferedReader aReader) {this(aReader, null, null);}
+    /**
+     * 打开指定路径的多帧 XYZ 文件
+     * @param aFilePath 多帧的 XYZ 文件路径，支持 {@code .gz} 压缩文件
+     * @param aPropertyKeys 需要读取的属性，{@code null} 表示全部读取
+     * @param aParameterKeys 需要读取的参数，{@code null} 表示全部读取
+     * @return 流式读取器，使用完毕后需要关闭
+     * @throws IOException 如果无法打开文件
+     */
+    public static StreamXYZ open(String aFilePath, @Nullable Collection<String> aPropertyKeys, @Nullable Collection<String> aParameterKeys) throws IOException {
+        return new StreamXYZ(IO.toReader(aFilePath), aPropertyKeys, aParameterKeys);
+    }
+    
+    /** @return 已经读取的帧数 */
+    public int index() {return mIdx;}
+    
+    @Override public boolean hasNext() {
+        if (mNext != null) return true;
+        if (mDone) return false;
+        try {
+            mNext = DataXYZ.read_(mReader, mPropertyKeys, mParameterKeys);
+        } catch (FileEndException e) {
+            close();
+            return false;
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        }
+        // 非严格模式下解析失败会返回 null，这里同样认为已经结束
+        if (mNext == null) {close(); return false;}
+        return true;
+    }
+    @Override public DataXYZ next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        DataXYZ tNext = mNext;
+        mNext = null;
+        ++mIdx;
+        return tNext;
+    }
+    /** groovy stuffs，直接返回自身，因此只能遍历一次 */
+    @Override public Iterator<DataXYZ> iterator() {return this;}
+    
+    @Override public void close() {
+        if (mDone) return;
+        mDone = true;
+        try {mReader.close();}
+        catch (IOException e) {throw new UncheckedIOException(e);}
+    }
+}
@@ -1,12 +1,18 @@
 package jse.atom.pot;
 
+import jse.atom.AtomicParameterCalculator;
 import jse.atom.IPairPotential;
+import jse.atom.NeighborListGetter;
 import jse.cache.VectorCache;
 import jse.code.IO;
+import jse.code.collection.DoubleList;
+import jse.code.collection.IntList;
 import jse.math.MathEX;
 import jse.math.function.ConstBoundFunc1;
 import jse.math.function.IFunc1;
 import jse.math.function.ZeroBoundFunc1;
+import jse.math.matrix.IMatrix;
+import jse.math.vector.IIntVector;
 import jse.math.vector.IVector;
 import jse.math.vector.Vector;
 import jse.math.vector.Vectors;
@@ -17,6 +23,7 @@ import org.jetbrains.annotations.Nullable;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.List;
+import java.util.function.IntUnaryOperator;
 
 import static jse.code.CS.ATOMIC_NUMBER_TO_SYMBOL;
 import static jse.code.CS.UNITS;
@@ -31,7 +38,8 @@ import static jse.code.CS.UNITS;
  * 同样会自动识别势函数文件类型来选择 {@code eam}, {@code eam/alloy}, {@code eam/fs} 或
  * {@code adp}；但修复了 ase 实现中的许多问题，现在应该兼容更多 lammps 能读取的势函数文件。
  * <p>
- * 这里不去专门优化单粒子移动、翻转、种类交换时的能量差的计算，因为这需要缓存电荷密度值
+ * 单粒子移动、翻转、种类交换时的能量差计算需要缓存电荷密度值，因此需要通过
+ * {@link #densityCache(AtomicParameterCalculator, IntUnaryOperator)} 来专门优化
  * <p>
  * 这里默认采用 lammps 使用的样条算法进行插值，考虑到样条插值并不总是收敛，有时需要主动关闭这个。
  *
@@ -364,6 +372,8 @@ public class EAM implements IPairPotential {
         tOut.fill(rho -> mRPhiRSpline[aType1-1][aType2-1].subsGrad(rho));
         return tOut;
     }
+    /** @return 是否是包含角度相关项的 ADP 势 */
+    public boolean isADP() {return mUR!=null || mWR!=null;}
     @ApiStatus.Experimental
     public @Nullable IFunc1 ur(int aType1, int aType2) {
         if (mUR == null) return null;
@@ -990,4 +1000,345 @@ public class EAM implements IPairPotential {
         }
         VectorCache.returnVec(tRhoPar);
     }
+    
+    
+    /**
+     * 创建一个缓存每个原子电子密度的 EAM 能量计算器，用于高效计算蒙特卡洛模拟中的能量差
+     * @param aAPC 需要计算的原子参数计算器，主要通过此计算器来获取近邻列表，接受的修改会同步到此计算器中
+     * @param aTypeMap 计算器中元素种类到势函数种类序号的一个映射，默认不做映射
+     * @return 创建的 {@link DensityCache}
+     * @see DensityCache
+     */
+    public DensityCache densityCache(AtomicParameterCalculator aAPC, IntUnaryOperator aTypeMap) {return new DensityCache(aAPC, aTypeMap);}
+    public DensityCache densityCache(AtomicParameterCalculator aAPC) {return densityCache(aAPC, type->type);}
+    
+    /**
+     * {@link DensityCache} 尝试时遍历近邻的方式，默认直接使用输入 APC 的近邻列表；
+     * 通过 {@link DensityCache#share(INeighborFinder)} 替换后，
+     * 调用者可以在不修改 APC 的情况下让计算器遍历到原子当前位置的近邻
+     */
+    @ApiStatus.Internal public interface INeighborFinder {
+        /** 遍历原子 aIdx 当前位置距离小于 aRMax 的所有近邻，和 {@link NeighborListGetter} 一致会包含自身的镜像 */
+        void forEachNeighbor(int aIdx, double aRMax, NeighborListGetter.IDxyzIdxDo aDxyzIdxDo);
+        /** 遍历原子 aIdx 移动 {@code (aDx, aDy, aDz)} 之后的位置距离小于 aRMax 的所有近邻，会包含移动前的自身 */
+        void forEachNeighbor(int aIdx, double aDx, double aDy, double aDz, double aRMax, NeighborListGetter.IDxyzIdxDo aDxyzIdxDo);
+    }
+    
+    /**
+     * 缓存每个原子电子密度 ρ 的 EAM 能量计算器，用于蒙特卡洛模拟中单原子移动、种类交换以及种类翻转的能量差计算。
+     * <p>
+     * 相比 {@link IPairPotential#calEnergyDiffMove(AtomicParameterCalculator, int, double, double, double, IntUnaryOperator)}
+     * 等方法需要合并近邻列表并重新计算所有近邻原子的电子密度，这里每次尝试只会增量更新受影响原子的 ρ
+     * 以及嵌入能，复杂度为 {@code O(近邻数)}。
+     * <p>
+     * 使用时先调用 {@link #diffMove}, {@link #diffSwap} 或 {@link #diffFlip} 获取能量差，此时修改会暂存；
+     * 随后需要调用 {@link #accept()} 提交修改（会同步修改输入的 {@link AtomicParameterCalculator}），
+     * 或者调用 {@link #reject()} 回滚修改。
+     * <p>
+     * 不支持 ADP 势，并且不是线程安全的；需要并行尝试时可以通过 {@link #share()}
+     * 为每个线程创建共享电子密度的计算器
+     *
+     * @author liqa
+     */
+    public final class DensityCache {
+        private final static int NONE = 0, MOVE = 1, SWAP = 2, FLIP = 3;
+        
+        private final AtomicParameterCalculator mAPC;
+        private final NeighborListGetter mNL;
+        private final IMatrix mPos;
+        private final int[] mTypeMap;
+        private final INeighborFinder mFinder;
+        /** 提交时是否同步修改 APC，通过 {@link #share()} 创建的计算器不会同步 */
+        private final boolean mSyncAPC;
+        /** 每个原子映射后的种类，以及对应的电子密度 */
+        private final int[] mTypes;
+        private final double[] mRho;
+        private double mEnergy;
+        
+        /** 回滚使用的日志，每个原子在一次尝试中只会记录一次 */
+        private final int[] mStamps;
+        private int mStamp = 0;
+        private final IntList mTouched, mOldTypes;
+        private final DoubleList mOldRho;
+        /** 暂存的尝试 */
+        private int mPending = NONE;
+        private int mPendingI, mPendingJ, mPendingType;
+        private double mPendingDx, mPendingDy, mPendingDz;
+        private double mPendingDE;
+        /** lambda 内部累加使用 */
+        private double mPairBuf, mRhoBuf;
+        
+        DensityCache(AtomicParameterCalculator aAPC, IntUnaryOperator aTypeMap) {
+            if (mUR != null || mWR != null) throw new UnsupportedOperationException("DensityCache does not support ADP");
+            typeMapCheck(aAPC.ntypes(), aTypeMap);
+            mAPC = aAPC;
+            mNL = aAPC.nl_();
+            mPos = aAPC.positions();
+            mFinder = new INeighborFinder() {
+                @Override public void forEachNeighbor(int aIdx, double aRMax, NeighborListGetter.IDxyzIdxDo aDxyzIdxDo) {
+                    mNL.forEachNeighbor(aIdx, aRMax, false, true, aDxyzIdxDo);
+                }
+                @Override public void forEachNeighbor(int aIdx, double aDx, double aDy, double aDz, double aRMax, NeighborListGetter.IDxyzIdxDo aDxyzIdxDo) {
+                    mNL.forEachNeighbor(mPos.get(aIdx, 0)+aDx, mPos.get(aIdx, 1)+aDy, mPos.get(aIdx, 2)+aDz, aRMax, true, aDxyzIdxDo);
+                }
+            };
+            int tTypeNum = aAPC.ntypes();
+            mTypeMap = new int[tTypeNum+1];
+            for (int tType = 1; tType <= tTypeNum; ++tType) mTypeMap[tType] = aTypeMap.applyAsInt(tType);
+            int tAtomNum = aAPC.natoms();
+            mTypes = new int[tAtomNum];
+            mRho = new double[tAtomNum];
+            mSyncAPC = true;
+            mStamps = new int[tAtomNum];
+            mTouched = new IntList();
+            mOldTypes = new IntList();
+            mOldRho = new DoubleList();
+            refresh();
+        }
+        private DensityCache(DensityCache aShared, INeighborFinder aFinder) {
+            mAPC = aShared.mAPC;
+            mNL = aShared.mNL;
+            mPos = aShared.mPos;
+            mTypeMap = aShared.mTypeMap;
+            mFinder = aFinder;
+            mTypes = aShared.mTypes;
+            mRho = aShared.mRho;
+            mEnergy = aShared.mEnergy;
+            mSyncAPC = false;
+            mStamps = new int[mTypes.length];
+            mTouched = new IntList();
+            mOldTypes = new IntList();
+            mOldRho = new DoubleList();
+        }
+        
+        /**
+         * 创建一个和此计算器共享电子密度以及种类的计算器，拥有独立的尝试状态，用于多个线程同时进行尝试；
+         * 此时需要保证同时进行的尝试中，修改的原子以及其截断半径内的近邻互不重合，
+         * 例如棋盘式区域分解中同一组的不同子区域。
+         * <p>
+         * 由于 APC 的修改不是线程安全的，共享的计算器提交尝试时只会更新内部的电子密度和种类，
+         * 不会同步修改 APC，需要调用者自行同步原子的坐标以及种类；在同步之前的位移尝试依旧基于 APC 中的坐标，
+         * 此时可以使用 {@link #share(INeighborFinder)} 提供考虑了未同步位移的近邻；
+         * 其 {@link #energy()} 也只会累加自身提交的能量差
+         *
+         * @return 共享电子密度的计算器
+         */
+        public DensityCache share() {return share(mFinder);}
+        /**
+         * 创建一个和此计算器共享电子密度以及种类的计算器，并使用输入的方式遍历近邻，
+         * 用于调用者自行管理尝试中原子的坐标，并且在尝试之后才统一同步到 APC 的情况
+         * @param aFinder 尝试时遍历近邻的方式
+         * @return 共享电子密度的计算器
+         * @see #share()
+         */
+        @ApiStatus.Internal public DensityCache share(INeighborFinder aFinder) {
+            if (mPending != NONE) throw new IllegalStateException("Pending trial MUST be accepted or rejected first");
+            return new DensityCache(this, aFinder);
+        }
+        
+        /**
+         * 重新从头计算所有原子的电子密度以及总能量，可以用来消除长时间增量更新的累计误差；
+         * 在外部直接修改了输入的 {@link AtomicParameterCalculator} 后也需要调用此方法
+         * @return 重新计算得到的总能量
+         */
+        public double refresh() {
+            if (mPending != NONE) reject();
+            IIntVector tTypes = mAPC.types();
+            for (int i = 0; i < mTypes.length; ++i) mTypes[i] = mTypeMap[tTypes.get(i)];
+            double rEnergy = 0.0;
+            for (int i = 0; i < mTypes.length; ++i) {
+                final int tTypeI = mTypes[i];
+                mPairBuf = 0.0; mRhoBuf = 0.0;
+                mNL.forEachNeighbor(i, mCut, false, true, (dx, dy, dz, idx) -> {
+                    double rsq = dx*dx + dy*dy + dz*dz;
+                    if (rsq >= mCutsq) return;
+                    double r = MathEX.Fast.sqrt(rsq);
+                    int tTypeJ = mTypes[idx];
+                    mPairBuf += phi_(tTypeI, tTypeJ, r);
+                    mRhoBuf += rho_(tTypeI, tTypeJ, r);
+                });
+                mRho[i] = mRhoBuf;
+                rEnergy += 0.5*mPairBuf + mFRhoSpline[tTypeI-1].subs(mRhoBuf);
+            }
+            mEnergy = rEnergy;
+            return rEnergy;
+        }
+        
+        /** @return 当前已经提交的总能量，不包含暂存的尝试 */
+        public double energy() {return mEnergy;}
+        /**
+         * @param aIdx 需要获取的原子索引
+         * @return 此原子当前的电子密度 ρ，如果有暂存的尝试则为尝试后的值
+         */
+        public double rho(int aIdx) {return mRho[aIdx];}
+        
+        /**
+         * 计算移动单个原子前后的能量差，并暂存此次移动
+         * @param aI 移动原子的索引
+         * @param aDx x 方向移动的距离
+         * @param aDy y 方向移动的距离
+         * @param aDz z 方向移动的距离
+         * @return 移动后能量 - 移动前能量
+         */
+        public double diffMove(int aI, double aDx, double aDy, double aDz) {
+            beginTrial_();
+            final int tTypeI = mTypes[aI];
+            touch_(aI);
+            mPairBuf = 0.0;
+            // 自身镜像的贡献不随平移改变，因此直接跳过
+            mFinder.forEachNeighbor(aI, mCut, (dx, dy, dz, idx) -> {
+                if (idx == aI) return;
+                double rsq = dx*dx + dy*dy + dz*dz;
+                if (rsq >= mCutsq) return;
+                double r = MathEX.Fast.sqrt(rsq);
+                int tTypeJ = mTypes[idx];
+                touch_(idx);
+                mPairBuf -= phi_(tTypeI, tTypeJ, r);
+                mRho[aI] -= rho_(tTypeI, tTypeJ, r);
+                mRho[idx] -= rho_(tTypeJ, tTypeI, r);
+            });
+            // 新位置的近邻中依旧包含旧位置的自身，同样跳过
+            mFinder.forEachNeighbor(aI, aDx, aDy, aDz, mCut, (dx, dy, dz, idx) -> {
+                if (idx == aI) return;
+                double rsq = dx*dx + dy*dy + dz*dz;
+                if (rsq >= mCutsq) return;
+                double r = MathEX.Fast.sqrt(rsq);
+                int tTypeJ = mTypes[idx];
+                touch_(idx);
+                mPairBuf += phi_(tTypeI, tTypeJ, r);
+                mRho[aI] += rho_(tTypeI, tTypeJ, r);
+                mRho[idx] += rho_(tTypeJ, tTypeI, r);
+            });
+            mPending = MOVE;
+            mPendingI = aI;
+            mPendingDx = aDx; mPendingDy = aDy; mPendingDz = aDz;
+            return endTrial_(mPairBuf);
+        }
+        /**
+         * 计算交换两个原子种类前后的能量差，并暂存此次交换
+         * @param aI 需要交换种类的第一个原子索引
+         * @param aJ 需要交换种类的第二个原子索引
+         * @return 交换后能量 - 交换前能量
+         */
+        public double diffSwap(int aI, int aJ) {
+            beginTrial_();
+            final int tTypeI = mTypes[aI], tTypeJ = mTypes[aJ];
+            // 依次翻转两个原子，第二次翻转会基于第一次翻转后的状态，因此结果是精确的
+            double tDPair = flip_(aI, tTypeJ);
+            tDPair += flip_(aJ, tTypeI);
+            mPending = SWAP;
+            mPendingI = aI; mPendingJ = aJ;
+            return endTrial_(tDPair);
+        }
+        /**
+         * 计算翻转某个原子种类前后的能量差，并暂存此次翻转
+         * @param aI 需要翻转种类的原子索引
+         * @param aType 此原子需要翻转的种类编号，对应输入计算器原始的种类编号，没有经过 aTypeMap
+         * @return 翻转后能量 - 翻转前能量
+         */
+        public double diffFlip(int aI, int aType) {
+            if (aType < 1 || aType >= mTypeMap.length) throw new IllegalArgumentException("Invalid type: " + aType);
+            beginTrial_();
+            double tDPair = flip_(aI, mTypeMap[aType]);
+            mPending = FLIP;
+            mPendingI = aI; mPendingType = aType;
+            return endTrial_(tDPair);
+        }
+        
+        /** 提交暂存的尝试，并同步修改输入的 {@link AtomicParameterCalculator}（通过 {@link #share()} 创建的除外） */
+        public void accept() {
+            if (!mSyncAPC) {
+                if (mPending == NONE) throw new IllegalStateException("No pending trial to accept");
+                mEnergy += mPendingDE;
+                mPending = NONE;
+                return;
+            }
+            switch (mPending) {
+            case MOVE: {
+                mAPC.setAtomXYZ(mPendingI, mPos.get(mPendingI, 0)+mPendingDx, mPos.get(mPendingI, 1)+mPendingDy, mPos.get(mPendingI, 2)+mPendingDz);
+                break;
+            }
+            case SWAP: {
+                IIntVector tTypes = mAPC.types();
+                int tTypeI = tTypes.get(mPendingI), tTypeJ = tTypes.get(mPendingJ);
+                mAPC.setAtomType(mPendingI, tTypeJ).setAtomType(mPendingJ, tTypeI);
+                break;
+            }
+            case FLIP: {
+                mAPC.setAtomType(mPendingI, mPendingType);
+                break;
+            }
+            default: {
+                throw new IllegalStateException("No pending trial to accept");
+            }}
+            mEnergy += mPendingDE;
+            mPending = NONE;
+        }
+        /** 回滚暂存的尝试 */
+        public void reject() {
+            if (mPending == NONE) throw new IllegalStateException("No pending trial to reject");
+            for (int k = 0; k < mTouched.size(); ++k) {
+                int tIdx = mTouched.get(k);
+                mTypes[tIdx] = mOldTypes.get(k);
+                mRho[tIdx] = mOldRho.get(k);
+            }
+            mPending = NONE;
+        }
+        
+        private void beginTrial_() {
+            if (mPending != NONE) throw new IllegalStateException("Pending trial MUST be accepted or rejected first");
+            mTouched.clear(); mOldTypes.clear(); mOldRho.clear();
+            ++mStamp;
+        }
+        /** 统计所有受影响原子的嵌入能变化，得到总的能量差 */
+        private double endTrial_(double aDPair) {
+            double rDE = aDPair;
+            for (int k = 0; k < mTouched.size(); ++k) {
+                int tIdx = mTouched.get(k);
+                rDE += mFRhoSpline[mTypes[tIdx]-1].subs(mRho[tIdx]) - mFRhoSpline[mOldTypes.get(k)-1].subs(mOldRho.get(k));
+            }
+            mPendingDE = rDE;
+            return rDE;
+        }
+        private void touch_(int aIdx) {
+            if (mStamps[aIdx] == mStamp) return;
+            mStamps[aIdx] = mStamp;
+            mTouched.add(aIdx);
+            mOldTypes.add(mTypes[aIdx]);
+            mOldRho.add(mRho[aIdx]);
+        }
+        /** 将原子翻转成映射后的种类 aType，增量更新近邻的电子密度，并重新计算自身的电子密度；返回对势部分的能量差 */
+        private double flip_(int aI, int aType) {
+            final int oType = mTypes[aI];
+            touch_(aI);
+            if (oType == aType) return 0.0;
+            mPairBuf = 0.0; mRhoBuf = 0.0;
+            mFinder.forEachNeighbor(aI, mCut, (dx, dy, dz, idx) -> {
+                double rsq = dx*dx + dy*dy + dz*dz;
+                if (rsq >= mCutsq) return;
+                double r = MathEX.Fast.sqrt(rsq);
+                // 自身的镜像两端的种类都会改变，并且对势会在自身的近邻中出现两次
+                if (idx == aI) {
+                    mPairBuf += 0.5*(phi_(aType, aType, r) - phi_(oType, oType, r));
+                    mRhoBuf += rho_(aType, aType, r);
+                    return;
+                }
+                int tTypeJ = mTypes[idx];
+                touch_(idx);
+                mPairBuf += phi_(aType, tTypeJ, r) - phi_(oType, tTypeJ, r);
+                mRho[idx] += rho_(tTypeJ, aType, r) - rho_(tTypeJ, oType, r);
+                mRhoBuf += rho_(aType, tTypeJ, r);
+            });
+            mRho[aI] = mRhoBuf;
+            mTypes[aI] = aType;
+            return mPairBuf;
+        }
+    }
+    /** 种类为 aType2 的原子在种类为 aType1 的原子处产生的电子密度 */
+    private double rho_(int aType1, int aType2, double aR) {
+        return mRhoRSpline[mRhoR.length==1?0:(aType1-1)][aType2-1].subs(aR);
+    }
+    private double phi_(int aType1, int aType2, double aR) {
+        return mRPhiRSpline[aType1-1][aType2-1].subs(aR) / aR;
+    }
 }
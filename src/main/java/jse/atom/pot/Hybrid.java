@@ -0,0 +1,289 @@
+package jse.atom.pot;
+
+import jse.atom.IPairPotential;
+import jse.cache.DoubleArrayCache;
+import jse.cache.IntArrayCache;
+import jse.code.collection.DoubleList;
+import jse.code.collection.IntList;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+import static jse.code.CS.ZL_DOUBLE;
+import static jse.code.CS.ZL_INT;
+
+/**
+ * 多个对势直接叠加的势函数，类似 lammps 的 {@code pair_style hybrid/overlay}，
+ * 例如 {@code EAM} 加上短程的 {@link Soft} 修正，或者两个 {@link LJ} 的叠加。
+ * <p>
+ * 计算时只会在最大的截断半径下遍历一次近邻列表，并将近邻缓存在连续的数组中，
+ * 之后每个势函数的内核都直接读取此缓存（根据自身的截断半径过滤），并累加到相同的结果中；
+ * 从而避免对每个势函数都重新遍历近邻列表。这些数组从 {@link IntArrayCache} 以及 {@link DoubleArrayCache}
+ * 中借用，并在每次计算结束后归还，因此不会在两次计算之间一直占用完整近邻列表的内存。
+ * <p>
+ * 要求所有限制了种类数目的势函数的种类数目相同，所有包含元素符号的势函数的元素符号也相同；
+ * 由于会复用内部的近邻缓存，同一时间只会进行一个计算。
+ *
+ * @author liqa
+ */
+public class Hybrid implements IPairPotential {
+    private final IPairPotential[] mPotentials;
+    private final @Nullable IPairPotential mSymbolPotential;
+    private final int mTypeNum;
+    private final double mCutMax, mCutMaxsq;
+    private final boolean mManybody;
+    /** 当所有势函数都采用一半的近邻列表时才采用一半的近邻列表遍历 */
+    private final boolean mHalf;
+    
+    /** 近邻缓存，每个原子的近邻存储在处理此原子的线程对应的数组中，只在一次计算中有效 */
+    private int[] mAtomThread = ZL_INT, mAtomStart = ZL_INT, mAtomEnd = ZL_INT;
+    private DoubleList[] mDxyzPar = new DoubleList[0];
+    private IntList[] mTypeIdxPar = new IntList[0];
+    /** 上一次计算中每个线程缓存的近邻数目，用来借用合适大小的数组 */
+    private int[] mNLSizePar = ZL_INT;
+    
+    /**
+     * 创建一个叠加的势函数
+     * @param aPotentials 需要叠加的所有对势，要求都有截断半径
+     */
+    public Hybrid(IPairPotential... aPotentials) {
+        if (aPotentials.length == 0) throw new IllegalArgumentException("Hybrid requires at least one potential");
+        mPotentials = aPotentials;
+        int tTypeNum = -1;
+        IPairPotential tSymbolPotential = null;
+        double tCutMax = Double.NEGATIVE_INFINITY;
+        boolean tManybody = false, tHalf = true;
+        int tThreadNum = Integer.MAX_VALUE;
+        for (IPairPotential tPotential : aPotentials) {
+            double tRCut = tPotential.rcutMax();
+            if (tRCut <= 0) throw new IllegalArgumentException("Potential in Hybrid MUST have a positive rcutMax: "+tRCut);
+            if (tRCut > tCutMax) tCutMax = tRCut;
+            int tSubTypeNum = tPotential.ntypes();
+            if (tSubTypeNum > 0) {
+                if (tTypeNum > 0 && tSubTypeNum != tTypeNum) throw new IllegalArgumentException("Type numbers of potentials in Hybrid mismatch: "+tTypeNum+" vs "+tSubTypeNum);
+                tTypeNum = tSubTypeNum;
+            }
+            if (tPotential.hasSymbol()) {
+                if (tSymbolPotential == null) {
+                    tSymbolPotential = tPotential;
+                } else {
+                    for (int tType = 1; tType <= tSubTypeNum; ++tType) {
+                        if (!tSymbolPotential.symbol(tType).equals(tPotential.symbol(tType))) throw new IllegalArgumentException("Symbols of potentials in Hybrid mismatch: "+tSymbolPotential.symbols()+" vs "+tPotential.symbols());
+                    }
+                }
+            }
+            tManybody |= tPotential.manybody();
+            tHalf &= tPotential.neighborListHalf();
+            tThreadNum = Math.min(tThreadNum, tPotential.nthreads());
+        }
+        mTypeNum = tTypeNum;
+        mSymbolPotential = tSymbolPotential;
+        mCutMax = tCutMax;
+        mCutMaxsq = tCutMax*tCutMax;
+        mManybody = tManybody;
+        mHalf = tHalf;
+        mThreadNum = Math.max(tThreadNum, 1);
+    }
+    
+    /** @return 叠加的所有势函数 */
+    public IPairPotential[] potentials() {return mPotentials;}
+    
+    /** @return {@inheritDoc} */
+    @Override public boolean isClosed() {
+        for (IPairPotential tPotential : mPotentials) if (tPotential.isClosed()) return true;
+        return false;
+    }
+    /** @return {@inheritDoc} */
+    @Override public int ntypes() {return mTypeNum;}
+    /** @return {@inheritDoc} */
+    @Override public boolean hasSymbol() {return mSymbolPotential!=null;}
+    /**
+     * {@inheritDoc}
+     * @param aType {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override public @Nullable String symbol(int aType) {return mSymbolPotential==null ? null : mSymbolPotential.symbol(aType);}
+    /**
+     * {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override public double rcutMax() {return mCutMax;}
+    /**
+     * {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override public boolean manybody() {return mManybody;}
+    /**
+     * {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override public boolean neighborListChecked() {return true;}
+    /**
+     * {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override public boolean neighborListHalf() {return mHalf;}
+    
+    
+    /** 每个势函数的内核会按照自身的线程数来分配每线程的临时数组，因此线程数不能超过所有势函数中最小的线程数 */
+    private int mThreadNum;
+    /**
+     * {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override public int nthreads() {return Math.min(mThreadNum, minThreadNum_());}
+    private int minThreadNum_() {
+        int rThreadNum = Integer.MAX_VALUE;
+        for (IPairPotential tPotential : mPotentials) rThreadNum = Math.min(rThreadNum, tPotential.nthreads());
+        return Math.max(rThreadNum, 1);
+    }
+    /**
+     * 设置传入原子数据后计算使用的默认线程数
+     * @param aNumThreads 需要设置的线程数，默认为所有势函数中最小的线程数，并且不能超过此值
+     * @return 自身方便链式调用
+     */
+    public Hybrid setNthreads(int aNumThreads) {
+        if (aNumThreads < 1) throw new IllegalArgumentException("Thread number MUST be positive: "+aNumThreads);
+        int tMaxThreadNum = minThreadNum_();
+        if (aNumThreads > tMaxThreadNum) throw new IllegalArgumentException("Thread number of Hybrid ("+aNumThreads+") MUST <= the smallest nthreads of its potentials ("+tMaxThreadNum+")");
+        mThreadNum = aNumThreads; return this;
+    }
+    
+    /** 在最大截断半径下遍历一次近邻列表，存储到近邻缓存中 */
+    private void buildCache_(int aAtomNumber, INeighborListGetter aNeighborListGetter) throws Exception {
+        mAtomThread = IntArrayCache.getArray(aAtomNumber);
+        mAtomStart = IntArrayCache.getArray(aAtomNumber);
+        mAtomEnd = IntArrayCache.getArray(aAtomNumber);
+        int tThreadNum = nthreads();
+        if (mDxyzPar.length < tThreadNum) {
+            int oThreadNum = mDxyzPar.length;
+            mDxyzPar = Arrays.copyOf(mDxyzPar, tThreadNum);
+            mTypeIdxPar = Arrays.copyOf(mTypeIdxPar, tThreadNum);
+            mNLSizePar = Arrays.copyOf(mNLSizePar, tThreadNum);
+            for (int i = oThreadNum; i < tThreadNum; ++i) {
+                mDxyzPar[i] = new DoubleList();
+                mTypeIdxPar[i] = new IntList();
+            }
+        }
+        for (int i = 0; i < mDxyzPar.length; ++i) {
+            mDxyzPar[i].setInternalData(DoubleArrayCache.getArray(3*mNLSizePar[i]));
+            mTypeIdxPar[i].setInternalData(IntArrayCache.getArray(2*mNLSizePar[i]));
+        }
+        aNeighborListGetter.forEachNLWithException(null, null, (threadID, cIdx, cType, nl) -> {
+            if (threadID >= mDxyzPar.length) throw new IllegalStateException("Thread ID ("+threadID+") exceeds nthreads of Hybrid ("+mDxyzPar.length+")");
+            final DoubleList tDxyz = mDxyzPar[threadID];
+            final IntList tTypeIdx = mTypeIdxPar[threadID];
+            mAtomThread[cIdx] = threadID;
+            mAtomStart[cIdx] = tTypeIdx.size()/2;
+            nl.forEachDxyzTypeIdx(mCutMax, (dx, dy, dz, type, idx) -> {
+                if (dx*dx + dy*dy + dz*dz >= mCutMaxsq) return;
+                tDxyz.add(dx); tDxyz.add(dy); tDxyz.add(dz);
+                tTypeIdx.add(type); tTypeIdx.add(idx);
+            });
+            mAtomEnd[cIdx] = tTypeIdx.size()/2;
+        });
+    }
+    /** 归还近邻缓存使用的所有数组，在获取数组的同一线程中调用 */
+    private void returnCache_() {
+        IntArrayCache.returnArray(mAtomThread);
+        IntArrayCache.returnArray(mAtomStart);
+        IntArrayCache.returnArray(mAtomEnd);
+        mAtomThread = ZL_INT; mAtomStart = ZL_INT; mAtomEnd = ZL_INT;
+        for (int i = 0; i < mDxyzPar.length; ++i) {
+            mNLSizePar[i] = mTypeIdxPar[i].size()/2;
+            DoubleArrayCache.returnArray(mDxyzPar[i].internalData());
+            IntArrayCache.returnArray(mTypeIdxPar[i].internalData());
+            mDxyzPar[i].clear(); mDxyzPar[i].setInternalData(ZL_DOUBLE);
+            mTypeIdxPar[i].clear(); mTypeIdxPar[i].setInternalData(ZL_INT);
+        }
+    }
+    /**
+     * 从近邻缓存中读取的近邻列表获取器，依旧通过原本的获取器来遍历原子（从而保持原本的并行方式），
+     * 但不会再次遍历近邻列表
+     */
+    private INeighborListGetter cachedGetter_(INeighborListGetter aNeighborListGetter, IPairPotential aPotential) {
+        // 整体采用完整近邻列表时，需要为采用一半近邻列表的势函数保证每个原子对只出现一次
+        final boolean tToHalf = !mHalf && aPotential.neighborListHalf();
+        final boolean tNoType = aPotential.ntypes() <= 0;
+        return (initDo, finalDo, neighborListDo) -> aNeighborListGetter.forEachNLWithException(initDo, finalDo, (threadID, cIdx, cType, nl) -> {
+            neighborListDo.run(threadID, cIdx, tNoType ? 0 : cType, (rmax, dxyzTypeDo) -> {
+                final int tThreadID = mAtomThread[cIdx];
+                final double[] tDxyz = mDxyzPar[tThreadID].internalData();
+                final int[] tTypeIdx = mTypeIdxPar[tThreadID].internalData();
+                final double tRMaxsq = rmax*rmax;
+                final int tEnd = mAtomEnd[cIdx];
+                for (int k = mAtomStart[cIdx]; k < tEnd; ++k) {
+                    double dx = tDxyz[3*k], dy = tDxyz[3*k+1], dz = tDxyz[3*k+2];
+                    if (dx*dx + dy*dy + dz*dz >= tRMaxsq) continue;
+                    int idx = tTypeIdx[2*k+1];
+                    if (tToHalf && !halfPair_(cIdx, idx, dx, dy, dz)) continue;
+                    dxyzTypeDo.run(dx, dy, dz, tNoType ? 0 : tTypeIdx[2*k], idx);
+                }
+            });
+        });
+    }
+    /** 从完整近邻列表中选取一半，对于自身的镜像则根据方向选取 */
+    private static boolean halfPair_(int cIdx, int aIdx, double aDx, double aDy, double aDz) {
+        if (aIdx != cIdx) return aIdx > cIdx;
+        if (aDz != 0.0) return aDz > 0.0;
+        if (aDy != 0.0) return aDy > 0.0;
+        return aDx > 0.0;
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p>
+     * 部分的计算涉及的原子较少，并且可能被并行地调用，因此这里直接交给每个势函数计算
+     * @param aAtomNumber {@inheritDoc}
+     * @param aNeighborListGetter {@inheritDoc}
+     * @param rEnergyAccumulator {@inheritDoc}
+     */
+    @Override public void calEnergyPart(int aAtomNumber, INeighborListGetter aNeighborListGetter, IEnergyPartAccumulator rEnergyAccumulator) throws Exception {
+        for (IPairPotential tPotential : mPotentials) {
+            final boolean tNoType = tPotential.ntypes() <= 0;
+            tPotential.calEnergyPart(aAtomNumber, !tNoType ? aNeighborListGetter : (initDo, finalDo, neighborListDo) -> aNeighborListGetter.forEachNLWithException(initDo, finalDo, (threadID, cIdx, cType, nl) -> {
+                neighborListDo.run(threadID, cIdx, 0, (rmax, dxyzTypeDo) -> nl.forEachDxyzTypeIdx(rmax, (dx, dy, dz, type, idx) -> dxyzTypeDo.run(dx, dy, dz, 0, idx)));
+            }), rEnergyAccumulator);
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * @param aAtomNumber {@inheritDoc}
+     * @param aNeighborListGetter {@inheritDoc}
+     * @param rEnergyAccumulator {@inheritDoc}
+     */
+    @Override public void calEnergy(int aAtomNumber, INeighborListGetter aNeighborListGetter, IEnergyAccumulator rEnergyAccumulator) throws Exception {
+        synchronized (this) {
+            try {
+                buildCache_(aAtomNumber, aNeighborListGetter);
+                for (IPairPotential tPotential : mPotentials) {
+                    tPotential.calEnergy(aAtomNumber, cachedGetter_(aNeighborListGetter, tPotential), rEnergyAccumulator);
+                }
+            } finally {
+                returnCache_();
+            }
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * @param aAtomNumber {@inheritDoc}
+     * @param aNeighborListGetter {@inheritDoc}
+     * @param rEnergyAccumulator {@inheritDoc}
+     * @param rForceAccumulator {@inheritDoc}
+     * @param rVirialAccumulator {@inheritDoc}
+     */
+    @Override public void calEnergyForceVirial(int aAtomNumber, INeighborListGetter aNeighborListGetter, @Nullable IEnergyAccumulator rEnergyAccumulator, @Nullable IForceAccumulator rForceAccumulator, @Nullable IVirialAccumulator rVirialAccumulator) throws Exception {
+        synchronized (this) {
+            try {
+                buildCache_(aAtomNumber, aNeighborListGetter);
+                for (IPairPotential tPotential : mPotentials) {
+                    tPotential.calEnergyForceVirial(aAtomNumber, cachedGetter_(aNeighborListGetter, tPotential), rEnergyAccumulator, rForceAccumulator, rVirialAccumulator);
+                }
+            } finally {
+                returnCache_();
+            }
+        }
+    }
+}
@@ -157,6 +157,12 @@ public class LJ implements IPairPotential {
      */
     public LJ setNthreads(int aNumThreads) {mThreadNum = aNumThreads; return this;}
     
+    private boolean mAtomOwnership = false;
+    /** @return {@inheritDoc} */
+    @Override public boolean atomOwnership() {return mAtomOwnership;}
+    /** @see IPairPotential#atomOwnership() */
+    public LJ setAtomOwnership(boolean aAtomOwnership) {mAtomOwnership = aAtomOwnership; return this;}
+    
     /**
      * {@inheritDoc}
      * @param aAtomNumber {@inheritDoc}
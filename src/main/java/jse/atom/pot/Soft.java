@@ -119,6 +119,12 @@ public class Soft implements IPairPotential {
      */
     public Soft setNthreads(int aNumThreads) {mThreadNum = aNumThreads; return this;}
     
+    private boolean mAtomOwnership = false;
+    /** @return {@inheritDoc} */
+    @Override public boolean atomOwnership() {return mAtomOwnership;}
+    /** @see IPairPotential#atomOwnership() */
+    public Soft setAtomOwnership(boolean aAtomOwnership) {mAtomOwnership = aAtomOwnership; return this;}
+    
     /**
      * {@inheritDoc}
      * @param aAtomNumber {@inheritDoc}
@@ -0,0 +1,349 @@
+package jse.atom.pot;
+
+import jse.atom.IPairPotential;
+import jse.math.MathEX;
+import jse.math.function.IFunc1Subs;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * 表格插值的对势，类似 lammps 的 {@code pair_style table spline}；
+ * 通过 {@link #builder()} 输入任意的对势函数 {@code E(r)}（以及可选的导数 {@code dE/dr}），
+ * 会在构建时在等间距的 r 或者 r² 网格上采样并计算三次 Hermite 样条的系数，
+ * 之后计算只需要查表，从而让 groovy 等脚本编写的自定义对势也能有原生的计算速度。
+ * <p>
+ * 默认采用 r² 网格，此时计算能量和力都不需要开方；所有样条系数存储在同一个连续的数组中。
+ * 距离小于内截断半径时会采用内截断半径处的值和导数进行线性外推。
+ *
+ * @author liqa
+ */
+public class TablePair implements IPairPotential {
+    /** 默认的网格点数目 */
+    public final static int DEFAULT_N = 2000;
+    /** 默认的内截断半径 */
+    public final static double DEFAULT_R_INNER = 0.5;
+    /** 没有输入导数时，数值差分使用的相对步长 */
+    private final static double GRAD_STEP = 1.0e-6;
+    
+    private final double mCutMax;
+    private final int mTypeNum;
+    private final String @Nullable[] mSymbols;
+    private final boolean mRSquared;
+    private final int mN;
+    /** 种类对到表格的索引，没有设置的种类对为 {@code -1} */
+    private final int[][] mTableIdx;
+    /** 每个表格的截断，网格起点以及网格间距的倒数，按照表格索引排列 */
+    private final double[] mCutsq, mX0, mInvDx;
+    /** 所有表格的样条系数，每个区间依次存储 {@code a0, a1, a2, a3}，满足 {@code f = ((a3 p + a2) p + a1) p + a0} */
+    private final double[] mCoeffs;
+    
+    private TablePair(Builder aBuilder) {
+        mTypeNum = aBuilder.mTypeNum;
+        mSymbols = aBuilder.mSymbols;
+        mRSquared = aBuilder.mRSquared;
+        mN = aBuilder.mN;
+        final int tSize = mTypeNum<=0 ? 1 : (mTypeNum+1);
+        final int tShift = mTypeNum<=0 ? 0 : 1;
+        mTableIdx = new int[tSize][tSize];
+        int tTableNum = 0;
+        for (int i = 0; i < aBuilder.mEnergies.length; ++i) for (int j = 0; j <= i; ++j) {
+            if (aBuilder.mEnergies[i][j] == null) {
+                mTableIdx[i+tShift][j+tShift] = mTableIdx[j+tShift][i+tShift] = -1;
+            } else {
+                mTableIdx[i+tShift][j+tShift] = mTableIdx[j+tShift][i+tShift] = tTableNum;
+                ++tTableNum;
+            }
+        }
+        if (tTableNum == 0) throw new IllegalArgumentException("No pair is set for TablePair");
+        mCutsq = new double[tTableNum];
+        mX0 = new double[tTableNum];
+        mInvDx = new double[tTableNum];
+        mCoeffs = new double[tTableNum * (mN-1) * 4];
+        final double tRInner = aBuilder.mRInner;
+        double tCutMax = Double.NEGATIVE_INFINITY;
+        int tTable = 0;
+        for (int i = 0; i < aBuilder.mEnergies.length; ++i) for (int j = 0; j <= i; ++j) {
+            IFunc1Subs tEnergy = aBuilder.mEnergies[i][j];
+            if (tEnergy == null) continue;
+            double tRCut = aBuilder.mRCuts[i][j];
+            if (!(tRCut > tRInner)) throw new IllegalArgumentException("RCut ("+tRCut+") MUST be greater than RInner ("+tRInner+")");
+            if (tRCut > tCutMax) tCutMax = tRCut;
+            initTable_(tTable, tRInner, tRCut, tEnergy, aBuilder.mGrads[i][j]);
+            ++tTable;
+        }
+        mCutMax = tCutMax;
+    }
+    
+    /** 采样得到网格上的值以及导数，然后计算三次 Hermite 样条的系数 */
+    private void initTable_(int aTable, double aRInner, double aRCut, IFunc1Subs aEnergy, @Nullable IFunc1Subs aGrad) {
+        final double tX0 = mRSquared ? aRInner*aRInner : aRInner;
+        final double tX1 = mRSquared ? aRCut*aRCut : aRCut;
+        final double tDx = (tX1 - tX0) / (mN-1);
+        mCutsq[aTable] = aRCut*aRCut;
+        mX0[aTable] = tX0;
+        mInvDx[aTable] = 1.0 / tDx;
+        double[] tF = new double[mN], tD = new double[mN];
+        for (int k = 0; k < mN; ++k) {
+            double tX = tX0 + k*tDx;
+            double tR = mRSquared ? Math.sqrt(tX) : tX;
+            tF[k] = aEnergy.subs(tR);
+            double tGrad;
+            if (aGrad != null) {
+                tGrad = aGrad.subs(tR);
+            } else {
+                double tH = GRAD_STEP * Math.max(1.0, tR);
+                tGrad = (aEnergy.subs(tR+tH) - aEnergy.subs(tR-tH)) / (2.0*tH);
+            }
+            // r² 网格下需要转换成对 r² 的导数
+            tD[k] = mRSquared ? (tGrad / (2.0*tR)) : tGrad;
+            if (!Double.isFinite(tF[k]) || !Double.isFinite(tD[k])) throw new IllegalArgumentException("Non-finite pair energy or gradient at r = "+tR+", try a larger RInner");
+        }
+        int tShift = aTable * (mN-1) * 4;
+        for (int k = 0; k < mN-1; ++k, tShift += 4) {
+            double f0 = tF[k], f1 = tF[k+1];
+            double d0 = tD[k]*tDx, d1 = tD[k+1]*tDx;
+            mCoeffs[tShift  ] = f0;
+            mCoeffs[tShift+1] = d0;
+            mCoeffs[tShift+2] = 3.0*(f1-f0) - 2.0*d0 - d1;
+            mCoeffs[tShift+3] = 2.0*(f0-f1) + d0 + d1;
+        }
+    }
+    
+    /** 提供 builder 方式的构建，此时不考虑原子种类都使用相同的对势 */
+    public static Builder builder() {return new Builder(-1);}
+    /**
+     * 提供 builder 方式的构建，不同原子种类可以使用不同的对势
+     * @param aTypeNum 原子种类数目
+     */
+    public static Builder builder(int aTypeNum) {
+        if (aTypeNum <= 0) throw new IllegalArgumentException("TypeNum MUST be positive: "+aTypeNum);
+        return new Builder(aTypeNum);
+    }
+    public final static class Builder {
+        private final int mTypeNum;
+        private final IFunc1Subs[][] mEnergies, mGrads;
+        private final double[][] mRCuts;
+        private String @Nullable[] mSymbols = null;
+        private boolean mRSquared = true;
+        private int mN = DEFAULT_N;
+        private double mRInner = DEFAULT_R_INNER;
+        private Builder(int aTypeNum) {
+            mTypeNum = aTypeNum;
+            int tSize = aTypeNum<=0 ? 1 : aTypeNum;
+            mEnergies = new IFunc1Subs[tSize][tSize];
+            mGrads = new IFunc1Subs[tSize][tSize];
+            mRCuts = new double[tSize][tSize];
+        }
+        
+        /**
+         * 设置种类 aType1 和 aType2 之间的对势
+         * @param aType1 第一个种类，从 {@code 1} 开始
+         * @param aType2 第二个种类，从 {@code 1} 开始
+         * @param aRCut 此对势的截断半径
+         * @param aEnergy 对势能量函数 {@code E(r)}
+         * @param aGrad 可选的对势的导数 {@code dE/dr}，不输入时会使用数值差分
+         * @return 自身方便链式调用
+         */
+        public Builder pair(int aType1, int aType2, double aRCut, IFunc1Subs aEnergy, @Nullable IFunc1Subs aGrad) {
+            if (mTypeNum <= 0) throw new IllegalStateException("Type of pair can only be set when TypeNum is specified");
+            if (aType1 < 1 || aType1 > mTypeNum) throw new IllegalArgumentException("Invalid type: "+aType1);
+            if (aType2 < 1 || aType2 > mTypeNum) throw new IllegalArgumentException("Invalid type: "+aType2);
+            int i = Math.max(aType1, aType2)-1, j = Math.min(aType1, aType2)-1;
+            mEnergies[i][j] = aEnergy;
+            mGrads[i][j] = aGrad;
+            mRCuts[i][j] = aRCut;
+            return this;
+        }
+        public Builder pair(int aType1, int aType2, double aRCut, IFunc1Subs aEnergy) {return pair(aType1, aType2, aRCut, aEnergy, null);}
+        /**
+         * 设置不考虑原子种类时使用的对势
+         * @param aRCut 对势的截断半径
+         * @param aEnergy 对势能量函数 {@code E(r)}
+         * @param aGrad 可选的对势的导数 {@code dE/dr}，不输入时会使用数值差分
+         * @return 自身方便链式调用
+         */
+        public Builder pair(double aRCut, IFunc1Subs aEnergy, @Nullable IFunc1Subs aGrad) {
+            if (mTypeNum > 0) throw new IllegalStateException("Types of pair MUST be specified when TypeNum is specified");
+            mEnergies[0][0] = aEnergy;
+            mGrads[0][0] = aGrad;
+            mRCuts[0][0] = aRCut;
+            return this;
+        }
+        public Builder pair(double aRCut, IFunc1Subs aEnergy) {return pair(aRCut, aEnergy, null);}
+        
+        /** @param aSymbols 可选的元素符号信息，如果输入则会根据此元素符号自动映射输入的原子数据 */
+        public Builder setSymbols(String... aSymbols) {
+            if (mTypeNum <= 0) throw new IllegalStateException("Symbols can only be set when TypeNum is specified");
+            if (aSymbols.length != mTypeNum) throw new IllegalArgumentException("Input Symbols size MUST be the same as TypeNum");
+            mSymbols = aSymbols;
+            return this;
+        }
+        /** @param aRSquared 是否采用 r² 的网格，默认为 {@code true}，此时计算不需要开方 */
+        public Builder setRSquared(boolean aRSquared) {mRSquared = aRSquared; return this;}
+        /** @param aN 网格点数目，默认为 {@link #DEFAULT_N} */
+        public Builder setN(int aN) {
+            if (aN < 2) throw new IllegalArgumentException("N MUST be at least 2: "+aN);
+            mN = aN; return this;
+        }
+        /** @param aRInner 表格的内截断半径，默认为 {@link #DEFAULT_R_INNER}，小于此值时会采用线性外推 */
+        public Builder setRInner(double aRInner) {
+            if (aRInner < 0.0) throw new IllegalArgumentException("RInner MUST be non-negative: "+aRInner);
+            mRInner = aRInner; return this;
+        }
+        
+        public TablePair build() {return new TablePair(this);}
+    }
+    
+    /** @return {@inheritDoc} */
+    @Override public int ntypes() {return mTypeNum;}
+    /** @return {@inheritDoc} */
+    @Override public boolean hasSymbol() {return mSymbols!=null;}
+    /**
+     * {@inheritDoc}
+     * @param aType {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override public @Nullable String symbol(int aType) {return mSymbols==null ? null : mSymbols[aType-1];}
+    /**
+     * {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override public double rcutMax() {return mCutMax;}
+    /**
+     * {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override public boolean manybody() {return false;}
+    /**
+     * {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override public boolean neighborListChecked() {return true;}
+    /**
+     * {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override public boolean neighborListHalf() {return true;}
+    
+    /** @return 是否采用 r² 的网格 */
+    public boolean rSquared() {return mRSquared;}
+    /** @return 网格点数目 */
+    public int N() {return mN;}
+    
+    
+    private int mThreadNum = 1;
+    /**
+     * {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override public int nthreads() {return mThreadNum;}
+    /**
+     * 设置传入原子数据后计算使用的默认线程数
+     * @param aNumThreads 需要设置的线程数，默认为 {@code 1}
+     * @return 自身方便链式调用
+     */
+    public TablePair setNthreads(int aNumThreads) {mThreadNum = aNumThreads; return this;}
+    
+    private boolean mAtomOwnership = false;
+    /** @return {@inheritDoc} */
+    @Override public boolean atomOwnership() {return mAtomOwnership;}
+    /** @see IPairPotential#atomOwnership() */
+    public TablePair setAtomOwnership(boolean aAtomOwnership) {mAtomOwnership = aAtomOwnership; return this;}
+    
+    /**
+     * 直接通过表格计算对势能量
+     * @param aType1 第一个原子的种类，不考虑种类时为 {@code 0}
+     * @param aType2 第二个原子的种类，不考虑种类时为 {@code 0}
+     * @param aR 原子间距离
+     * @return 对势能量，超过截断或者没有设置此种类对时为 {@code 0}
+     */
+    public double energy(int aType1, int aType2, double aR) {
+        int tTable = mTableIdx[aType1][aType2];
+        if (tTable < 0) return 0.0;
+        double rsq = aR*aR;
+        if (rsq >= mCutsq[tTable]) return 0.0;
+        return energy_(tTable, mRSquared ? rsq : aR);
+    }
+    
+    /** 计算 {@code x} 处的能量，{@code x} 为 r 或者 r² */
+    private double energy_(int aTable, double aX) {
+        double p = (aX - mX0[aTable]) * mInvDx[aTable];
+        int k = MathEX.Code.floor2int(p);
+        int tShift = (aTable*(mN-1) + Math.min(Math.max(k, 0), mN-2)) * 4;
+        // 内截断以内线性外推
+        if (k < 0) return mCoeffs[tShift] + mCoeffs[tShift+1]*p;
+        p -= Math.min(k, mN-2);
+        return ((mCoeffs[tShift+3]*p + mCoeffs[tShift+2])*p + mCoeffs[tShift+1])*p + mCoeffs[tShift];
+    }
+    /** 计算 {@code x} 处的 {@code -dE/dr / r}，即 lammps 中的 {@code fpair}，{@code x} 为 r 或者 r² */
+    private double fpair_(int aTable, double aX) {
+        double p = (aX - mX0[aTable]) * mInvDx[aTable];
+        int k = MathEX.Code.floor2int(p);
+        int tShift = (aTable*(mN-1) + Math.min(Math.max(k, 0), mN-2)) * 4;
+        double tGrad;
+        if (k < 0) {
+            tGrad = mCoeffs[tShift+1] * mInvDx[aTable];
+        } else {
+            p -= Math.min(k, mN-2);
+            tGrad = ((3.0*mCoeffs[tShift+3]*p + 2.0*mCoeffs[tShift+2])*p + mCoeffs[tShift+1]) * mInvDx[aTable];
+        }
+        // r² 网格下 dE/dr / r = 2 dE/d(r²)
+        if (mRSquared) return -2.0*tGrad;
+        return aX<=0.0 ? 0.0 : (-tGrad/aX);
+    }
+    
+    /**
+     * {@inheritDoc}
+     * @param aAtomNumber {@inheritDoc}
+     * @param aNeighborListGetter {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override public void calEnergy(int aAtomNumber, INeighborListGetter aNeighborListGetter, IEnergyAccumulator rEnergyAccumulator) {
+        aNeighborListGetter.forEachNL((threadID, cIdx, cType, nl) -> {
+            final int[] tTableIdx = mTableIdx[cType];
+            nl.forEachDxyzTypeIdx(mCutMax, (dx, dy, dz, type, idx) -> {
+                int tTable = tTableIdx[type];
+                if (tTable < 0) return;
+                double rsq = dx*dx + dy*dy + dz*dz;
+                if (rsq >= mCutsq[tTable]) return;
+                double deng = energy_(tTable, mRSquared ? rsq : MathEX.Fast.sqrt(rsq));
+                rEnergyAccumulator.add(threadID, cIdx, idx, deng);
+            });
+        });
+    }
+    
+    /**
+     * {@inheritDoc}
+     * @param aAtomNumber {@inheritDoc}
+     * @param aNeighborListGetter {@inheritDoc}
+     * @param rEnergyAccumulator {@inheritDoc}
+     * @param rForceAccumulator {@inheritDoc}
+     * @param rVirialAccumulator {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override public void calEnergyForceVirial(int aAtomNumber, INeighborListGetter aNeighborListGetter, @Nullable IEnergyAccumulator rEnergyAccumulator, @Nullable IForceAccumulator rForceAccumulator, @Nullable IVirialAccumulator rVirialAccumulator) throws Exception {
+        aNeighborListGetter.forEachNL((threadID, cIdx, cType, nl) -> {
+            final int[] tTableIdx = mTableIdx[cType];
+            nl.forEachDxyzTypeIdx(mCutMax, (dx, dy, dz, type, idx) -> {
+                int tTable = tTableIdx[type];
+                if (tTable < 0) return;
+                double rsq = dx*dx + dy*dy + dz*dz;
+                if (rsq >= mCutsq[tTable]) return;
+                double x = mRSquared ? rsq : MathEX.Fast.sqrt(rsq);
+                double fpair = fpair_(tTable, x);
+                double fx = dx*fpair;
+                double fy = dy*fpair;
+                double fz = dz*fpair;
+                if (rForceAccumulator != null) {
+                    rForceAccumulator.add(threadID, cIdx, idx, fx, fy, fz);
+                }
+                if (rVirialAccumulator != null) {
+                    rVirialAccumulator.add(threadID, cIdx, idx, fx, fy, fz, dx, dy, dz);
+                }
+                if (rEnergyAccumulator != null) {
+                    double deng = energy_(tTable, x);
+                    rEnergyAccumulator.add(threadID, cIdx, idx, deng);
+                }
+            });
+        });
+    }
+}
@@ -191,6 +191,28 @@ public class Conf {
      * 也可使用环境变量 {@code JSE_PARFOR_NO_COMPETITIVE} 来设置
      */
     public static boolean PARFOR_NO_COMPETITIVE = OS.envZ("JSE_PARFOR_NO_COMPETITIVE", false);
+    /**
+     * 控制 {@link UT.Par#parfor} 以及 {@link jse.parallel.ParforThreadPool} 默认的任务分配方式，
+     * 可选 {@code static}（连续分块）, {@code cyclic}（间隔分配）, {@code dynamic}（竞争获取固定大小的块）,
+     * {@code guided}（竞争获取逐渐减小的块）, {@code stealing}（连续分块，完成后窃取其他线程剩余的任务），
+     * 具体可以参看 {@link jse.parallel.ParforThreadPool.Schedule}；
+     * 当 {@link #PARFOR_NO_COMPETITIVE} 为 {@code true} 时此值无效，总是使用 {@code cyclic}
+     * <p>
+     * 默认为 {@code "dynamic"}
+     * <p>
+     * 也可使用环境变量 {@code JSE_PARFOR_SCHEDULE} 来设置
+     */
+    public static String PARFOR_SCHEDULE = OS.env("JSE_PARFOR_SCHEDULE", "dynamic");
+    /**
+     * 控制 {@link UT.Par#parfor} 以及 {@link jse.parallel.ParforThreadPool} 默认的任务块大小，
+     * 对于 {@code dynamic} 和 {@code stealing} 为每次获取的任务数目，对于 {@code guided} 为最小的任务数目，
+     * 对于其余的分配方式无效
+     * <p>
+     * 默认为 {@code 1}
+     * <p>
+     * 也可使用环境变量 {@code JSE_PARFOR_CHUNK_SIZE} 来设置
+     */
+    public static int PARFOR_CHUNK_SIZE = OS.envI("JSE_PARFOR_CHUNK_SIZE", 1);
     /**
      * 设置 {@link UT.Par#parfor} 默认的线程数
      * <p>
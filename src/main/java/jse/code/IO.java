@@ -15,6 +15,8 @@ import jse.cache.ByteArrayCache;
 import jse.code.collection.AbstractCollections;
 import jse.code.collection.NewCollections;
 import jse.code.functional.IUnaryFullOperator;
+import jse.code.io.BlockGzip;
+import jse.code.io.BlockGzipOutputStream;
 import jse.code.io.CharScanner;
 import jse.code.io.UnicodeReader;
 import jse.math.function.IFunc1;
@@ -1846,6 +1848,8 @@ public class IO {
      * <p>
      * 已经对写入流自动 buffer，主要用于实现高效的边操作边写入行为，也可以使用
      * {@link IO#toWriteln(String)} 来获取更加简洁的写入流接口 {@link IO.IWriteln}
+     * <p>
+     * 对于 {@code .gz} 结尾的文件会自动按块压缩写入，具体格式见 {@link BlockGzipOutputStream}
      *
      * @param aFilePath 需要写入的文件路径
      * @return 创建得到的写入流 {@link BufferedWriter}
@@ -1880,7 +1884,10 @@ public class IO {
     /** {@link IO#toWriter(String, OpenOption...)} 的 {@link Path} 形式接口，主要用于内部使用 */
     public static BufferedWriter toWriter(Path aPath, OpenOption... aOptions) throws IOException {
         validPath(aPath);
-        return new BufferedWriter(new OutputStreamWriter(toOutputStream(aPath, aOptions), StandardCharsets.UTF_8)) {
+        OutputStream tOutputStream = toOutputStream(aPath, aOptions);
+        // .gz 文件自动按块压缩，追加写入时得到的多个 gzip member 依旧是合法的 gzip 文件
+        if (BlockGzip.isGzip(aPath)) tOutputStream = new BlockGzipOutputStream(tOutputStream);
+        return new BufferedWriter(new OutputStreamWriter(tOutputStream, StandardCharsets.UTF_8)) {
             @Override public void newLine() throws IOException {
                 write("\n");
             }
@@ -1993,7 +2000,20 @@ public class IO {
      */
     public static IWriteln toWriteln(BufferedWriter aWriter) {
         return new IWriteln() {
-            @Override public void writeln(CharSequence aLine) throws IOException {aWriter.append(aLine); aWriter.newLine();}
+            /** 对于 {@link StringBuilder} 直接拷贝到此 buffer 中写入，避免 {@link Writer#append} 中的 {@code toString} */
+            private char[] mBuf = null;
+            @Override public void writeln(CharSequence aLine) throws IOException {
+                if (aLine instanceof StringBuilder) {
+                    StringBuilder tLine = (StringBuilder)aLine;
+                    int tLen = tLine.length();
+                    if (mBuf==null || mBuf.length<tLen) mBuf = new char[Math.max(tLen, 256)];
+                    tLine.getChars(0, tLen, mBuf, 0);
+                    aWriter.write(mBuf, 0, tLen);
+                } else {
+                    aWriter.append(aLine);
+                }
+                aWriter.newLine();
+            }
             @Override public void close() throws IOException {aWriter.close();}
         };
     }
@@ -2022,6 +2042,8 @@ public class IO {
      * 读取输入路径的文件并转为读取流 {@link BufferedReader}。
      * <p>
      * 已经对读取流自动 buffer，主要用于实现高效的边操作边读取行为
+     * <p>
+     * 对于 {@code .gz} 结尾的文件会自动解压读取
      *
      * @param aFilePath 需要读取的文件路径
      * @return 创建得到的读取流 {@link BufferedReader}
@@ -2033,6 +2055,7 @@ public class IO {
     }
     /** {@link IO#toReader(String)} 的 {@link Path} 形式接口，主要用于内部使用 */
     public static BufferedReader toReader(Path aPath) throws IOException {
+        if (BlockGzip.isGzip(aPath)) return toReader(BlockGzip.toInputStream(aPath));
         return toReader(toInputStream(aPath));
     }
     /**
@@ -0,0 +1,182 @@
+package jse.code.io;
+
+import jse.code.IO;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 异步的多帧数据写入器，用于在模拟过程中输出轨迹而不阻塞计算线程
+ * <p>
+ * 调用 {@link #write(Object)} 时只会在当前线程创建此帧的不可变快照，
+ * 实际的格式化以及写入都在后台的单个线程中完成；
+ * 当等待写入的帧数达到队列上限时 {@link #write(Object)} 会阻塞，从而避免快照占用过多内存
+ * <p>
+ * 后台线程的任何错误都会在之后的 {@link #write(Object)}，{@link #flush()} 或者 {@link #close()} 中抛出
+ * <p>
+ * 一般通过具体格式的 {@code asyncWriter} 方法获取，例如：
+ * <pre> {@code
+ * try (def writer = Lammpstrj.asyncWriter('out.lammpstrj')) {
+ *     for (step in 0..<1000) {
+ *         // ... 计算
+ *         writer.write(data)
+ *     }
+ * }
+ * } </pre>
+ *
+ * @param <T> 写入的帧数据类型
+ * @author liqa
+ */
+public class AsyncFrameWriter<T> implements AutoCloseable {
+    /** 默认最多等待写入的帧数 */
+    public final static int DEFAULT_QUEUE_SIZE = 4;
+    
+    /** 已经创建好快照的写入任务，会在后台线程中执行 */
+    @FunctionalInterface public interface IFrameTask {void write(IO.IWriteln aWriteln) throws IOException;}
+    /** 在调用线程中创建快照，之后原始数据的修改不能影响到返回的任务 */
+    @FunctionalInterface public interface ISnapshot<T> {IFrameTask snapshot(T aFrame, int aIdx);}
+    
+    private final static IFrameTask POISON = aWriteln -> {};
+    
+    private final BufferedWriter mWriter;
+    private final IO.IWriteln mWriteln;
+    private final ISnapshot<? super T> mSnapshot;
+    private final BlockingQueue<IFrameTask> mQueue;
+    private final Thread mThread;
+    private volatile @Nullable Throwable mError = null;
+    private int mIdx = 0;
+    private boolean mClosed = false;
+    /** 错误只会抛出一次，避免 try-with-resources 在 close 时再次抛出同一个错误 */
+    private boolean mErrorThrown = false;
+    
+    /**
+     * 创建一个异步写入器，会覆盖已有文件
+     * @param aFilePath 需要写入的文件路径
+     * @param aSnapshot 创建每一帧快照的方法
+     * @param aQueueSize 最多等待写入的帧数，超过时 {@link #write(Object)} 会阻塞
+     * @throws IOException 如果无法创建文件
+     */
+    public AsyncFrameWriter(String aFilePath, ISnapshot<? super T> aSnapshot, int aQueueSize) throws IOException {
+        if (aQueueSize < 1) throw new IllegalArgumentException("Queue size MUST be positive: "+aQueueSize);
+        mWriter = IO.toWriter(aFilePath);
+        mWriteln = IO.toWriteln(mWriter);
+        mSnapshot = aSnapshot;
+        mQueue = new ArrayBlockingQueue<>(aQueueSize);
+        mThread = new Thread(this::run_, "jse-async-writer");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+    public AsyncFrameWriter(String aFilePath, ISnapshot<? super T> aSnapshot) throws IOException {this(aFilePath, aSnapshot, DEFAULT_QUEUE_SIZE);}
+    
+    private void run_() {
+        while (true) {
+            IFrameTask tTask;
+            try {tTask = mQueue.take();}
+            catch (InterruptedException e) {mError = e; return;}
+            if (tTask == POISON) return;
+            if (tTask instanceof FlushTask_) {
+                try {if (mError == null) mWriter.flush();}
+                catch (Throwable t) {mError = t;}
+                finally {((FlushTask_)tTask).mLatch.countDown();}
+                continue;
+            }
+            // 出错后依旧需要继续消耗队列，避免写入的线程一直阻塞，但不再实际写入
+            if (mError != null) continue;
+            try {tTask.write(mWriteln);}
+            catch (Throwable t) {mError = t;}
+        }
+    }
+    /** 用于 {@link #flush()} 的屏障，后台线程执行到此时会 flush 文件并通知等待的线程 */
+    private final static class FlushTask_ implements IFrameTask {
+        final CountDownLatch mLatch = new CountDownLatch(1);
+        @Override public void write(IO.IWriteln aWriteln) {/**/}
+    }
+    
+    private void checkError_() throws IOException {
+        Throwable tError = mError;
+        if (tError == null || mErrorThrown) return;
+        mErrorThrown = true;
+        if (tError instanceof IOException) throw (IOException)tError;
+        if (tError instanceof RuntimeException) throw (RuntimeException)tError;
+        if (tError instanceof Error) throw (Error)tError;
+        throw new IOException(tError);
+    }
+    private void put_(IFrameTask aTask) throws IOException {
+        try {mQueue.put(aTask);}
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+    
+    /**
+     * 在当前线程创建此帧的快照，并加入写入队列，队列已满时会阻塞
+     * @param aFrame 需要写入的帧
+     * @return 自身，方便链式调用
+     * @throws IOException 如果之前的写入出现错误
+     */
+    public synchronized AsyncFrameWriter<T> write(T aFrame) throws IOException {
+        if (mClosed) throw new IllegalStateException("This AsyncFrameWriter is closed");
+        if (mErrorThrown) throw new IOException("Previous async write failed", mError);
+        checkError_();
+        put_(mSnapshot.snapshot(aFrame, mIdx));
+        ++mIdx;
+        return this;
+    }
+    /** groovy stuffs */
+    public AsyncFrameWriter<T> leftShift(T aFrame) throws IOException {return write(aFrame);}
+    /** @return 已经提交的帧数 */
+    public synchronized int size() {return mIdx;}
+    
+    /**
+     * 等待之前提交的所有帧都写入文件
+     * @throws IOException 如果写入出现错误
+     */
+    public synchronized void flush() throws IOException {
+        if (mClosed) return;
+        FlushTask_ tTask = new FlushTask_();
+        put_(tTask);
+        try {tTask.mLatch.await();}
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        checkError_();
+    }
+    
+    /**
+     * 等待所有帧写入完成后关闭文件；如果等待时被中断，会丢弃还没有写入的帧，
+     * 但依旧会等待后台线程结束后再关闭文件，并在恢复中断标记后抛出错误
+     * @throws IOException 如果写入出现错误，或者等待时被中断
+     */
+    @Override public synchronized void close() throws IOException {
+        if (mClosed) return;
+        mClosed = true;
+        boolean tInterrupted = false;
+        while (true) {
+            try {mQueue.put(POISON); break;}
+            catch (InterruptedException e) {tInterrupted = true; mQueue.clear();}
+        }
+        // 后台线程可能正在写入，因此只有在其结束后才能关闭文件
+        while (true) {
+            try {mThread.join(); break;}
+            catch (InterruptedException e) {
+                if (tInterrupted) continue;
+                tInterrupted = true;
+                mQueue.clear();
+                mQueue.offer(POISON);
+            }
+        }
+        try {
+            mWriteln.close();
+        } finally {
+            if (tInterrupted) Thread.currentThread().interrupt();
+        }
+        checkError_();
+        if (tInterrupted) throw new IOException("Interrupted while closing AsyncFrameWriter, unwritten frames are discarded");
+    }
+}
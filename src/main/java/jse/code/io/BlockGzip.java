@@ -0,0 +1,348 @@
+package jse.code.io;
+
+import jse.parallel.ParforThreadPool;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * 按块压缩的 gzip 文件（BGZF 格式）相关的工具类
+ * <p>
+ * {@link jse.code.IO#toReader(String)} 和 {@link jse.code.IO#toWriter(String)}
+ * 会对 {@code .gz} 结尾的文件自动使用这里的方法进行解压和压缩，
+ * 写入时使用 {@link BlockGzipOutputStream} 得到多个独立的 gzip member，
+ * 从而可以使用 {@link #decompress(Path, ParforThreadPool)} 或者 {@link #chunkReader(Path, ParforThreadPool)} 并行解压；
+ * 对于普通的 gzip 文件也可以正常读取，只是无法并行
+ *
+ * @see BlockGzipOutputStream
+ * @author liqa
+ */
+public class BlockGzip {
+    private BlockGzip() {}
+    
+    /** 每块未压缩数据的最大字节数，和 BGZF 一致，保证压缩后的块大小不会超过 {@link #MAX_BLOCK_SIZE} */
+    public final static int BLOCK_SIZE = 0xFF00;
+    /** 每块压缩后的最大字节数，由于块大小存储为 16 位整数 */
+    public final static int MAX_BLOCK_SIZE = 0x10000;
+    final static int HEADER_SIZE = 18, FOOTER_SIZE = 8;
+    /** BGZF 格式的结尾标记，为一个空的块 */
+    final static byte[] EOF_BLOCK = {
+        0x1f, (byte)0x8b, 0x08, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00, (byte)0xff, 0x06, 0x00, 0x42, 0x43, 0x02, 0x00,
+        0x1b, 0x00, 0x03, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00
+    };
+    
+    /**
+     * 判断路径是否是 gzip 压缩文件，目前直接通过 {@code .gz} 后缀判断
+     * @param aPath 需要判断的路径
+     * @return 是否需要使用 gzip 进行读写
+     */
+    public static boolean isGzip(Path aPath) {
+        Path tName = aPath.getFileName();
+        return tName!=null && tName.toString().toLowerCase(Locale.ROOT).endsWith(".gz");
+    }
+    
+    /**
+     * 读取 gzip 文件并转为解压后的输入流，支持多个 gzip member 拼接的文件
+     * @param aPath 需要读取的文件路径
+     * @return 解压后的输入流
+     * @throws IOException 文件不存在或者不是 gzip 格式
+     */
+    public static InputStream toInputStream(Path aPath) throws IOException {
+        return new GZIPInputStream(new FileInputStream(aPath.toFile()), MAX_BLOCK_SIZE);
+    }
+    /**
+     * 从指定的虚拟偏移开始读取 BGZF 文件，并转为解压后的输入流
+     * @param aPath 需要读取的文件路径
+     * @param aVirtualOffset 通过 {@link BlockGzipOutputStream#virtualOffset()} 获取的虚拟偏移
+     * @return 从此位置开始的解压后的输入流
+     * @throws IOException 文件不存在或者不是 gzip 格式
+     */
+    public static InputStream toInputStream(Path aPath, long aVirtualOffset) throws IOException {
+        FileInputStream tFileStream = new FileInputStream(aPath.toFile());
+        InputStream tStream;
+        try {
+            tFileStream.getChannel().position(aVirtualOffset >>> 16);
+            tStream = new GZIPInputStream(tFileStream, MAX_BLOCK_SIZE);
+        } catch (IOException e) {
+            tFileStream.close(); throw e;
+        }
+        long tSkip = aVirtualOffset & 0xFFFF;
+        while (tSkip > 0) {
+            long tSkipped = tStream.skip(tSkip);
+            if (tSkipped <= 0) {tStream.close(); throw new EOFException("Virtual offset out of range: "+aVirtualOffset);}
+            tSkip -= tSkipped;
+        }
+        return tStream;
+    }
+    
+    /**
+     * 扫描 BGZF 文件中每一块的位置，只会读取每一块的头部和尾部
+     * @param aChannel 需要扫描的文件
+     * @return 长度为 {@code 2*(n+1)} 的数组，前 {@code n+1} 个为每一块在压缩文件中的起始位置（最后一个为文件大小），
+     * 后 {@code n+1} 个为每一块解压后数据的起始位置（最后一个为解压后总大小）；如果不是 BGZF 格式则返回 {@code null}
+     * @throws IOException 读取文件失败
+     */
+    public static long @Nullable[] scanBlocks(FileChannel aChannel) throws IOException {
+        final long tSize = aChannel.size();
+        final ByteBuffer tHead = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer tFoot = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        long[] rOffsets = new long[16];
+        long[] rUOffsets = new long[16];
+        int tNum = 0;
+        long tPos = 0, tUPos = 0;
+        while (tPos < tSize) {
+            tHead.clear();
+            if (readFully_(aChannel, tHead, tPos) < HEADER_SIZE) return null;
+            // 只支持头部只有 BC 额外字段的标准 BGZF 块
+            if (tHead.get(0)!=0x1f || tHead.get(1)!=(byte)0x8b || tHead.get(2)!=0x08 || (tHead.get(3)&0x04)==0) return null;
+            if (tHead.getShort(10)!=6 || tHead.get(12)!='B' || tHead.get(13)!='C' || tHead.getShort(14)!=2) return null;
+            int tBlockSize = (tHead.getShort(16)&0xFFFF) + 1;
+            if (tPos+tBlockSize > tSize) return null;
+            tFoot.clear();
+            if (readFully_(aChannel, tFoot, tPos+tBlockSize-4) < 4) return null;
+            if (tNum+1 >= rOffsets.length) {
+                rOffsets = Arrays.copyOf(rOffsets, rOffsets.length*2);
+                rUOffsets = Arrays.copyOf(rUOffsets, rUOffsets.length*2);
+            }
+            rOffsets[tNum] = tPos; rUOffsets[tNum] = tUPos;
+            ++tNum;
+            tPos += tBlockSize;
+            tUPos += tFoot.getInt(0) & 0xFFFFFFFFL;
+        }
+        long[] rOut = new long[2*(tNum+1)];
+        System.arraycopy(rOffsets, 0, rOut, 0, tNum);
+        System.arraycopy(rUOffsets, 0, rOut, tNum+1, tNum);
+        rOut[tNum] = tPos; rOut[2*tNum+1] = tUPos;
+        return rOut;
+    }
+    /**
+     * 根据 {@link #scanBlocks(FileChannel)} 得到的每一块的位置，将解压后数据中的位置转换为虚拟偏移，
+     * 由于虚拟偏移可以指向块内的任意位置，因此不需要写入时按照数据的边界来划分块
+     * @param aBlocks {@link #scanBlocks(FileChannel)} 得到的每一块的位置
+     * @param aUOffset 解压后数据中的位置
+     * @return 对应的虚拟偏移，可以用于 {@link #toInputStream(Path, long)}
+     */
+    public static long virtualOffset(long[] aBlocks, long aUOffset) {
+        final int tNum = aBlocks.length/2 - 1;
+        final int tUShift = tNum+1;
+        if (aUOffset<0 || aUOffset>aBlocks[tUShift+tNum]) throw new IndexOutOfBoundsException("Uncompressed offset: "+aUOffset);
+        // 恰好位于数据结尾时直接指向文件结尾
+        if (aUOffset == aBlocks[tUShift+tNum]) return aBlocks[tNum] << 16;
+        // 二分查找最后一个起始位置不超过 aUOffset 的块，从而会跳过中间可能存在的空块
+        int tLow = 0, tHigh = tNum-1;
+        while (tLow < tHigh) {
+            int tMid = (tLow+tHigh+1) >>> 1;
+            if (aBlocks[tUShift+tMid] <= aUOffset) tLow = tMid;
+            else tHigh = tMid-1;
+        }
+        return (aBlocks[tLow] << 16) | (aUOffset - aBlocks[tUShift+tLow]);
+    }
+    private static int readFully_(FileChannel aChannel, ByteBuffer rBuf, long aPos) throws IOException {
+        int tRead = 0;
+        while (rBuf.hasRemaining()) {
+            int tLen = aChannel.read(rBuf, aPos+tRead);
+            if (tLen < 0) break;
+            tRead += tLen;
+        }
+        return tRead;
+    }
+    
+    /**
+     * 将整个 gzip 文件解压到内存中，如果是 BGZF 格式则会使用 {@code aPool} 并行解压每一块，
+     * 否则会串行解压
+     * @param aPath 需要解压的文件路径
+     * @param aPool 可选的并行线程池，为 {@code null} 时串行解压
+     * @return 解压后的所有数据
+     * @throws IOException 文件不存在，格式错误或者解压后的数据超过 2GB
+     */
+    public static ByteBuffer decompress(Path aPath, @Nullable ParforThreadPool aPool) throws IOException {
+        try (ChunkReader tReader = chunkReader(aPath, aPool)) {
+            final long tTotal = tReader.size();
+            if (tTotal < 0) return decompressStream_(tReader, aPath);
+            if (tTotal > Integer.MAX_VALUE-8) throw new IOException("Decompressed size too large: "+tTotal);
+            final byte[] rData = new byte[(int)tTotal];
+            int tLen = 0;
+            while (tLen < rData.length) {
+                int tRead = tReader.read(rData, tLen, rData.length-tLen);
+                if (tRead < 0) break;
+                tLen += tRead;
+            }
+            return ByteBuffer.wrap(rData, 0, tLen);
+        }
+    }
+    
+    /**
+     * 获取按窗口分段解压 gzip 文件的读取器，用于解压后的数据超过 2GB
+     * 或者不希望一次解压到内存中的情况
+     * @param aPath 需要解压的文件路径
+     * @param aPool 可选的并行线程池，为 {@code null} 时串行解压；此线程池由调用者负责关闭
+     * @return 分段解压的读取器
+     * @throws IOException 文件不存在或者读取失败
+     * @see ChunkReader
+     */
+    public static ChunkReader chunkReader(Path aPath, @Nullable ParforThreadPool aPool) throws IOException {
+        FileChannel tChannel = FileChannel.open(aPath, StandardOpenOption.READ);
+        try {
+            final long[] tBlocks = scanBlocks(tChannel);
+            if (tBlocks != null) return new ChunkReader(tChannel, tBlocks, null, aPool);
+            tChannel.close();
+            return new ChunkReader(null, null, toInputStream(aPath), aPool);
+        } catch (IOException | RuntimeException e) {
+            tChannel.close(); throw e;
+        }
+    }
+    /**
+     * 按窗口分段解压 gzip 文件的读取器，对于 BGZF 格式，每次读取都只会解压完整的块，
+     * 并使用线程池并行解压这些块；对于普通的 gzip 文件则直接串行流式解压
+     * <p>
+     * 每次读取的长度需要不小于 {@link #MAX_BLOCK_SIZE}，保证至少能放下一个完整的块
+     *
+     * @author liqa
+     */
+    public final static class ChunkReader implements Closeable {
+        private final @Nullable FileChannel mChannel;
+        private final long @Nullable[] mBlocks;
+        private final @Nullable InputStream mStream;
+        private final @Nullable ParforThreadPool mPool;
+        private final int mNum;
+        private int mNext = 0;
+        private final Inflater[] mInflaters;
+        private final ByteBuffer[] mBufs;
+        private final CRC32[] mCRCs;
+        
+        private ChunkReader(@Nullable FileChannel aChannel, long @Nullable[] aBlocks, @Nullable InputStream aStream, @Nullable ParforThreadPool aPool) {
+            mChannel = aChannel; mBlocks = aBlocks; mStream = aStream; mPool = aPool;
+            mNum = aBlocks==null ? 0 : aBlocks.length/2 - 1;
+            final int tThreadNum = (aBlocks==null || aPool==null) ? 0 : aPool.nthreads();
+            final int tSize = aBlocks==null ? 0 : Math.max(tThreadNum, 1);
+            mInflaters = new Inflater[tSize];
+            mBufs = new ByteBuffer[tSize];
+            mCRCs = new CRC32[tSize];
+            for (int i = 0; i < tSize; ++i) {
+                mInflaters[i] = new Inflater(true);
+                mBufs[i] = ByteBuffer.allocate(MAX_BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                mCRCs[i] = new CRC32();
+            }
+        }
+        
+        /** @return 解压后数据的总字节数，对于非 BGZF 格式的文件无法预先知道，返回 {@code -1} */
+        public long size() {return mBlocks==null ? -1 : mBlocks[2*mNum+1];}
+        
+        /**
+         * 解压后续的数据到 {@code rData} 中，对于 BGZF 格式会解压尽可能多的完整的块
+         * @param rData 需要写入的数组
+         * @param aOff 写入的起始位置
+         * @param aLen 最多写入的字节数，需要不小于 {@link #MAX_BLOCK_SIZE}
+         * @return 实际写入的字节数，如果已经读取到结尾则返回 {@code -1}
+         * @throws IOException 文件格式错误或者读取失败
+         */
+        public int read(byte[] rData, int aOff, int aLen) throws IOException {
+            if (mBlocks == null) {
+                assert mStream != null;
+                int rLen = 0;
+                while (rLen < aLen) {
+                    int tRead = mStream.read(rData, aOff+rLen, aLen-rLen);
+                    if (tRead < 0) break;
+                    rLen += tRead;
+                }
+                return (rLen==0 && aLen>0) ? -1 : rLen;
+            }
+            assert mChannel != null;
+            if (mNext >= mNum) return -1;
+            final int tFrom = mNext;
+            final long tUBase = mBlocks[mNum+1+tFrom];
+            int tTo = tFrom;
+            while (tTo < mNum && mBlocks[mNum+2+tTo]-tUBase <= aLen) ++tTo;
+            if (tTo == tFrom) throw new IllegalArgumentException("Length to read MUST >= size of gzip block: "+aLen);
+            // 将块的绝对解压位置平移到 rData 中的位置
+            final long tUShift = tUBase - aOff;
+            final FileChannel tChannel = mChannel;
+            final long[] tBlocks = mBlocks;
+            final int tNum = mNum;
+            final IOException[] rErr = {null};
+            if (mPool == null || mInflaters.length == 1) {
+                for (int i = tFrom; i < tTo && rErr[0] == null; ++i) rErr[0] = inflateBlock_(tChannel, tBlocks, tNum, i, rData, tUShift, mInflaters[0], mBufs[0], mCRCs[0]);
+            } else {
+                mPool.parfor(tTo-tFrom, (i, threadID) -> {
+                    IOException tErr = inflateBlock_(tChannel, tBlocks, tNum, tFrom+i, rData, tUShift, mInflaters[threadID], mBufs[threadID], mCRCs[threadID]);
+                    if (tErr != null) synchronized (rErr) {rErr[0] = tErr;}
+                });
+            }
+            if (rErr[0] != null) throw rErr[0];
+            mNext = tTo;
+            return (int)(mBlocks[mNum+1+tTo] - tUBase);
+        }
+        
+        @Override public void close() throws IOException {
+            for (Inflater tInflater : mInflaters) tInflater.end();
+            if (mChannel != null) mChannel.close();
+            if (mStream != null) mStream.close();
+        }
+    }
+    /** 解压单个块到 {@code rData} 对应位置（解压后的绝对位置减去 {@code aUShift}），由于需要在并行中使用，这里直接返回错误而不是抛出 */
+    private static @Nullable IOException inflateBlock_(FileChannel aChannel, long[] aBlocks, int aNum, int aIdx, byte[] rData, long aUShift, Inflater aInflater, ByteBuffer rBuf, CRC32 rCRC) {
+        try {
+            final long tPos = aBlocks[aIdx];
+            final int tBlockSize = (int)(aBlocks[aIdx+1] - tPos);
+            final int tUStart = (int)(aBlocks[aNum+1+aIdx] - aUShift);
+            final int tULen = (int)(aBlocks[aNum+2+aIdx] - aBlocks[aNum+1+aIdx]);
+            rBuf.clear(); rBuf.limit(tBlockSize);
+            if (readFully_(aChannel, rBuf, tPos) < tBlockSize) return new EOFException("Unexpected end of gzip block at: "+tPos);
+            byte[] tBlock = rBuf.array();
+            aInflater.reset();
+            aInflater.setInput(tBlock, HEADER_SIZE, tBlockSize-HEADER_SIZE-FOOTER_SIZE);
+            int tLen = 0;
+            while (tLen < tULen) {
+                int tInflated = aInflater.inflate(rData, tUStart+tLen, tULen-tLen);
+                if (tInflated == 0 && (aInflater.finished() || aInflater.needsInput() || aInflater.needsDictionary())) break;
+                tLen += tInflated;
+            }
+            if (tLen != tULen) return new IOException("Corrupt gzip block at: "+tPos);
+            rCRC.reset();
+            rCRC.update(rData, tUStart, tULen);
+            if ((int)rCRC.getValue() != rBuf.getInt(tBlockSize-FOOTER_SIZE)) return new IOException("CRC mismatch in gzip block at: "+tPos);
+            return null;
+        } catch (IOException e) {
+            return e;
+        } catch (DataFormatException e) {
+            return new IOException(e);
+        }
+    }
+    private static ByteBuffer decompressStream_(ChunkReader aReader, Path aPath) throws IOException {
+        byte[] rData = new byte[MAX_BLOCK_SIZE];
+        int tLen = 0;
+        while (true) {
+            if (tLen == rData.length) {
+                if (rData.length >= Integer.MAX_VALUE-8) throw new IOException("Decompressed size too large: "+aPath);
+                rData = Arrays.copyOf(rData, (int)Math.min((long)rData.length*2, Integer.MAX_VALUE-8));
+            }
+            int tRead = aReader.read(rData, tLen, rData.length-tLen);
+            if (tRead < 0) break;
+            tLen += tRead;
+        }
+        return ByteBuffer.wrap(rData, 0, tLen);
+    }
+    
+    static void writeHeader_(byte[] rBlock, int aBlockSize) {
+        System.arraycopy(EOF_BLOCK, 0, rBlock, 0, 16);
+        rBlock[16] = (byte)(aBlockSize-1);
+        rBlock[17] = (byte)((aBlockSize-1) >>> 8);
+    }
+    static void putInt_(byte[] rBlock, int aPos, int aValue) {
+        rBlock[aPos  ] = (byte) aValue;
+        rBlock[aPos+1] = (byte)(aValue >>> 8);
+        rBlock[aPos+2] = (byte)(aValue >>> 16);
+        rBlock[aPos+3] = (byte)(aValue >>> 24);
+    }
+}
@@ -0,0 +1,103 @@
+package jse.code.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 按块写入 gzip 文件的输出流，每一块都是一个独立的 gzip member，
+ * 格式和 samtools 使用的 BGZF 一致，因此可以直接使用 {@code gzip -d} 或者
+ * {@link java.util.zip.GZIPInputStream} 解压，也可以通过 {@link BlockGzip}
+ * 并行解压，或者通过 {@link #virtualOffset()} 记录的位置直接跳转读取
+ * <p>
+ * 调用 {@link #flush()} 会直接结束当前块，因此不建议过于频繁的调用
+ *
+ * @see BlockGzip
+ * @author liqa
+ */
+public class BlockGzipOutputStream extends OutputStream {
+    private final OutputStream mOut;
+    private final Deflater mDeflater;
+    private final CRC32 mCRC = new CRC32();
+    private final byte[] mBuf = new byte[BlockGzip.BLOCK_SIZE];
+    private final byte[] mCompressed = new byte[BlockGzip.MAX_BLOCK_SIZE];
+    private int mBufLen = 0;
+    private long mCompressedOffset = 0;
+    private boolean mClosed = false;
+    
+    /**
+     * 创建一个按块压缩的输出流，关闭时会同时关闭 {@code aOut}
+     * @param aOut 需要写入的输出流
+     * @param aLevel 压缩等级，和 {@link Deflater} 一致
+     */
+    public BlockGzipOutputStream(OutputStream aOut, int aLevel) {
+        mOut = aOut;
+        mDeflater = new Deflater(aLevel, true);
+    }
+    public BlockGzipOutputStream(OutputStream aOut) {this(aOut, Deflater.DEFAULT_COMPRESSION);}
+    
+    /**
+     * 获取当前位置的虚拟偏移，和 BGZF 一致，高 48 位为当前块在压缩文件中的位置，
+     * 低 16 位为在块内解压后的位置，可以用于 {@link BlockGzip#toInputStream(java.nio.file.Path, long)}
+     * 直接跳转到此位置读取
+     * @return 当前位置的虚拟偏移
+     */
+    public long virtualOffset() {return (mCompressedOffset << 16) | mBufLen;}
+    
+    @Override public void write(int aByte) throws IOException {
+        if (mBufLen == mBuf.length) writeBlock_();
+        mBuf[mBufLen] = (byte)aByte;
+        ++mBufLen;
+    }
+    @Override public void write(byte[] aData, int aOff, int aLen) throws IOException {
+        while (aLen > 0) {
+            if (mBufLen == mBuf.length) writeBlock_();
+            int tLen = Math.min(aLen, mBuf.length-mBufLen);
+            System.arraycopy(aData, aOff, mBuf, mBufLen, tLen);
+            mBufLen += tLen;
+            aOff += tLen; aLen -= tLen;
+        }
+    }
+    /** 结束当前块并写入，从而保证已经写入的数据都可以被读取 */
+    @Override public void flush() throws IOException {
+        if (mBufLen > 0) writeBlock_();
+        mOut.flush();
+    }
+    /** 会写入最后的空块作为 BGZF 的文件结尾标记 */
+    @Override public void close() throws IOException {
+        if (mClosed) return;
+        mClosed = true;
+        try {
+            if (mBufLen > 0) writeBlock_();
+            mOut.write(BlockGzip.EOF_BLOCK);
+            mOut.flush();
+        } finally {
+            mDeflater.end();
+            mOut.close();
+        }
+    }
+    
+    private void writeBlock_() throws IOException {
+        mDeflater.reset();
+        mDeflater.setInput(mBuf, 0, mBufLen);
+        mDeflater.finish();
+        int tCDataLen = 0;
+        final int tCDataMax = mCompressed.length - BlockGzip.HEADER_SIZE - BlockGzip.FOOTER_SIZE;
+        while (!mDeflater.finished()) {
+            // 块大小保证了压缩后的数据一定不会超过上限
+            if (tCDataLen == tCDataMax) throw new IOException("Compressed block exceeds the BGZF size limit");
+            tCDataLen += mDeflater.deflate(mCompressed, BlockGzip.HEADER_SIZE+tCDataLen, tCDataMax-tCDataLen);
+        }
+        mCRC.reset();
+        mCRC.update(mBuf, 0, mBufLen);
+        int tBlockSize = BlockGzip.HEADER_SIZE + tCDataLen + BlockGzip.FOOTER_SIZE;
+        BlockGzip.writeHeader_(mCompressed, tBlockSize);
+        int tPos = BlockGzip.HEADER_SIZE + tCDataLen;
+        BlockGzip.putInt_(mCompressed, tPos, (int)mCRC.getValue());
+        BlockGzip.putInt_(mCompressed, tPos+4, mBufLen);
+        mOut.write(mCompressed, 0, tBlockSize);
+        mCompressedOffset += tBlockSize;
+        mBufLen = 0;
+    }
+}
@@ -0,0 +1,135 @@
+package jse.code.io;
+
+import jse.parallel.ParforThreadPool;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 直接从原始字节中批量读取多行数字数据的工具类，
+ * 主要用于 lammps dump 等文件中大量原子数据的读取
+ * <p>
+ * 相比逐行 {@code readLine} 后再 {@link jse.code.IO.Text#str2data}，
+ * 这里不会为每一行创建 {@link String} 和向量，而是先划分出每一行的范围，
+ * 再按块将字节转为 {@code char[]} 后直接使用 {@link CharScanner#parseDoubleFromTo}
+ * 将数据写入按列存储的数组中，并且不同块可以并行读取
+ *
+ * @author liqa
+ */
+public class BlockParser {
+    private BlockParser() {}
+    
+    /** 每个并行任务最少读取的行数，避免任务过小导致开销占比过大 */
+    public final static int MIN_ROWS_PER_TASK = 1024;
+    
+    /**
+     * 从 {@code aBuf} 当前位置开始读取 {@code aRowNum} 行空格或逗号分割的数字，
+     * 直接按列存储到 {@code rData} 中，即第 {@code i} 行第 {@code j} 列的数据存储在
+     * {@code rData[j*aRowNum + i]}，超出 {@code aColNum} 的数据会忽略，不足的会填充 {@link Double#NaN}
+     * <p>
+     * 读取完成后会将 {@code aBuf} 的位置设置到最后一行的下一行开头
+     *
+     * @param aIgnoreErr 在任何读取失败时是否忽略错误，如果忽略错误则统一读取为 {@link Double#NaN}
+     * @param aBuf 需要读取的字节，可以是 {@link java.nio.MappedByteBuffer}，只支持 ASCII 兼容的编码
+     * @param aRowNum 需要读取的行数
+     * @param aColNum 每行需要读取的列数
+     * @param rData 存储结果的按列排布的数组，长度至少为 {@code aRowNum*aColNum}
+     * @param aPool 可选的并行线程池，为 {@code null} 时串行读取
+     * @return 实际读取的行数，小于 {@code aRowNum} 表示数据不完整，此时不会修改 {@code rData}
+     */
+    public static int parseColumns(final boolean aIgnoreErr, ByteBuffer aBuf, final int aRowNum, final int aColNum, final double[] rData, @Nullable ParforThreadPool aPool) {
+        // 先串行划分行的范围，这一步只需要查找换行符
+        final int[] tLineStarts = new int[aRowNum+1];
+        final int tLimit = aBuf.limit();
+        int tPos = aBuf.position();
+        int tRow = 0;
+        tLineStarts[0] = tPos;
+        while (tRow < aRowNum && tPos < tLimit) {
+            if (aBuf.get(tPos) == '\n') {
+                ++tRow;
+                tLineStarts[tRow] = tPos+1;
+            }
+            ++tPos;
+        }
+        // 最后一行允许没有换行符
+        if (tRow < aRowNum && tPos > tLineStarts[tRow]) {
+            ++tRow;
+            tLineStarts[tRow] = tPos;
+        }
+        if (tRow < aRowNum) return tRow;
+        aBuf.position(tLineStarts[aRowNum]);
+        if (aRowNum == 0) return 0;
+        
+        final ByteBuffer tBuf = aBuf.duplicate();
+        final int tThreadNum = aPool==null ? 1 : aPool.nthreads();
+        final int tTaskNum = tThreadNum<=1 ? 1 : Math.max(1, Math.min(tThreadNum*4, aRowNum/MIN_ROWS_PER_TASK));
+        final char[][] tCharsPar = new char[tThreadNum][];
+        if (tTaskNum == 1) {
+            parseRows_(aIgnoreErr, tBuf, tLineStarts, 0, aRowNum, aRowNum, aColNum, rData, tCharsPar, 0);
+        } else {
+            assert aPool != null;
+            aPool.parfor(tTaskNum, (i, threadID) -> {
+                int tRowStart = (int)((long)aRowNum * i / tTaskNum);
+                int tRowEnd = (int)((long)aRowNum * (i+1) / tTaskNum);
+                parseRows_(aIgnoreErr, tBuf, tLineStarts, tRowStart, tRowEnd, aRowNum, aColNum, rData, tCharsPar, threadID);
+            });
+        }
+        return aRowNum;
+    }
+    
+    private static void parseRows_(boolean aIgnoreErr, ByteBuffer aBuf, int[] aLineStarts, int aRowStart, int aRowEnd, int aRowNum, int aColNum, double[] rData, char[][] rCharsPar, int aThreadID) {
+        // 整块转换为 char[]，由于只支持 ASCII 兼容的编码，直接扩展即可
+        final int tBase = aLineStarts[aRowStart];
+        final int tLen = aLineStarts[aRowEnd] - tBase;
+        char[] tChars = rCharsPar[aThreadID];
+        if (tChars==null || tChars.length<tLen) {
+            tChars = new char[tLen];
+            rCharsPar[aThreadID] = tChars;
+        }
+        for (int i = 0; i < tLen; ++i) tChars[i] = (char)(aBuf.get(tBase+i) & 0xFF);
+        boolean[] rAnyErr = {false};
+        for (int tRow = aRowStart; tRow < aRowEnd; ++tRow) {
+            parseLine_(aIgnoreErr, rAnyErr, tChars, aLineStarts[tRow]-tBase, aLineStarts[tRow+1]-tBase, tRow, aRowNum, aColNum, rData);
+        }
+    }
+    
+    /** 和 {@link jse.code.IO.Text#str2data(boolean, String, int)} 相同的逻辑，只是直接写入按列排布的数组 */
+    private static void parseLine_(boolean aIgnoreErr, boolean[] rAnyErr, char[] aChars, int aFrom, int aTo, int aRow, int aRowNum, int aColNum, double[] rData) {
+        rAnyErr[0] = false;
+        int tFrom = CharScanner.skipWhiteSpace(aChars, aFrom, aTo);
+        int tIdx = 0;
+        boolean tHasComma = false;
+        for (int i = tFrom; i < aTo && tIdx < aColNum; ++i) {
+            int tCharCode = aChars[i];
+            if (tFrom < 0) {
+                if (tCharCode > 32) {
+                    if (tCharCode == 44) {
+                        if (tHasComma) {
+                            rData[tIdx*aRowNum + aRow] = Double.NaN;
+                            ++tIdx;
+                        } else {
+                            tHasComma = true;
+                        }
+                    } else {
+                        tHasComma = false;
+                        tFrom = i;
+                    }
+                }
+            } else {
+                if (tCharCode<=32 || tCharCode==44) {
+                    if (tCharCode == 44) tHasComma = true;
+                    rData[tIdx*aRowNum + aRow] = CharScanner.parseDoubleFromTo(aIgnoreErr, rAnyErr, aChars, tFrom, i);
+                    tFrom = -1;
+                    ++tIdx;
+                }
+            }
+        }
+        // 最后一个数据
+        if (tIdx < aColNum && tFrom >= 0 && tFrom < aTo) {
+            rData[tIdx*aRowNum + aRow] = CharScanner.parseDoubleFromTo(aIgnoreErr, rAnyErr, aChars, tFrom, aTo);
+            ++tIdx;
+        }
+        // 不足的数据默认为 NaN
+        for (; tIdx < aColNum; ++tIdx) rData[tIdx*aRowNum + aRow] = Double.NaN;
+    }
+}
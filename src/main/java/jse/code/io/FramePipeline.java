@@ -0,0 +1,237 @@
+package jse.code.io;
+
+import jse.code.FileEndException;
+import jse.code.IO;
+import jse.parallel.CompletedFuture;
+import jse.parallel.ExecutorsEX;
+import jse.parallel.IExecutorEX;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+
+/**
+ * 多线程流水线读取多帧轨迹文件，用于加速大型轨迹文件的后处理
+ * <p>
+ * 单独的线程只负责按行读取文件并划分出每一帧的文本，
+ * 每一帧的解析（以及可选的分析）都在线程池中并行执行，
+ * 最后再按照文件中的顺序依次返回结果；同时处理中的帧数有上限，从而避免占用过多内存
+ * <p>
+ * 一般通过具体格式的 {@code pipeline} 方法获取，例如：
+ * <pre> {@code
+ * def pipe = Lammpstrj.pipeline('dump.lammpstrj', 8)
+ * // 并行计算每一帧的 rdf，结果按照帧的顺序返回
+ * def rdfs = pipe.collect {data, i -> data.operation().calRDF()}
+ * } </pre>
+ *
+ * @param <T> 每一帧解析得到的数据类型
+ * @author liqa
+ */
+public class FramePipeline<T> {
+    /** 默认同时处理的帧数为线程数的倍数 */
+    public final static int DEFAULT_IN_FLIGHT_FACTOR = 2;
+    
+    /** 从读取流中读取下一帧的原始文本，返回 {@code null} 表示文件结束；只会在单个线程中调用，因此可以有状态 */
+    @FunctionalInterface public interface ISplitter {@Nullable String next(BufferedReader aReader) throws IOException;}
+    /** 解析单帧的文本，会在线程池中并行调用 */
+    @FunctionalInterface public interface IParser<T> {T parse(BufferedReader aFrameReader) throws IOException;}
+    /** 对单帧的分析，会在线程池中并行调用 */
+    @FunctionalInterface public interface IAnalyser<T, R> {R call(T aFrame, int aIdx) throws Exception;}
+    /** 对单帧无返回值的分析，会在线程池中并行调用 */
+    @FunctionalInterface public interface IConsumer<T> {void call(T aFrame, int aIdx) throws Exception;}
+    /** 创建 {@link ISplitter} 的方法，由于 {@link ISplitter} 可以有状态，每次运行都需要创建新的 */
+    @FunctionalInterface public interface ISplitterFactory {ISplitter create();}
+    
+    private final String mFilePath;
+    private final ISplitterFactory mSplitterFactory;
+    private final IParser<? extends T> mParser;
+    private final int mThreadNum;
+    private final int mInFlight;
+    
+    /**
+     * 创建一个流水线读取器，只有在实际遍历时才会打开文件
+     * @param aFilePath 需要读取的文件路径，支持 {@code .gz} 压缩文件
+     * @param aSplitterFactory 创建划分帧的方法
+     * @param aParser 解析单帧的方法
+     * @param aThreadNum 解析和分析使用的线程数
+     * @param aInFlight 最多同时处理的帧数
+     */
+    public FramePipeline(String aFilePath, ISplitterFactory aSplitterFactory, IParser<? extends T> aParser, @Range(from=1, to=Integer.MAX_VALUE) int aThreadNum, @Range(from=1, to=Integer.MAX_VALUE) int aInFlight) {
+        if (aThreadNum < 1) throw new IllegalArgumentException("Thread number MUST be positive: "+aThreadNum);
+        if (aInFlight < 1) throw new IllegalArgumentException("In-flight frame number MUST be positive: "+aInFlight);
+        mFilePath = aFilePath;
+        mSplitterFactory = aSplitterFactory;
+        mParser = aParser;
+        mThreadNum = aThreadNum;
+        mInFlight = aInFlight;
+    }
+    public FramePipeline(String aFilePath, ISplitterFactory aSplitterFactory, IParser<? extends T> aParser, @Range(from=1, to=Integer.MAX_VALUE) int aThreadNum) {
+        this(aFilePath, aSplitterFactory, aParser, aThreadNum, aThreadNum*DEFAULT_IN_FLIGHT_FACTOR);
+    }
+    
+    public int threadNumber() {return mThreadNum;}
+    public int inFlight() {return mInFlight;}
+    /**
+     * 设置最多同时处理的帧数，会返回新的流水线
+     * @param aInFlight 最多同时处理的帧数
+     * @return 新的流水线
+     */
+    public FramePipeline<T> withInFlight(@Range(from=1, to=Integer.MAX_VALUE) int aInFlight) {
+        return new FramePipeline<>(mFilePath, mSplitterFactory, mParser, mThreadNum, aInFlight);
+    }
+    
+    /**
+     * 开始读取并按顺序返回每一帧，遍历完成前中止需要手动关闭
+     * @return 按顺序返回每一帧的迭代器
+     * @throws IOException 如果无法打开文件
+     */
+    public FrameIterator<T> iterator() throws IOException {return map((aFrame, aIdx) -> aFrame);}
+    /**
+     * 开始读取并在线程池中对每一帧进行分析，分析的结果按照帧的顺序返回；
+     * 遍历完成前中止需要手动关闭
+     * @param aAnalyser 对每一帧的分析
+     * @return 按顺序返回分析结果的迭代器
+     * @throws IOException 如果无法打开文件
+     */
+    public <R> FrameIterator<R> map(IAnalyser<? super T, ? extends R> aAnalyser) throws IOException {
+        return new FrameIterator<>(IO.toReader(mFilePath), mSplitterFactory.create(), mParser, aAnalyser, mThreadNum, mInFlight);
+    }
+    /**
+     * 在线程池中对每一帧进行分析，并按照帧的顺序收集所有结果
+     * @param aAnalyser 对每一帧的分析
+     * @return 所有分析结果组成的列表
+     * @throws IOException 如果读取失败
+     */
+    public <R> List<R> collect(IAnalyser<? super T, ? extends R> aAnalyser) throws IOException {
+        List<R> rOut = new ArrayList<>();
+        try (FrameIterator<R> tIt = map(aAnalyser)) {
+            while (tIt.hasNext()) rOut.add(tIt.next());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return rOut;
+    }
+    /**
+     * 读取所有帧并按照顺序收集
+     * @return 所有帧组成的列表
+     * @throws IOException 如果读取失败
+     */
+    public List<T> toList() throws IOException {return collect((aFrame, aIdx) -> aFrame);}
+    /**
+     * 在线程池中对每一帧进行分析，不会保留读取的帧
+     * @param aConsumer 对每一帧的分析
+     * @throws IOException 如果读取失败
+     */
+    public void forEach(IConsumer<? super T> aConsumer) throws IOException {
+        try (FrameIterator<Object> tIt = map((aFrame, aIdx) -> {aConsumer.call(aFrame, aIdx); return null;})) {
+            while (tIt.hasNext()) tIt.next();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+    
+    /**
+     * 按顺序返回结果的迭代器，后台的读取线程和线程池会在遍历结束或者关闭时自动停止；
+     * 读取或者分析中的错误会包装成 {@link UncheckedIOException} 或者 {@link RuntimeException} 抛出
+     *
+     * @param <R> 返回的结果类型
+     */
+    public final static class FrameIterator<R> implements Iterator<R>, AutoCloseable {
+        private final static Future<Object> END = new CompletedFuture<>(null);
+        
+        private final BlockingQueue<Future<?>> mQueue;
+        private final IExecutorEX mPool;
+        private final Thread mThread;
+        private boolean mDone = false;
+        private boolean mHasNext = false;
+        private @Nullable R mNext = null;
+        
+        private <T> FrameIterator(final BufferedReader aReader, final ISplitter aSplitter, final IParser<? extends T> aParser, final IAnalyser<? super T, ? extends R> aAnalyser, int aThreadNum, int aInFlight) {
+            mQueue = new ArrayBlockingQueue<>(aInFlight);
+            mPool = ExecutorsEX.newFixedThreadPool(aThreadNum);
+            mThread = new Thread(() -> {
+                int tIdx = 0;
+                try (BufferedReader tReader = aReader) {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        final String tText = aSplitter.next(tReader);
+                        if (tText == null) break;
+                        final int fIdx = tIdx;
+                        mQueue.put(mPool.submit(() -> aAnalyser.call(aParser.parse(IO.Text.toReader(tText)), fIdx)));
+                        ++tIdx;
+                    }
+                    mQueue.put(END);
+                } catch (InterruptedException ignored) {
+                    // 被关闭，直接退出
+                } catch (Throwable t) {
+                    FutureTask<Object> tFailed = new FutureTask<>(() -> {throw t instanceof Exception ? (Exception)t : new ExecutionException(t);});
+                    tFailed.run();
+                    try {mQueue.put(tFailed); mQueue.put(END);}
+                    catch (InterruptedException ignored) {/**/}
+                }
+            }, "jse-frame-splitter");
+            mThread.setDaemon(true);
+            mThread.start();
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override public boolean hasNext() {
+            if (mHasNext) return true;
+            if (mDone) return false;
+            Future<?> tFuture;
+            try {tFuture = mQueue.take();}
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close(); throw new RuntimeException(e);
+            }
+            if (tFuture == END) {close(); return false;}
+            try {
+                mNext = (R)tFuture.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close(); throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                close();
+                Throwable tCause = e.getCause();
+                // 和直接读取一致，不完整的最后一帧直接截断
+                if (tCause instanceof FileEndException) return false;
+                if (tCause instanceof IOException) throw new UncheckedIOException((IOException)tCause);
+                if (tCause instanceof RuntimeException) throw (RuntimeException)tCause;
+                if (tCause instanceof Error) throw (Error)tCause;
+                throw new RuntimeException(tCause);
+            }
+            mHasNext = true;
+            return true;
+        }
+        @Override public R next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            R tNext = mNext;
+            mNext = null;
+            mHasNext = false;
+            return tNext;
+        }
+        
+        /** 停止后台的读取线程以及线程池，已经读取的帧会被丢弃 */
+        @Override public void close() {
+            if (mDone) return;
+            mDone = true;
+            mThread.interrupt();
+            // 清空队列从而保证读取线程不会阻塞在 put 上
+            while (mThread.isAlive()) {
+                Future<?> tFuture;
+                while ((tFuture = mQueue.poll()) != null) tFuture.cancel(true);
+                try {mThread.join(10);}
+                catch (InterruptedException e) {Thread.currentThread().interrupt(); break;}
+            }
+            Future<?> tFuture;
+            while ((tFuture = mQueue.poll()) != null) tFuture.cancel(true);
+            mPool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package jse.lmp;
+
+import jse.atom.IAtomData;
+import jse.code.IO;
+import jse.code.collection.AbstractRandomAccessList;
+import jse.code.collection.LongList;
+import jse.math.table.Table;
+import jse.math.table.Tables;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * jse 自定义的二进制多帧 lammps dump 格式，用于避免重复分析时反复读取文本格式。
+ * <p>
+ * 文件中每一帧包含头部信息（时间步，模拟盒，边界条件以及每列的名称和类型），
+ * 随后为每一列连续存储的数据（整数列存储为 {@code int}，其余为 {@code double}），
+ * 文件结尾存储所有帧的位置索引，因此打开文件只需要读取结尾的索引，
+ * 在 {@link #get(int)} 时才会内存映射对应帧并直接批量拷贝到 {@link SubLammpstrj} 的表格中
+ * <p>
+ * 除了不支持添加和修改帧以外，和 {@link Lammpstrj} 的使用方式完全一致，
+ * 注意每次获取的 {@link SubLammpstrj} 都是重新读取的，对其的修改不会保留
+ * <p>
+ * 文件格式（小端序）：
+ * <pre>
+ * [MAGIC: long] [VERSION: int] [0: int]
+ * frame: [timestep: long] [natoms: int] [ncols: int] [prism: int] [0: int]
+ *        [xlo xhi ylo yhi zlo zhi xy xz yz: double*9] [boundsX boundsY boundsZ: str]
+ *        [(type: byte, key: str) * ncols] [padding to 8 bytes] [column * ncols, each padded to 8 bytes]
+ * index: [frame offset: long * nframes] [index offset: long] [nframes: int] [TAIL_MAGIC: int]
+ * </pre>
+ * 其中 {@code str} 为 {@code short} 长度加上 UTF-8 编码的字节；
+ * 压缩的列（见 {@link #write(String, Iterable, double)}）存储为
+ * {@code [scale: double (仅量化的坐标列)] [rawLen: int] [packedLen: int] [packed: byte * packedLen]}
+ *
+ * @see Lammpstrj#readBinary(String) Lammpstrj.readBinary(String): 打开二进制的 lammps dump
+ * @see Lammpstrj#writeBinary(String) Lammpstrj.writeBinary(String): 输出成二进制的 lammps dump
+ * @author liqa
+ */
+public class BinaryLammpstrj extends Lammpstrj {
+    private final static long MAGIC = 0x4A534554524A0001L;
+    private final static int TAIL_MAGIC = 0x4A534554;
+    /** 版本 2 增加了压缩的列，版本 1 的文件依旧可以直接读取 */
+    private final static int VERSION = 2;
+    private final static int HEAD_SIZE = 16, TAIL_SIZE = 16;
+    private final static byte TYPE_DOUBLE = 0, TYPE_INT = 1, TYPE_QUANT = 2, TYPE_PACKED_INT = 3;
+    /** 会按照精度量化的坐标列，以及对应的分数坐标列 */
+    private final static String[] POS_KEYS = {"x", "y", "z", "xu", "yu", "zu"}, SCALED_POS_KEYS = {"xs", "ys", "zs", "xsu", "ysu", "zsu"};
+    
+    private final Path mPath;
+    /** 每一帧在文件中的起始位置，最后额外存储一个结束位置（即索引的位置） */
+    private final long[] mOffsets;
+    /** 当前可见的帧在文件中的序号，用于支持不读取数据的截断操作 */
+    private int[] mFrames;
+    
+    BinaryLammpstrj(Path aPath, long[] aOffsets) {
+        super();
+        mPath = aPath;
+        mOffsets = aOffsets;
+        final int tFrameNum = aOffsets.length-1;
+        mFrames = new int[tFrameNum];
+        for (int i = 0; i < tFrameNum; ++i) mFrames[i] = i;
+        mList = new AbstractRandomAccessList<SubLammpstrj>() {
+            @Override public SubLammpstrj get(int aIdx) {
+                try (FileChannel tChannel = FileChannel.open(mPath, StandardOpenOption.READ)) {return readFrame_(tChannel, mFrames[aIdx]);}
+                catch (IOException e) {throw new UncheckedIOException(e);}
+            }
+            @Override public int size() {return mFrames.length;}
+        };
+    }
+    
+    /** @return 对应的二进制文件路径 */
+    public String filePath() {return mPath.toString();}
+    
+    /** 截断开头一部分，只修改索引，返回自身来支持链式调用 */
+    @Override public BinaryLammpstrj cutFront(@Range(from=0, to=Integer.MAX_VALUE) int aLength) {
+        if (aLength == 0) return this;
+        if (aLength > mFrames.length) throw new IndexOutOfBoundsException(String.format("Index: %d", aLength));
+        mFrames = Arrays.copyOfRange(mFrames, aLength, mFrames.length);
+        return this;
+    }
+    /** 截断结尾一部分，只修改索引，返回自身来支持链式调用 */
+    @Override public BinaryLammpstrj cutBack(@Range(from=0, to=Integer.MAX_VALUE) int aLength) {
+        if (aLength == 0) return this;
+        if (aLength > mFrames.length) throw new IndexOutOfBoundsException(String.format("Index: %d", aLength));
+        mFrames = Arrays.copyOf(mFrames, mFrames.length-aLength);
+        return this;
+    }
+    /** 等间距截取，只修改索引，返回自身来支持链式调用 */
+    @Override public BinaryLammpstrj step(@Range(from=1, to=Integer.MAX_VALUE) int aStep) {
+        if (aStep == 1) return this;
+        final int tSize = mFrames.length;
+        int[] rFrames = new int[(tSize+aStep-1) / aStep];
+        for (int i = 0, j = 0; i < tSize; i+=aStep, ++j) rFrames[j] = mFrames[i];
+        mFrames = rFrames;
+        return this;
+    }
+    
+    /** 读取所有帧并转换成一个普通的 {@link Lammpstrj} */
+    @Override public Lammpstrj copy() {
+        List<SubLammpstrj> rData = new ArrayList<>(mFrames.length);
+        try (FileChannel tChannel = FileChannel.open(mPath, StandardOpenOption.READ)) {
+            for (int tFrame : mFrames) rData.add(readFrame_(tChannel, tFrame));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Lammpstrj(rData);
+    }
+    
+    private SubLammpstrj readFrame_(FileChannel aChannel, int aFrame) throws IOException {
+        long tStart = mOffsets[aFrame];
+        long tSize = mOffsets[aFrame+1] - tStart;
+        if (tSize > Integer.MAX_VALUE) throw new IOException("Frame too large to map: "+tSize+" bytes");
+        ByteBuffer tBuf = aChannel.map(FileChannel.MapMode.READ_ONLY, tStart, tSize).order(ByteOrder.LITTLE_ENDIAN);
+        final long tTimeStep = tBuf.getLong();
+        final int tAtomNum = tBuf.getInt();
+        final int tColNum = tBuf.getInt();
+        final boolean tPrism = tBuf.getInt() != 0;
+        tBuf.getInt();
+        double tXlo = tBuf.getDouble(), tXhi = tBuf.getDouble();
+        double tYlo = tBuf.getDouble(), tYhi = tBuf.getDouble();
+        double tZlo = tBuf.getDouble(), tZhi = tBuf.getDouble();
+        double tXY = tBuf.getDouble(), tXZ = tBuf.getDouble(), tYZ = tBuf.getDouble();
+        LmpBox tBox = tPrism ? new LmpBoxPrism(tXlo, tXhi, tYlo, tYhi, tZlo, tZhi, tXY, tXZ, tYZ) : new LmpBox(tXlo, tXhi, tYlo, tYhi, tZlo, tZhi);
+        String[] tBoxBounds = {getStr_(tBuf), getStr_(tBuf), getStr_(tBuf)};
+        byte[] tTypes = new byte[tColNum];
+        String[] tKeys = new String[tColNum];
+        for (int j = 0; j < tColNum; ++j) {
+            tTypes[j] = tBuf.get();
+            tKeys[j] = getStr_(tBuf);
+        }
+        align_(tBuf);
+        Table rAtomData = Tables.zeros(tAtomNum, tKeys);
+        // Table 内部按列存储，直接从映射的数据批量拷贝
+        double[] rData = rAtomData.internalData().internalData();
+        Inflater tInflater = null;
+        try {
+            for (int j = 0; j < tColNum; ++j) {
+                final int tShift = j*tAtomNum;
+                switch (tTypes[j]) {
+                case TYPE_DOUBLE: {
+                    tBuf.asDoubleBuffer().get(rData, tShift, tAtomNum);
+                    tBuf.position(tBuf.position() + tAtomNum*8);
+                    break;
+                }
+                case TYPE_INT: {
+                    for (int i = 0; i < tAtomNum; ++i) rData[tShift+i] = tBuf.getInt(tBuf.position() + i*4);
+                    tBuf.position(tBuf.position() + tAtomNum*4);
+                    break;
+                }
+                case TYPE_QUANT: case TYPE_PACKED_INT: {
+                    double tScale = tTypes[j]==TYPE_QUANT ? tBuf.getDouble() : 0.0;
+                    if (tInflater == null) tInflater = new Inflater();
+                    unpack_(tBuf, tInflater, tScale, rData, tShift, tAtomNum);
+                    break;
+                }
+                default: {
+                    throw new IOException("Unknown column type in jse binary dump: "+tTypes[j]);
+                }}
+                align_(tBuf);
+            }
+        } finally {
+            if (tInflater != null) tInflater.end();
+        }
+        return new SubLammpstrj(tTimeStep, tBoxBounds, tBox, rAtomData);
+    }
+    
+    
+    /// 文件读写
+    /**
+     * 打开 jse 的二进制 lammps dump 文件，只会读取文件结尾的索引，不会读取任何帧
+     * @param aFilePath 二进制文件路径
+     * @return 读取得到的 {@link BinaryLammpstrj} 对象
+     * @throws IOException 如果读取失败或者不是合法的文件
+     */
+    public static BinaryLammpstrj read(String aFilePath) throws IOException {
+        Path tPath = IO.toAbsolutePath_(aFilePath);
+        try (FileChannel tChannel = FileChannel.open(tPath, StandardOpenOption.READ)) {
+            final long tSize = tChannel.size();
+            if (tSize < HEAD_SIZE+TAIL_SIZE) throw new IOException("Invalid jse binary dump file (too small): "+aFilePath);
+            ByteBuffer tHead = readFully_(tChannel, 0, HEAD_SIZE);
+            if (tHead.getLong() != MAGIC) throw new IOException("Invalid jse binary dump file (magic mismatch): "+aFilePath);
+            int tVersion = tHead.getInt();
+            if (tVersion > VERSION) throw new IOException("Unsupported jse binary dump version: "+tVersion);
+            ByteBuffer tTail = readFully_(tChannel, tSize-TAIL_SIZE, TAIL_SIZE);
+            final long tIndexPos = tTail.getLong();
+            final int tFrameNum = tTail.getInt();
+            if (tTail.getInt() != TAIL_MAGIC) throw new IOException("Invalid or unfinished jse binary dump file (tail mismatch): "+aFilePath);
+            if (tIndexPos + (long)tFrameNum*8 + TAIL_SIZE != tSize) throw new IOException("Invalid jse binary dump file (index mismatch): "+aFilePath);
+            long[] rOffsets = new long[tFrameNum+1];
+            if (tFrameNum > 0) readFully_(tChannel, tIndexPos, tFrameNum*8).asLongBuffer().get(rOffsets, 0, tFrameNum);
+            rOffsets[tFrameNum] = tIndexPos;
+            return new BinaryLammpstrj(tPath, rOffsets);
+        }
+    }
+    
+    /**
+     * 将多帧原子数据输出成 jse 的二进制 lammps dump 文件，会逐帧写入，
+     * 因此可以直接用于 {@link LazyLammpstrj} 等按需读取的数据的转换
+     * @param aFilePath 需要输出的路径
+     * @param aAtomDataList 需要输出的多帧原子数据，不是 {@link SubLammpstrj} 的会先转换
+     * @throws IOException 如果写入文件失败
+     */
+    public static void write(String aFilePath, Iterable<? extends IAtomData> aAtomDataList) throws IOException {write(aFilePath, aAtomDataList, -1.0);}
+    /**
+     * 将多帧原子数据输出成压缩的 jse 的二进制 lammps dump 文件，
+     * 类似 XTC 格式，坐标列（{@code x y z xu yu zu} 以及对应的分数坐标）会按照给定的精度量化为整数，
+     * 整数列（例如 {@code id type}）以及量化后的坐标会和同一列的前一个原子作差，
+     * 再使用变长整数编码以及 {@link Deflater} 压缩；其余的列依旧无损存储
+     * <p>
+     * 只在同一帧内作差，因此依旧可以直接随机读取任意帧
+     *
+     * @param aFilePath 需要输出的路径
+     * @param aAtomDataList 需要输出的多帧原子数据，不是 {@link SubLammpstrj} 的会先转换
+     * @param aPrecision 坐标的量化精度，读取的坐标和原始坐标的误差不超过此值的一半；
+     *                   小于等于 0 时则不进行压缩
+     * @throws IOException 如果写入文件失败
+     */
+    public static void write(String aFilePath, Iterable<? extends IAtomData> aAtomDataList, double aPrecision) throws IOException {
+        IO.validPath(aFilePath);
+        final boolean tCompress = aPrecision > 0.0;
+        Deflater tDeflater = tCompress ? new Deflater() : null;
+        LongList tOffsets = new LongList();
+        try (FileChannel tChannel = FileChannel.open(IO.toAbsolutePath_(aFilePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer tHead = ByteBuffer.allocate(HEAD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            tHead.putLong(MAGIC).putInt(VERSION).putInt(0);
+            tHead.flip();
+            writeFully_(tChannel, tHead);
+            long tPos = HEAD_SIZE;
+            int tIdx = 0;
+            for (IAtomData tAtomData : aAtomDataList) {
+                SubLammpstrj tFrame = (tAtomData instanceof SubLammpstrj) ? (SubLammpstrj)tAtomData : SubLammpstrj.of(tAtomData, tIdx);
+                tOffsets.add(tPos);
+                ByteBuffer tBuf = encodeFrame_(tFrame, aPrecision, tDeflater);
+                tPos += tBuf.remaining();
+                writeFully_(tChannel, tBuf);
+                ++tIdx;
+            }
+            final int tFrameNum = tOffsets.size();
+            ByteBuffer tTail = ByteBuffer.allocate(tFrameNum*8 + TAIL_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < tFrameNum; ++i) tTail.putLong(tOffsets.get(i));
+            tTail.putLong(tPos).putInt(tFrameNum).putInt(TAIL_MAGIC);
+            tTail.flip();
+            writeFully_(tChannel, tTail);
+        } finally {
+            if (tDeflater != null) tDeflater.end();
+        }
+    }
+    
+    private static ByteBuffer encodeFrame_(SubLammpstrj aFrame, double aPrecision, @Nullable Deflater aDeflater) {
+        final Table tAtomData = (Table)aFrame.asTable();
+        final int tAtomNum = tAtomData.nrows();
+        final int tColNum = tAtomData.ncols();
+        final double[] tData = tAtomData.internalData().internalData();
+        LmpBox tBox = aFrame.box();
+        // 能够无损存储为 int 的列使用 int 存储，例如 id 和 type
+        byte[] tTypes = new byte[tColNum];
+        byte[][] tKeys = new byte[tColNum][];
+        byte[][] tBounds = new byte[3][];
+        // 压缩的列数据，以及对应的量化间隔
+        byte[][] tPacked = new byte[tColNum][];
+        int[] tRawLens = new int[tColNum];
+        double[] tScales = new double[tColNum];
+        String[] tBoxBounds = aFrame.boxBounds();
+        int tSize = 8+4+4+4+4 + 9*8;
+        for (int k = 0; k < 3; ++k) {tBounds[k] = tBoxBounds[k].getBytes(StandardCharsets.UTF_8); tSize += 2+tBounds[k].length;}
+        for (int j = 0; j < tColNum; ++j) {
+            String tKey = tAtomData.getHead(j);
+            tKeys[j] = tKey.getBytes(StandardCharsets.UTF_8);
+            final int tShift = j*tAtomNum;
+            if (isIntColumn_(tData, tShift, tAtomNum)) {
+                tTypes[j] = TYPE_INT;
+                if (aDeflater != null) {
+                    tTypes[j] = TYPE_PACKED_INT;
+                    tScales[j] = 0.0;
+                }
+            } else {
+                tTypes[j] = TYPE_DOUBLE;
+                if (aDeflater != null) {
+                    double tScale = posScale_(tKey, tBox, aPrecision);
+                    if (tScale > 0.0 && isQuantizable_(tData, tShift, tAtomNum, tScale)) {
+                        tTypes[j] = TYPE_QUANT;
+                        tScales[j] = tScale;
+                    }
+                }
+            }
+            if (tTypes[j]==TYPE_QUANT || tTypes[j]==TYPE_PACKED_INT) {
+                byte[] tRaw = new byte[tAtomNum*10];
+                tRawLens[j] = encodeDelta_(tData, tShift, tAtomNum, tScales[j], tRaw);
+                assert aDeflater != null;
+                tPacked[j] = deflate_(aDeflater, tRaw, tRawLens[j]);
+            }
+            tSize += 1+2+tKeys[j].length;
+        }
+        tSize = alignSize_(tSize);
+        for (int j = 0; j < tColNum; ++j) {
+            switch (tTypes[j]) {
+            case TYPE_DOUBLE: {tSize += alignSize_(tAtomNum*8); break;}
+            case TYPE_INT: {tSize += alignSize_(tAtomNum*4); break;}
+            case TYPE_QUANT: {tSize += alignSize_(8 + 4+4 + tPacked[j].length); break;}
+            default: {tSize += alignSize_(4+4 + tPacked[j].length); break;}
+            }
+        }
+        
+        ByteBuffer rBuf = ByteBuffer.allocate(tSize).order(ByteOrder.LITTLE_ENDIAN);
+        rBuf.putLong(aFrame.timeStep()).putInt(tAtomNum).putInt(tColNum).putInt(tBox.isPrism() ? 1 : 0).putInt(0);
+        rBuf.putDouble(tBox.xlo()).putDouble(tBox.xhi());
+        rBuf.putDouble(tBox.ylo()).putDouble(tBox.yhi());
+        rBuf.putDouble(tBox.zlo()).putDouble(tBox.zhi());
+        if (tBox.isPrism()) {
+            rBuf.putDouble(tBox.xy()).putDouble(tBox.xz()).putDouble(tBox.yz());
+        } else {
+            rBuf.putDouble(0.0).putDouble(0.0).putDouble(0.0);
+        }
+        for (byte[] tBound : tBounds) putStr_(rBuf, tBound);
+        for (int j = 0; j < tColNum; ++j) {
+            rBuf.put(tTypes[j]);
+            putStr_(rBuf, tKeys[j]);
+        }
+        align_(rBuf);
+        for (int j = 0; j < tColNum; ++j) {
+            final int tShift = j*tAtomNum;
+            switch (tTypes[j]) {
+            case TYPE_DOUBLE: {
+                rBuf.asDoubleBuffer().put(tData, tShift, tAtomNum);
+                rBuf.position(rBuf.position() + tAtomNum*8);
+                break;
+            }
+            case TYPE_INT: {
+                for (int i = 0; i < tAtomNum; ++i) rBuf.putInt((int)tData[tShift+i]);
+                break;
+            }
+            default: {
+                if (tTypes[j] == TYPE_QUANT) rBuf.putDouble(tScales[j]);
+                rBuf.putInt(tRawLens[j]).putInt(tPacked[j].length).put(tPacked[j]);
+                break;
+            }}
+            align_(rBuf);
+        }
+        rBuf.flip();
+        return rBuf;
+    }
+    private static boolean isIntColumn_(double[] aData, int aShift, int aLength) {
+        for (int i = 0; i < aLength; ++i) {
+            double tValue = aData[aShift+i];
+            if (Double.doubleToRawLongBits(tValue) != Double.doubleToRawLongBits((int)tValue)) return false;
+        }
+        return true;
+    }
+    
+    
+    /** 坐标列使用的量化间隔，分数坐标则按照对应方向的模拟盒长度换算，其余列返回 -1 表示不量化 */
+    private static double posScale_(String aKey, LmpBox aBox, double aPrecision) {
+        for (int k = 0; k < POS_KEYS.length; ++k) {
+            if (aKey.equalsIgnoreCase(POS_KEYS[k])) return aPrecision;
+            if (aKey.equalsIgnoreCase(SCALED_POS_KEYS[k])) {
+                switch (k%3) {
+                case 0: {return aPrecision / aBox.ax();}
+                case 1: {return aPrecision / aBox.by();}
+                default: {return aPrecision / aBox.cz();}
+                }
+            }
+        }
+        return -1.0;
+    }
+    /** 量化后需要能够精确作差，因此限制量化后的整数范围 */
+    private static boolean isQuantizable_(double[] aData, int aShift, int aLength, double aScale) {
+        final double tMax = (double)(1L<<52);
+        for (int i = 0; i < aLength; ++i) {
+            double tValue = aData[aShift+i] / aScale;
+            if (!(Math.abs(tValue) < tMax)) return false;
+        }
+        return true;
+    }
+    /** 量化后和前一个值作差，并使用 zigzag 变长整数编码，返回编码的字节数；aScale 为 0 表示本身就是整数列 */
+    private static int encodeDelta_(double[] aData, int aShift, int aLength, double aScale, byte[] rRaw) {
+        int tPos = 0;
+        long tLast = 0;
+        for (int i = 0; i < aLength; ++i) {
+            long tValue = aScale==0.0 ? (long)aData[aShift+i] : Math.round(aData[aShift+i] / aScale);
+            long tDelta = tValue - tLast;
+            tLast = tValue;
+            long tZigzag = (tDelta << 1) ^ (tDelta >> 63);
+            while ((tZigzag & ~0x7FL) != 0) {
+                rRaw[tPos++] = (byte)((tZigzag & 0x7F) | 0x80);
+                tZigzag >>>= 7;
+            }
+            rRaw[tPos++] = (byte)tZigzag;
+        }
+        return tPos;
+    }
+    private static byte[] deflate_(Deflater aDeflater, byte[] aRaw, int aRawLen) {
+        aDeflater.reset();
+        aDeflater.setInput(aRaw, 0, aRawLen);
+        aDeflater.finish();
+        byte[] rOut = new byte[Math.max(64, aRawLen/2)];
+        int tLen = 0;
+        while (!aDeflater.finished()) {
+            if (tLen == rOut.length) rOut = Arrays.copyOf(rOut, rOut.length*2);
+            tLen += aDeflater.deflate(rOut, tLen, rOut.length-tLen);
+        }
+        return Arrays.copyOf(rOut, tLen);
+    }
+    private static void unpack_(ByteBuffer aBuf, Inflater aInflater, double aScale, double[] rData, int aShift, int aLength) throws IOException {
+        final int tRawLen = aBuf.getInt();
+        final int tPackedLen = aBuf.getInt();
+        byte[] tPacked = new byte[tPackedLen];
+        aBuf.get(tPacked);
+        byte[] tRaw = new byte[tRawLen];
+        aInflater.reset();
+        aInflater.setInput(tPacked);
+        try {
+            int tLen = 0;
+            while (tLen < tRawLen) {
+                int tRead = aInflater.inflate(tRaw, tLen, tRawLen-tLen);
+                if (tRead == 0 && (aInflater.finished() || aInflater.needsInput())) break;
+                tLen += tRead;
+            }
+            if (tLen != tRawLen) throw new IOException("Corrupted compressed column in jse binary dump");
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+        int tPos = 0;
+        long tValue = 0;
+        for (int i = 0; i < aLength; ++i) {
+            long tZigzag = 0;
+            int tShift = 0;
+            byte tByte;
+            do {
+                tByte = tRaw[tPos++];
+                tZigzag |= (long)(tByte & 0x7F) << tShift;
+                tShift += 7;
+            } while ((tByte & 0x80) != 0);
+            tValue += (tZigzag >>> 1) ^ -(tZigzag & 1);
+            rData[aShift+i] = aScale==0.0 ? tValue : tValue*aScale;
+        }
+    }
+    
+    private static int alignSize_(int aSize) {return (aSize+7) & ~7;}
+    /** 帧的起始位置总是对齐的，因此直接对齐 buffer 的位置即可；写入时 buffer 初始即为 0，不需要额外填充 */
+    private static void align_(ByteBuffer rBuf) {rBuf.position(alignSize_(rBuf.position()));}
+    private static void putStr_(ByteBuffer rBuf, byte[] aStr) {
+        rBuf.putShort((short)aStr.length);
+        rBuf.put(aStr);
+    }
+    private static String getStr_(ByteBuffer aBuf) {
+        byte[] tBytes = new byte[aBuf.getShort() & 0xFFFF];
+        aBuf.get(tBytes);
+        return new String(tBytes, StandardCharsets.UTF_8);
+    }
+    private static ByteBuffer readFully_(FileChannel aChannel, long aPos, int aSize) throws IOException {
+        ByteBuffer rBuf = ByteBuffer.allocate(aSize).order(ByteOrder.LITTLE_ENDIAN);
+        while (rBuf.hasRemaining()) {
+            if (aChannel.read(rBuf, aPos+rBuf.position()) < 0) throw new IOException("Unexpected end of jse binary dump file");
+        }
+        rBuf.flip();
+        return rBuf;
+    }
+    private static void writeFully_(FileChannel aChannel, ByteBuffer aBuf) throws IOException {
+        while (aBuf.hasRemaining()) aChannel.write(aBuf);
+    }
+}
@@ -6,16 +6,25 @@ import jse.code.IO;
 import jse.code.collection.AbstractCollections;
 import jse.code.collection.AbstractListWrapper;
 import jse.code.collection.NewCollections;
+import jse.code.io.AsyncFrameWriter;
+import jse.code.io.BlockGzip;
+import jse.code.io.FramePipeline;
 import jse.math.table.ITable;
 import jse.math.vector.ILongVector;
 import jse.math.vector.ILongVectorGetter;
 import jse.parallel.MPI;
 import jse.parallel.MPIException;
+import jse.parallel.ParforThreadPool;
 import org.jetbrains.annotations.Range;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -43,7 +52,9 @@ import java.util.List;
  * @see IAtomData IAtomData: 原子数据类型通用接口
  * @see SubLammpstrj SubLammpstrj: 内部存储的单帧 lammps dump 原子数据类型
  * @see #read(String) read(String): 读取指定路径的 lammps dump 的所有帧的数据
+ * @see #readLazy(String) readLazy(String): 按需读取指定路径的 lammps dump 的帧数据
  * @see #write(String) write(String): 将此 lammps dump 原子数据写入指定路径
+ * @see #writeBinary(String) writeBinary(String): 将此 lammps dump 原子数据写入 jse 的二进制格式
  * @see #of(IAtomData) of(IAtomData): 将任意的原子数据转换成多帧 lammps dump 原子数据
  * @author liqa
  */
@@ -291,6 +302,191 @@ public class Lammpstrj extends AbstractListWrapper<SubLammpstrj, IAtomData, SubL
         return new Lammpstrj(rLammpstrj);
     }
     
+    /**
+     * 使用内存映射直接读取文件的字节，并使用多个线程并行读取每一帧的原子数据部分，
+     * 适合用于较大的 dump 文件；和 {@link #read(String)} 一致，会直接截断最后不完整的帧
+     * <p>
+     * 对于 {@code .gz} 结尾的文件会使用 {@link BlockGzip#chunkReader} 按窗口分段解压后读取，
+     * 如果是 {@link IO#toWriter(String)} 写入的按块压缩的文件则会并行解压
+     *
+     * @param aFilePath lammps 输出的 dump 文件路径
+     * @param aThreadNum 读取原子数据使用的线程数
+     * @return 读取得到的 {@link Lammpstrj} 对象
+     * @throws IOException 如果读取失败
+     * @see SubLammpstrj#read(ByteBuffer, int)
+     */
+    public static Lammpstrj read(String aFilePath, @Range(from=1, to=Integer.MAX_VALUE) int aThreadNum) throws IOException {
+        Path tPath = IO.toAbsolutePath_(aFilePath);
+        if (BlockGzip.isGzip(tPath)) return readGzip_(tPath, aThreadNum);
+        List<SubLammpstrj> rLammpstrj = new ArrayList<>();
+        try (FileChannel tChannel = FileChannel.open(tPath, StandardOpenOption.READ);
+             ParforThreadPool tPool = new ParforThreadPool(aThreadNum)) {
+            final long tSize = tChannel.size();
+            long tStart = 0;
+            // 单次映射的大小有上限，因此按窗口映射，在窗口结尾读取失败时从失败的帧开始重新映射
+            while (tStart < tSize) {
+                long tWindow = Math.min(tSize-tStart, MAX_MAP_SIZE);
+                boolean tReachEnd = tStart+tWindow == tSize;
+                ByteBuffer tBuf = tChannel.map(FileChannel.MapMode.READ_ONLY, tStart, tWindow);
+                int tFrameStart = 0;
+                try {
+                    while (tBuf.hasRemaining()) {
+                        SubLammpstrj tSubLammpstrj = SubLammpstrj.read_(tBuf, tPool);
+                        // 刚好读取到窗口结尾的帧可能被窗口截断，需要从此帧开始重新映射
+                        if (!tReachEnd && !tBuf.hasRemaining()) break;
+                        rLammpstrj.add(tSubLammpstrj);
+                        tFrameStart = tBuf.position();
+                    }
+                } catch (FileEndException e) {
+                    if (tReachEnd) break;
+                }
+                if (tReachEnd) break;
+                if (tFrameStart == 0) throw new IOException("Frame too large to map at position: "+tStart);
+                tStart += tFrameStart;
+            }
+        }
+        return new Lammpstrj(rLammpstrj);
+    }
+    /** 单次内存映射的最大字节数 */
+    private final static long MAX_MAP_SIZE = Integer.MAX_VALUE;
+    /** 解压 gzip 文件时单个窗口的初始字节数，遇到放不下的帧时会自动扩大 */
+    private final static int GZIP_WINDOW_SIZE = 1<<28;
+    /** 解压 gzip 文件时单个窗口的最大字节数 */
+    private final static int MAX_GZIP_WINDOW_SIZE = Integer.MAX_VALUE-8;
+    /**
+     * 按窗口分段解压 gzip 文件并读取，和内存映射的窗口读取一致，
+     * 在窗口结尾读取失败时将失败的帧移动到窗口开头继续解压，从而支持解压后超过 2GB 的文件
+     */
+    private static Lammpstrj readGzip_(Path aPath, int aThreadNum) throws IOException {
+        List<SubLammpstrj> rLammpstrj = new ArrayList<>();
+        try (ParforThreadPool tPool = new ParforThreadPool(aThreadNum);
+             BlockGzip.ChunkReader tReader = BlockGzip.chunkReader(aPath, tPool)) {
+            final long tTotal = tReader.size();
+            int tWindow = tTotal<0 ? GZIP_WINDOW_SIZE : (int)Math.max(Math.min(tTotal, GZIP_WINDOW_SIZE), BlockGzip.MAX_BLOCK_SIZE);
+            byte[] tData = new byte[tWindow];
+            int tLen = 0;
+            boolean tReachEnd = false;
+            while (true) {
+                // 尽量填满窗口，每次至少需要能放下一个完整的块
+                while (!tReachEnd && tData.length-tLen >= BlockGzip.MAX_BLOCK_SIZE) {
+                    int tRead = tReader.read(tData, tLen, tData.length-tLen);
+                    if (tRead < 0) tReachEnd = true;
+                    else tLen += tRead;
+                }
+                ByteBuffer tBuf = ByteBuffer.wrap(tData, 0, tLen);
+                int tFrameStart = 0;
+                try {
+                    while (tBuf.hasRemaining()) {
+                        SubLammpstrj tSubLammpstrj = SubLammpstrj.read_(tBuf, tPool);
+                        // 刚好读取到窗口结尾的帧可能被窗口截断，需要在继续解压后重新读取此帧
+                        if (!tReachEnd && !tBuf.hasRemaining()) break;
+                        rLammpstrj.add(tSubLammpstrj);
+                        tFrameStart = tBuf.position();
+                    }
+                } catch (FileEndException e) {
+                    if (tReachEnd) break;
+                }
+                if (tReachEnd) break;
+                if (tFrameStart == 0) {
+                    // 窗口内放不下一帧，扩大窗口后继续解压
+                    if (tData.length >= MAX_GZIP_WINDOW_SIZE) throw new IOException("Frame too large to decompress in: "+aPath);
+                    tData = Arrays.copyOf(tData, (int)Math.min((long)tData.length*2, MAX_GZIP_WINDOW_SIZE));
+                    continue;
+                }
+                System.arraycopy(tData, tFrameStart, tData, 0, tLen-tFrameStart);
+                tLen -= tFrameStart;
+            }
+        }
+        return new Lammpstrj(rLammpstrj);
+    }
+    /**
+     * 提供直接读取字节的接口，会从 {@code aBuf} 当前位置一直读取到结尾
+     * @param aBuf 需要读取的字节
+     * @param aThreadNum 读取原子数据使用的线程数
+     * @return 读取得到的 {@link Lammpstrj} 对象
+     * @throws IOException 如果读取失败
+     */
+    public static Lammpstrj read(ByteBuffer aBuf, @Range(from=1, to=Integer.MAX_VALUE) int aThreadNum) throws IOException {
+        try (ParforThreadPool tPool = new ParforThreadPool(aThreadNum)) {
+            return read_(aBuf, tPool);
+        }
+    }
+    private static Lammpstrj read_(ByteBuffer aBuf, ParforThreadPool aPool) throws IOException {
+        List<SubLammpstrj> rLammpstrj = new ArrayList<>();
+        while (aBuf.hasRemaining()) {
+            try {
+                rLammpstrj.add(SubLammpstrj.read_(aBuf, aPool));
+            } catch (FileEndException any) {
+                break;
+            }
+        }
+        return new Lammpstrj(rLammpstrj);
+    }
+    
+    /**
+     * 获取流水线读取 lammps 输出的 dump 文件的读取器，单独的线程划分每一帧，
+     * 并在线程池中并行解析每一帧以及进行后续分析，结果会按照帧的顺序返回；
+     * 适合对较大的 dump 文件逐帧进行后处理
+     * <pre> {@code
+     * def msds = Lammpstrj.pipeline('dump.lammpstrj', 8).collect {data, i -> ...}
+     * } </pre>
+     *
+     * @param aFilePath lammps 输出的 dump 文件路径，支持 {@code .gz} 压缩文件
+     * @param aThreadNum 解析和分析使用的线程数
+     * @return 流水线读取器，只有在实际遍历时才会打开文件
+     * @see FramePipeline
+     */
+    public static FramePipeline<SubLammpstrj> pipeline(String aFilePath, @Range(from=1, to=Integer.MAX_VALUE) int aThreadNum) {
+        return new FramePipeline<>(aFilePath, Lammpstrj::splitter_, SubLammpstrj::read, aThreadNum);
+    }
+    /** 按照 {@code ITEM: TIMESTEP} 来划分每一帧 */
+    private static FramePipeline.ISplitter splitter_() {
+        final String[] rPending = {null};
+        return aReader -> {
+            String tLine = rPending[0];
+            rPending[0] = null;
+            if (tLine == null) tLine = aReader.readLine();
+            if (tLine == null) return null;
+            StringBuilder rFrame = new StringBuilder();
+            rFrame.append(tLine).append('\n');
+            while ((tLine = aReader.readLine()) != null) {
+                if (tLine.contains("ITEM: TIMESTEP")) {rPending[0] = tLine; break;}
+                rFrame.append(tLine).append('\n');
+            }
+            return rFrame.toString();
+        };
+    }
+    
+    /**
+     * 按需读取 lammps 输出的 dump 文件，只会扫描一次文件获取每一帧的位置，
+     * 在实际获取某一帧时才会读取，适合用于远大于内存的 dump 文件
+     *
+     * @param aFilePath lammps 输出的 dump 文件路径
+     * @return 读取得到的 {@link LazyLammpstrj} 对象
+     * @throws IOException 如果读取失败
+     * @see LazyLammpstrj#read(String, int, boolean)
+     */
+    public static LazyLammpstrj readLazy(String aFilePath) throws IOException {return LazyLammpstrj.read(aFilePath);}
+    /**
+     * 按需读取 lammps 输出的 dump 文件
+     * @param aFilePath lammps 输出的 dump 文件路径
+     * @param aCacheSize 缓存的最大帧数
+     * @param aPersistIndex 是否将索引保存在文件旁并在之后重复使用
+     * @return 读取得到的 {@link LazyLammpstrj} 对象
+     * @throws IOException 如果读取失败
+     * @see LazyLammpstrj#read(String, int, boolean)
+     */
+    public static LazyLammpstrj readLazy(String aFilePath, int aCacheSize, boolean aPersistIndex) throws IOException {return LazyLammpstrj.read(aFilePath, aCacheSize, aPersistIndex);}
+    
+    /**
+     * 打开 jse 的二进制 lammps dump 文件，只会读取文件结尾的索引，在获取某一帧时才会读取
+     * @param aFilePath 二进制文件路径
+     * @return 读取得到的 {@link BinaryLammpstrj} 对象
+     * @throws IOException 如果读取失败或者不是合法的文件
+     * @see BinaryLammpstrj
+     */
+    public static BinaryLammpstrj readBinary(String aFilePath) throws IOException {return BinaryLammpstrj.read(aFilePath);}
+    
     /**
      * 输出成 lammps 格式的 dump 文件，可以供 OVITO 等软件读取
      * @author liqa
@@ -308,6 +504,32 @@ public class Lammpstrj extends AbstractListWrapper<SubLammpstrj, IAtomData, SubL
     public void write(IO.IWriteln aWriteln) throws IOException {
         for (SubLammpstrj tSubLammpstrj : mList) tSubLammpstrj.write(aWriteln);
     }
+    /**
+     * 获取一个异步写入 lammps dump 文件的写入器，用于在模拟过程中逐帧输出而不阻塞计算线程；
+     * 写入时只会在当前线程拷贝一份数据，实际的格式化和写入在后台线程中完成
+     * @param aFilePath 需要输出的路径
+     * @return 异步写入器，使用完毕后需要关闭
+     * @throws IOException 如果创建文件失败
+     * @see AsyncFrameWriter
+     */
+    public static AsyncFrameWriter<IAtomData> asyncWriter(String aFilePath) throws IOException {
+        return new AsyncFrameWriter<>(aFilePath, (aAtomData, aIdx) -> SubLammpstrj.of(aAtomData, SubLammpstrj.getTimeStep(aAtomData, aIdx))::write);
+    }
+    /**
+     * 输出成 jse 的二进制 lammps dump 文件，之后重复读取时不再需要解析文本
+     * @param aFilePath 需要输出的路径
+     * @throws IOException 如果写入文件失败
+     * @see BinaryLammpstrj
+     */
+    public void writeBinary(String aFilePath) throws IOException {BinaryLammpstrj.write(aFilePath, mList);}
+    /**
+     * 输出成压缩的 jse 的二进制 lammps dump 文件，坐标会按照给定的精度量化
+     * @param aFilePath 需要输出的路径
+     * @param aPrecision 坐标的量化精度，读取的坐标和原始坐标的误差不超过此值的一半
+     * @throws IOException 如果写入文件失败
+     * @see BinaryLammpstrj#write(String, Iterable, double)
+     */
+    public void writeBinary(String aFilePath, double aPrecision) throws IOException {BinaryLammpstrj.write(aFilePath, mList, aPrecision);}
     
     
     /// MPI stuffs
@@ -0,0 +1,295 @@
+package jse.lmp;
+
+import jse.code.FileEndException;
+import jse.code.IO;
+import jse.code.collection.AbstractRandomAccessList;
+import jse.code.collection.LongList;
+import jse.code.io.BlockGzip;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按需读取的多帧 lammps dump 数据，只在初始化时扫描一次文件记录每一帧
+ * {@code ITEM: TIMESTEP} 的字节位置，在 {@link #get(int)} 时才会实际读取对应帧，
+ * 并使用有限大小的 LRU 缓存已经读取的帧，从而可以处理远大于内存的 dump 文件
+ * <p>
+ * 除了不支持添加和修改帧以外，和 {@link Lammpstrj} 的使用方式完全一致；
+ * {@link #cutFront(int)}，{@link #cutBack(int)} 以及 {@link #step(int)}
+ * 只会修改索引而不会读取任何帧
+ * <p>
+ * 对于 {@code .gz} 文件，只支持 BGZF 格式（例如 jse 写入的 gzip 文件），
+ * 此时索引记录的是解压后的位置，读取时会通过每一块的位置转换为虚拟偏移来直接跳转，
+ * 而普通的 gzip 文件无法跳转读取，因此会直接报错
+ * <p>
+ * 注意获取到的 {@link SubLammpstrj} 可能会在缓存中被移除后重新读取，
+ * 因此对其的修改不保证会保留，如果需要修改应当先使用 {@link SubLammpstrj#copy()}
+ *
+ * @see Lammpstrj#readLazy(String) Lammpstrj.readLazy(String): 按需读取指定路径的 lammps dump
+ * @author liqa
+ */
+public class LazyLammpstrj extends Lammpstrj {
+    /** 默认缓存的帧数 */
+    public final static int DEFAULT_CACHE_SIZE = 16;
+    /** 保存索引文件使用的后缀 */
+    public final static String INDEX_SUFFIX = ".jseidx";
+    
+    private final static byte[] FRAME_HEAD = "ITEM: TIMESTEP".getBytes(StandardCharsets.US_ASCII);
+    private final static long INDEX_MAGIC = 0x4A534549445801L;
+    private final static int SCAN_BUFFER_SIZE = 1<<20;
+    
+    private final Path mPath;
+    /** 每一帧在文件中的起始位置，最后额外存储一个结束位置 */
+    private final long[] mOffsets;
+    /** BGZF 文件每一块的位置，对于非压缩文件为 {@code null} */
+    private final long @Nullable[] mBlocks;
+    /** 当前可见的帧在文件中的序号，用于支持不读取数据的截断操作 */
+    private int[] mFrames;
+    private final Map<Integer, SubLammpstrj> mCache;
+    
+    LazyLammpstrj(Path aPath, long[] aOffsets, long @Nullable[] aBlocks, final int aCacheSize) {
+        super();
+        mPath = aPath;
+        mOffsets = aOffsets;
+        mBlocks = aBlocks;
+        final int tFrameNum = aOffsets.length-1;
+        mFrames = new int[tFrameNum];
+        for (int i = 0; i < tFrameNum; ++i) mFrames[i] = i;
+        mCache = new LinkedHashMap<Integer, SubLammpstrj>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<Integer, SubLammpstrj> aEldest) {return size() > aCacheSize;}
+        };
+        mList = new FrameList_();
+    }
+    
+    private final class FrameList_ extends AbstractRandomAccessList<SubLammpstrj> {
+        @Override public SubLammpstrj get(int aIdx) {
+            try {return frame_(mFrames[aIdx]);}
+            catch (IOException e) {throw new UncheckedIOException(e);}
+        }
+        @Override public int size() {return mFrames.length;}
+    }
+    
+    /** 直接读取文件中的第 aFrame 帧，会优先从缓存中获取 */
+    private SubLammpstrj frame_(int aFrame) throws IOException {
+        synchronized (mCache) {
+            SubLammpstrj tFrame = mCache.get(aFrame);
+            if (tFrame != null) return tFrame;
+        }
+        SubLammpstrj tFrame;
+        if (mBlocks != null) {
+            tFrame = readGzipFrame_(mPath, mBlocks, mOffsets[aFrame], mOffsets[aFrame+1]);
+        } else try (FileChannel tChannel = FileChannel.open(mPath, StandardOpenOption.READ)) {
+            tFrame = readFrame_(tChannel, mOffsets[aFrame], mOffsets[aFrame+1]);
+        }
+        synchronized (mCache) {mCache.put(aFrame, tFrame);}
+        return tFrame;
+    }
+    private static SubLammpstrj readFrame_(FileChannel aChannel, long aStart, long aEnd) throws IOException {
+        long tLength = aEnd - aStart;
+        if (tLength > Integer.MAX_VALUE) throw new IOException("Frame too large to read lazily: "+tLength+" bytes");
+        ByteBuffer tBuf = ByteBuffer.allocate((int)tLength);
+        long tPos = aStart;
+        while (tBuf.hasRemaining()) {
+            int tRead = aChannel.read(tBuf, tPos);
+            if (tRead < 0) break;
+            tPos += tRead;
+        }
+        tBuf.flip();
+        return SubLammpstrj.read(tBuf);
+    }
+    /** 从 BGZF 文件中读取一帧，aStart 和 aEnd 都是解压后的位置 */
+    private static SubLammpstrj readGzipFrame_(Path aPath, long[] aBlocks, long aStart, long aEnd) throws IOException {
+        long tLength = aEnd - aStart;
+        if (tLength > Integer.MAX_VALUE) throw new IOException("Frame too large to read lazily: "+tLength+" bytes");
+        byte[] tBytes = new byte[(int)tLength];
+        int tLen = 0;
+        try (InputStream tIn = BlockGzip.toInputStream(aPath, BlockGzip.virtualOffset(aBlocks, aStart))) {
+            while (tLen < tBytes.length) {
+                int tRead = tIn.read(tBytes, tLen, tBytes.length-tLen);
+                if (tRead < 0) break;
+                tLen += tRead;
+            }
+        }
+        return SubLammpstrj.read(ByteBuffer.wrap(tBytes, 0, tLen));
+    }
+    
+    /** 清空已经读取的帧的缓存 */
+    public void clearCache() {
+        synchronized (mCache) {mCache.clear();}
+    }
+    /** @return 对应的 dump 文件路径 */
+    public String filePath() {return mPath.toString();}
+    
+    
+    /** 截断开头一部分，只修改索引，返回自身来支持链式调用 */
+    @Override public LazyLammpstrj cutFront(@Range(from=0, to=Integer.MAX_VALUE) int aLength) {
+        if (aLength == 0) return this;
+        if (aLength > mFrames.length) throw new IndexOutOfBoundsException(String.format("Index: %d", aLength));
+        mFrames = Arrays.copyOfRange(mFrames, aLength, mFrames.length);
+        return this;
+    }
+    /** 截断结尾一部分，只修改索引，返回自身来支持链式调用 */
+    @Override public LazyLammpstrj cutBack(@Range(from=0, to=Integer.MAX_VALUE) int aLength) {
+        if (aLength == 0) return this;
+        if (aLength > mFrames.length) throw new IndexOutOfBoundsException(String.format("Index: %d", aLength));
+        mFrames = Arrays.copyOf(mFrames, mFrames.length-aLength);
+        return this;
+    }
+    /** 等间距截取，只修改索引，返回自身来支持链式调用 */
+    @Override public LazyLammpstrj step(@Range(from=1, to=Integer.MAX_VALUE) int aStep) {
+        if (aStep == 1) return this;
+        final int tSize = mFrames.length;
+        int[] rFrames = new int[(tSize+aStep-1) / aStep];
+        for (int i = 0, j = 0; i < tSize; i+=aStep, ++j) rFrames[j] = mFrames[i];
+        mFrames = rFrames;
+        return this;
+    }
+    
+    /** 读取所有帧并拷贝成一个普通的 {@link Lammpstrj}，读取的帧不会进入缓存 */
+    @Override public Lammpstrj copy() {
+        List<SubLammpstrj> rData = new ArrayList<>(mFrames.length);
+        try (FileChannel tChannel = mBlocks!=null ? null : FileChannel.open(mPath, StandardOpenOption.READ)) {
+            for (int tFrame : mFrames) {
+                SubLammpstrj tCached;
+                synchronized (mCache) {tCached = mCache.get(tFrame);}
+                if (tCached != null) {rData.add(tCached.copy()); continue;}
+                rData.add(mBlocks!=null ? readGzipFrame_(mPath, mBlocks, mOffsets[tFrame], mOffsets[tFrame+1]) : readFrame_(tChannel, mOffsets[tFrame], mOffsets[tFrame+1]));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Lammpstrj(rData);
+    }
+    
+    
+    /// 文件读取
+    /**
+     * 扫描 lammps 输出的 dump 文件，获取所有帧的位置，使用默认的缓存大小并且不保存索引
+     * @param aFilePath lammps 输出的 dump 文件路径
+     * @return 读取得到的 {@link LazyLammpstrj} 对象
+     * @throws IOException 如果读取失败
+     * @see #read(String, int, boolean)
+     */
+    public static LazyLammpstrj read(String aFilePath) throws IOException {return read(aFilePath, DEFAULT_CACHE_SIZE, false);}
+    /** @see #read(String, int, boolean) */
+    public static LazyLammpstrj read(String aFilePath, @Range(from=1, to=Integer.MAX_VALUE) int aCacheSize) throws IOException {return read(aFilePath, aCacheSize, false);}
+    /**
+     * 扫描 lammps 输出的 dump 文件，获取所有帧的位置，
+     * 和 {@link Lammpstrj#read(String)} 一致，最后不完整的帧会被直接截断；
+     * 对于 {@code .gz} 文件只支持 BGZF 格式，此时会完整解压一次来扫描帧的位置
+     *
+     * @param aFilePath lammps 输出的 dump 文件路径
+     * @param aCacheSize 缓存的最大帧数
+     * @param aPersistIndex 是否将扫描得到的索引保存到 {@code aFilePath+".jseidx"}，
+     *                      并在之后读取时直接使用（如果文件没有改变）
+     * @return 读取得到的 {@link LazyLammpstrj} 对象
+     * @throws IOException 如果读取失败
+     * @throws IllegalArgumentException 如果是不支持跳转读取的普通 gzip 文件
+     */
+    public static LazyLammpstrj read(String aFilePath, @Range(from=1, to=Integer.MAX_VALUE) int aCacheSize, boolean aPersistIndex) throws IOException {
+        if (aCacheSize < 1) throw new IllegalArgumentException("Cache size MUST be positive: "+aCacheSize);
+        Path tPath = IO.toAbsolutePath_(aFilePath);
+        long[] tBlocks = null;
+        if (BlockGzip.isGzip(tPath)) {
+            try (FileChannel tChannel = FileChannel.open(tPath, StandardOpenOption.READ)) {tBlocks = BlockGzip.scanBlocks(tChannel);}
+            if (tBlocks == null) throw new IllegalArgumentException("Lazy reading only supports gzip file in BGZF format: "+aFilePath);
+        }
+        Path tIndexPath = tPath.resolveSibling(tPath.getFileName()+INDEX_SUFFIX);
+        long tFileSize = Files.size(tPath);
+        long tModified = Files.getLastModifiedTime(tPath).toMillis();
+        long[] tOffsets = aPersistIndex ? loadIndex_(tIndexPath, tFileSize, tModified) : null;
+        if (tOffsets == null) {
+            tOffsets = scanIndex_(tPath, tFileSize, tBlocks);
+            if (aPersistIndex) {
+                // 索引只是加速手段，无法写入（例如只读目录）时直接忽略
+                try {saveIndex_(tIndexPath, tFileSize, tModified, tOffsets);}
+                catch (IOException ignored) {}
+            }
+        }
+        return new LazyLammpstrj(tPath, tOffsets, tBlocks, aCacheSize);
+    }
+    
+    /**
+     * 扫描所有位于行首的 {@code ITEM: TIMESTEP} 位置，返回的位置最后会附加上最后一帧的结束位置，并会移除最后不完整的帧；
+     * 对于 BGZF 文件（aBlocks 不为 {@code null}）记录的是解压后的位置
+     */
+    private static long[] scanIndex_(Path aPath, long aFileSize, long @Nullable[] aBlocks) throws IOException {
+        LongList rOffsets = new LongList();
+        long tPos = 0, tLineStart = 0;
+        try (InputStream tIn = aBlocks!=null ? BlockGzip.toInputStream(aPath) : Files.newInputStream(aPath)) {
+            byte[] tBytes = new byte[(int)Math.min(SCAN_BUFFER_SIZE, Math.max(aBlocks!=null ? aBlocks[aBlocks.length-1] : aFileSize, 1))];
+            int tMatch = 0; // 当前行已经匹配的长度，-1 表示此行已经不可能匹配
+            while (true) {
+                int tRead = tIn.read(tBytes);
+                if (tRead < 0) break;
+                for (int i = 0; i < tRead; ++i) {
+                    byte tByte = tBytes[i];
+                    if (tMatch >= 0) {
+                        if (tByte == FRAME_HEAD[tMatch]) {
+                            ++tMatch;
+                            if (tMatch == FRAME_HEAD.length) {rOffsets.add(tLineStart); tMatch = -1;}
+                        } else {
+                            tMatch = -1;
+                        }
+                    }
+                    if (tByte == '\n') {tLineStart = tPos+i+1; tMatch = 0;}
+                }
+                tPos += tRead;
+            }
+        }
+        rOffsets.add(tPos);
+        long[] rData = Arrays.copyOf(rOffsets.internalData(), rOffsets.size());
+        // 检测最后一帧是否完整，不完整则直接截断，此时其起始位置即为前一帧的结束位置
+        int tFrameNum = rData.length-1;
+        if (tFrameNum > 0) {
+            try {
+                if (aBlocks != null) {
+                    readGzipFrame_(aPath, aBlocks, rData[tFrameNum-1], rData[tFrameNum]);
+                } else try (FileChannel tChannel = FileChannel.open(aPath, StandardOpenOption.READ)) {
+                    readFrame_(tChannel, rData[tFrameNum-1], rData[tFrameNum]);
+                }
+            } catch (FileEndException e) {
+                rData = Arrays.copyOf(rData, tFrameNum);
+            }
+        }
+        return rData;
+    }
+    
+    private static long @Nullable[] loadIndex_(Path aIndexPath, long aFileSize, long aModified) {
+        if (!Files.isRegularFile(aIndexPath)) return null;
+        try (DataInputStream tIn = new DataInputStream(new BufferedInputStream(Files.newInputStream(aIndexPath)))) {
+            if (tIn.readLong() != INDEX_MAGIC) return null;
+            if (tIn.readLong() != aFileSize) return null;
+            if (tIn.readLong() != aModified) return null;
+            int tSize = tIn.readInt();
+            if (tSize < 1) return null;
+            long[] rOffsets = new long[tSize];
+            for (int i = 0; i < tSize; ++i) rOffsets[i] = tIn.readLong();
+            return rOffsets;
+        } catch (IOException e) {
+            // 损坏的索引文件直接重新扫描
+            return null;
+        }
+    }
+    private static void saveIndex_(Path aIndexPath, long aFileSize, long aModified, long[] aOffsets) throws IOException {
+        try (DataOutputStream tOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(aIndexPath)))) {
+            tOut.writeLong(INDEX_MAGIC);
+            tOut.writeLong(aFileSize);
+            tOut.writeLong(aModified);
+            tOut.writeInt(aOffsets.length);
+            for (long tOffset : aOffsets) tOut.writeLong(tOffset);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import jse.code.FileEndException;
 import jse.code.IO;
 import jse.code.UT;
 import jse.code.collection.AbstractCollections;
+import jse.code.io.BlockParser;
 import jse.math.MathEX;
 import jse.math.matrix.IMatrix;
 import jse.math.table.ITable;
@@ -14,11 +15,16 @@ import jse.math.vector.IVector;
 import jse.math.vector.Vector;
 import jse.parallel.MPI;
 import jse.parallel.MPIException;
+import jse.parallel.ParforThreadPool;
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
 import org.jetbrains.annotations.VisibleForTesting;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 import static jse.code.CS.*;
@@ -699,6 +705,86 @@ public class SubLammpstrj extends AbstractSettableAtomData {
      * @author liqa
      */
     public static SubLammpstrj read(BufferedReader aReader) throws IOException {
+        String tLine;
+        Header_ tHeader = readHeader_(aReader::readLine);
+        final Table aAtomData = Tables.zeros(tHeader.mAtomNum, tHeader.mAtomDataKeys);
+        for (IVector tRow : aAtomData.rows()) {
+            tLine = aReader.readLine();
+            if (tLine == null) {IO.fileEnd(); return null;}
+            tRow.fill(IO.Text.str2data(true, tLine, tHeader.mAtomDataKeys.length));
+        }
+        // 创建 SubLammpstrj 并返回
+        return new SubLammpstrj(tHeader.mTimeStep, tHeader.mBoxBounds, tHeader.mBox, aAtomData);
+    }
+    /**
+     * 提供直接读取字节的接口，可以是内存映射的文件 {@link java.nio.MappedByteBuffer}，
+     * 会从 {@code aBuf} 当前位置开始读取一帧，读取完成后位置会移动到此帧结尾。
+     * <p>
+     * 原子数据部分会使用 {@link BlockParser} 直接从字节读取到表格中，
+     * 不会为每个原子创建字符串，因此比 {@link #read(BufferedReader)} 快很多
+     *
+     * @param aBuf 需要读取的字节
+     * @return 读取得到的 {@link SubLammpstrj} 对象，只会读取一帧
+     * @throws IOException 如果读取失败
+     * @throws FileEndException 在发现文件似乎不完整时
+     */
+    public static SubLammpstrj read(ByteBuffer aBuf) throws IOException {return read_(aBuf, null);}
+    /**
+     * 提供直接读取字节的接口，并且使用多个线程并行读取原子数据部分
+     * @param aBuf 需要读取的字节
+     * @param aThreadNum 读取原子数据使用的线程数
+     * @return 读取得到的 {@link SubLammpstrj} 对象，只会读取一帧
+     * @throws IOException 如果读取失败
+     * @throws FileEndException 在发现文件似乎不完整时
+     * @see #read(ByteBuffer)
+     */
+    public static SubLammpstrj read(ByteBuffer aBuf, @Range(from=1, to=Integer.MAX_VALUE) int aThreadNum) throws IOException {
+        if (aThreadNum <= 1) return read_(aBuf, null);
+        try (ParforThreadPool tPool = new ParforThreadPool(aThreadNum)) {return read_(aBuf, tPool);}
+    }
+    static SubLammpstrj read_(final ByteBuffer aBuf, @Nullable ParforThreadPool aPool) throws IOException {
+        Header_ tHeader = readHeader_(() -> readLine_(aBuf));
+        final int tAtomNum = tHeader.mAtomNum;
+        final Table aAtomData = Tables.zeros(tAtomNum, tHeader.mAtomDataKeys);
+        // Table 内部按列存储，可以直接写入
+        double[] rData = aAtomData.internalData().internalData();
+        if (BlockParser.parseColumns(true, aBuf, tAtomNum, tHeader.mAtomDataKeys.length, rData, aPool) < tAtomNum) {IO.fileEnd(); return null;}
+        // 创建 SubLammpstrj 并返回
+        return new SubLammpstrj(tHeader.mTimeStep, tHeader.mBoxBounds, tHeader.mBox, aAtomData);
+    }
+    
+    /** 读取的头部信息，用于在不同的读取方式之间共享 */
+    private final static class Header_ {
+        final long mTimeStep;
+        final int mAtomNum;
+        final String[] mBoxBounds;
+        final LmpBox mBox;
+        final String[] mAtomDataKeys;
+        Header_(long aTimeStep, int aAtomNum, String[] aBoxBounds, LmpBox aBox, String[] aAtomDataKeys) {
+            mTimeStep = aTimeStep; mAtomNum = aAtomNum; mBoxBounds = aBoxBounds; mBox = aBox; mAtomDataKeys = aAtomDataKeys;
+        }
+    }
+    @FunctionalInterface private interface ILineReader_ {@Nullable String readLine() throws IOException;}
+    private static @Nullable String findLineContaining_(ILineReader_ aReader, String aContainStr) throws IOException {
+        String tLine;
+        while ((tLine = aReader.readLine()) != null) {
+            if (IO.Text.containsIgnoreCase(tLine, aContainStr)) return tLine;
+        }
+        return null;
+    }
+    /** 和 {@link BufferedReader#readLine()} 一致，从 aBuf 中读取一行，并移除结尾的换行符 */
+    private static @Nullable String readLine_(ByteBuffer aBuf) {
+        final int tStart = aBuf.position(), tLimit = aBuf.limit();
+        if (tStart >= tLimit) return null;
+        int tEnd = tStart;
+        while (tEnd < tLimit && aBuf.get(tEnd) != '\n') ++tEnd;
+        aBuf.position(tEnd<tLimit ? tEnd+1 : tEnd);
+        if (tEnd>tStart && aBuf.get(tEnd-1)=='\r') --tEnd;
+        byte[] tBytes = new byte[tEnd-tStart];
+        for (int i = 0; i < tBytes.length; ++i) tBytes[i] = aBuf.get(tStart+i);
+        return new String(tBytes, StandardCharsets.UTF_8);
+    }
+    private static Header_ readHeader_(ILineReader_ aReader) throws IOException {
         String tLine;
         String[] tTokens;
         
@@ -706,18 +792,17 @@ public class SubLammpstrj extends AbstractSettableAtomData {
         int tAtomNum;
         String[] aBoxBounds;
         LmpBox aBox;
-        final Table aAtomData;
         
         // 读取时间步数
-        IO.Text.findLineContaining(aReader, "ITEM: TIMESTEP", true); tLine = aReader.readLine();
+        findLineContaining_(aReader, "ITEM: TIMESTEP"); tLine = aReader.readLine();
         if (tLine == null) {IO.fileEnd("Fail to find `ITEM: TIMESTEP`"); return null;} tTokens = IO.Text.splitBlank(tLine);
         aTimeStep = Long.parseLong(tTokens[0]);
         // 读取原子总数
-        IO.Text.findLineContaining(aReader, "ITEM: NUMBER OF ATOMS", true); tLine = aReader.readLine();
+        findLineContaining_(aReader, "ITEM: NUMBER OF ATOMS"); tLine = aReader.readLine();
         if (tLine == null) {IO.fileEnd("Fail to find `ITEM: NUMBER OF ATOMS`"); return null;} tTokens = IO.Text.splitBlank(tLine);
         tAtomNum = Integer.parseInt(tTokens[0]);
         // 读取模拟盒信息
-        tLine = IO.Text.findLineContaining(aReader, "ITEM: BOX BOUNDS", true);
+        tLine = findLineContaining_(aReader, "ITEM: BOX BOUNDS");
         if (tLine == null) {IO.fileEnd("Fail to find `ITEM: BOX BOUNDS`"); return null;} tTokens = IO.Text.splitBlank(tLine);
         // 斜方支持
         if (tTokens[3].equalsIgnoreCase("xy")) {
@@ -746,19 +831,11 @@ public class SubLammpstrj extends AbstractSettableAtomData {
         }
         
         // 读取原子信息
-        tLine = IO.Text.findLineContaining(aReader, "ITEM: ATOMS", true);
+        tLine = findLineContaining_(aReader, "ITEM: ATOMS");
         if (tLine == null) {IO.fileEnd("Fail to find `ITEM: ATOMS`"); return null;} tTokens = IO.Text.splitBlank(tLine);
         String[] tAtomDataKeys = new String[tTokens.length-2];
         System.arraycopy(tTokens, 2, tAtomDataKeys, 0, tAtomDataKeys.length);
-        aAtomData = Tables.zeros(tAtomNum, tAtomDataKeys);
-        for (IVector tRow : aAtomData.rows()) {
-            tLine = aReader.readLine();
-            if (tLine == null) {IO.fileEnd(); return null;}
-            tRow.fill(IO.Text.str2data(true, tLine, tAtomDataKeys.length));
-        }
-        
-        // 创建 SubLammpstrj 并返回
-        return new SubLammpstrj(aTimeStep, aBoxBounds, aBox, aAtomData);
+        return new Header_(aTimeStep, tAtomNum, aBoxBounds, aBox, tAtomDataKeys);
     }
     
     /**
@@ -801,15 +878,25 @@ public class SubLammpstrj extends AbstractSettableAtomData {
         aWriteln.writeln(tZlo+" "+tZhi+" "+tYZ);
         }
         aWriteln.writeln("ITEM: ATOMS "+String.join(" ", mAtomData.heads()));
-        for (IVector subAtomData : mAtomData.rows()) {
-        aWriteln.writeln(String.join(" ", AbstractCollections.map(subAtomData, SubLammpstrj::double2str_)));
+        // 直接按列存储的数据中读取，并复用同一个 StringBuilder 来避免每行创建字符串
+        final double[] tData = mAtomData.internalData().internalData();
+        final int tAtomNum = mAtomData.nrows();
+        final int tColNum = mAtomData.ncols();
+        StringBuilder rLine = new StringBuilder();
+        for (int i = 0; i < tAtomNum; ++i) {
+            rLine.setLength(0);
+            for (int j = 0; j < tColNum; ++j) {
+                if (j > 0) rLine.append(' ');
+                appendDouble_(rLine, tData[j*tAtomNum + i]);
+            }
+            aWriteln.writeln(rLine);
         }
     }
-    /** 保证整数时直接输出整数 */
-    private static String double2str_(double aValue) {
+    /** 保证整数时直接输出整数，否则和 {@link Double#toString(double)} 一致 */
+    private static void appendDouble_(StringBuilder rLine, double aValue) {
         int tIntValue = (int)aValue;
-        if (tIntValue == aValue) return String.valueOf(tIntValue);
-        return Double.toString(aValue);
+        if (tIntValue == aValue) rLine.append(tIntValue);
+        else rLine.append(aValue);
     }
     
     
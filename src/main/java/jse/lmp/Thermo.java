@@ -106,6 +106,31 @@ public class Thermo extends Table {
         return new Thermo(Tables.fromRows(rDataRows, aHeads));
     }
     
+    /**
+     * 获取 lammps 输出的 log 文件的流式读取器，可以只读取需要的列，
+     * 并且可以通过 {@link ThermoReader#update()} 增量读取正在运行的模拟新写入的数据
+     * @param aFilePath lammps 输出的 log 文件路径
+     * @param aColumns 需要读取的列，不指定则全部读取
+     * @return 还没有开始读取的 {@link ThermoReader}
+     * @see ThermoReader
+     */
+    public static ThermoReader reader(String aFilePath, String... aColumns) {
+        return new ThermoReader(aFilePath, aColumns);
+    }
+    /**
+     * 从文件 lammps 输出的 log 文件中只读取需要的列，相比 {@link #read(String)} 可以减少内存占用以及解析的开销
+     * @param aFilePath lammps 输出的 log 文件路径
+     * @param aColumns 需要读取的列
+     * @return 读取得到的 {@link Thermo} 对象，没有 thermo 时返回 {@code null}
+     * @throws IOException 如果读取失败
+     */
+    public static Thermo read(String aFilePath, String... aColumns) throws IOException {
+        ThermoReader tReader = reader(aFilePath, aColumns);
+        // 一次性读取时需要读取结尾没有换行符的最后一行
+        tReader.update_(true);
+        return tReader.toThermo();
+    }
+    
     /**
      * 将 Thermo 写入到 csv 文件
      * @author liqa
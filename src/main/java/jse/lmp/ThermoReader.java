@@ -0,0 +1,311 @@
+package jse.lmp;
+
+import jse.code.IO;
+import jse.code.collection.DoubleList;
+import jse.code.io.BlockGzip;
+import jse.code.io.CharScanner;
+import jse.math.table.Table;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 流式读取 lammps 输出的 log 文件中的 thermo 数据，
+ * 和 {@link Thermo#read(String)} 的读取逻辑一致，但是：
+ * <ul>
+ *   <li> 可以只读取需要的列，数据直接存储在每列的 {@link DoubleList} 中 </li>
+ *   <li> 可以设置行的间隔以及只保留最后的若干行 </li>
+ *   <li> 会记录已经读取的位置，再次调用 {@link #update()} 时只会读取新写入的部分，
+ *        从而可以实现类似 {@code tail -f} 的方式监控正在运行的模拟 </li>
+ * </ul>
+ * 例如：
+ * <pre> {@code
+ * def reader = Thermo.reader('log.lammps', 'Step', 'Temp', 'PotEng').setTail(1000)
+ * while (running) {
+ *     reader.update()
+ *     plot(reader.column('Step'), reader.column('Temp'))
+ *     sleep(5000)
+ * }
+ * } </pre>
+ * 只会读取以换行符结尾的完整行，因此正在写入的最后一行会在之后的 {@link #update()} 中读取
+ * （一次性读取的 {@link Thermo#read(String, String...)} 会读取结尾没有换行符的最后一行）；
+ * 对于 {@code .gz} 结尾的压缩文件，由于无法直接定位，每次更新都需要从头解压并跳过已经读取的部分；
+ * 只支持 ASCII 兼容的编码
+ *
+ * @see Thermo#reader(String, String...)
+ * @author liqa
+ */
+public class ThermoReader {
+    private final static int BUFFER_SIZE = 1<<20;
+    private final static int STATE_SEEK_MEMORY = 0, STATE_SEEK_STEP = 1, STATE_DATA = 2, STATE_STOP = 3;
+    
+    private final Path mPath;
+    private final String @Nullable[] mColumns;
+    private int mStride = 1, mTail = -1;
+    
+    private long mOffset = 0;
+    private int mState = STATE_SEEK_MEMORY;
+    private long mRowCount = 0;
+    private String @Nullable[] mHeads = null;
+    private String @Nullable[] mOutHeads = null;
+    /** 每个 thermo 列对应的输出列，-1 表示不需要 */
+    private int @Nullable[] mColIdx = null;
+    private DoubleList @Nullable[] mData = null;
+    private char[] mChars = new char[0];
+    private final boolean[] mAnyErr = {false};
+    
+    /**
+     * 创建一个流式读取器，不会立刻读取文件
+     * @param aFilePath lammps 输出的 log 文件路径
+     * @param aColumns 需要读取的列，{@code null} 或者空表示全部读取
+     */
+    public ThermoReader(String aFilePath, String @Nullable... aColumns) {
+        mPath = IO.toAbsolutePath_(aFilePath);
+        mColumns = (aColumns==null || aColumns.length==0) ? null : aColumns;
+    }
+    
+    /**
+     * 设置读取行的间隔，每 {@code aStride} 行只保留第一行，需要在第一次 {@link #update()} 之前设置
+     * @param aStride 行间隔，默认为 1
+     * @return 自身，方便链式调用
+     */
+    public ThermoReader setStride(@Range(from=1, to=Integer.MAX_VALUE) int aStride) {
+        if (aStride < 1) throw new IllegalArgumentException("Stride MUST be positive: "+aStride);
+        if (mOffset > 0) throw new IllegalStateException("Stride can ONLY be set before the first update");
+        mStride = aStride; return this;
+    }
+    /**
+     * 设置只保留最后的若干行，对于正在运行的模拟可以避免内存一直增长
+     * @param aTail 保留的行数，小于 0 表示全部保留（默认）
+     * @return 自身，方便链式调用
+     */
+    public ThermoReader setTail(int aTail) {
+        mTail = aTail;
+        trimTail_();
+        return this;
+    }
+    
+    /** @return 读取得到的列名，第一次读取到 thermo 之前为 {@code null} */
+    public String @Nullable[] heads() {return mOutHeads==null ? null : mOutHeads.clone();}
+    /** @return 当前保留的行数 */
+    public int nrows() {return mData==null || mData.length==0 ? 0 : mData[0].size();}
+    /** @return 从文件开始已经读取的总行数（不考虑行间隔以及保留行数的限制） */
+    public long totalRows() {return mRowCount;}
+    /** @return 是否由于遇到了不同列的 thermo 而停止读取，和 {@link Thermo#read(String)} 一致，此后除非文件被重写否则不会再读取任何数据 */
+    public boolean isStopped() {return mState == STATE_STOP;}
+    /**
+     * 获取指定列的数据，返回的 {@link DoubleList} 会在之后的 {@link #update()} 中继续增长
+     * @param aHead 列名
+     * @return 对应列的数据
+     */
+    public DoubleList column(String aHead) {
+        if (mOutHeads == null) throw new IllegalStateException("No thermo data has been read yet");
+        for (int i = 0; i < mOutHeads.length; ++i) if (mOutHeads[i].equals(aHead)) {assert mData != null; return mData[i];}
+        throw new IllegalArgumentException("No column '"+aHead+"' in thermo heads: "+Arrays.toString(mOutHeads));
+    }
+    /** @return 当前保留数据的 {@link Thermo} 副本，没有读取到 thermo 时返回 {@code null} */
+    public @Nullable Thermo toThermo() {
+        if (mOutHeads == null) return null;
+        assert mData != null;
+        final int tRowNum = nrows();
+        DoubleList rData = new DoubleList(tRowNum*mData.length);
+        for (DoubleList tCol : mData) {
+            rData.addAll(tRowNum, tCol::get);
+        }
+        return new Thermo(new Table(tRowNum, rData, mOutHeads.clone()));
+    }
+    
+    /**
+     * 读取文件中新写入的部分，如果文件变短（例如重新运行了模拟）则会重新开始读取
+     * @return 此次新增的行数
+     * @throws IOException 如果读取失败
+     */
+    public synchronized int update() throws IOException {return update_(false);}
+    /** aFlush 为 {@code true} 时会将结尾没有换行符的最后一行也进行读取，用于一次性读取完整的文件 */
+    synchronized int update_(boolean aFlush) throws IOException {
+        int rAdded;
+        if (BlockGzip.isGzip(mPath)) {
+            boolean tShrunk;
+            try (InputStream tStream = BlockGzip.toInputStream(mPath)) {
+                tShrunk = !skipFully_(tStream, mOffset);
+                rAdded = tShrunk ? 0 : read_(tStream, BUFFER_SIZE, aFlush);
+            }
+            if (tShrunk) {reset_(); return update_(aFlush);}
+        } else {
+            try (FileChannel tChannel = FileChannel.open(mPath, StandardOpenOption.READ)) {
+                final long tSize = tChannel.size();
+                if (tSize < mOffset) reset_();
+                tChannel.position(mOffset);
+                rAdded = read_(Channels.newInputStream(tChannel), (int)Math.min(BUFFER_SIZE, Math.max(tSize-mOffset, 1)), aFlush);
+            }
+        }
+        trimTail_();
+        return rAdded;
+    }
+    private static boolean skipFully_(InputStream aStream, long aSize) throws IOException {
+        while (aSize > 0) {
+            long tSkipped = aStream.skip(aSize);
+            if (tSkipped <= 0) {
+                if (aStream.read() < 0) return false;
+                tSkipped = 1;
+            }
+            aSize -= tSkipped;
+        }
+        return true;
+    }
+    /** 从当前位置读取所有完整的行，不完整的最后一行只有在 aFlush 时才会读取，否则会在之后的更新中重新读取 */
+    private int read_(InputStream aStream, int aBufferSize, boolean aFlush) throws IOException {
+        if (mState == STATE_STOP) return 0;
+        int rAdded = 0;
+        byte[] tBuf = new byte[aBufferSize];
+        int tLen = 0;
+        while (mState != STATE_STOP) {
+            // 单行超过缓存大小则扩大缓存
+            if (tLen == tBuf.length) tBuf = Arrays.copyOf(tBuf, tBuf.length*2);
+            int tRead = aStream.read(tBuf, tLen, tBuf.length-tLen);
+            if (tRead < 0) break;
+            tLen += tRead;
+            // 只处理完整的行
+            int tEnd = tLen;
+            while (tEnd > 0 && tBuf[tEnd-1] != '\n') --tEnd;
+            if (tEnd == 0) continue;
+            rAdded += processLines_(tBuf, tEnd, false);
+            mOffset += tEnd;
+            System.arraycopy(tBuf, tEnd, tBuf, 0, tLen-tEnd);
+            tLen -= tEnd;
+        }
+        if (aFlush && tLen > 0 && mState != STATE_STOP) {
+            rAdded += processLines_(tBuf, tLen, true);
+            mOffset += tLen;
+        }
+        return rAdded;
+    }
+    private int processLines_(byte[] aBuf, int aEnd, boolean aLastLine) {
+        if (mChars.length < aEnd) mChars = new char[Math.max(aEnd, mChars.length*2)];
+        for (int i = 0; i < aEnd; ++i) mChars[i] = (char)(aBuf[i] & 0xFF);
+        int rAdded = 0;
+        int tLineStart = 0;
+        for (int i = 0; i < aEnd && mState != STATE_STOP; ++i) {
+            if (mChars[i] != '\n') continue;
+            int tLineEnd = (i > tLineStart && mChars[i-1] == '\r') ? i-1 : i;
+            rAdded += processLine_(tLineStart, tLineEnd);
+            tLineStart = i+1;
+        }
+        if (aLastLine && tLineStart < aEnd && mState != STATE_STOP) {
+            int tLineEnd = mChars[aEnd-1] == '\r' ? aEnd-1 : aEnd;
+            rAdded += processLine_(tLineStart, tLineEnd);
+        }
+        return rAdded;
+    }
+    
+    private void reset_() {
+        mOffset = 0;
+        mState = STATE_SEEK_MEMORY;
+        mRowCount = 0;
+        mHeads = null;
+        mOutHeads = null;
+        mColIdx = null;
+        mData = null;
+    }
+    private void trimTail_() {
+        if (mTail < 0 || mData == null) return;
+        for (DoubleList tCol : mData) {
+            int tSize = tCol.size();
+            if (tSize <= mTail) continue;
+            double[] tData = tCol.internalData();
+            System.arraycopy(tData, tSize-mTail, tData, 0, mTail);
+            tCol.setInternalDataSize(mTail);
+        }
+    }
+    
+    private int processLine_(int aFrom, int aTo) {
+        switch (mState) {
+        case STATE_SEEK_MEMORY: {
+            if (new String(mChars, aFrom, aTo-aFrom).contains("Per MPI rank memory allocation")) mState = STATE_SEEK_STEP;
+            return 0;
+        }
+        case STATE_SEEK_STEP: {
+            String tLine = new String(mChars, aFrom, aTo-aFrom);
+            if (!IO.Text.containsIgnoreCase(tLine, "Step")) return 0;
+            initHeads_(IO.Text.splitBlank(tLine));
+            return 0;
+        }
+        case STATE_DATA: {
+            int tFirst = CharScanner.skipWhiteSpace(mChars, aFrom, aTo);
+            // 非数字开头的行需要判断是否是结束，其余的行和 Thermo.read 一致都读取为 NaN
+            if (tFirst >= 0 && tFirst < aTo && !isNumberStart_(mChars[tFirst])) {
+                if (IO.Text.containsIgnoreCase(new String(mChars, aFrom, aTo-aFrom), "Loop time of")) {
+                    mState = STATE_SEEK_MEMORY;
+                    return 0;
+                }
+            }
+            long tRow = mRowCount;
+            ++mRowCount;
+            if (tRow % mStride != 0) return 0;
+            parseRow_(aFrom, aTo);
+            return 1;
+        }
+        default: return 0;
+        }
+    }
+    private static boolean isNumberStart_(char aChar) {
+        return (aChar>='0' && aChar<='9') || aChar=='-' || aChar=='+' || aChar=='.';
+    }
+    private void initHeads_(String[] aHeads) {
+        if (mHeads != null) {
+            // 和 Thermo.read 一致，如果不匹配则终止读取
+            if (aHeads.length < mHeads.length) {mState = STATE_STOP; return;}
+            for (int i = 0; i < mHeads.length; ++i) if (!mHeads[i].equals(aHeads[i])) {mState = STATE_STOP; return;}
+            mState = STATE_DATA;
+            return;
+        }
+        mHeads = aHeads;
+        mColIdx = new int[aHeads.length];
+        if (mColumns == null) {
+            for (int i = 0; i < aHeads.length; ++i) mColIdx[i] = i;
+            mOutHeads = aHeads.clone();
+        } else {
+            Arrays.fill(mColIdx, -1);
+            for (int j = 0; j < mColumns.length; ++j) {
+                int tIdx = -1;
+                for (int i = 0; i < aHeads.length; ++i) if (aHeads[i].equals(mColumns[j])) {tIdx = i; break;}
+                if (tIdx < 0) throw new IllegalArgumentException("No column '"+mColumns[j]+"' in thermo heads: "+Arrays.toString(aHeads));
+                mColIdx[tIdx] = j;
+            }
+            mOutHeads = mColumns.clone();
+        }
+        mData = new DoubleList[mOutHeads.length];
+        for (int j = 0; j < mData.length; ++j) mData[j] = new DoubleList(64);
+        mState = STATE_DATA;
+    }
+    private void parseRow_(int aFrom, int aTo) {
+        assert mColIdx != null && mData != null;
+        final int tHeadNum = mColIdx.length;
+        int tToken = 0;
+        int i = aFrom;
+        while (tToken < tHeadNum) {
+            while (i < aTo && mChars[i] <= ' ') ++i;
+            if (i >= aTo) break;
+            int tStart = i;
+            while (i < aTo && mChars[i] > ' ') ++i;
+            int tCol = mColIdx[tToken];
+            if (tCol >= 0) {
+                mAnyErr[0] = false;
+                mData[tCol].add(CharScanner.parseDoubleFromTo(true, mAnyErr, mChars, tStart, i));
+            }
+            ++tToken;
+        }
+        // 不足的数据默认为 NaN
+        for (; tToken < tHeadNum; ++tToken) {
+            int tCol = mColIdx[tToken];
+            if (tCol >= 0) mData[tCol].add(Double.NaN);
+        }
+    }
+}
@@ -0,0 +1,664 @@
+package jse.mc;
+
+import jse.atom.*;
+import jse.atom.pot.EAM;
+import jse.code.CS;
+import jse.code.UT;
+import jse.code.collection.DoubleList;
+import jse.code.collection.IntList;
+import jse.code.random.IRandom;
+import jse.math.MathEX;
+import jse.math.matrix.IMatrix;
+import jse.parallel.ParforThreadPool;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * 并行的 Metropolis 蒙特卡洛模拟，支持原子位移（move），
+ * 交换两个原子的种类（swap，正则系综）以及翻转原子的种类（flip，配合化学势实现半巨正则系综）
+ * <p>
+ * 采用棋盘式（checkerboard）的区域分解实现并行：将模拟盒划分为若干大于势函数影响范围的子区域，
+ * 按照奇偶分为至多 8 组，同一组中的子区域之间互不影响，从而可以在
+ * {@link ParforThreadPool} 中同时进行各自的尝试；每轮（sweep）都会随机平移子区域的划分，
+ * 并且会拒绝移出所在子区域的位移，从而保证细致平衡
+ * <p>
+ * 例如进行合金的化学有序化模拟：
+ * <pre> {@code
+ * try (def mc = new MonteCarlo(data, new EAM('CuZr.eam.fs'), 800.0, 8)) {
+ *     mc.setMoveWeights(0.0, 1.0, 0.0)
+ *     mc.run(1000)
+ *     println(mc.report())
+ * }
+ * } </pre>
+ * 能量差会直接调用势函数的 {@link IPairPotential#calEnergyPart} 只计算受影响的原子，
+ * 并且会将涉及到的原子重新编号为局部的索引，使得势函数内部按原子数分配的缓存只和受影响的原子数相关；
+ * 对于 {@link EAM}（不包括 ADP）则会使用 {@link EAM.DensityCache} 增量更新每个原子的电子密度；
+ * 计算在各个线程中独立进行，不会修改势函数的线程数设置；
+ * 同一组子区域并行尝试时不会修改内部的 {@link AtomicParameterCalculator}，接受的位移会暂存在自身的数组中，
+ * 遍历近邻时会加上这些位移，并在这一组结束后串行地同步到 APC；
+ * 原子数据中的坐标以及种类只会在 {@link #run(int)} 结束时同步
+ *
+ * @author liqa
+ */
+public class MonteCarlo implements AutoCloseable {
+    /** 尝试的种类，分别为：原子位移，交换两个原子的种类，翻转原子的种类 */
+    public final static int MOVE = 0, SWAP = 1, FLIP = 2;
+    private final static String[] MOVE_NAMES = {"move", "swap", "flip"};
+    
+    private final ISettableAtomData mData;
+    private final IPairPotential mPotential;
+    private final AtomicParameterCalculator mAPC;
+    private final NeighborListGetter mNL;
+    private final IMatrix mPos;
+    private final IBox mBox;
+    private final IntUnaryOperator mTypeMap;
+    private final int mAtomNum, mTypeNum, mPotTypeNum;
+    private final double mRCut;
+    private final boolean mManybody;
+    /** 内部的原子种类，不使用 APC 中的种类从而保证并行安全 */
+    private final int[] mTypes;
+    
+    private final int mThreadNum;
+    private final ParforThreadPool mPool;
+    private final IRandom[] mRNGs;
+    /** 每个线程合并近邻列表使用的标记以及缓存 */
+    private final int[][] mStamps;
+    private final int[] mStampCounts;
+    private final IntList[] mAffected;
+    /** 每个线程计算能量时全局索引到局部索引的映射，以及对应的标记 */
+    private final int[][] mLocalStamps, mLocalIdx;
+    private final int[] mLocalStampCounts;
+    /** 每个线程计算能量时预先获取的近邻列表，依次为每个原子近邻的起始位置，近邻的相对坐标以及索引 */
+    private final IntList[] mNLStarts, mNLIndices;
+    private final DoubleList[] mNLDxyzs;
+    /** 每个线程在一组子区域的尝试中遍历近邻的方式 */
+    private final PhaseFinder[] mFinders;
+    /** 当前这一组子区域中已经接受但还没有同步到 APC 的位移，相对 APC 中的坐标并且没有经过周期边界的包裹 */
+    private final double[] mDisps;
+    private final boolean[] mMoved;
+    /** 对于 EAM 势，每个线程共享电子密度的增量计算器，否则为 {@code null} */
+    private final EAM.DensityCache @Nullable[] mDensityCaches;
+    /** 每个线程的统计 {@code [attempt, accept]*3}，以及能量变化 */
+    private final long[][] mStatPar;
+    private final double[] mEnergyPar;
+    private final long[] mAttempts = new long[3], mAccepts = new long[3];
+    
+    private double mTemperature, mBeta;
+    private double mMaxDisp = 0.1;
+    private double mWeightMove = 0.0, mWeightSwap = 1.0, mWeightFlip = 0.0;
+    private double @Nullable[] mMu = null;
+    private double mEnergy;
+    private long mSweep = 0;
+    private boolean mDead = false;
+    
+    /** 子区域的划分 */
+    private final int[] mDomainNum = {1, 1, 1};
+    private int[] mDomainStart = new int[0];
+    private final int[] mDomainAtoms, mAtomDomain;
+    private final double[] mDomainOffset = new double[3];
+    
+    /**
+     * 创建一个并行的蒙特卡洛模拟
+     * @param aData 需要模拟的原子数据，模拟结果会写回此数据
+     * @param aPotential 计算能量使用的势函数，要求 {@link IPairPotential#rcutMax()} 大于 0
+     * @param aTemperature 模拟的温度，单位为 K
+     * @param aThreadNum 使用的线程数
+     * @param aSeed 随机数种子，会通过 {@link UT.Par#splitRandoms(int, long)} 拆分给每个线程
+     * @throws Exception 计算初始能量时势函数抛出的错误
+     */
+    public MonteCarlo(ISettableAtomData aData, IPairPotential aPotential, double aTemperature, @Range(from=1, to=Integer.MAX_VALUE) int aThreadNum, long aSeed) throws Exception {
+        if (aPotential.isClosed()) throw new IllegalArgumentException("This Potential is dead");
+        if (!(aPotential.rcutMax() > 0.0)) throw new IllegalArgumentException("MonteCarlo requires a potential with positive rcutMax()");
+        if (aThreadNum < 1) throw new IllegalArgumentException("Thread number MUST be positive: "+aThreadNum);
+        mData = aData;
+        mPotential = aPotential;
+        mAtomNum = aData.natoms();
+        mTypeNum = aData.ntypes();
+        mPotTypeNum = aPotential.ntypes();
+        mRCut = aPotential.rcutMax();
+        mManybody = aPotential.manybody();
+        mTypeMap = aPotential.hasSymbol() ? aPotential.typeMap(aData) : type->type;
+        mBox = aData.box().copy();
+        mAPC = AtomicParameterCalculator.of(aData, 1);
+        mNL = mAPC.nl_();
+        mPos = mAPC.positions();
+        mTypes = new int[mAtomNum];
+        for (int i = 0; i < mAtomNum; ++i) mTypes[i] = aData.atom(i).type();
+        mEnergy = aPotential.calEnergy(mAPC, mTypeMap);
+        
+        mThreadNum = aThreadNum;
+        mPool = new ParforThreadPool(aThreadNum);
+        mRNGs = UT.Par.splitRandoms(aThreadNum, aSeed);
+        mStamps = new int[aThreadNum][mAtomNum];
+        mStampCounts = new int[aThreadNum];
+        mAffected = new IntList[aThreadNum];
+        for (int i = 0; i < aThreadNum; ++i) mAffected[i] = new IntList();
+        mLocalStamps = new int[aThreadNum][mAtomNum];
+        mLocalIdx = new int[aThreadNum][mAtomNum];
+        mLocalStampCounts = new int[aThreadNum];
+        mNLStarts = new IntList[aThreadNum];
+        mNLIndices = new IntList[aThreadNum];
+        mNLDxyzs = new DoubleList[aThreadNum];
+        for (int i = 0; i < aThreadNum; ++i) {
+            mNLStarts[i] = new IntList();
+            mNLIndices[i] = new IntList();
+            mNLDxyzs[i] = new DoubleList();
+        }
+        mDisps = new double[3*mAtomNum];
+        mMoved = new boolean[mAtomNum];
+        mFinders = new PhaseFinder[aThreadNum];
+        for (int i = 0; i < aThreadNum; ++i) mFinders[i] = new PhaseFinder();
+        if ((aPotential instanceof EAM) && !((EAM)aPotential).isADP()) {
+            EAM.DensityCache tCache = ((EAM)aPotential).densityCache(mAPC, mTypeMap);
+            mDensityCaches = new EAM.DensityCache[aThreadNum];
+            for (int i = 0; i < aThreadNum; ++i) mDensityCaches[i] = tCache.share(mFinders[i]);
+        } else {
+            mDensityCaches = null;
+        }
+        mStatPar = new long[aThreadNum][6];
+        mEnergyPar = new double[aThreadNum];
+        mDomainAtoms = new int[mAtomNum];
+        mAtomDomain = new int[mAtomNum];
+        setTemperature(aTemperature);
+    }
+    public MonteCarlo(ISettableAtomData aData, IPairPotential aPotential, double aTemperature, @Range(from=1, to=Integer.MAX_VALUE) int aThreadNum) throws Exception {
+        this(aData, aPotential, aTemperature, aThreadNum, CS.RANDOM.nextLong());
+    }
+    public MonteCarlo(ISettableAtomData aData, IPairPotential aPotential, double aTemperature) throws Exception {
+        this(aData, aPotential, aTemperature, 1);
+    }
+    
+    /**
+     * 设置模拟的温度
+     * @param aTemperature 模拟的温度，单位为 K
+     * @return 自身方便链式调用
+     */
+    public MonteCarlo setTemperature(double aTemperature) {
+        if (!(aTemperature > 0.0)) throw new IllegalArgumentException("Temperature MUST be positive: "+aTemperature);
+        mTemperature = aTemperature;
+        mBeta = 1.0 / (CS.K_B*aTemperature);
+        return this;
+    }
+    /**
+     * 设置每种尝试的相对权重，会自动归一化
+     * @param aMove 原子位移的权重
+     * @param aSwap 交换两个原子种类的权重
+     * @param aFlip 翻转原子种类的权重
+     * @return 自身方便链式调用
+     */
+    public MonteCarlo setMoveWeights(double aMove, double aSwap, double aFlip) {
+        if (aMove < 0.0 || aSwap < 0.0 || aFlip < 0.0) throw new IllegalArgumentException("Move weights MUST be non-negative");
+        double tSum = aMove + aSwap + aFlip;
+        if (!(tSum > 0.0)) throw new IllegalArgumentException("Sum of move weights MUST be positive");
+        if (aFlip > 0.0 && mTypeNum < 2) throw new IllegalArgumentException("Flip move requires at least 2 atom types");
+        mWeightMove = aMove/tSum; mWeightSwap = aSwap/tSum; mWeightFlip = aFlip/tSum;
+        return this;
+    }
+    /**
+     * 设置原子位移的最大距离，每个方向会在 {@code [-aMaxDisp, aMaxDisp)} 中均匀选取
+     * @param aMaxDisp 最大位移距离，单位为 Å，默认为 0.1
+     * @return 自身方便链式调用
+     */
+    public MonteCarlo setMaxDisplacement(double aMaxDisp) {
+        if (!(aMaxDisp > 0.0)) throw new IllegalArgumentException("Max displacement MUST be positive: "+aMaxDisp);
+        mMaxDisp = aMaxDisp; return this;
+    }
+    /**
+     * 设置每个种类的化学势，用于翻转种类时的半巨正则系综，此时接受率使用
+     * {@code dE - (mu[new] - mu[old])}
+     * @param aMu 每个种类的化学势，单位为 eV，{@code null} 表示不考虑化学势
+     * @return 自身方便链式调用
+     */
+    public MonteCarlo setChemicalPotentials(double @Nullable... aMu) {
+        if (aMu != null && aMu.length < mTypeNum) throw new IllegalArgumentException("Chemical potential number ("+aMu.length+") MUST >= ntypes ("+mTypeNum+")");
+        mMu = aMu==null ? null : aMu.clone();
+        return this;
+    }
+    
+    public double temperature() {return mTemperature;}
+    public int threadNumber() {return mThreadNum;}
+    /** @return 已经运行的轮数 */
+    public long sweep() {return mSweep;}
+    /** @return 当前体系的总能量，通过初始能量累加每次接受的能量差得到，单位为 eV */
+    public double energy() {return mEnergy;}
+    /** @return 当前的子区域划分数目，由于需要保证奇偶分组，每个方向的数目为 1 或者偶数 */
+    public int[] domainNumber() {return mDomainNum.clone();}
+    /** @return 指定种类尝试的次数 */
+    public long attempts(int aMoveType) {return mAttempts[aMoveType];}
+    /** @return 指定种类接受的次数 */
+    public long accepts(int aMoveType) {return mAccepts[aMoveType];}
+    /** @return 指定种类的接受率 */
+    public double acceptanceRatio(int aMoveType) {
+        return mAttempts[aMoveType]==0 ? Double.NaN : mAccepts[aMoveType] / (double)mAttempts[aMoveType];
+    }
+    /** 清空所有的接受率统计 */
+    public MonteCarlo resetStatistics() {
+        for (int i = 0; i < 3; ++i) {mAttempts[i] = 0; mAccepts[i] = 0;}
+        return this;
+    }
+    /** @return 接受率统计的简单报告 */
+    public String report() {
+        StringBuilder rReport = new StringBuilder();
+        rReport.append("MonteCarlo: ").append(mSweep).append(" sweeps, ")
+               .append(mDomainNum[0]).append('x').append(mDomainNum[1]).append('x').append(mDomainNum[2]).append(" domains, ")
+               .append("energy = ").append(mEnergy).append(" eV");
+        for (int i = 0; i < 3; ++i) {
+            if (mAttempts[i] == 0) continue;
+            rReport.append('\n').append(MOVE_NAMES[i]).append(": ").append(mAccepts[i]).append('/').append(mAttempts[i])
+                   .append(String.format(" (%.2f%%)", acceptanceRatio(i)*100.0));
+        }
+        return rReport.toString();
+    }
+    
+    /**
+     * 运行指定轮数的模拟，每轮平均对每个原子进行一次尝试
+     * @param aSweeps 需要运行的轮数
+     * @return 自身方便链式调用
+     * @throws Exception 势函数计算中的错误
+     */
+    public MonteCarlo run(@Range(from=0, to=Integer.MAX_VALUE) int aSweeps) throws Exception {
+        if (mDead) throw new IllegalStateException("This MonteCarlo is dead");
+        if (mPotential.isClosed()) throw new IllegalStateException("This Potential is dead");
+        initDomains_();
+        // 预先构建需要的 LinkedCell，避免在并行中构建
+        mNL.forEachNeighbor(0, mRCut, false, true, (dx, dy, dz, idx) -> {});
+        for (int tSweep = 0; tSweep < aSweeps; ++tSweep) {
+            sweep_();
+            ++mSweep;
+        }
+        syncData_();
+        return this;
+    }
+    
+    private void syncData_() {
+        for (int i = 0; i < mAtomNum; ++i) {
+            ISettableAtom tAtom = mData.atom(i);
+            tAtom.setXYZ(mPos.get(i, 0), mPos.get(i, 1), mPos.get(i, 2));
+            if (tAtom.type() != mTypes[i]) tAtom.setType(mTypes[i]);
+        }
+    }
+    
+    /**
+     * 根据影响范围确定子区域的数目；不同线程中修改的原子和读取的原子需要保证不重合，
+     * 对于多体势读取范围为两倍截断半径；位移不能移出所在的子区域，并且尝试中不会修改 APC，因此不需要额外的范围
+     */
+    private void initDomains_() {
+        final double tMinSize = (mManybody ? 2.0 : 1.0) * mRCut;
+        IXYZ tA = mBox.a(), tB = mBox.b(), tC = mBox.c();
+        double tVolume = mBox.volume();
+        double[] tHeights = {
+            tVolume / crossNorm_(tB, tC),
+            tVolume / crossNorm_(tC, tA),
+            tVolume / crossNorm_(tA, tB),
+        };
+        int tDomainNum = 1;
+        for (int d = 0; d < 3; ++d) {
+            int tNum = MathEX.Code.floor2int(tHeights[d] / tMinSize);
+            // 保证奇偶分组后周期边界两侧的子区域不会同时进行
+            if (tNum > 1 && (tNum&1)==1) --tNum;
+            mDomainNum[d] = Math.max(tNum, 1);
+            tDomainNum *= mDomainNum[d];
+        }
+        if (mDomainStart.length != tDomainNum+1) mDomainStart = new int[tDomainNum+1];
+    }
+    private static double crossNorm_(IXYZ aL, IXYZ aR) {
+        double tX = aL.y()*aR.z() - aL.z()*aR.y();
+        double tY = aL.z()*aR.x() - aL.x()*aR.z();
+        double tZ = aL.x()*aR.y() - aL.y()*aR.x();
+        return Math.sqrt(tX*tX + tY*tY + tZ*tZ);
+    }
+    private int domainOf_(double aX, double aY, double aZ, XYZ rBuf) {
+        rBuf.setXYZ(aX, aY, aZ);
+        mBox.toDirect(rBuf);
+        int tI = domainIdx_(rBuf.mX, 0), tJ = domainIdx_(rBuf.mY, 1), tK = domainIdx_(rBuf.mZ, 2);
+        return (tI*mDomainNum[1] + tJ)*mDomainNum[2] + tK;
+    }
+    private int domainIdx_(double aDirect, int aDim) {
+        double tPos = aDirect + mDomainOffset[aDim];
+        tPos -= Math.floor(tPos);
+        int tIdx = (int)(tPos * mDomainNum[aDim]);
+        return Math.min(tIdx, mDomainNum[aDim]-1);
+    }
+    
+    private void sweep_() throws Exception {
+        // 随机平移子区域的划分，并重新统计每个子区域的原子
+        final IRandom tRNG = mRNGs[0];
+        for (int d = 0; d < 3; ++d) mDomainOffset[d] = tRNG.nextDouble();
+        final int tDomainNum = mDomainStart.length-1;
+        Arrays.fill(mDomainStart, 0);
+        XYZ tBuf = new XYZ();
+        for (int i = 0; i < mAtomNum; ++i) {
+            int tDomain = domainOf_(mPos.get(i, 0), mPos.get(i, 1), mPos.get(i, 2), tBuf);
+            mAtomDomain[i] = tDomain;
+            ++mDomainStart[tDomain+1];
+        }
+        for (int k = 0; k < tDomainNum; ++k) mDomainStart[k+1] += mDomainStart[k];
+        int[] tFill = Arrays.copyOf(mDomainStart, tDomainNum);
+        for (int i = 0; i < mAtomNum; ++i) mDomainAtoms[tFill[mAtomDomain[i]]++] = i;
+        // 按照随机的顺序遍历 8 组子区域
+        int[] tColors = {0, 1, 2, 3, 4, 5, 6, 7};
+        for (int c = 7; c > 0; --c) {
+            int tSwap = tRNG.nextInt(c+1);
+            int tTmp = tColors[c]; tColors[c] = tColors[tSwap]; tColors[tSwap] = tTmp;
+        }
+        final IntList tDomains = new IntList();
+        for (int tColor : tColors) {
+            tDomains.clear();
+            for (int tI = 0; tI < mDomainNum[0]; ++tI) for (int tJ = 0; tJ < mDomainNum[1]; ++tJ) for (int tK = 0; tK < mDomainNum[2]; ++tK) {
+                if (((tI&1)<<2 | (tJ&1)<<1 | (tK&1)) != tColor) continue;
+                tDomains.add((tI*mDomainNum[1] + tJ)*mDomainNum[2] + tK);
+            }
+            if (tDomains.isEmpty()) continue;
+            mPool.parforWithException(tDomains.size(), null, null, (k, threadID) -> runDomain_(tDomains.get(k), threadID));
+            syncMoves_();
+        }
+        // 合并统计
+        for (int t = 0; t < mThreadNum; ++t) {
+            long[] tStat = mStatPar[t];
+            for (int i = 0; i < 3; ++i) {
+                mAttempts[i] += tStat[2*i];
+                mAccepts[i] += tStat[2*i+1];
+            }
+            Arrays.fill(tStat, 0);
+            mEnergy += mEnergyPar[t];
+            mEnergyPar[t] = 0.0;
+        }
+    }
+    
+    /** 将这一组子区域中接受的位移串行地同步到 APC，并清空所有线程的位移记录 */
+    private void syncMoves_() {
+        for (PhaseFinder tFinder : mFinders) {
+            final IntList tMoved = tFinder.mMovedAtoms;
+            final int tSize = tMoved.size();
+            for (int k = 0; k < tSize; ++k) {
+                int i = tMoved.get(k);
+                mAPC.setAtomXYZ(i, mPos.get(i, 0)+mDisps[3*i], mPos.get(i, 1)+mDisps[3*i+1], mPos.get(i, 2)+mDisps[3*i+2]);
+                mDisps[3*i] = 0.0; mDisps[3*i+1] = 0.0; mDisps[3*i+2] = 0.0;
+                mMoved[i] = false;
+            }
+            tMoved.clear();
+            tFinder.mPad = 0.0;
+        }
+    }
+    
+    private void runDomain_(int aDomain, int aThreadID) throws Exception {
+        final int tStart = mDomainStart[aDomain], tEnd = mDomainStart[aDomain+1];
+        final int tSize = tEnd - tStart;
+        if (tSize == 0) return;
+        mFinders[aThreadID].mDomain = aDomain;
+        final IRandom tRNG = mRNGs[aThreadID];
+        final XYZ tBuf = new XYZ();
+        for (int t = 0; t < tSize; ++t) {
+            int i = mDomainAtoms[tStart + tRNG.nextInt(tSize)];
+            double tRand = tRNG.nextDouble();
+            if (tRand < mWeightMove) {
+                tryMove_(i, aDomain, aThreadID, tRNG, tBuf);
+            } else
+            if (tRand < mWeightMove+mWeightSwap) {
+                int j = mDomainAtoms[tStart + tRNG.nextInt(tSize)];
+                trySwap_(i, j, aThreadID, tRNG);
+            } else {
+                tryFlip_(i, aThreadID, tRNG);
+            }
+        }
+    }
+    private boolean accept_(double aDE, IRandom aRNG) {
+        return aDE <= 0.0 || aRNG.nextDouble() < Math.exp(-mBeta*aDE);
+    }
+    
+    private void tryMove_(int i, int aDomain, int aThreadID, IRandom aRNG, XYZ rBuf) throws Exception {
+        final PhaseFinder tFinder = mFinders[aThreadID];
+        final double oDx = mDisps[3*i], oDy = mDisps[3*i+1], oDz = mDisps[3*i+2];
+        final double tDx = (2.0*aRNG.nextDouble()-1.0)*mMaxDisp;
+        final double tDy = (2.0*aRNG.nextDouble()-1.0)*mMaxDisp;
+        final double tDz = (2.0*aRNG.nextDouble()-1.0)*mMaxDisp;
+        ++mStatPar[aThreadID][2*MOVE];
+        // 不允许移出所在的子区域
+        final double nDx = oDx+tDx, nDy = oDy+tDy, nDz = oDz+tDz;
+        if (domainOf_(mPos.get(i, 0)+nDx, mPos.get(i, 1)+nDy, mPos.get(i, 2)+nDz, rBuf) != aDomain) return;
+        if (mDensityCaches != null) {
+            EAM.DensityCache tCache = mDensityCaches[aThreadID];
+            double tDE = tCache.diffMove(i, tDx, tDy, tDz);
+            if (accept_(tDE, aRNG)) {
+                tCache.accept();
+                tFinder.displace_(i, nDx, nDy, nDz);
+                ++mStatPar[aThreadID][2*MOVE+1];
+                mEnergyPar[aThreadID] += tDE;
+            } else {
+                tCache.reject();
+            }
+            return;
+        }
+        IntList tAffected = mAffected[aThreadID];
+        tAffected.clear();
+        if (mManybody) {
+            int tStamp = nextStamp_(mStamps, mStampCounts, aThreadID);
+            int[] tMark = mStamps[aThreadID];
+            mark_(i, tStamp, tMark, tAffected);
+            tFinder.forEachNeighbor(i, 0.0, 0.0, 0.0, mRCut, (dx, dy, dz, idx) -> mark_(idx, tStamp, tMark, tAffected));
+            tFinder.forEachNeighbor(i, tDx, tDy, tDz, mRCut, (dx, dy, dz, idx) -> mark_(idx, tStamp, tMark, tAffected));
+        } else {
+            tAffected.add(i);
+        }
+        double oEng = energyAt_(tAffected, aThreadID);
+        tFinder.displace_(i, nDx, nDy, nDz);
+        double nEng = energyAt_(tAffected, aThreadID);
+        double tDE = mManybody ? (nEng-oEng) : (nEng-oEng)*2.0;
+        if (accept_(tDE, aRNG)) {
+            ++mStatPar[aThreadID][2*MOVE+1];
+            mEnergyPar[aThreadID] += tDE;
+        } else {
+            tFinder.displace_(i, oDx, oDy, oDz);
+        }
+    }
+    private void trySwap_(int i, int j, int aThreadID, IRandom aRNG) throws Exception {
+        final int tTypeI = mTypes[i], tTypeJ = mTypes[j];
+        // 相同种类的交换没有意义，不计入统计
+        if (tTypeI == tTypeJ) return;
+        ++mStatPar[aThreadID][2*SWAP];
+        if (mDensityCaches != null) {
+            EAM.DensityCache tCache = mDensityCaches[aThreadID];
+            double tDE = tCache.diffSwap(i, j);
+            if (accept_(tDE, aRNG)) {
+                tCache.accept();
+                mTypes[i] = tTypeJ; mTypes[j] = tTypeI;
+                ++mStatPar[aThreadID][2*SWAP+1];
+                mEnergyPar[aThreadID] += tDE;
+            } else {
+                tCache.reject();
+            }
+            return;
+        }
+        IntList tAffected = mAffected[aThreadID];
+        tAffected.clear();
+        if (mManybody) {
+            int tStamp = nextStamp_(mStamps, mStampCounts, aThreadID);
+            int[] tMark = mStamps[aThreadID];
+            mark_(i, tStamp, tMark, tAffected);
+            mark_(j, tStamp, tMark, tAffected);
+            mFinders[aThreadID].forEachNeighbor(i, mRCut, (dx, dy, dz, idx) -> mark_(idx, tStamp, tMark, tAffected));
+            mFinders[aThreadID].forEachNeighbor(j, mRCut, (dx, dy, dz, idx) -> mark_(idx, tStamp, tMark, tAffected));
+        } else {
+            tAffected.add(i); tAffected.add(j);
+        }
+        double oEng = energyAt_(tAffected, aThreadID);
+        mTypes[i] = tTypeJ; mTypes[j] = tTypeI;
+        double nEng = energyAt_(tAffected, aThreadID);
+        double tDE = mManybody ? (nEng-oEng) : (nEng-oEng)*2.0;
+        if (accept_(tDE, aRNG)) {
+            ++mStatPar[aThreadID][2*SWAP+1];
+            mEnergyPar[aThreadID] += tDE;
+        } else {
+            mTypes[i] = tTypeI; mTypes[j] = tTypeJ;
+        }
+    }
+    private void tryFlip_(int i, int aThreadID, IRandom aRNG) throws Exception {
+        final int oType = mTypes[i];
+        int nType = aRNG.nextInt(mTypeNum-1) + 1;
+        if (nType >= oType) ++nType;
+        ++mStatPar[aThreadID][2*FLIP];
+        final double tDMu = mMu==null ? 0.0 : (mMu[nType-1] - mMu[oType-1]);
+        if (mDensityCaches != null) {
+            EAM.DensityCache tCache = mDensityCaches[aThreadID];
+            double tDE = tCache.diffFlip(i, nType);
+            if (accept_(tDE - tDMu, aRNG)) {
+                tCache.accept();
+                mTypes[i] = nType;
+                ++mStatPar[aThreadID][2*FLIP+1];
+                mEnergyPar[aThreadID] += tDE;
+            } else {
+                tCache.reject();
+            }
+            return;
+        }
+        IntList tAffected = mAffected[aThreadID];
+        tAffected.clear();
+        if (mManybody) {
+            int tStamp = nextStamp_(mStamps, mStampCounts, aThreadID);
+            int[] tMark = mStamps[aThreadID];
+            mark_(i, tStamp, tMark, tAffected);
+            mFinders[aThreadID].forEachNeighbor(i, mRCut, (dx, dy, dz, idx) -> mark_(idx, tStamp, tMark, tAffected));
+        } else {
+            tAffected.add(i);
+        }
+        double oEng = energyAt_(tAffected, aThreadID);
+        mTypes[i] = nType;
+        double nEng = energyAt_(tAffected, aThreadID);
+        double tDE = mManybody ? (nEng-oEng) : (nEng-oEng)*2.0;
+        if (accept_(tDE - tDMu, aRNG)) {
+            ++mStatPar[aThreadID][2*FLIP+1];
+            mEnergyPar[aThreadID] += tDE;
+        } else {
+            mTypes[i] = oType;
+        }
+    }
+    
+    private static int nextStamp_(int[][] rStamps, int[] rStampCounts, int aThreadID) {
+        int tStamp = ++rStampCounts[aThreadID];
+        if (tStamp == Integer.MAX_VALUE) {
+            Arrays.fill(rStamps[aThreadID], 0);
+            rStampCounts[aThreadID] = tStamp = 1;
+        }
+        return tStamp;
+    }
+    private static void mark_(int aIdx, int aStamp, int[] rMark, IntList rAffected) {
+        if (rMark[aIdx] == aStamp) return;
+        rMark[aIdx] = aStamp;
+        rAffected.add(aIdx);
+    }
+    private int potType_(int aIdx) {
+        return mPotTypeNum<=0 ? 0 : mTypeMap.applyAsInt(mTypes[aIdx]);
+    }
+    private static void local_(int aIdx, int aStamp, int[] rMark, int[] rLocal, int[] rLocalNum) {
+        if (rMark[aIdx] == aStamp) return;
+        rMark[aIdx] = aStamp;
+        rLocal[aIdx] = rLocalNum[0]++;
+    }
+    /**
+     * 在当前线程中计算指定原子的能量，和 {@link IPairPotential#calEnergyAt} 一致，但不会使用 APC 的线程池；
+     * 会先获取这些原子的近邻列表，并将这些原子以及其近邻重新编号为局部的索引，
+     * 避免势函数每次都分配和清空总原子数长度的缓存，同时势函数多次遍历近邻时也不需要重新搜索近邻
+     */
+    private double energyAt_(final IntList aIndices, int aThreadID) throws Exception {
+        final int tStamp = nextStamp_(mLocalStamps, mLocalStampCounts, aThreadID);
+        final int[] tMark = mLocalStamps[aThreadID], tLocal = mLocalIdx[aThreadID];
+        final int[] tLocalNum = {0};
+        final IntList tStarts = mNLStarts[aThreadID], tIndices = mNLIndices[aThreadID];
+        final DoubleList tDxyzs = mNLDxyzs[aThreadID];
+        final PhaseFinder tFinder = mFinders[aThreadID];
+        tStarts.clear(); tIndices.clear(); tDxyzs.clear();
+        final int tSize = aIndices.size();
+        for (int k = 0; k < tSize; ++k) local_(aIndices.get(k), tStamp, tMark, tLocal, tLocalNum);
+        for (int k = 0; k < tSize; ++k) {
+            tStarts.add(tIndices.size());
+            tFinder.forEachNeighbor(aIndices.get(k), mRCut, (dx, dy, dz, idx) -> {
+                local_(idx, tStamp, tMark, tLocal, tLocalNum);
+                tDxyzs.add(dx); tDxyzs.add(dy); tDxyzs.add(dz);
+                tIndices.add(idx);
+            });
+        }
+        tStarts.add(tIndices.size());
+        final double[] rEng = {0.0};
+        mPotential.calEnergyPart(tLocalNum[0], (initDo, finalDo, neighborListDo) -> {
+            if (initDo != null) initDo.run(0);
+            for (int k = 0; k < tSize; ++k) {
+                final int cIdx = aIndices.get(k);
+                final int tStart = tStarts.get(k), tEnd = tStarts.get(k+1);
+                neighborListDo.run(0, tLocal[cIdx], potType_(cIdx), (rmax, dxyzTypeDo) -> {
+                    if (rmax > mRCut) throw new IllegalStateException("rmax ("+rmax+") MUST <= rcutMax() ("+mRCut+")");
+                    // 预先获取的近邻已经按照 rcutMax 检查过距离，这里和近邻列表一致使用严格小于
+                    final boolean tCheck = rmax < mRCut;
+                    final double tRMax2 = rmax*rmax;
+                    final double[] tDxyz = tDxyzs.internalData();
+                    for (int n = tStart; n < tEnd; ++n) {
+                        double dx = tDxyz[3*n], dy = tDxyz[3*n+1], dz = tDxyz[3*n+2];
+                        if (tCheck && dx*dx + dy*dy + dz*dz >= tRMax2) continue;
+                        int idx = tIndices.get(n);
+                        dxyzTypeDo.run(dx, dy, dz, potType_(idx), tLocal[idx]);
+                    }
+                });
+            }
+            if (finalDo != null) finalDo.run(0);
+        }, (threadID, cIdx, eng) -> rEng[0] += eng);
+        return rEng[0];
+    }
+    
+    /**
+     * 每个线程在一组子区域的尝试中遍历近邻的方式；这时 APC 中的坐标以及 cell 依旧是这一组开始时的状态，
+     * 因此会加上本线程暂存的位移 {@link #mDisps}，并且增加最大位移长度的搜索半径从而不会遗漏近邻；
+     * 其余子区域中的原子要么没有移动，要么距离超过读取范围，因此直接使用 APC 中的坐标
+     */
+    private final class PhaseFinder implements EAM.INeighborFinder {
+        private int mDomain = -1;
+        /** 本线程暂存的所有位移的最大长度 */
+        private double mPad = 0.0;
+        private final IntList mMovedAtoms = new IntList();
+        private final XYZ mBuf = new XYZ();
+        
+        void displace_(int aIdx, double aDx, double aDy, double aDz) {
+            mDisps[3*aIdx] = aDx; mDisps[3*aIdx+1] = aDy; mDisps[3*aIdx+2] = aDz;
+            mPad = Math.max(mPad, Math.sqrt(aDx*aDx + aDy*aDy + aDz*aDz));
+            if (!mMoved[aIdx]) {
+                mMoved[aIdx] = true;
+                mMovedAtoms.add(aIdx);
+            }
+        }
+        private void correct_(double aDx, double aDy, double aDz, int aIdx, double aRMax2, NeighborListGetter.IDxyzIdxDo aDxyzIdxDo) {
+            if (mAtomDomain[aIdx] == mDomain) {
+                aDx += mDisps[3*aIdx]; aDy += mDisps[3*aIdx+1]; aDz += mDisps[3*aIdx+2];
+            }
+            if (aDx*aDx + aDy*aDy + aDz*aDz >= aRMax2) return;
+            aDxyzIdxDo.run(aDx, aDy, aDz, aIdx);
+        }
+        @Override public void forEachNeighbor(int aIdx, double aRMax, NeighborListGetter.IDxyzIdxDo aDxyzIdxDo) {
+            if (mPad == 0.0) {mNL.forEachNeighbor(aIdx, aRMax, false, true, aDxyzIdxDo); return;}
+            final boolean tOwn = mAtomDomain[aIdx] == mDomain;
+            final double cDx = tOwn ? mDisps[3*aIdx] : 0.0, cDy = tOwn ? mDisps[3*aIdx+1] : 0.0, cDz = tOwn ? mDisps[3*aIdx+2] : 0.0;
+            final double tRMax2 = aRMax*aRMax;
+            // 中心和近邻都可能有位移，自身镜像的相对位置则不变
+            mNL.forEachNeighbor(aIdx, aRMax+mPad+mPad, false, true, (dx, dy, dz, idx) -> correct_(dx-cDx, dy-cDy, dz-cDz, idx, tRMax2, aDxyzIdxDo));
+        }
+        @Override public void forEachNeighbor(int aIdx, double aDx, double aDy, double aDz, double aRMax, NeighborListGetter.IDxyzIdxDo aDxyzIdxDo) {
+            if (mAtomDomain[aIdx] == mDomain) {
+                aDx += mDisps[3*aIdx]; aDy += mDisps[3*aIdx+1]; aDz += mDisps[3*aIdx+2];
+            }
+            mBuf.setXYZ(mPos.get(aIdx, 0)+aDx, mPos.get(aIdx, 1)+aDy, mPos.get(aIdx, 2)+aDz);
+            mBox.wrapPBC(mBuf);
+            if (mPad == 0.0) {mNL.forEachNeighbor(mBuf.mX, mBuf.mY, mBuf.mZ, aRMax, true, aDxyzIdxDo); return;}
+            final double tRMax2 = aRMax*aRMax;
+            // 中心已经是实际的位置，只有近邻可能有位移
+            mNL.forEachNeighbor(mBuf.mX, mBuf.mY, mBuf.mZ, aRMax+mPad, true, (dx, dy, dz, idx) -> correct_(dx, dy, dz, idx, tRMax2, aDxyzIdxDo));
+        }
+    }
+    
+    /** 关闭内部的线程池以及 {@link AtomicParameterCalculator}，不会关闭势函数 */
+    @Override public void close() {
+        if (mDead) return;
+        mDead = true;
+        mPool.shutdown();
+        mAPC.close();
+    }
+}
@@ -0,0 +1,32 @@
+package jse.md;
+
+/**
+ * {@link MD} 使用的积分器通用接口，积分器直接操作 {@link MD} 内部的坐标以及速度数组，
+ * 从而避免每步的额外拷贝
+ *
+ * @see NVE NVE: velocity-Verlet 积分
+ * @see Langevin Langevin: Langevin 热浴
+ * @see NoseHoover NoseHoover: Nosé–Hoover 链热浴以及压浴
+ * @author liqa
+ */
+public interface IIntegrator {
+    /**
+     * 在第一次运行前初始化积分器，此时 {@link MD} 已经计算好了初始的力
+     * @param aMD 需要积分的模拟
+     */
+    default void init(MD aMD) {/**/}
+    /**
+     * 积分一个时间步长，需要在其中调用 {@link MD#computeForces_()} 更新力
+     * @param aMD 需要积分的模拟
+     * @throws Exception 计算力时可能抛出的错误
+     */
+    void step(MD aMD) throws Exception;
+    /** @return 每步是否需要计算位力，用于压浴，默认为 {@code false} */
+    default boolean requireVirial() {return false;}
+    /**
+     * 积分器引入的额外能量，用于计算守恒量 {@link MD#conservedEnergy()}
+     * @param aMD 需要积分的模拟
+     * @return 额外能量，单位为 eV
+     */
+    default double extraEnergy(MD aMD) {return 0.0;}
+}
@@ -0,0 +1,62 @@
+package jse.md;
+
+import jse.code.CS;
+import jse.code.random.IRandom;
+import jse.code.random.LocalRandom;
+
+/**
+ * Langevin 热浴的正则系综（NVT）积分器，采用 BAOAB 的分裂方式，
+ * 相比 lammps 的 {@code fix langevin + fix nve} 在较大的时间步长下依旧可以得到准确的构型分布，具体可参考：
+ * <a href="https://doi.org/10.1093/amrx/abs010">
+ * Rational Construction of Stochastic Numerical Methods for Molecular Sampling </a>
+ *
+ * @author liqa
+ */
+public class Langevin implements IIntegrator {
+    private final double mTemperature, mDamp;
+    private final IRandom mRNG;
+    /** 由于热浴和外界的能量交换，用于计算守恒量 */
+    private double mEnergyExchange = 0.0;
+    
+    /**
+     * 创建一个 Langevin 热浴
+     * @param aTemperature 目标温度，单位为 K
+     * @param aDamp 阻尼时间，单位为 ps，和 lammps 一致，一般取 100 倍的时间步长
+     * @param aRNG 使用的随机数生成器
+     */
+    public Langevin(double aTemperature, double aDamp, IRandom aRNG) {
+        if (!(aTemperature >= 0.0)) throw new IllegalArgumentException("Temperature MUST be non-negative: "+aTemperature);
+        if (!(aDamp > 0.0)) throw new IllegalArgumentException("Damp MUST be positive: "+aDamp);
+        mTemperature = aTemperature;
+        mDamp = aDamp;
+        mRNG = aRNG;
+    }
+    public Langevin(double aTemperature, double aDamp, long aSeed) {this(aTemperature, aDamp, new LocalRandom(aSeed));}
+    public Langevin(double aTemperature, double aDamp) {this(aTemperature, aDamp, CS.RANDOM);}
+    
+    public double temperature() {return mTemperature;}
+    public double damp() {return mDamp;}
+    
+    @Override public void step(MD aMD) throws Exception {
+        final double tDt = aMD.timestep();
+        aMD.kick_(0.5*tDt);
+        aMD.drift_(0.5*tDt);
+        // O 部分，直接精确求解 Ornstein-Uhlenbeck 过程
+        final double tKE = aMD.kineticEnergy();
+        final double tC1 = Math.exp(-tDt/mDamp);
+        final double tC2 = Math.sqrt((1.0-tC1*tC1) * CS.K_B*mTemperature);
+        final double[] tVx = aMD.mVx, tVy = aMD.mVy, tVz = aMD.mVz, tFtm = aMD.mFtm;
+        for (int i = 0; i < tVx.length; ++i) {
+            double tStd = tC2 * Math.sqrt(tFtm[i]);
+            tVx[i] = tC1*tVx[i] + tStd*mRNG.nextGaussian();
+            tVy[i] = tC1*tVy[i] + tStd*mRNG.nextGaussian();
+            tVz[i] = tC1*tVz[i] + tStd*mRNG.nextGaussian();
+        }
+        mEnergyExchange += tKE - aMD.kineticEnergy();
+        aMD.drift_(0.5*tDt);
+        aMD.computeForces_();
+        aMD.kick_(0.5*tDt);
+    }
+    /** @return 热浴累计从体系中取走的能量，和 lammps 的 {@code fix langevin ... tally yes} 一致 */
+    @Override public double extraEnergy(MD aMD) {return mEnergyExchange;}
+}
@@ -0,0 +1,402 @@
+package jse.md;
+
+import jse.atom.*;
+import jse.code.CS;
+import jse.code.random.IRandom;
+import jse.code.random.LocalRandom;
+import jse.math.vector.IVector;
+import jse.math.vector.Vector;
+import jse.math.vector.Vectors;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * 纯 java 实现的分子动力学模拟，直接使用 {@link IPotential} 计算力，
+ * 不需要借助 lammps 即可对 {@link ISettableAtomData} 进行简单的 MD 模拟，例如：
+ * <pre> {@code
+ * def data = Lmpdat.of(Structures.FCC(3.615, 6), [63.546])
+ * try (def md = new MD(data, new LJ(0.4093, 2.338, 6.0))) {
+ *     md.setTimestep(0.002).createVelocities(600.0, 123)
+ *     md.setIntegrator(new NoseHoover(600.0, 0.1))
+ *     md.setThermo(100)
+ *     md.run(10000)
+ * }
+ * } </pre>
+ * 单位和 lammps 的 {@code metal} 单位一致，即：长度 Å，时间 ps，能量 eV，
+ * 质量 g/mol，温度 K，压强 bar；位力同样采用 lammps 一致的定义
+ * <p>
+ * 内部会复用力以及速度的缓存，对于 {@link IPairPotential} 会保留一个开启了
+ * Verlet skin 的 {@link AtomicParameterCalculator}，每步只增量更新原子位置，
+ * 只有当原子移动超过 {@code skin/2} 时才会重新构建近邻列表；
+ * 对于其余的 {@link IPotential} 会将坐标写回原子数据后直接调用
+ * {@link IPotential#calEnergyForceVirials(IAtomData, IVector, IVector, IVector, IVector, IVector, IVector, IVector, IVector, IVector, IVector)}
+ * <p>
+ * 模拟过程中原子数据中的坐标（以及速度）只会在输出 thermo 时以及
+ * {@link #run(int)} 结束时同步，坐标会经过周期边界条件的 wrap
+ *
+ * @see IIntegrator
+ * @author liqa
+ */
+public class MD implements AutoCloseable {
+    /** {@code mv^2} 到能量 eV 的单位转换，和 lammps 的 {@code metal} 单位一致 */
+    public final static double MVV2E = 1.0 / (CS.N_A*CS.E_V);
+    /** 压强 eV/Å^3 到 bar 的单位转换 */
+    public final static double NKTV2P = 1.0 / CS.UNITS.get("bar");
+    /** 默认的 Verlet skin 长度，单位为 Å */
+    public final static double DEFAULT_SKIN = 1.0;
+    
+    /** thermo 输出时的回调 */
+    @FunctionalInterface public interface IThermoDo {void run(MD aMD) throws Exception;}
+    
+    private final ISettableAtomData mData;
+    private final IPotential mPotential;
+    private final int mAtomNum;
+    private final @Nullable AtomicParameterCalculator mAPC;
+    private final IntUnaryOperator mTypeMap;
+    
+    /** 未经 wrap 的坐标以及速度，直接提供给积分器使用 */
+    final double[] mX, mY, mZ;
+    final double[] mVx, mVy, mVz;
+    /** 每个原子的 {@code 1/(m*MVV2E)}，力乘以此值即为加速度 */
+    final double[] mFtm;
+    final double[] mMass;
+    private final Vector mFx, mFy, mFz;
+    private final Vector mEng, mVirXX, mVirYY, mVirZZ;
+    private double mBoxX, mBoxY, mBoxZ;
+    /** 缓存的模拟盒体积，直接使用 {@link IBox#volume()} 从而支持斜方的模拟盒 */
+    private double mVolume;
+    
+    private IIntegrator mIntegrator = new NVE();
+    private double mDt = 0.001;
+    private double mSkin = DEFAULT_SKIN;
+    private long mStep = 0;
+    private int mThermoEvery = 0;
+    private @Nullable IThermoDo mThermoDo = null;
+    
+    private boolean mSetup = false;
+    private boolean mBoxChanged = false;
+    private boolean mEnergyValid = false, mVirialValid = false;
+    private boolean mNeedEnergy = false;
+    private boolean mDead = false;
+    
+    /**
+     * 创建一个 MD 模拟，会直接读取原子数据中的坐标以及速度（如果有的话），
+     * 要求原子数据包含质量信息
+     * @param aData 需要模拟的原子数据，模拟结果会写回此数据
+     * @param aPotential 计算力使用的势函数，不会在 {@link #close()} 时关闭
+     */
+    public MD(ISettableAtomData aData, IPotential aPotential) {
+        if (aPotential.isClosed()) throw new IllegalArgumentException("This Potential is dead");
+        mData = aData;
+        mPotential = aPotential;
+        mAtomNum = aData.natoms();
+        IVector tMasses = aData.masses();
+        if (tMasses == null) throw new IllegalArgumentException("Input atom data MUST have masses for MD");
+        IBox tBox = aData.box();
+        mBoxX = tBox.x(); mBoxY = tBox.y(); mBoxZ = tBox.z();
+        mVolume = tBox.volume();
+        mX = new double[mAtomNum]; mY = new double[mAtomNum]; mZ = new double[mAtomNum];
+        mVx = new double[mAtomNum]; mVy = new double[mAtomNum]; mVz = new double[mAtomNum];
+        mFtm = new double[mAtomNum]; mMass = new double[mAtomNum];
+        final boolean tHasVelocity = aData.hasVelocity();
+        for (int i = 0; i < mAtomNum; ++i) {
+            IAtom tAtom = aData.atom(i);
+            mX[i] = tAtom.x(); mY[i] = tAtom.y(); mZ[i] = tAtom.z();
+            if (tHasVelocity) {mVx[i] = tAtom.vx(); mVy[i] = tAtom.vy(); mVz[i] = tAtom.vz();}
+            double tMass = tMasses.get(tAtom.type()-1);
+            if (!(tMass > 0.0)) throw new IllegalArgumentException("Invalid mass of type "+tAtom.type()+": "+tMass);
+            mMass[i] = tMass;
+            mFtm[i] = 1.0 / (tMass*MVV2E);
+        }
+        mFx = Vectors.zeros(mAtomNum); mFy = Vectors.zeros(mAtomNum); mFz = Vectors.zeros(mAtomNum);
+        mEng = Vectors.zeros(1);
+        mVirXX = Vectors.zeros(1); mVirYY = Vectors.zeros(1); mVirZZ = Vectors.zeros(1);
+        if (aPotential instanceof IPairPotential) {
+            IPairPotential tPotential = (IPairPotential)aPotential;
+            mTypeMap = tPotential.hasSymbol() ? tPotential.typeMap(aData) : type->type;
+            mAPC = AtomicParameterCalculator.of(aData, tPotential.nthreads());
+            mAPC.setVerletSkin(mSkin);
+        } else {
+            mTypeMap = type->type;
+            mAPC = null;
+        }
+    }
+    
+    /**
+     * 设置时间步长
+     * @param aTimestep 时间步长，单位为 ps，默认为 0.001
+     * @return 自身方便链式调用
+     */
+    public MD setTimestep(double aTimestep) {
+        if (!(aTimestep > 0.0)) throw new IllegalArgumentException("Timestep MUST be positive: "+aTimestep);
+        mDt = aTimestep; return this;
+    }
+    /**
+     * 设置积分器，会在下一次 {@link #run(int)} 时初始化
+     * @param aIntegrator 需要的积分器，默认为 {@link NVE}
+     * @return 自身方便链式调用
+     */
+    public MD setIntegrator(IIntegrator aIntegrator) {
+        mIntegrator = aIntegrator;
+        mSetup = false;
+        return this;
+    }
+    /**
+     * 设置 Verlet 近邻列表的 skin 长度，只对 {@link IPairPotential} 有效
+     * @param aSkin skin 长度，默认为 {@link #DEFAULT_SKIN}，{@code 0} 表示每步都重新构建近邻列表
+     * @return 自身方便链式调用
+     */
+    public MD setSkin(double aSkin) {
+        if (aSkin < 0.0) throw new IllegalArgumentException("Skin MUST be non-negative: "+aSkin);
+        mSkin = aSkin;
+        if (mAPC != null) mAPC.setVerletSkin(aSkin);
+        return this;
+    }
+    /**
+     * 设置 thermo 输出，每隔 {@code aEvery} 步会将坐标以及速度同步到原子数据中并调用 {@code aThermoDo}
+     * @param aEvery 输出间隔，{@code 0} 表示关闭输出
+     * @param aThermoDo 输出时的回调，{@code null} 表示使用默认的输出格式打印到控制台
+     * @return 自身方便链式调用
+     */
+    public MD setThermo(@Range(from=0, to=Integer.MAX_VALUE) int aEvery, @Nullable IThermoDo aThermoDo) {
+        if (aEvery < 0) throw new IllegalArgumentException("Thermo every MUST be non-negative: "+aEvery);
+        mThermoEvery = aEvery;
+        mThermoDo = aThermoDo;
+        return this;
+    }
+    public MD setThermo(@Range(from=0, to=Integer.MAX_VALUE) int aEvery) {return setThermo(aEvery, null);}
+    /**
+     * 按照给定温度的 Maxwell-Boltzmann 分布设置初始速度，会去除质心动量并缩放到准确的温度
+     * @param aTemperature 目标温度，单位为 K
+     * @param aRNG 使用的随机数生成器
+     * @return 自身方便链式调用
+     */
+    public MD createVelocities(double aTemperature, IRandom aRNG) {
+        final double tKT = CS.K_B * aTemperature;
+        for (int i = 0; i < mAtomNum; ++i) {
+            double tStd = Math.sqrt(tKT * mFtm[i]);
+            mVx[i] = tStd * aRNG.nextGaussian();
+            mVy[i] = tStd * aRNG.nextGaussian();
+            mVz[i] = tStd * aRNG.nextGaussian();
+        }
+        removeMomentum();
+        double tTemp = temperature();
+        if (tTemp > 0.0) scaleVelocities_(Math.sqrt(aTemperature / tTemp));
+        return this;
+    }
+    public MD createVelocities(double aTemperature, long aSeed) {return createVelocities(aTemperature, new LocalRandom(aSeed));}
+    public MD createVelocities(double aTemperature) {return createVelocities(aTemperature, CS.RANDOM);}
+    /**
+     * 去除体系的质心动量
+     * @return 自身方便链式调用
+     */
+    public MD removeMomentum() {
+        double tPx = 0.0, tPy = 0.0, tPz = 0.0, tMass = 0.0;
+        for (int i = 0; i < mAtomNum; ++i) {
+            tPx += mMass[i]*mVx[i]; tPy += mMass[i]*mVy[i]; tPz += mMass[i]*mVz[i];
+            tMass += mMass[i];
+        }
+        tPx /= tMass; tPy /= tMass; tPz /= tMass;
+        for (int i = 0; i < mAtomNum; ++i) {
+            mVx[i] -= tPx; mVy[i] -= tPy; mVz[i] -= tPz;
+        }
+        return this;
+    }
+    
+    /** @return 当前的时间步长，单位为 ps */
+    public double timestep() {return mDt;}
+    /** @return 当前的积分器 */
+    public IIntegrator integrator() {return mIntegrator;}
+    /** @return 已经运行的步数 */
+    public long step() {return mStep;}
+    /** @return 已经运行的时间，单位为 ps */
+    public double time() {return mStep*mDt;}
+    /** @return 原子数目 */
+    public int natoms() {return mAtomNum;}
+    /** @return 模拟使用的原子数据，只在 thermo 输出以及 {@link #run(int)} 结束时同步 */
+    public ISettableAtomData data() {return mData;}
+    /** @return 当前模拟盒的体积，单位为 Å^3 */
+    public double volume() {return mVolume;}
+    /** @return 体系的自由度，即 {@code 3N-3} */
+    public int dof() {return 3*mAtomNum - 3;}
+    /** @return 体系的总动能，单位为 eV */
+    public double kineticEnergy() {
+        double rKE = 0.0;
+        for (int i = 0; i < mAtomNum; ++i) {
+            rKE += mMass[i] * (mVx[i]*mVx[i] + mVy[i]*mVy[i] + mVz[i]*mVz[i]);
+        }
+        return 0.5 * MVV2E * rKE;
+    }
+    /** @return 体系的温度，单位为 K */
+    public double temperature() {
+        int tDof = dof();
+        return tDof<=0 ? 0.0 : 2.0*kineticEnergy() / (tDof*CS.K_B);
+    }
+    /** @return 体系的总势能，单位为 eV；如果当前没有缓存则会重新计算 */
+    public double potentialEnergy() throws Exception {
+        if (!mEnergyValid) computeForces_(true);
+        return mEng.get(0);
+    }
+    /** @return 体系的总能量，单位为 eV */
+    public double totalEnergy() throws Exception {return potentialEnergy() + kineticEnergy();}
+    /** @return 积分器对应的守恒量，单位为 eV，对于 {@link NVE} 即为总能量 */
+    public double conservedEnergy() throws Exception {return totalEnergy() + mIntegrator.extraEnergy(this);}
+    /** @return 体系的位力的迹 {@code Wxx+Wyy+Wzz}，单位为 eV；如果当前没有缓存则会重新计算 */
+    public double virial() throws Exception {
+        if (!mVirialValid) computeForces_(true);
+        return mVirXX.get(0) + mVirYY.get(0) + mVirZZ.get(0);
+    }
+    /** @return 体系的压强，单位为 bar */
+    public double pressure() throws Exception {
+        return (2.0*kineticEnergy() + virial()) / (3.0*volume()) * NKTV2P;
+    }
+    
+    /**
+     * 运行指定步数的模拟，可以多次调用来继续模拟
+     * @param aSteps 需要运行的步数
+     * @return 自身方便链式调用
+     * @throws Exception 计算力或者 thermo 回调中抛出的错误
+     */
+    public MD run(@Range(from=0, to=Integer.MAX_VALUE) int aSteps) throws Exception {
+        if (mDead) throw new IllegalStateException("This MD is dead");
+        if (mPotential.isClosed()) throw new IllegalStateException("This Potential is dead");
+        if (!mSetup) {
+            mNeedEnergy = mThermoEvery > 0;
+            computeForces_();
+            mIntegrator.init(this);
+            mSetup = true;
+            if (mThermoEvery > 0) thermo_(true);
+        }
+        for (int tStep = 0; tStep < aSteps; ++tStep) {
+            boolean tThermo = mThermoEvery > 0 && (mStep+1)%mThermoEvery == 0;
+            mNeedEnergy = tThermo;
+            mIntegrator.step(this);
+            ++mStep;
+            if (tThermo) thermo_(false);
+        }
+        mNeedEnergy = false;
+        syncData_();
+        return this;
+    }
+    
+    private void thermo_(boolean aHead) throws Exception {
+        syncData_();
+        if (mThermoDo != null) {mThermoDo.run(this); return;}
+        if (aHead) System.out.printf("%12s %14s %16s %16s %14s\n", "Step", "Temp", "PotEng", "TotEng", "Press");
+        System.out.printf("%12d %14.6g %16.8g %16.8g %14.6g\n", mStep, temperature(), potentialEnergy(), totalEnergy(), pressure());
+    }
+    
+    /** 将当前坐标（经过周期边界条件 wrap）以及速度写回原子数据 */
+    private void syncData_() {
+        if (mBoxChanged) {
+            mData.setBox(true, mBoxX, mBoxY, mBoxZ);
+            mBoxChanged = false;
+            if (mAPC != null) {writeData_(); mAPC.rebind(mData); return;}
+        }
+        writeData_();
+    }
+    private void writeData_() {
+        IBox tBox = mData.box();
+        XYZ tBuf = new XYZ();
+        boolean tSetVelocity = mData.hasVelocity();
+        if (!tSetVelocity) {
+            try {mData.setHasVelocity(); tSetVelocity = true;}
+            catch (UnsupportedOperationException ignored) {/**/}
+        }
+        for (int i = 0; i < mAtomNum; ++i) {
+            tBuf.setXYZ(mX[i], mY[i], mZ[i]);
+            tBox.wrapPBC(tBuf);
+            ISettableAtom tAtom = mData.atom(i);
+            tAtom.setXYZ(tBuf.mX, tBuf.mY, tBuf.mZ);
+            if (tSetVelocity) tAtom.setVxyz(mVx[i], mVy[i], mVz[i]);
+        }
+    }
+    
+    /// 积分器使用的内部接口
+    /**
+     * 使用当前的坐标重新计算力，只有在当前步需要输出或者积分器需要时才会计算能量以及位力
+     * @throws Exception 势函数计算中的错误
+     */
+    @ApiStatus.Internal
+    public void computeForces_() throws Exception {computeForces_(mNeedEnergy);}
+    void computeForces_(boolean aEnergy) throws Exception {
+        final boolean tVirial = aEnergy || mIntegrator.requireVirial();
+        @Nullable Vector tEng = aEnergy ? mEng : null;
+        @Nullable Vector tVirXX = tVirial ? mVirXX : null;
+        @Nullable Vector tVirYY = tVirial ? mVirYY : null;
+        @Nullable Vector tVirZZ = tVirial ? mVirZZ : null;
+        if (mAPC != null) {
+            if (mBoxChanged) {
+                syncData_();
+            } else {
+                for (int i = 0; i < mAtomNum; ++i) mAPC.setAtomXYZ(i, mX[i], mY[i], mZ[i]);
+            }
+            ((IPairPotential)mPotential).calEnergyForceVirials(mAPC, tEng, mFx, mFy, mFz, tVirXX, tVirYY, tVirZZ, null, null, null, mTypeMap);
+        } else {
+            syncData_();
+            mPotential.calEnergyForceVirials(mData, tEng, mFx, mFy, mFz, tVirXX, tVirYY, tVirZZ, null, null, null);
+        }
+        mEnergyValid = aEnergy;
+        mVirialValid = tVirial;
+    }
+    /**
+     * 根据当前的力更新速度，{@code v += dt * f/m}
+     * @param aDt 更新使用的时间步长
+     */
+    @ApiStatus.Internal
+    public void kick_(double aDt) {
+        final double[] tFx = mFx.internalData(), tFy = mFy.internalData(), tFz = mFz.internalData();
+        for (int i = 0; i < mAtomNum; ++i) {
+            double tDtf = aDt * mFtm[i];
+            mVx[i] += tDtf*tFx[i]; mVy[i] += tDtf*tFy[i]; mVz[i] += tDtf*tFz[i];
+        }
+    }
+    /**
+     * 根据当前的速度更新坐标，{@code x += dt * v}，会标记能量以及位力失效
+     * @param aDt 更新使用的时间步长
+     */
+    @ApiStatus.Internal
+    public void drift_(double aDt) {
+        for (int i = 0; i < mAtomNum; ++i) {
+            mX[i] += aDt*mVx[i]; mY[i] += aDt*mVy[i]; mZ[i] += aDt*mVz[i];
+        }
+        mEnergyValid = false; mVirialValid = false;
+    }
+    /**
+     * 缩放所有原子的速度
+     * @param aScale 缩放因子
+     */
+    @ApiStatus.Internal
+    public void scaleVelocities_(double aScale) {
+        for (int i = 0; i < mAtomNum; ++i) {
+            mVx[i] *= aScale; mVy[i] *= aScale; mVz[i] *= aScale;
+        }
+    }
+    /**
+     * 各向同性的缩放模拟盒以及所有原子的坐标，只支持正交的模拟盒
+     * @param aScale 长度的缩放因子
+     */
+    @ApiStatus.Internal
+    public void scaleBox_(double aScale) {
+        mBoxX *= aScale; mBoxY *= aScale; mBoxZ *= aScale;
+        mVolume *= aScale*aScale*aScale;
+        for (int i = 0; i < mAtomNum; ++i) {
+            mX[i] *= aScale; mY[i] *= aScale; mZ[i] *= aScale;
+        }
+        mBoxChanged = true;
+        mEnergyValid = false; mVirialValid = false;
+    }
+    /** @return 当前缓存的位力的迹，需要积分器 {@link IIntegrator#requireVirial()} 才会保证每步更新 */
+    @ApiStatus.Internal
+    public double virial_() {return mVirXX.get(0) + mVirYY.get(0) + mVirZZ.get(0);}
+    
+    /** 关闭内部的 {@link AtomicParameterCalculator}，不会关闭势函数 */
+    @Override public void close() {
+        if (mDead) return;
+        mDead = true;
+        if (mAPC != null) mAPC.close();
+    }
+}
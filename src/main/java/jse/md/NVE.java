@@ -0,0 +1,16 @@
+package jse.md;
+
+/**
+ * 微正则系综（NVE）的 velocity-Verlet 积分器，和 lammps 的 {@code fix nve} 一致
+ *
+ * @author liqa
+ */
+public class NVE implements IIntegrator {
+    @Override public void step(MD aMD) throws Exception {
+        final double tDt = aMD.timestep();
+        aMD.kick_(0.5*tDt);
+        aMD.drift_(tDt);
+        aMD.computeForces_();
+        aMD.kick_(0.5*tDt);
+    }
+}
@@ -0,0 +1,156 @@
+package jse.md;
+
+import jse.code.CS;
+
+/**
+ * Nosé–Hoover 链热浴的正则系综（NVT）积分器，可选开启各向同性的 MTK 压浴从而实现等温等压系综（NPT），
+ * 和 lammps 的 {@code fix nvt} 以及 {@code fix npt ... iso} 类似（不过这里压浴本身不会额外耦合热浴），具体可参考：
+ * <a href="https://doi.org/10.1080/00268979600100761">
+ * Explicit reversible integrators for extended systems dynamics </a>
+ * <p>
+ * 压浴只支持正交的模拟盒
+ *
+ * @author liqa
+ */
+public class NoseHoover implements IIntegrator {
+    /** 默认的热浴链长度，和 lammps 一致 */
+    public final static int DEFAULT_CHAIN = 3;
+    
+    private final double mTemperature, mTDamp;
+    private final boolean mBarostat;
+    private final double mPressure, mPDamp;
+    private final int mChain;
+    /** 热浴链的坐标，速度，质量以及力 */
+    private final double[] mEta, mVEta, mQ, mG;
+    /** 压浴的速度以及质量 */
+    private double mVEps = 0.0, mW = 0.0;
+    private double mKT = 0.0;
+    private int mDof = 0;
+    
+    /**
+     * 创建一个 Nosé–Hoover 链热浴（NVT）
+     * @param aTemperature 目标温度，单位为 K
+     * @param aTDamp 热浴的阻尼时间，单位为 ps，和 lammps 一致，一般取 100 倍的时间步长
+     * @param aChain 热浴链的长度，默认为 {@link #DEFAULT_CHAIN}
+     */
+    public NoseHoover(double aTemperature, double aTDamp, int aChain) {
+        this(aTemperature, aTDamp, Double.NaN, Double.NaN, aChain, false);
+    }
+    public NoseHoover(double aTemperature, double aTDamp) {this(aTemperature, aTDamp, DEFAULT_CHAIN);}
+    /**
+     * 创建一个 Nosé–Hoover 链热浴以及各向同性 MTK 压浴（NPT）
+     * @param aTemperature 目标温度，单位为 K
+     * @param aTDamp 热浴的阻尼时间，单位为 ps，一般取 100 倍的时间步长
+     * @param aPressure 目标压强，单位为 bar
+     * @param aPDamp 压浴的阻尼时间，单位为 ps，一般取 1000 倍的时间步长
+     * @param aChain 热浴链的长度，默认为 {@link #DEFAULT_CHAIN}
+     */
+    public NoseHoover(double aTemperature, double aTDamp, double aPressure, double aPDamp, int aChain) {
+        this(aTemperature, aTDamp, aPressure, aPDamp, aChain, true);
+    }
+    public NoseHoover(double aTemperature, double aTDamp, double aPressure, double aPDamp) {this(aTemperature, aTDamp, aPressure, aPDamp, DEFAULT_CHAIN);}
+    
+    private NoseHoover(double aTemperature, double aTDamp, double aPressure, double aPDamp, int aChain, boolean aBarostat) {
+        if (!(aTemperature > 0.0)) throw new IllegalArgumentException("Temperature MUST be positive: "+aTemperature);
+        if (!(aTDamp > 0.0)) throw new IllegalArgumentException("TDamp MUST be positive: "+aTDamp);
+        if (aChain < 1) throw new IllegalArgumentException("Chain length MUST be positive: "+aChain);
+        if (aBarostat) {
+            if (!Double.isFinite(aPressure)) throw new IllegalArgumentException("Invalid pressure: "+aPressure);
+            if (!(aPDamp > 0.0)) throw new IllegalArgumentException("PDamp MUST be positive: "+aPDamp);
+        }
+        mTemperature = aTemperature; mTDamp = aTDamp;
+        mPressure = aPressure; mPDamp = aPDamp;
+        mBarostat = aBarostat;
+        mChain = aChain;
+        mEta = new double[aChain]; mVEta = new double[aChain];
+        mQ = new double[aChain]; mG = new double[aChain];
+    }
+    
+    public double temperature() {return mTemperature;}
+    public double pressure() {return mPressure;}
+    public boolean barostat() {return mBarostat;}
+    
+    @Override public boolean requireVirial() {return mBarostat;}
+    
+    @Override public void init(MD aMD) {
+        if (mBarostat && aMD.data().box().isPrism()) throw new UnsupportedOperationException("Barostat of NoseHoover only supports orthogonal box");
+        mDof = aMD.dof();
+        mKT = CS.K_B * mTemperature;
+        mQ[0] = mDof * mKT * mTDamp*mTDamp;
+        for (int j = 1; j < mChain; ++j) mQ[j] = mKT * mTDamp*mTDamp;
+        if (mBarostat) mW = (mDof + 3) * mKT * mPDamp*mPDamp;
+    }
+    
+    @Override public void step(MD aMD) throws Exception {
+        final double tDt = aMD.timestep();
+        final double tHalfDt = 0.5*tDt;
+        chain_(aMD, tHalfDt);
+        if (mBarostat) {
+            barostat_(aMD, tHalfDt);
+            kickScaled_(aMD, tHalfDt);
+            // 坐标以及模拟盒的更新，这里采用中点的近似：x = x*exp(veps*dt) + dt*v*exp(veps*dt/2)
+            aMD.scaleBox_(Math.exp(mVEps*tHalfDt));
+            aMD.drift_(tDt);
+            aMD.scaleBox_(Math.exp(mVEps*tHalfDt));
+            aMD.computeForces_();
+            kickScaled_(aMD, tHalfDt);
+            barostat_(aMD, tHalfDt);
+        } else {
+            aMD.kick_(tHalfDt);
+            aMD.drift_(tDt);
+            aMD.computeForces_();
+            aMD.kick_(tHalfDt);
+        }
+        chain_(aMD, tHalfDt);
+    }
+    
+    /** 考虑压浴对粒子速度的耦合，{@code v = v*exp(-alpha*veps*dt) + dt*f/m} */
+    private void kickScaled_(MD aMD, double aDt) {
+        final double tAlpha = 1.0 + 3.0/mDof;
+        aMD.scaleVelocities_(Math.exp(-tAlpha*mVEps*aDt));
+        aMD.kick_(aDt);
+    }
+    /** 更新压浴速度 */
+    private void barostat_(MD aMD, double aDt) {
+        final double tAlpha = 1.0 + 3.0/mDof;
+        final double tV = aMD.volume();
+        final double tPressure = mPressure / MD.NKTV2P;
+        final double tG = (tAlpha*2.0*aMD.kineticEnergy() + aMD.virial_() - 3.0*tPressure*tV) / mW;
+        mVEps += tG * aDt;
+    }
+    /** 使用 Trotter 分解更新热浴链，{@code aDt} 为总的更新时间 */
+    private void chain_(MD aMD, double aDt) {
+        final int tM = mChain;
+        double tKE2 = 2.0*aMD.kineticEnergy();
+        // 从链的末端开始向前更新速度
+        mG[0] = (tKE2 - mDof*mKT) / mQ[0];
+        for (int j = 1; j < tM; ++j) mG[j] = (mQ[j-1]*mVEta[j-1]*mVEta[j-1] - mKT) / mQ[j];
+        mVEta[tM-1] += mG[tM-1] * 0.5*aDt;
+        for (int j = tM-2; j >= 0; --j) {
+            double tS = Math.exp(-mVEta[j+1] * 0.25*aDt);
+            mVEta[j] = (mVEta[j]*tS + mG[j]*0.5*aDt) * tS;
+        }
+        // 缩放粒子速度并更新热浴坐标
+        final double tScale = Math.exp(-mVEta[0]*aDt);
+        aMD.scaleVelocities_(tScale);
+        tKE2 *= tScale*tScale;
+        for (int j = 0; j < tM; ++j) mEta[j] += mVEta[j]*aDt;
+        // 再从链的前端向后更新速度
+        mG[0] = (tKE2 - mDof*mKT) / mQ[0];
+        for (int j = 0; j < tM-1; ++j) {
+            double tS = Math.exp(-mVEta[j+1] * 0.25*aDt);
+            mVEta[j] = (mVEta[j]*tS + mG[j]*0.5*aDt) * tS;
+            mG[j+1] = (mQ[j]*mVEta[j]*mVEta[j] - mKT) / mQ[j+1];
+        }
+        mVEta[tM-1] += mG[tM-1] * 0.5*aDt;
+    }
+    
+    /** @return 热浴链（以及压浴）的能量，用于计算守恒量 */
+    @Override public double extraEnergy(MD aMD) {
+        double rEnergy = mDof*mKT*mEta[0];
+        for (int j = 0; j < mChain; ++j) rEnergy += 0.5*mQ[j]*mVEta[j]*mVEta[j];
+        for (int j = 1; j < mChain; ++j) rEnergy += mKT*mEta[j];
+        if (mBarostat) rEnergy += 0.5*mW*mVEps*mVEps + mPressure/MD.NKTV2P*aMD.volume();
+        return rEnergy;
+    }
+}
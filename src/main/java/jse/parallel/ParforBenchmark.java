@@ -0,0 +1,82 @@
+package jse.parallel;
+
+import jse.code.Conf;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.io.PrintStream;
+
+/**
+ * {@link ParforThreadPool} 不同任务分配方式的简单性能测试，
+ * 用来确定不同任务大小以及任务均匀程度下各个 {@link ParforThreadPool.Schedule} 的分界点
+ * <p>
+ * 直接运行 {@code main} 即可，参数可选线程数，默认为 {@link Conf#PARFOR_THREAD_NUMBER}
+ * @author liqa
+ */
+@ApiStatus.Internal
+public final class ParforBenchmark {
+    private ParforBenchmark() {}
+    
+    private final static int[] CHUNK_SIZES = {1, 16, 256};
+    private final static int WARMUP = 3, REPEAT = 5;
+    /** 每个线程的累加结果间隔存储，避免 false sharing 影响测试结果 */
+    private final static int PAD = 16;
+    
+    public static void main(String[] aArgs) {
+        int tThreadNum = aArgs.length > 0 ? Integer.parseInt(aArgs[0]) : Conf.PARFOR_THREAD_NUMBER;
+        run(tThreadNum, System.out);
+    }
+    
+    /**
+     * 运行所有的测试并输出结果，每行为一种任务分配方式，每列为一种任务
+     * @param aThreadNum 使用的线程数
+     * @param aOut 输出的流
+     */
+    public static void run(int aThreadNum, PrintStream aOut) {
+        // 均匀且非常廉价的任务（类似 RDF 的累加），以及不均匀的任务（类似 j < i 的原子对遍历）
+        final int[] tCheapSizes = {1000, 100000, 10000000};
+        final int tTriangleSize = 20000;
+        aOut.printf("ParforThreadPool benchmark, nthreads = %d, time in ms (best of %d)%n", aThreadNum, REPEAT);
+        aOut.printf("%-16s", "schedule");
+        for (int tSize : tCheapSizes) aOut.printf("%16s", "cheap-"+tSize);
+        aOut.printf("%16s%n", "triangle-"+tTriangleSize);
+        try (ParforThreadPool tPool = new ParforThreadPool(aThreadNum)) {
+            for (ParforThreadPool.Schedule tSchedule : ParforThreadPool.Schedule.values()) {
+                boolean tUseChunk = tSchedule==ParforThreadPool.Schedule.DYNAMIC || tSchedule==ParforThreadPool.Schedule.GUIDED || tSchedule==ParforThreadPool.Schedule.STEALING;
+                for (int tChunk : tUseChunk ? CHUNK_SIZES : new int[]{1}) {
+                    aOut.printf("%-16s", tUseChunk ? (tSchedule.name().toLowerCase()+"-"+tChunk) : tSchedule.name().toLowerCase());
+                    for (int tSize : tCheapSizes) aOut.printf("%16.3f", timeCheap_(tPool, tSchedule, tChunk, tSize));
+                    aOut.printf("%16.3f%n", timeTriangle_(tPool, tSchedule, tChunk, tTriangleSize));
+                }
+            }
+        }
+    }
+    
+    private static double timeCheap_(ParforThreadPool aPool, ParforThreadPool.Schedule aSchedule, int aChunk, int aSize) {
+        final double[] rSum = new double[aPool.nthreads()*PAD];
+        double tBest = Double.POSITIVE_INFINITY;
+        for (int r = 0; r < WARMUP+REPEAT; ++r) {
+            long t0 = System.nanoTime();
+            aPool.parfor(aSize, aSchedule, aChunk, (i, threadID) -> {
+                rSum[threadID*PAD] += Math.sqrt(i);
+            });
+            long t1 = System.nanoTime();
+            if (r >= WARMUP) tBest = Math.min(tBest, (t1-t0)*1.0e-6);
+        }
+        return tBest;
+    }
+    private static double timeTriangle_(ParforThreadPool aPool, ParforThreadPool.Schedule aSchedule, int aChunk, int aSize) {
+        final double[] rSum = new double[aPool.nthreads()*PAD];
+        double tBest = Double.POSITIVE_INFINITY;
+        for (int r = 0; r < WARMUP+REPEAT; ++r) {
+            long t0 = System.nanoTime();
+            aPool.parfor(aSize, aSchedule, aChunk, (i, threadID) -> {
+                double tSum = 0.0;
+                for (int j = 0; j < i; ++j) tSum += Math.sqrt(i - j);
+                rSum[threadID*PAD] += tSum;
+            });
+            long t1 = System.nanoTime();
+            if (r >= WARMUP) tBest = Math.min(tBest, (t1-t0)*1.0e-6);
+        }
+        return tBest;
+    }
+}
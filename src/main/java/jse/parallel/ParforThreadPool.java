@@ -7,9 +7,11 @@ import org.jetbrains.annotations.Range;
 
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
 
 /**
  * 可以像 matlab 的 {@code parfor} 一样直接使用的线程池，这里为了语义上一致依旧作为一种
@@ -19,15 +21,53 @@ import java.util.concurrent.locks.ReentrantLock;
  * <p>
  * 支持每个线程写入到独立的内存而不需要额外加锁，但依旧需要注意内部的线程安全问题
  * <p>
- * 注意：此类线程安全（包括不同实例间以及多个线程同时访问同一个实例）。当线程数大于
- * 1 时同一个实例的操作加锁保证线程安全；当线程数为 1 时同一个实例的操作不会加锁
+ * 注意：此类线程安全（包括不同实例间以及多个线程同时访问同一个实例）。多个线程同时调用同一个实例的
+ * {@code parfor} 时，各自的任务会共享此线程池的工作线程，不会互相阻塞等待整个调用完成；
+ * 而在此线程池的工作线程中再次调用此实例的 {@code parfor}（嵌套调用）时，会直接在当前工作线程中串行执行，
+ * 并且传入的 {@code threadID} 为当前工作线程的 {@code threadID}，因此可以安全地在外层 {@code parfor}
+ * 中调用使用同一个线程池的计算（例如在遍历轨迹的外层并行中调用 {@link jse.atom.AtomicParameterCalculator}）
  * <p>
- * 通过 {@link Conf#PARFOR_NO_COMPETITIVE} 来设置默认是否是竞争的。
+ * 通过 {@link Conf#PARFOR_NO_COMPETITIVE} 来设置默认是否是竞争的，
+ * 通过 {@link Conf#PARFOR_SCHEDULE} 和 {@link Conf#PARFOR_CHUNK_SIZE} 来设置默认的任务分配方式，
+ * 也可以在构造时或者每次调用 {@code parfor} 时单独指定。
+ * @see Schedule
  * @author liqa
  */
 public final class ParforThreadPool implements IThreadPool {
     private final Lock @Nullable[] mLocks; // 用来在并行时给每个线程独立加锁，保证每个线程独立写入的操作的可见性
-    private final boolean mNoCompetitive;
+    private final ThreadLocal<Integer> mWorkerID = new ThreadLocal<>(); // 当前线程作为此线程池的工作线程时的 threadID，用于检测嵌套调用
+    private final Schedule mSchedule;
+    private final int mChunkSize;
+    
+    /**
+     * parfor 的任务分配方式，对于每个任务耗时很短的情况（例如 RDF 的累加），
+     * 竞争获取单个任务的开销会超过任务本身，此时应该选择更大的块或者静态分配
+     * @author liqa
+     */
+    public enum Schedule {
+        /** 按照线程数将任务分为连续的块，每个线程固定处理一块；没有任何竞争，但是不能处理不均匀的任务 */
+        STATIC,
+        /** 每个线程间隔地获取任务（即 {@code i = threadID; i < size; i += nthreads}），也就是原本的非竞争模式 */
+        CYCLIC,
+        /** 每次竞争获取固定大小的连续块，块大小为 1 时即为原本的竞争模式 */
+        DYNAMIC,
+        /** 每次竞争获取剩余任务数除以两倍线程数大小的连续块（并且不小于指定的块大小），块大小逐渐减小 */
+        GUIDED,
+        /** 首先按照 {@link #STATIC} 分块，每个线程每次从自己的块中获取指定大小的任务，完成后会窃取其他线程剩余任务的一半 */
+        STEALING;
+        
+        /** 通过名称获取 Schedule，忽略大小写 */
+        public static Schedule of(String aName) {
+            switch (aName.toLowerCase()) {
+            case "static"  : {return STATIC;}
+            case "cyclic"  : {return CYCLIC;}
+            case "dynamic" : {return DYNAMIC;}
+            case "guided"  : {return GUIDED;}
+            case "stealing": case "steal": case "work_stealing": {return STEALING;}
+            default: {throw new IllegalArgumentException("Invalid schedule: " + aName);}
+            }
+        }
+    }
     
     /// IThreadPool stuffs
     private final IExecutorEX mPool;
@@ -43,9 +83,16 @@ public final class ParforThreadPool implements IThreadPool {
     // ParforThreadPool close 时不需要 awaitTermination
     @Override public void close() {shutdown();}
     
-    public ParforThreadPool(@Range(from=1, to=Integer.MAX_VALUE) int aNumThreads, boolean aNoCompetitive) {
+    /**
+     * @param aNumThreads 线程数
+     * @param aSchedule 默认的任务分配方式
+     * @param aChunkSize 默认的任务块大小，具体意义参看 {@link Conf#PARFOR_CHUNK_SIZE}
+     */
+    public ParforThreadPool(@Range(from=1, to=Integer.MAX_VALUE) int aNumThreads, Schedule aSchedule, @Range(from=1, to=Integer.MAX_VALUE) int aChunkSize) {
         //noinspection ConstantValue
         if (aNumThreads < 1) throw new IllegalArgumentException("Number of threads MUST be greater than 0");
+        //noinspection ConstantValue
+        if (aChunkSize < 1) throw new IllegalArgumentException("Chunk size MUST be greater than 0");
         mPool = aNumThreads==1 ? ExecutorsEX.SERIAL_EXECUTOR : ExecutorsEX.newFixedThreadPool(aNumThreads);
         if (aNumThreads==1) {
             mLocks = null;
@@ -53,11 +100,19 @@ public final class ParforThreadPool implements IThreadPool {
             mLocks = new Lock[aNumThreads];
             for (int i = 0; i < aNumThreads; ++i) mLocks[i] = new ReentrantLock();
         }
-        mNoCompetitive = aNoCompetitive;
+        mSchedule = aSchedule;
+        mChunkSize = aChunkSize;
+    }
+    public ParforThreadPool(@Range(from=1, to=Integer.MAX_VALUE) int aNumThreads, boolean aNoCompetitive) {
+        this(aNumThreads, aNoCompetitive ? Schedule.CYCLIC : Schedule.of(Conf.PARFOR_SCHEDULE), Conf.PARFOR_CHUNK_SIZE);
     }
     public ParforThreadPool(@Range(from=1, to=Integer.MAX_VALUE) int aNumThreads) {
         this(aNumThreads, Conf.PARFOR_NO_COMPETITIVE);
     }
+    /** @return 默认的任务分配方式 */
+    public Schedule schedule() {return mSchedule;}
+    /** @return 默认的任务块大小 */
+    public int chunkSize() {return mChunkSize;}
     
     
     /**
@@ -68,77 +123,124 @@ public final class ParforThreadPool implements IThreadPool {
     public void parfor(final int aSize, final Runnable          aTask      ) {parfor(aSize, (i, threadID) -> aTask.run());}
     public void parfor(final int aSize, final IParforTask       aTask      ) {parfor(aSize, (i, threadID) -> aTask.run(i));}
     public void parfor(final int aSize, final IParforTaskWithID aTaskWithID) {parfor(aSize, null, null, aTaskWithID);}
-    public void parfor(final int aSize, final @Nullable ITaskWithID aInitDo, final @Nullable ITaskWithID aFinalDo, final IParforTaskWithID aTaskWithID) {
-        try {parforWithException(aSize, aInitDo==null ? null : aInitDo::run, aFinalDo==null ? null : aFinalDo::run, aTaskWithID::run);}
+    public void parfor(final int aSize, final @Nullable ITaskWithID aInitDo, final @Nullable ITaskWithID aFinalDo, final IParforTaskWithID aTaskWithID) {parfor(aSize, mSchedule, mChunkSize, aInitDo, aFinalDo, aTaskWithID);}
+    /**
+     * 使用指定的任务分配方式进行 parfor，
+     * 类似 {@code for (int i = 0; i < aSize; ++i)}
+     * <p>
+     * 支持每个线程写入到独立的内存而不需要额外加锁
+     * @param aSchedule 此次调用使用的任务分配方式
+     * @param aChunkSize 此次调用使用的任务块大小，具体意义参看 {@link Conf#PARFOR_CHUNK_SIZE}
+     */
+    public void parfor(final int aSize, Schedule aSchedule, int aChunkSize, final IParforTask       aTask      ) {parfor(aSize, aSchedule, aChunkSize, (i, threadID) -> aTask.run(i));}
+    public void parfor(final int aSize, Schedule aSchedule, int aChunkSize, final IParforTaskWithID aTaskWithID) {parfor(aSize, aSchedule, aChunkSize, null, null, aTaskWithID);}
+    public void parfor(final int aSize, Schedule aSchedule, int aChunkSize, final @Nullable ITaskWithID aInitDo, final @Nullable ITaskWithID aFinalDo, final IParforTaskWithID aTaskWithID) {
+        try {parforWithException(aSize, aSchedule, aChunkSize, aInitDo==null ? null : aInitDo::run, aFinalDo==null ? null : aFinalDo::run, aTaskWithID::run);}
         catch (Exception e) {throw new RuntimeException(e);}
     }
     @ApiStatus.Experimental
     public void parforWithException(final int aSize, final @Nullable ITaskWithIDAndException aInitDo, final @Nullable ITaskWithIDAndException aFinalDo, final IParforTaskWithIDAndException aTaskWithIDAndException) throws Exception {
+        parforWithException(aSize, mSchedule, mChunkSize, aInitDo, aFinalDo, aTaskWithIDAndException);
+    }
+    @ApiStatus.Experimental
+    public void parforWithException(final int aSize, final Schedule aSchedule, final int aChunkSize, final @Nullable ITaskWithIDAndException aInitDo, final @Nullable ITaskWithIDAndException aFinalDo, final IParforTaskWithIDAndException aTaskWithIDAndException) throws Exception {
         if (mDead) throw new RuntimeException("This ParforThreadPool is dead");
+        if (aChunkSize < 1) throw new IllegalArgumentException("Chunk size MUST be greater than 0");
         if (aSize <= 0) return;
-        // 串行的情况
-        if (nthreads() <= 1) {
-            if (aInitDo != null) aInitDo.run(0);
-            for (int i = 0; i < aSize; ++i) aTaskWithIDAndException.run(i, 0);
-            if (aFinalDo != null) aFinalDo.run(0);
+        // 串行的情况，嵌套调用时也直接在当前工作线程中串行，从而避免所有工作线程都在等待内层任务导致的死锁
+        final @Nullable Integer tWorkerID = mWorkerID.get();
+        if (nthreads() <= 1 || tWorkerID != null) {
+            final int tId = tWorkerID==null ? 0 : tWorkerID;
+            if (aInitDo != null) aInitDo.run(tId);
+            for (int i = 0; i < aSize; ++i) aTaskWithIDAndException.run(i, tId);
+            if (aFinalDo != null) aFinalDo.run(tId);
         }
-        // 并行的情况，现在默认不进行分组，使用竞争获取任务的思路来获取任务，保证实际创建的线程在 parfor 任务中不会提前结束，并且可控
-        else synchronized (this) {
-            int tNumThreads = nthreads();
+        // 并行的情况，所有分配方式都保证实际创建的线程在 parfor 任务中不会提前结束，并且可控；
+        // 这里不对整个并行区域加锁，不同调用者的任务会依次进入线程池的队列中，共享相同的工作线程
+        else {
+            final int tNumThreads = nthreads();
             // 获取错误，保留执行中的错误，并在任意一个线程发生错误时中断
             final AtomicReference<Exception> tException = new AtomicReference<>(null);
             final CountDownLatch tLatch = new CountDownLatch(tNumThreads);
-            if (mNoCompetitive) {
-                // 非竞争获取任务
-                for (int id = 0; id < tNumThreads; ++id) {
-                    final int fId = id;
-                    mPool.execute(() -> {
-                        assert mLocks != null;
-                        mLocks[fId].lock(); // 加锁在结束后进行数据同步
-                        try {
-                            if (aInitDo != null) aInitDo.run(fId);
+            // 不同分配方式需要的共享状态
+            final AtomicInteger tCurrentIdx = new AtomicInteger(0);
+            final AtomicLong @Nullable[] tRanges;
+            if (aSchedule == Schedule.STEALING) {
+                tRanges = new AtomicLong[tNumThreads];
+                for (int id = 0; id < tNumThreads; ++id) tRanges[id] = new AtomicLong(packRange_(blockStart_(id, tNumThreads, aSize), blockStart_(id+1, tNumThreads, aSize)));
+            } else {
+                tRanges = null;
+            }
+            for (int id = 0; id < tNumThreads; ++id) {
+                final int fId = id;
+                mPool.execute(() -> {
+                    assert mLocks != null;
+                    mLocks[fId].lock(); // 加锁在结束后进行数据同步
+                    mWorkerID.set(fId);
+                    try {
+                        if (aInitDo != null) aInitDo.run(fId);
+                        switch (aSchedule) {
+                        case STATIC: {
+                            final int tEnd = blockStart_(fId+1, tNumThreads, aSize);
+                            for (int i = blockStart_(fId, tNumThreads, aSize); i < tEnd; ++i) {
+                                aTaskWithIDAndException.run(i, fId);
+                            }
+                            break;
+                        }
+                        case CYCLIC: {
                             for (int i = fId; i < aSize; i += tNumThreads) {
                                 aTaskWithIDAndException.run(i, fId);
                             }
-                            if (aFinalDo != null) aFinalDo.run(fId);
-                        } catch (Exception e) {
-                            tException.set(e);
+                            break;
                         }
-                        // 认为不会在其他地方抛出错误，因此不做额外的 try-finally 操作
-                        mLocks[fId].unlock();
-                        tLatch.countDown();
-                    });
-                }
-            } else {
-                // 竞争获取任务
-                final AtomicInteger currentIdx = new AtomicInteger(0);
-                for (int id = 0; id < tNumThreads; ++id) {
-                    final int fId = id;
-                    mPool.execute(() -> {
-                        assert mLocks != null;
-                        mLocks[fId].lock(); // 加锁在结束后进行数据同步
-                        try {
-                            if (aInitDo != null) aInitDo.run(fId);
+                        case DYNAMIC: case GUIDED: {
+                            final boolean tGuided = aSchedule==Schedule.GUIDED;
                             while (true) {
                                 if (tException.get() != null) break;
-                                int i, ipp;
-                                // 采用 CAS 自旋锁来避免同步（虽然简单测试下来都没有什么性能损失）
-                                do {
-                                    i = currentIdx.get();
-                                    ipp = i + 1;
-                                } while (!currentIdx.compareAndSet(i, ipp));
-                                if (i >= aSize) break;
-                                aTaskWithIDAndException.run(i, fId);
+                                int tStart = tCurrentIdx.get();
+                                if (tStart >= aSize) break;
+                                int tChunk = tGuided ? Math.max(aChunkSize, (aSize-tStart)/(tNumThreads+tNumThreads)) : aChunkSize;
+                                int tEnd = tStart + Math.min(tChunk, aSize-tStart);
+                                // 采用 CAS 自旋锁来避免同步，并且限制不会超过 aSize 从而避免溢出
+                                if (!tCurrentIdx.compareAndSet(tStart, tEnd)) continue;
+                                for (int i = tStart; i < tEnd; ++i) aTaskWithIDAndException.run(i, fId);
+                            }
+                            break;
+                        }
+                        case STEALING: {
+                            assert tRanges != null;
+                            final AtomicLong tRange = tRanges[fId];
+                            while (true) {
+                                if (tException.get() != null) break;
+                                // 从自己的块的头部获取任务
+                                long tOld = tRange.get();
+                                int tLo = rangeLo_(tOld), tHi = rangeHi_(tOld);
+                                if (tLo < tHi) {
+                                    int tEnd = tLo + Math.min(aChunkSize, tHi-tLo);
+                                    if (!tRange.compareAndSet(tOld, packRange_(tEnd, tHi))) continue;
+                                    for (int i = tLo; i < tEnd; ++i) aTaskWithIDAndException.run(i, fId);
+                                    continue;
+                                }
+                                // 自己的块已经完成，从其他线程的块的尾部窃取一半，这里自己的块为空因此不会被其他线程修改
+                                if (!stealRange_(tRanges, fId, aChunkSize)) break;
                             }
-                            if (aFinalDo != null) aFinalDo.run(fId);
-                        } catch (Exception e) {
-                            tException.set(e);
+                            break;
                         }
-                        // 认为不会在其他地方抛出错误，因此不做额外的 try-finally 操作
+                        default: {
+                            throw new IllegalStateException();
+                        }}
+                        if (aFinalDo != null) aFinalDo.run(fId);
+                    } catch (Exception e) {
+                        tException.set(e);
+                    } catch (Throwable e) {
+                        tException.set(new RuntimeException(e));
+                    } finally {
+                        // 无论是否出错都需要释放锁并计数，避免调用者一直等待
+                        mWorkerID.remove();
                         mLocks[fId].unlock();
                         tLatch.countDown();
-                    });
-                }
+                    }
+                });
             }
             // 使用 CountDownLatch 来等待线程池工作完成
             try {tLatch.await();}
@@ -148,6 +250,92 @@ public final class ParforThreadPool implements IThreadPool {
         }
     }
     
+    /**
+     * 并行的归约操作，每个线程使用独立的累加器，类似：
+     * <pre> {@code
+     * def acc = init(0)
+     * for (int i = 0; i < aSize; ++i) task(acc, i, 0)
+     * return acc
+     * } </pre>
+     * 最后使用 {@link #parmerge} 并行地以二叉树的方式合并所有线程的累加器
+     * <p>
+     * 累加器会在每个启动的工作线程的 initDo 中创建，即使此线程最终没有分配到任务；
+     * 嵌套调用时会直接在当前工作线程中串行，因此只会创建一个累加器
+     * @param aSize 需要遍历的数目
+     * @param aInit 根据 threadID 创建每个线程独立的累加器
+     * @param aTask 每个任务的具体操作，直接将结果累加到输入的累加器中
+     * @param aMerger 将两个累加器合并的操作，结果写入第一个累加器
+     * @return 合并后的累加器，{@code aSize <= 0} 时为 {@code aInit.apply(0)}
+     * @see #parmerge(Object[], IReduceMerger)
+     */
+    public <T> T parreduce(final int aSize, final IntFunction<? extends T> aInit, final IParreduceTask<? super T> aTask, final IReduceMerger<T> aMerger) {
+        if (aSize <= 0) return aInit.apply(0);
+        final Object[] tAccs = new Object[nthreads()];
+        parfor(aSize, threadID -> {
+            if (tAccs[threadID] == null) tAccs[threadID] = aInit.apply(threadID);
+        }, null, (i, threadID) -> {
+            @SuppressWarnings("unchecked") T tAcc = (T)tAccs[threadID];
+            aTask.run(tAcc, i, threadID);
+        });
+        @SuppressWarnings("unchecked") T[] tAccsT = (T[])tAccs;
+        parmerge(tAccsT, aMerger);
+        return tAccsT[0];
+    }
+    /**
+     * 并行地以二叉树的方式合并所有累加器，最终结果存储在 {@code rAccumulators[0]} 中，
+     * 每一轮合并 {@code rAccumulators[i] <- rAccumulators[i+stride]}，共需要 {@code log2(n)} 轮；
+     * 数组中为 {@code null} 的累加器会直接跳过
+     * <p>
+     * 注意合并后除了第一个以外的累加器也会被修改
+     * @param rAccumulators 需要合并的累加器
+     * @param aMerger 将两个累加器合并的操作，结果写入第一个累加器
+     */
+    public <T> void parmerge(final T[] rAccumulators, final IReduceMerger<T> aMerger) {
+        final int tNum = rAccumulators.length;
+        for (int tStride = 1; tStride < tNum; tStride += tStride) {
+            final int fStride = tStride;
+            final int tPairNum = (tNum - tStride + (tStride+tStride) - 1) / (tStride+tStride);
+            parfor(tPairNum, p -> {
+                final int i = p * (fStride+fStride);
+                final int j = i + fStride;
+                final T tSrc = rAccumulators[j];
+                if (tSrc == null) return;
+                if (rAccumulators[i] == null) rAccumulators[i] = tSrc;
+                else aMerger.merge(rAccumulators[i], tSrc);
+            });
+        }
+    }
+    
+    /** 均匀分块时第 aBlock 块的起始位置 */
+    private static int blockStart_(int aBlock, int aBlockNum, int aSize) {return (int)((long)aSize * aBlock / aBlockNum);}
+    /** 将 {@code [aLo, aHi)} 的任务范围打包到一个 long 中，从而可以原子的修改 */
+    private static long packRange_(int aLo, int aHi) {return (((long)aHi) << 32) | (aLo & 0xFFFFFFFFL);}
+    private static int rangeLo_(long aRange) {return (int)aRange;}
+    private static int rangeHi_(long aRange) {return (int)(aRange >>> 32);}
+    /**
+     * 从其他线程的剩余任务中窃取一半到 {@code aRanges[aId]} 中，
+     * 只会窃取剩余任务数大于 aChunkSize 的线程，否则直接让原本的线程完成会更快
+     * @return 是否成功窃取，所有线程都没有可以窃取的任务时返回 {@code false}
+     */
+    private static boolean stealRange_(AtomicLong[] aRanges, int aId, int aChunkSize) {
+        final int tNum = aRanges.length;
+        for (int k = 1; k < tNum; ++k) {
+            final AtomicLong tVictim = aRanges[(aId+k) % tNum];
+            while (true) {
+                long tOld = tVictim.get();
+                int tLo = rangeLo_(tOld), tHi = rangeHi_(tOld);
+                int tRest = tHi - tLo;
+                if (tRest <= aChunkSize) break;
+                int tMid = tHi - tRest/2;
+                if (tVictim.compareAndSet(tOld, packRange_(tLo, tMid))) {
+                    aRanges[aId].set(packRange_(tMid, tHi));
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
     /**
      * 类似 {@code while (aChecker.noBreak())}
      * <p>
@@ -164,14 +352,16 @@ public final class ParforThreadPool implements IThreadPool {
         if (mDead) throw new RuntimeException("This ParforThreadPool is dead");
         // 特殊情况直接退出
         if (!aChecker.noBreak()) return;
-        // 串行的情况
-        if (nthreads() <= 1) {
-            if (aInitDo != null) aInitDo.run(0);
-            while (aChecker.noBreak()) aTaskWithID.run(0);
-            if (aFinalDo != null) aFinalDo.run(0);
+        // 串行的情况，嵌套调用时也直接在当前工作线程中串行
+        final @Nullable Integer tWorkerID = mWorkerID.get();
+        if (nthreads() <= 1 || tWorkerID != null) {
+            final int tId = tWorkerID==null ? 0 : tWorkerID;
+            if (aInitDo != null) aInitDo.run(tId);
+            while (aChecker.noBreak()) aTaskWithID.run(tId);
+            if (aFinalDo != null) aFinalDo.run(tId);
         }
         // 并行的情况，现在默认不进行分组，使用竞争获取任务的思路来获取任务，保证实际创建的线程在 parwhile 任务中不会提前结束，并且可控
-        else synchronized (this) {
+        else {
             int tNumThreads = nthreads();
             // 获取错误，保留执行中的错误，并在任意一个线程发生错误时中断
             final AtomicReference<Throwable> tThrowable = new AtomicReference<>(null);
@@ -182,20 +372,27 @@ public final class ParforThreadPool implements IThreadPool {
                 mPool.execute(() -> {
                     assert mLocks != null;
                     mLocks[fId].lock(); // 加锁在结束后进行数据同步
-                    if (aInitDo != null) aInitDo.run(fId);
-                    while (true) {
-                        if (tThrowable.get() != null) break;
-                        try {
-                            synchronized (aChecker) {if (!aChecker.noBreak()) break;}
-                            aTaskWithID.run(fId);
-                        } catch (Throwable e) {
-                            tThrowable.set(e); break;
+                    mWorkerID.set(fId);
+                    try {
+                        if (aInitDo != null) aInitDo.run(fId);
+                        while (true) {
+                            if (tThrowable.get() != null) break;
+                            try {
+                                synchronized (aChecker) {if (!aChecker.noBreak()) break;}
+                                aTaskWithID.run(fId);
+                            } catch (Throwable e) {
+                                tThrowable.set(e); break;
+                            }
                         }
+                        if (aFinalDo != null) aFinalDo.run(fId);
+                    } catch (Throwable e) {
+                        tThrowable.set(e);
+                    } finally {
+                        // 即使 initDo 或 finalDo 出错也需要释放锁并计数，避免调用者一直等待
+                        mWorkerID.remove();
+                        mLocks[fId].unlock();
+                        tLatch.countDown();
                     }
-                    if (aFinalDo != null) aFinalDo.run(fId);
-                    // 认为不会在其他地方抛出错误，因此不做额外的 try-finally 操作
-                    mLocks[fId].unlock();
-                    tLatch.countDown();
                 });
             }
             // 使用 CountDownLatch 来等待线程池工作完成
@@ -214,4 +411,6 @@ public final class ParforThreadPool implements IThreadPool {
     @FunctionalInterface public interface IParforTaskWithIDAndException {void run(int i, int threadID) throws Exception;}
     @FunctionalInterface public interface IParwhileChecker {boolean noBreak();}
     @FunctionalInterface public interface IParwhileTaskWithID {void run(int threadID);}
+    @FunctionalInterface public interface IParreduceTask<T> {void run(T rAccumulator, int i, int threadID);}
+    @FunctionalInterface public interface IReduceMerger<T> {void merge(T rDst, T aSrc);}
 }
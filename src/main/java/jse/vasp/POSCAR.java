@@ -21,6 +21,7 @@ import jse.math.vector.Vectors;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
 import org.jetbrains.annotations.VisibleForTesting;
 
 import java.io.BufferedReader;
@@ -704,6 +705,17 @@ public class POSCAR extends AbstractSettableAtomData {
     public static POSCAR read(BufferedReader aReader) throws IOException {
         return read_(aReader, new Header());
     }
+    /**
+     * 并行批量读取大量的 POSCAR 文件，单个文件读取失败不会中断读取
+     * @param aDirOrGlob 需要读取的文件夹，glob 通配符或者单个文件
+     * @param aThreadNum 读取使用的线程数
+     * @return 读取结果，包含成功读取的 {@link POSCAR} 以及失败报告
+     * @throws IOException 如果无法列出需要读取的文件
+     * @see VaspBatch#readPOSCARs(String, int)
+     */
+    public static VaspBatch.Result<POSCAR> readAll(String aDirOrGlob, @Range(from=1, to=Integer.MAX_VALUE) int aThreadNum) throws IOException {
+        return VaspBatch.readPOSCARs(aDirOrGlob, aThreadNum);
+    }
     static @Nullable Header readHeader_(BufferedReader aReader) throws IOException {
         String tLine;
         String[] tTokens;
@@ -796,25 +808,25 @@ public class POSCAR extends AbstractSettableAtomData {
             tRow.fill(IO.Text.str2data(tLine, 3));
         }
         
-        // 判断是否是 prism 并据此创建 VaspBox
-        IVector aBoxA = rHeader.boxA;
-        IVector aBoxB = rHeader.boxB;
-        IVector aBoxC = rHeader.boxC;
+        VaspBox aBox = toBox_(rHeader.boxScale, rHeader.boxA, rHeader.boxB, rHeader.boxC);
+        // 返回 POSCAR
+        return new POSCAR(rHeader.comment, aBox, rHeader.typeNames, rHeader.numAtomsVec, rHeader.selectiveDynamics, aDirect, rHeader.isCartesian);
+    }
+    /** 判断是否是 prism 并据此创建 VaspBox */
+    static VaspBox toBox_(double aBoxScale, IVector aBoxA, IVector aBoxB, IVector aBoxC) {
         boolean tNotPrism =
                MathEX.Code.numericEqual(aBoxA.get(1), 0.0) && MathEX.Code.numericEqual(aBoxA.get(2), 0.0)
             && MathEX.Code.numericEqual(aBoxB.get(0), 0.0) && MathEX.Code.numericEqual(aBoxB.get(2), 0.0)
             && MathEX.Code.numericEqual(aBoxC.get(0), 0.0) && MathEX.Code.numericEqual(aBoxC.get(1), 0.0)
             ;
-        VaspBox aBox = tNotPrism ?
-            new VaspBox(aBoxA.get(0), aBoxB.get(1), aBoxC.get(2), rHeader.boxScale) :
+        return tNotPrism ?
+            new VaspBox(aBoxA.get(0), aBoxB.get(1), aBoxC.get(2), aBoxScale) :
             new VaspBoxPrism(
                 aBoxA.get(0), aBoxA.get(1), aBoxA.get(2),
                 aBoxB.get(0), aBoxB.get(1), aBoxB.get(2),
                 aBoxC.get(0), aBoxC.get(1), aBoxC.get(2),
-                rHeader.boxScale
+                aBoxScale
             );
-        // 返回 POSCAR
-        return new POSCAR(rHeader.comment, aBox, rHeader.typeNames, rHeader.numAtomsVec, rHeader.selectiveDynamics, aDirect, rHeader.isCartesian);
     }
     
     /**
@@ -0,0 +1,352 @@
+package jse.vasp;
+
+import jse.code.IO;
+import jse.code.io.BlockGzip;
+import jse.code.io.CharScanner;
+import jse.math.matrix.RowMatrix;
+import jse.math.vector.IVector;
+import jse.math.vector.IntVector;
+import jse.math.vector.Vectors;
+import jse.parallel.ParforThreadPool;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Range;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * 批量读取大量 vasp 的 POSCAR 或者 XDATCAR 文件，主要用于高通量计算的数据集整理
+ * <p>
+ * 相比逐个调用 {@link POSCAR#read(String)}，这里会在线程池中并行读取不同的文件，
+ * 每个文件会一次性读取全部字节后直接在 {@code char[]} 上解析，
+ * 不会为原子数据的每一行创建 {@link String}；
+ * 单个文件读取失败不会中断整体的读取，而是记录在返回结果的失败报告中，例如：
+ * <pre> {@code
+ * def res = VaspBatch.readPOSCARs('dataset/structures', 8)
+ * println(res.report())
+ * for (data in res.data()) {...}
+ * } </pre>
+ * 输入的路径支持：
+ * <ul>
+ *   <li> 文件夹，会读取其中的所有文件（不包括子文件夹） </li>
+ *   <li> glob 通配符，例如 <code>dataset/*&#47;POSCAR</code> 或者 <code>dataset/**&#47;CONTCAR</code>，语法和 {@link FileSystem#getPathMatcher(String)} 一致 </li>
+ *   <li> 单个文件 </li>
+ * </ul>
+ * 读取的结果总是会按照文件路径排序，支持 {@code .gz} 压缩文件；只支持 ASCII 兼容的编码
+ *
+ * @see POSCAR#readAll(String, int)
+ * @see XDATCAR#readAll(String, int)
+ * @author liqa
+ */
+public class VaspBatch {
+    private VaspBatch() {}
+    
+    /**
+     * 批量读取的结果，包含成功读取的数据以及失败的文件和对应的错误
+     * @param <T> 读取的数据类型
+     */
+    public final static class Result<T> {
+        private final List<String> mPaths;
+        private final List<T> mData;
+        private final Map<String, Throwable> mFailures;
+        private final int mTotal;
+        Result(List<String> aPaths, List<T> aData, Map<String, Throwable> aFailures, int aTotal) {
+            mPaths = aPaths; mData = aData; mFailures = aFailures; mTotal = aTotal;
+        }
+        /** @return 成功读取的数据，按照文件路径排序 */
+        public List<T> data() {return mData;}
+        /** @return 成功读取的数据对应的文件路径，和 {@link #data()} 一一对应 */
+        public List<String> paths() {return mPaths;}
+        /** @return 读取失败的文件路径以及对应的错误，按照文件路径排序 */
+        public Map<String, Throwable> failures() {return mFailures;}
+        /** @return 成功读取的文件数 */
+        public int size() {return mData.size();}
+        /** @return 匹配到的总文件数 */
+        public int total() {return mTotal;}
+        public boolean hasFailure() {return !mFailures.isEmpty();}
+        /** @return 人类可读的读取报告，包含每个失败的文件以及错误信息 */
+        public String report() {
+            StringBuilder rReport = new StringBuilder();
+            rReport.append("Loaded ").append(mData.size()).append('/').append(mTotal).append(" files");
+            if (mFailures.isEmpty()) return rReport.toString();
+            rReport.append(", ").append(mFailures.size()).append(" failed:");
+            for (Map.Entry<String, Throwable> tEntry : mFailures.entrySet()) {
+                rReport.append("\n  ").append(tEntry.getKey()).append(": ").append(tEntry.getValue());
+            }
+            return rReport.toString();
+        }
+    }
+    
+    /**
+     * 并行批量读取 POSCAR 文件，对于包含多帧的文件（例如 XDATCAR）只会读取第一帧
+     * @param aDirOrGlob 需要读取的文件夹，glob 通配符或者单个文件
+     * @param aThreadNum 读取使用的线程数
+     * @return 读取结果，包含成功读取的 {@link POSCAR} 以及失败报告
+     * @throws IOException 如果无法列出需要读取的文件
+     */
+    public static Result<POSCAR> readPOSCARs(String aDirOrGlob, @Range(from=1, to=Integer.MAX_VALUE) int aThreadNum) throws IOException {
+        return readAll_(aDirOrGlob, aThreadNum, false, aParser -> {
+            POSCAR tPOSCAR = aParser.next(false);
+            if (tPOSCAR == null) throw new IOException("Incomplete POSCAR");
+            return tPOSCAR;
+        });
+    }
+    /**
+     * 并行批量读取 XDATCAR 文件，和 {@link XDATCAR#read(String)} 一致，遇到文件不完整的情况会直接截断最后不完整的帧
+     * @param aDirOrGlob 需要读取的文件夹，glob 通配符或者单个文件
+     * @param aThreadNum 读取使用的线程数
+     * @return 读取结果，包含成功读取的 {@link XDATCAR} 以及失败报告
+     * @throws IOException 如果无法列出需要读取的文件
+     */
+    public static Result<XDATCAR> readXDATCARs(String aDirOrGlob, @Range(from=1, to=Integer.MAX_VALUE) int aThreadNum) throws IOException {
+        return readAll_(aDirOrGlob, aThreadNum, true, aParser -> {
+            List<POSCAR> rFrames = new ArrayList<>();
+            POSCAR tFrame;
+            while ((tFrame = aParser.next(true)) != null) rFrames.add(tFrame);
+            return new XDATCAR(rFrames);
+        });
+    }
+    
+    /**
+     * 列出输入的文件夹，glob 通配符或者单个文件对应的所有文件
+     * @param aDirOrGlob 需要列出的文件夹，glob 通配符或者单个文件
+     * @return 排序后的文件路径
+     * @throws IOException 如果无法列出文件
+     */
+    public static List<String> listFiles(String aDirOrGlob) throws IOException {
+        List<String> rFiles = new ArrayList<>();
+        int tGlobIdx = -1;
+        for (int i = 0; i < aDirOrGlob.length(); ++i) {
+            char c = aDirOrGlob.charAt(i);
+            if (c=='*' || c=='?' || c=='[' || c=='{') {tGlobIdx = i; break;}
+        }
+        if (tGlobIdx < 0) {
+            Path tPath = IO.toAbsolutePath_(aDirOrGlob);
+            if (Files.isDirectory(tPath)) {
+                try (Stream<Path> tStream = Files.list(tPath)) {
+                    tStream.filter(Files::isRegularFile).forEach(path -> rFiles.add(path.toString()));
+                }
+            } else {
+                if (!Files.isRegularFile(tPath)) throw new NoSuchFileException(aDirOrGlob);
+                rFiles.add(tPath.toString());
+            }
+        } else {
+            int tSepIdx = aDirOrGlob.lastIndexOf('/', tGlobIdx);
+            String tBase = tSepIdx < 0 ? "" : aDirOrGlob.substring(0, tSepIdx+1);
+            String tPattern = aDirOrGlob.substring(tSepIdx+1);
+            final Path tBasePath = IO.toAbsolutePath_(tBase);
+            final PathMatcher tMatcher = tBasePath.getFileSystem().getPathMatcher("glob:"+tPattern);
+            int tDepth = Integer.MAX_VALUE;
+            if (!tPattern.contains("**")) {
+                tDepth = 1;
+                for (int i = 0; i < tPattern.length(); ++i) if (tPattern.charAt(i) == '/') ++tDepth;
+            }
+            // 使用 walkFileTree 直接复用遍历时获取的属性，避免对每个文件再次查询
+            Files.walkFileTree(tBasePath, EnumSet.noneOf(FileVisitOption.class), tDepth, new SimpleFileVisitor<Path>() {
+                @Override public FileVisitResult visitFile(Path aFile, BasicFileAttributes aAttrs) {
+                    if (aAttrs.isRegularFile() && tMatcher.matches(tBasePath.relativize(aFile))) rFiles.add(aFile.toString());
+                    return FileVisitResult.CONTINUE;
+                }
+                @Override public FileVisitResult visitFileFailed(Path aFile, IOException aErr) {return FileVisitResult.CONTINUE;}
+            });
+        }
+        Collections.sort(rFiles);
+        return rFiles;
+    }
+    
+    @FunctionalInterface private interface IFileReader<T> {T read(Parser_ aParser) throws Exception;}
+    
+    @SuppressWarnings("unchecked")
+    private static <T> Result<T> readAll_(String aDirOrGlob, int aThreadNum, boolean aAllowTruncate, final IFileReader<T> aReader) throws IOException {
+        if (aThreadNum < 1) throw new IllegalArgumentException("Thread number MUST be positive: "+aThreadNum);
+        final List<String> tFiles = listFiles(aDirOrGlob);
+        final int tFileNum = tFiles.size();
+        final Object[] tOut = new Object[tFileNum];
+        final Throwable[] tErr = new Throwable[tFileNum];
+        final Parser_[] tParsers = new Parser_[aThreadNum];
+        for (int i = 0; i < aThreadNum; ++i) tParsers[i] = new Parser_(aAllowTruncate);
+        try (ParforThreadPool tPool = new ParforThreadPool(aThreadNum)) {
+            tPool.parfor(tFileNum, (i, threadID) -> {
+                Parser_ tParser = tParsers[threadID];
+                try {
+                    tParser.load(tFiles.get(i));
+                    tOut[i] = aReader.read(tParser);
+                } catch (Exception e) {
+                    tErr[i] = e;
+                }
+            });
+        }
+        List<String> rPaths = new ArrayList<>(tFileNum);
+        List<T> rData = new ArrayList<>(tFileNum);
+        Map<String, Throwable> rFailures = new LinkedHashMap<>();
+        for (int i = 0; i < tFileNum; ++i) {
+            if (tErr[i] != null) {
+                rFailures.put(tFiles.get(i), tErr[i]);
+            } else {
+                rPaths.add(tFiles.get(i));
+                rData.add((T)tOut[i]);
+            }
+        }
+        return new Result<>(rPaths, rData, rFailures, tFileNum);
+    }
+    
+    /** 直接在 {@code char[]} 上解析 POSCAR 的解析器，每个线程使用一个，从而复用内部的缓存 */
+    private final static class Parser_ {
+        private final boolean mAllowTruncate;
+        private char[] mChars = new char[0];
+        private int mLen = 0, mPos = 0;
+        private int mLineStart = 0, mLineEnd = 0;
+        private final boolean[] mAnyErr = {false};
+        /** 上一个完整的头，用于读取共享头的 XDATCAR */
+        private boolean mHasHeader = false;
+        private @Nullable String mComment = null;
+        private double mBoxScale = 1.0;
+        private IVector mBoxA, mBoxB, mBoxC;
+        private String @Nullable[] mTypeNames = null;
+        private IntVector mNumAtomsVec;
+        private boolean mSelectiveDynamics = false;
+        
+        Parser_(boolean aAllowTruncate) {mAllowTruncate = aAllowTruncate;}
+        
+        void load(String aPath) throws IOException {
+            Path tPath = IO.toAbsolutePath_(aPath);
+            ByteBuffer tBuf;
+            if (BlockGzip.isGzip(tPath)) {
+                tBuf = BlockGzip.decompress(tPath, null);
+            } else {
+                tBuf = ByteBuffer.wrap(Files.readAllBytes(tPath));
+            }
+            mLen = tBuf.remaining();
+            if (mChars.length < mLen) mChars = new char[mLen];
+            // 只支持 ASCII 兼容的编码，直接扩展即可
+            final int tBase = tBuf.position();
+            for (int i = 0; i < mLen; ++i) mChars[i] = (char)(tBuf.get(tBase+i) & 0xFF);
+            mPos = 0;
+            mHasHeader = false;
+        }
+        
+        private boolean nextLine() {
+            if (mPos >= mLen) return false;
+            mLineStart = mPos;
+            while (mPos < mLen && mChars[mPos] != '\n') ++mPos;
+            mLineEnd = mPos;
+            if (mLineEnd > mLineStart && mChars[mLineEnd-1] == '\r') --mLineEnd;
+            if (mPos < mLen) ++mPos;
+            return true;
+        }
+        private String line() {return new String(mChars, mLineStart, mLineEnd-mLineStart);}
+        private int countTokens() {
+            int rNum = 0;
+            int i = mLineStart;
+            while (true) {
+                while (i < mLineEnd && mChars[i] <= ' ') ++i;
+                if (i >= mLineEnd) return rNum;
+                ++rNum;
+                while (i < mLineEnd && mChars[i] > ' ') ++i;
+            }
+        }
+        /** 读取此行的前 {@code aNum} 个数字，和 {@link IO.Text#str2data(String, int)} 不同的是数据不足时会直接报错 */
+        private void parseDoubles(int aNum, double[] rData, int aShift) {
+            int i = mLineStart;
+            for (int j = 0; j < aNum; ++j) {
+                while (i < mLineEnd && mChars[i] <= ' ') ++i;
+                if (i >= mLineEnd) throw new NumberFormatException("Expected "+aNum+" numbers in line: "+line());
+                int tStart = i;
+                while (i < mLineEnd && mChars[i] > ' ') ++i;
+                rData[aShift+j] = CharScanner.parseDoubleFromTo(false, mAnyErr, mChars, tStart, i);
+            }
+        }
+        private IVector parseVec3() {
+            double[] rData = new double[3];
+            parseDoubles(3, rData, 0);
+            return Vectors.from(rData);
+        }
+        /** @return 此行的所有整数，如果有任何一项不是整数则返回 {@code null} */
+        private int @Nullable[] parseInts() {
+            int[] rData = new int[countTokens()];
+            int i = mLineStart;
+            for (int j = 0; j < rData.length; ++j) {
+                while (mChars[i] <= ' ') ++i;
+                int tStart = i;
+                while (i < mLineEnd && mChars[i] > ' ') ++i;
+                int tFrom = mChars[tStart]=='-' || mChars[tStart]=='+' ? tStart+1 : tStart;
+                if (tFrom >= i || i-tFrom > 9) return null;
+                for (int k = tFrom; k < i; ++k) if (mChars[k]<'0' || mChars[k]>'9') return null;
+                int tValue = CharScanner.parseIntFromTo(false, mAnyErr, mChars, tFrom, i);
+                rData[j] = mChars[tStart]=='-' ? -tValue : tValue;
+            }
+            return rData;
+        }
+        
+        /**
+         * 读取下一帧，逻辑和 {@link POSCAR#read_} 一致
+         * @param aAllowShared 是否允许没有头的帧，此时会使用上一个头，用于读取共享头的 XDATCAR
+         * @return 读取得到的帧，文件结束时返回 {@code null}
+         */
+        @Nullable POSCAR next(boolean aAllowShared) throws IOException {
+            // 第一行为 Comment 或者是 Direct configuration = 1，这里暂时不能确定
+            if (!nextLine()) return null;
+            String tComment = line();
+            if (!nextLine()) return truncated_();
+            boolean tIsCartesian;
+            boolean tHasAtomLine = false;
+            if (countTokens() >= 3) {
+                // 没有头的帧，此行已经是原子数据
+                if (!aAllowShared || !mHasHeader) throw new IOException("Missing POSCAR header before: "+tComment);
+                tIsCartesian = IO.Text.containsIgnoreCase(tComment, "Cartesian");
+                if (!tIsCartesian && !IO.Text.containsIgnoreCase(tComment, "Direct")) throw new IOException("Can ONLY read Direct or Cartesian POSCAR");
+                tHasAtomLine = true;
+            } else {
+                mHasHeader = false;
+                mComment = tComment;
+                double[] tScale = new double[1];
+                parseDoubles(1, tScale, 0);
+                mBoxScale = tScale[0];
+                if (!nextLine()) return truncated_(); mBoxA = parseVec3();
+                if (!nextLine()) return truncated_(); mBoxB = parseVec3();
+                if (!nextLine()) return truncated_(); mBoxC = parseVec3();
+                // 读取原子种类（可选）和对应数目的信息
+                if (!nextLine()) return truncated_();
+                int @Nullable[] tNumAtoms = parseInts();
+                if (tNumAtoms != null) {
+                    mTypeNames = null;
+                } else {
+                    mTypeNames = IO.Text.splitBlank(line());
+                    if (!nextLine()) return truncated_();
+                    tNumAtoms = parseInts();
+                    if (tNumAtoms == null) throw new IOException("Invalid atom numbers line: "+line());
+                }
+                mNumAtomsVec = new IntVector(tNumAtoms);
+                if (!nextLine()) return truncated_();
+                String tLine = line();
+                // 可选的注释行
+                mSelectiveDynamics = tLine.trim().equalsIgnoreCase("Selective dynamics");
+                if (mSelectiveDynamics) {
+                    if (!nextLine()) return truncated_();
+                    tLine = line();
+                }
+                tIsCartesian = IO.Text.containsIgnoreCase(tLine, "Cartesian");
+                if (!tIsCartesian && !IO.Text.containsIgnoreCase(tLine, "Direct")) throw new IOException("Can ONLY read Direct or Cartesian POSCAR");
+                mHasHeader = true;
+            }
+            // 读取原子数据
+            int tNumAtoms = mNumAtomsVec.sum();
+            double[] rDirect = new double[tNumAtoms*3];
+            for (int i = 0; i < tNumAtoms; ++i) {
+                if (tHasAtomLine) {tHasAtomLine = false;}
+                else if (!nextLine()) return truncated_();
+                parseDoubles(3, rDirect, i*3);
+            }
+            VaspBox tBox = POSCAR.toBox_(mBoxScale, mBoxA, mBoxB, mBoxC);
+            return new POSCAR(mComment, tBox, mTypeNames, mNumAtomsVec, mSelectiveDynamics, new RowMatrix(tNumAtoms, 3, rDirect), tIsCartesian);
+        }
+        private @Nullable POSCAR truncated_() throws IOException {
+            if (mAllowTruncate) return null;
+            throw new IOException("Unexpected end of file");
+        }
+    }
+}
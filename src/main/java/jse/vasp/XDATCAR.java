@@ -7,6 +7,8 @@ import jse.code.UT;
 import jse.code.collection.AbstractListWrapper;
 import jse.code.collection.IListGetter;
 import jse.code.collection.NewCollections;
+import jse.code.io.AsyncFrameWriter;
+import jse.code.io.FramePipeline;
 import org.jetbrains.annotations.Range;
 
 import java.io.BufferedReader;
@@ -383,6 +385,89 @@ public class XDATCAR extends AbstractListWrapper<POSCAR, IAtomData, POSCAR> {
         return new XDATCAR(rXDATCAR);
     }
     
+    /**
+     * 并行批量读取大量的 XDATCAR 文件，单个文件读取失败不会中断读取
+     * @param aDirOrGlob 需要读取的文件夹，glob 通配符或者单个文件
+     * @param aThreadNum 读取使用的线程数
+     * @return 读取结果，包含成功读取的 {@link XDATCAR} 以及失败报告
+     * @throws IOException 如果无法列出需要读取的文件
+     * @see VaspBatch#readXDATCARs(String, int)
+     */
+    public static VaspBatch.Result<XDATCAR> readAll(String aDirOrGlob, @Range(from=1, to=Integer.MAX_VALUE) int aThreadNum) throws IOException {
+        return VaspBatch.readXDATCARs(aDirOrGlob, aThreadNum);
+    }
+    
+    /**
+     * 获取流水线读取 vasp 输出的 XDATCAR 文件的读取器，单独的线程划分每一帧，
+     * 并在线程池中并行解析每一帧以及进行后续分析，结果会按照帧的顺序返回；
+     * 对于共享头的 XDATCAR 会自动将头补充到每一帧中
+     *
+     * @param aFilePath vasp 输出的 XDATCAR 文件路径，支持 {@code .gz} 压缩文件
+     * @param aThreadNum 解析和分析使用的线程数
+     * @return 流水线读取器，只有在实际遍历时才会打开文件
+     * @see FramePipeline
+     */
+    public static FramePipeline<POSCAR> pipeline(String aFilePath, @Range(from=1, to=Integer.MAX_VALUE) int aThreadNum) {
+        return new FramePipeline<>(aFilePath, XDATCAR::splitter_, POSCAR::read, aThreadNum);
+    }
+    /** 和 {@link POSCAR#readHeader_} 相同的逻辑判断是否有头，从而保证每一帧都是完整的 POSCAR */
+    private static FramePipeline.ISplitter splitter_() {
+        final StringBuilder rHeader = new StringBuilder();
+        final int[] rNumAtoms = {-1};
+        return aReader -> {
+            String tFirst = aReader.readLine(); if (tFirst == null) return null;
+            String tLine = aReader.readLine(); if (tLine == null) return null;
+            StringBuilder rFrame = new StringBuilder();
+            if (IO.Text.splitBlank(tLine).length >= 3) {
+                // 没有头，第一行即为 Direct configuration，此行已经是原子数据
+                if (rNumAtoms[0] < 0) return null;
+                rFrame.append(rHeader).append(tFirst).append('\n').append(tLine).append('\n');
+                for (int i = 1; i < rNumAtoms[0]; ++i) {
+                    tLine = aReader.readLine(); if (tLine == null) break;
+                    rFrame.append(tLine).append('\n');
+                }
+                return rFrame.toString();
+            }
+            rHeader.setLength(0);
+            rHeader.append(tFirst).append('\n').append(tLine).append('\n');
+            for (int i = 0; i < 3; ++i) {
+                tLine = aReader.readLine(); if (tLine == null) return null;
+                rHeader.append(tLine).append('\n');
+            }
+            // 原子种类（可选）和对应数目
+            tLine = aReader.readLine(); if (tLine == null) return null;
+            rHeader.append(tLine).append('\n');
+            int tNumAtoms = sumInts_(tLine);
+            if (tNumAtoms < 0) {
+                tLine = aReader.readLine(); if (tLine == null) return null;
+                rHeader.append(tLine).append('\n');
+                tNumAtoms = sumInts_(tLine);
+                if (tNumAtoms < 0) throw new IOException("Invalid atom numbers line in XDATCAR: "+tLine);
+            }
+            tLine = aReader.readLine(); if (tLine == null) return null;
+            if (tLine.equalsIgnoreCase("Selective dynamics")) {
+                rHeader.append(tLine).append('\n');
+                tLine = aReader.readLine(); if (tLine == null) return null;
+            }
+            rNumAtoms[0] = tNumAtoms;
+            rFrame.append(rHeader).append(tLine).append('\n');
+            for (int i = 0; i < tNumAtoms; ++i) {
+                tLine = aReader.readLine(); if (tLine == null) break;
+                rFrame.append(tLine).append('\n');
+            }
+            return rFrame.toString();
+        };
+    }
+    /** @return 此行所有整数的和，如果不全是整数则返回 -1 */
+    private static int sumInts_(String aLine) {
+        int rSum = 0;
+        for (String tToken : IO.Text.splitBlank(aLine)) {
+            try {rSum += Integer.parseInt(tToken);}
+            catch (NumberFormatException e) {return -1;}
+        }
+        return rSum;
+    }
+    
     /**
      * 输出成 vasp 格式的 XDATCAR 文件，可以供 OVITO 等软件读取
      * @param aFilePath 需要输出的路径
@@ -403,4 +488,18 @@ public class XDATCAR extends AbstractListWrapper<POSCAR, IAtomData, POSCAR> {
             ++tConf;
         }
     }
+    /**
+     * 获取一个异步写入 XDATCAR 文件的写入器，用于在模拟过程中逐帧输出而不阻塞计算线程
+     * @param aFilePath 需要输出的路径
+     * @param aSymbols 可选的元素符号信息，默认会自动通过输入原子数据获取
+     * @return 异步写入器，使用完毕后需要关闭
+     * @throws IOException 如果创建文件失败
+     * @see AsyncFrameWriter
+     */
+    public static AsyncFrameWriter<IAtomData> asyncWriter(String aFilePath, final String... aSymbols) throws IOException {
+        return new AsyncFrameWriter<>(aFilePath, (aAtomData, aIdx) -> {
+            final POSCAR tPOSCAR = (aSymbols==null || aSymbols.length==0) ? POSCAR.of(aAtomData) : POSCAR.of(aAtomData, aSymbols);
+            return aWriteln -> tPOSCAR.write_(aWriteln, aIdx+1, DEFAULT_COMMENT);
+        });
+    }
 }
@@ -1,6 +1,9 @@
 package jsex.nnap;
 
 import jse.atom.*;
+import jse.atom.data.DataXYZ;
+import jse.atom.data.DumpXYZ;
+import jse.atom.data.StreamXYZ;
 import jse.cache.IntVectorCache;
 import jse.cache.LogicalVectorCache;
 import jse.cache.VectorCache;
@@ -26,6 +29,7 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.Range;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.function.Consumer;
 import java.util.function.IntUnaryOperator;
@@ -1355,6 +1359,70 @@ public class TrainerNNAP implements IHasSymbol, ISavable, AutoCloseable {
         addTestData(aAtomData, aEnergy, null, null);
     }
     
+    /**
+     * 从扩展的 XYZ 文件中流式读取并增加训练集数据，每次只会在内存中保留一帧原始数据，
+     * 适合用于非常大的训练集文件
+     * <p>
+     * 能量读取参数 {@code energy}，力读取属性 {@code forces}（或 {@code force}），
+     * 应力读取参数 {@code stress}（3x3 或者 {@code [xx, yy, zz, yz, xz, xy]} 形式），
+     * 或者读取参数 {@code virial} 并自动转换为应力；没有能量的帧会直接跳过，
+     * 缺失的力或者应力则只是不参与对应部分的训练
+     *
+     * @param aFilePath 扩展的 XYZ 文件路径，支持 {@code .gz} 压缩文件
+     * @return 增加的数据数目，不包含跳过的帧
+     * @throws IOException 如果读取失败
+     * @see DumpXYZ#stream(String, Collection, Collection)
+     */
+    public int addTrainDataXYZ(String aFilePath) throws IOException {return addDataXYZ_(aFilePath, false);}
+    /**
+     * 从扩展的 XYZ 文件中流式读取并增加测试集数据，没有能量的帧会直接跳过
+     * @param aFilePath 扩展的 XYZ 文件路径，支持 {@code .gz} 压缩文件
+     * @return 增加的数据数目，不包含跳过的帧
+     * @throws IOException 如果读取失败
+     * @see #addTrainDataXYZ(String)
+     */
+    public int addTestDataXYZ(String aFilePath) throws IOException {return addDataXYZ_(aFilePath, true);}
+    private final static List<String> XYZ_PROPERTY_KEYS = Arrays.asList("forces", "force");
+    private final static List<String> XYZ_PARAMETER_KEYS = Arrays.asList("energy", "Energy", "stress", "virial");
+    private int addDataXYZ_(String aFilePath, boolean aTest) throws IOException {
+        int rNum = 0;
+        try (StreamXYZ tStream = DumpXYZ.stream(aFilePath, XYZ_PROPERTY_KEYS, XYZ_PARAMETER_KEYS)) {
+            for (DataXYZ tData : tStream) {
+                Object tEnergy = tData.hasParameter("energy") ? tData.parameter("energy") : tData.parameter("Energy");
+                double fEnergy = (tEnergy instanceof Number) ? ((Number)tEnergy).doubleValue() : Double.NaN;
+                // 能量是必须的，没有能量的帧直接跳过
+                if (Double.isNaN(fEnergy)) continue;
+                Object tForces = tData.hasProperty("forces") ? tData.property("forces") : tData.property("force");
+                @Nullable IVector tStress = stressXYZ_(tData);
+                @Nullable IMatrix fForces = (tForces instanceof IMatrix) ? (IMatrix)tForces : null;
+                if (aTest) addTestData(tData, fEnergy, fForces, tStress);
+                else addTrainData(tData, fEnergy, fForces, tStress);
+                ++rNum;
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return rNum;
+    }
+    /** 转换为 {@code [xx, yy, zz, xy, xz, yz]} 顺序的应力，virial 的符号约定和这里计算的应力一致，即 {@code stress = -virial/volume} */
+    private static @Nullable IVector stressXYZ_(DataXYZ aData) {
+        Object tStress = aData.parameter("stress");
+        if (tStress instanceof String) {
+            Vector tVec = IO.Text.str2data((String)tStress, 9);
+            if (!Double.isNaN(tVec.get(8))) return Vectors.from(new double[]{tVec.get(0), tVec.get(4), tVec.get(8), tVec.get(1), tVec.get(2), tVec.get(5)});
+            if (!Double.isNaN(tVec.get(5))) return Vectors.from(new double[]{tVec.get(0), tVec.get(1), tVec.get(2), tVec.get(5), tVec.get(4), tVec.get(3)});
+            return null;
+        }
+        Object tVirial = aData.parameter("virial");
+        if (tVirial instanceof String) {
+            Vector tVec = IO.Text.str2data((String)tVirial, 9);
+            if (Double.isNaN(tVec.get(8))) return null;
+            double tVolume = -aData.volume();
+            return Vectors.from(new double[]{tVec.get(0)/tVolume, tVec.get(4)/tVolume, tVec.get(8)/tVolume, tVec.get(1)/tVolume, tVec.get(2)/tVolume, tVec.get(5)/tVolume});
+        }
+        return null;
+    }
+    
     
     protected void buildNl(boolean aTest, int aDataIdx, int aThreadID, List<IntCPointer> rNl, List<IntCPointer> rNlType,
                            List<IDoubleOrFloatCPointer> rNlDx, List<IDoubleOrFloatCPointer> rNlDy, List<IDoubleOrFloatCPointer> rNlDz) {